@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.max.internal.message;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.smarthome.core.library.types.DecimalType;
+import org.eclipse.smarthome.core.library.types.OpenClosedType;
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.binding.max.internal.device.Device;
+import org.openhab.binding.max.internal.device.DeviceConfiguration;
+import org.openhab.binding.max.internal.device.HeatingThermostat;
+import org.openhab.binding.max.internal.device.ShutterContact;
+import org.openhab.binding.max.internal.device.ThermostatModeType;
+
+/**
+ * Tests cases for {@link L_Message}.
+ *
+ * @author agent - Initial version
+ */
+public class L_MessageTest {
+
+    public final String rawData = "L:CwsNowkSGE0kALAACwjB1gkSGGAiAAAABg519gkSEAYEM28JAAALC+miCRIYACIAAAAMDhXMCRIYBCIAAACtCwjDSQkSGGQqAGMACwe25wkSGGQkAAAA";
+
+    String deviceCMsg[] = {
+            "C:0b0da3,0gsNowIBEABLRVEwNTQ0MjQyLCQ9CQcYAzAM/wBIYViRSP1ZFE0gTSBNIEUgRSBFIEUgRSBFIEhhWJFQ/VkVUSBRIFEgRSBFIEUgRSBFIEUgSFBYWkj+WRRNIE0gTSBFIEUgRSBFIEUgRSBIUFhaSP5ZFE0gTSBNIEUgRSBFIEUgRSBFIEhQWFpI/lkUTSBNIE0gRSBFIEUgRSBFIEUgSFBYWkj+WRRNIE0gTSBFIEUgRSBFIEUgRSBIUFhaSP5ZFE0gTSBNIEUgRSBFIEUgRSBFIA==",
+            "C:0e75f6,EQ519gQCEABLRVExMTA0Mzgw",
+            "C:0e15cc,zg4VzAMDEP9MRVEwMDE1MzQwKyE9CURsWSBZIFkgWSBZIFkgRSBFIEUgRSBFIEUgRGBZIFkgWSBZIFkgWSBFIEUgRSBFIEUgRSBEUVRhRNhZIFkgWSBZIEUgRSBFIEUgRSBFIERRVGFE2FkgWSBZIFkgRSBFIEUgRSBFIEUgRFFUYUTYWSBZIFkgWSBFIEUgRSBFIEUgRSBEUVRhRNhZIFkgWSBZIEUgRSBFIEUgRSBFIERRVGFE2FkgWSBZIFkgRSBFIEUgRSBFIEUgBxgw" };
+
+    private List<DeviceConfiguration> configurations = new ArrayList<DeviceConfiguration>();
+    private List<Device> devices = new ArrayList<Device>();
+
+    @Before
+    public void Before() {
+        for (String cMsg : deviceCMsg) {
+            configurations.add(DeviceConfiguration.create(new C_Message(cMsg)));
+        }
+        new L_Message(rawData).updateDevices(devices, configurations);
+    }
+
+    private Device getDevice(String rfAddress) {
+        for (Device device : devices) {
+            if (device.getRFAddress().equalsIgnoreCase(rfAddress)) {
+                return device;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void getMessageTypeTest() {
+
+        MessageType messageType = ((Message) new L_Message(rawData)).getType();
+
+        assertEquals(MessageType.L, messageType);
+    }
+
+    @Test
+    public void configuredDevicesTest() {
+
+        // devices without configuration are skipped
+        assertEquals(3, devices.size());
+    }
+
+    @Test
+    public void heatingThermostatTest() {
+        HeatingThermostat device = (HeatingThermostat) getDevice("0b0da3");
+
+        assertNotNull(device);
+        assertEquals(ThermostatModeType.AUTOMATIC, device.getMode());
+        assertEquals(77, device.getValvePosition().intValue());
+        assertEquals(18.0, ((DecimalType) device.getTemperatureSetpoint()).doubleValue(), 0.01);
+        assertEquals(17.6, ((DecimalType) device.getTemperatureActual()).doubleValue(), 0.01);
+    }
+
+    @Test
+    public void wallMountedThermostatTest() {
+        HeatingThermostat device = (HeatingThermostat) getDevice("0e15cc");
+
+        assertNotNull(device);
+        assertEquals(17.0, ((DecimalType) device.getTemperatureSetpoint()).doubleValue(), 0.01);
+        assertEquals(17.3, ((DecimalType) device.getTemperatureActual()).doubleValue(), 0.01);
+    }
+
+    @Test
+    public void shutterContactTest() {
+        ShutterContact device = (ShutterContact) getDevice("0e75f6");
+
+        assertNotNull(device);
+        assertEquals(OpenClosedType.CLOSED, device.getShutterState());
+    }
+
+    @Test
+    public void unchangedDevicesNotUpdatedTest() {
+        for (Device device : devices) {
+            device.setUpdated(false);
+        }
+
+        new L_Message(rawData).updateDevices(devices, configurations);
+
+        assertEquals(3, devices.size());
+        for (Device device : devices) {
+            assertFalse(device.isUpdated());
+        }
+    }
+}
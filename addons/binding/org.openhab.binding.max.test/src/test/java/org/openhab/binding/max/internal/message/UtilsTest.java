@@ -124,6 +124,21 @@ public class UtilsTest {
         assertEquals(false, b2[7]);
     }
 
+    @Test
+    public void decodeBase64Test() {
+        String s = "L:AQIDCv8=";
+        byte[] result = new byte[6];
+
+        int length = Utils.decodeBase64(s, 2, s.length(), result);
+
+        assertEquals(5, length);
+        assertEquals(1, result[0] & 0xFF);
+        assertEquals(2, result[1] & 0xFF);
+        assertEquals(3, result[2] & 0xFF);
+        assertEquals(10, result[3] & 0xFF);
+        assertEquals(255, result[4] & 0xFF);
+    }
+
     @Test
     public void hexStringToByteArrayTest() {
         String s = "000102030AFF";
@@ -10,6 +10,7 @@ package org.openhab.binding.max.internal;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.Arrays;
 import java.util.Date;
 
 /**
@@ -160,6 +161,57 @@ public final class Utils {
         return data;
     }
 
+    private static final byte[] BASE64_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(BASE64_VALUES, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64_VALUES[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+
+    /**
+     * Decodes Base64 encoded characters into a byte array, without creating
+     * intermediate strings or arrays. Characters that are not part of the
+     * Base64 alphabet are skipped, and decoding stops at the first padding
+     * character.
+     *
+     * For example: "AQID" is decoded to the bytes {0x01, 0x02, 0x03}
+     *
+     * @param src
+     *            the characters to decode
+     * @param start
+     *            the index of the first character to decode
+     * @param end
+     *            the index after the last character to decode
+     * @param dst
+     *            the array to decode into, which must hold at least
+     *            (end - start) * 3 / 4 bytes
+     * @return the number of bytes decoded
+     **/
+    public static int decodeBase64(CharSequence src, int start, int end, byte[] dst) {
+        int length = 0;
+        int bits = 0;
+        int bitCount = 0;
+        for (int i = start; i < end; i++) {
+            char c = src.charAt(i);
+            if (c == '=') {
+                break;
+            }
+            if (c >= 128 || BASE64_VALUES[c] < 0) {
+                continue;
+            }
+            bits = (bits << 6) | BASE64_VALUES[c];
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                dst[length++] = (byte) (bits >> bitCount);
+            }
+        }
+        return length;
+    }
+
     /**
      * Convert a byte array to a string representation of hexadecimals.
      *
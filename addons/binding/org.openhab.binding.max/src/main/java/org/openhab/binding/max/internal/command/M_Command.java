@@ -38,12 +38,12 @@ public class M_Command extends CubeCommand {
     private ArrayList<Device> devices = new ArrayList<Device>();
     public ArrayList<RoomInformation> rooms = new ArrayList<RoomInformation>();
 
-    public M_Command(ArrayList<Device> devices) {
+    public M_Command(List<Device> devices) {
         this.devices = new ArrayList<Device>(devices);
         roombuilder();
     }
 
-    public M_Command(ArrayList<Device> devices, ArrayList<RoomInformation> rooms) {
+    public M_Command(List<Device> devices, List<RoomInformation> rooms) {
         this.devices = new ArrayList<Device>(devices);
         this.rooms = new ArrayList<RoomInformation>(rooms);
         roombuilder();
@@ -8,6 +8,7 @@
  */
 package org.openhab.binding.max.internal.device;
 
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 
@@ -107,11 +108,24 @@ public abstract class Device {
     }
 
     public static Device create(byte[] raw, List<DeviceConfiguration> configurations) {
-        if (raw.length == 0) {
+        return create(raw, 0, raw.length, configurations);
+    }
+
+    /**
+     * Creates a new device from the device data within a L message
+     *
+     * @param raw the decoded L message
+     * @param offset the index of the device data in raw
+     * @param length the length of the device data
+     * @param configurations the device configurations received from the cube
+     * @return Device or null if there is no configuration for the device
+     */
+    public static Device create(byte[] raw, int offset, int length, List<DeviceConfiguration> configurations) {
+        if (length == 0) {
             return null;
         }
 
-        String rfAddress = Utils.toHex(raw[0] & 0xFF, raw[1] & 0xFF, raw[2] & 0xFF);
+        String rfAddress = Utils.toHex(raw[offset] & 0xFF, raw[offset + 1] & 0xFF, raw[offset + 2] & 0xFF);
 
         // Based on the RF address and the corresponding configuration,
         // create the device based on the type specified in it's configuration
@@ -122,32 +136,51 @@ public abstract class Device {
             return null;
         }
 
-        return Device.update(raw, configurations, device);
+        return Device.update(raw, offset, length, device);
     }
 
     public static Device update(byte[] raw, List<DeviceConfiguration> configurations, Device device) {
+        return update(raw, 0, raw.length, device);
+    }
+
+    /**
+     * Updates the device from the device data within a L message. The
+     * device data is read in place, so no copy of it is needed.
+     *
+     * @param raw the decoded L message
+     * @param offset the index of the device data in raw
+     * @param length the length of the device data
+     * @param device the device to update
+     * @return the updated device
+     */
+    public static Device update(byte[] raw, int offset, int length, Device device) {
 
         String rfAddress = device.getRFAddress();
 
         // byte 4 is skipped
 
         // multiple device information are encoded in those particular bytes
-        boolean[] bits1 = Utils.getBits(Utils.fromByte(raw[4]));
-        boolean[] bits2 = Utils.getBits(Utils.fromByte(raw[5]));
-
-        device.setInitialized(bits1[1]);
-        device.setAnswer(bits1[2]);
-        device.setError(bits1[3]);
-        device.setValid(bits1[4]);
-
-        device.setDstSettingActive(bits2[3]);
-        device.setGatewayKnown(bits2[4]);
-        device.setPanelLocked(bits2[5]);
-        device.setLinkStatusError(bits2[6]);
-        device.setBatteryLow(bits2[7]);
+        int status1 = raw[offset + 4] & 0xFF;
+        int status2 = raw[offset + 5] & 0xFF;
+
+        device.setInitialized((status1 & 0x02) != 0);
+        device.setAnswer((status1 & 0x04) != 0);
+        device.setError((status1 & 0x08) != 0);
+        device.setValid((status1 & 0x10) != 0);
+
+        device.setDstSettingActive((status2 & 0x08) != 0);
+        device.setGatewayKnown((status2 & 0x10) != 0);
+        device.setPanelLocked((status2 & 0x20) != 0);
+        device.setLinkStatusError((status2 & 0x40) != 0);
+        device.setBatteryLow((status2 & 0x80) != 0);
+
+        if (logger.isTraceEnabled()) {
+            logger.trace("Device {} ({}): L Message length: {} content: {}", rfAddress, device.getType().toString(),
+                    length, Utils.getHex(Arrays.copyOfRange(raw, offset, offset + length)));
+        }
 
-        logger.trace("Device {} ({}): L Message length: {} content: {}", rfAddress, device.getType().toString(),
-                raw.length, Utils.getHex(raw));
+        // the lowest two bits of the second status byte hold the mode or state
+        int mode = status2 & 0x03;
 
         // TODO move the device specific readings into the sub classes
         switch (device.getType()) {
@@ -156,57 +189,58 @@ public abstract class Device {
             case HeatingThermostatPlus:
                 HeatingThermostat heatingThermostat = (HeatingThermostat) device;
                 // "xxxx xx00 = automatic, xxxx xx01 = manual, xxxx xx10 = vacation, xxxx xx11 = boost":
-                if (bits2[1] == false && bits2[0] == false) {
-                    heatingThermostat.setMode(ThermostatModeType.AUTOMATIC);
-                } else if (bits2[1] == false && bits2[0] == true) {
-                    heatingThermostat.setMode(ThermostatModeType.MANUAL);
-                } else if (bits2[1] == true && bits2[0] == false) {
-                    heatingThermostat.setMode(ThermostatModeType.VACATION);
-                } else if (bits2[1] == true && bits2[0] == true) {
-                    heatingThermostat.setMode(ThermostatModeType.BOOST);
-                } else {
-                    logger.debug("Device {} ({}): Unknown mode", rfAddress, device.getType().toString());
+                switch (mode) {
+                    case 0:
+                        heatingThermostat.setMode(ThermostatModeType.AUTOMATIC);
+                        break;
+                    case 1:
+                        heatingThermostat.setMode(ThermostatModeType.MANUAL);
+                        break;
+                    case 2:
+                        heatingThermostat.setMode(ThermostatModeType.VACATION);
+                        break;
+                    default:
+                        heatingThermostat.setMode(ThermostatModeType.BOOST);
+                        break;
                 }
 
-                heatingThermostat.setValvePosition(raw[6] & 0xFF);
-                heatingThermostat.setTemperatureSetpoint(raw[7] & 0x7F);
+                heatingThermostat.setValvePosition(raw[offset + 6] & 0xFF);
+                heatingThermostat.setTemperatureSetpoint(raw[offset + 7] & 0x7F);
 
                 // 9 2 858B Date until (05-09-2011) (see Encoding/Decoding
                 // date/time)
                 // B 1 2E Time until (23:00) (see Encoding/Decoding date/time)
-                String hexDate = Utils.toHex(raw[8] & 0xFF, raw[9] & 0xFF);
-                int dateValue = Utils.fromHex(hexDate);
-                int timeValue = raw[10] & 0xFF;
+                int dateValue = ((raw[offset + 8] & 0xFF) << 8) | (raw[offset + 9] & 0xFF);
+                int timeValue = raw[offset + 10] & 0xFF;
                 Date date = Utils.resolveDateTime(dateValue, timeValue);
                 heatingThermostat.setDateSetpoint(date);
 
                 int actualTemp = 0;
                 if (device.getType() == DeviceType.WallMountedThermostat) {
-                    actualTemp = (raw[11] & 0xFF) + (raw[7] & 0x80) * 2;
+                    actualTemp = (raw[offset + 11] & 0xFF) + (raw[offset + 7] & 0x80) * 2;
 
                 } else {
                     if (heatingThermostat.getMode() != ThermostatModeType.VACATION
                             && heatingThermostat.getMode() != ThermostatModeType.BOOST) {
-                        actualTemp = (raw[8] & 0xFF) * 256 + (raw[9] & 0xFF);
+                        actualTemp = ((raw[offset + 8] & 0xFF) << 8) | (raw[offset + 9] & 0xFF);
                     } else {
                         logger.debug("Device {} ({}): No temperature reading in {} mode", rfAddress,
                                 device.getType().toString(), heatingThermostat.getMode());
                     }
                 }
-                logger.debug("Device {} ({}): Actual Temperature : {}", rfAddress, device.getType().toString(),
-                        (double) actualTemp / 10);
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Device {} ({}): Actual Temperature : {}", rfAddress, device.getType().toString(),
+                            (double) actualTemp / 10);
+                }
                 heatingThermostat.setTemperatureActual((double) actualTemp / 10);
                 break;
             case EcoSwitch:
-                String eCoSwitchData = Utils.toHex(raw[3] & 0xFF, raw[4] & 0xFF, raw[5] & 0xFF);
-                logger.trace("Device {} ({}): Status bytes : {}", rfAddress, device.getType().toString(),
-                        eCoSwitchData);
                 EcoSwitch ecoswitch = (EcoSwitch) device;
                 // xxxx xx10 = shutter open, xxxx xx00 = shutter closed
-                if (bits2[1] == true && bits2[0] == false) {
+                if (mode == 2) {
                     ecoswitch.setEcoMode(OnOffType.ON);
                     logger.trace("Device {} ({}): status: ON", rfAddress, device.getType().toString());
-                } else if (bits2[1] == false && bits2[0] == false) {
+                } else if (mode == 0) {
                     ecoswitch.setEcoMode(OnOffType.OFF);
                     logger.trace("Device {} ({}): Status: OFF", rfAddress, device.getType().toString());
                 } else {
@@ -217,10 +251,10 @@ public abstract class Device {
             case ShutterContact:
                 ShutterContact shutterContact = (ShutterContact) device;
                 // xxxx xx10 = shutter open, xxxx xx00 = shutter closed
-                if (bits2[1] == true && bits2[0] == false) {
+                if (mode == 2) {
                     shutterContact.setShutterState(OpenClosedType.OPEN);
                     logger.debug("Device {} ({}): Status: Open", rfAddress, device.getType().toString());
-                } else if (bits2[1] == false && bits2[0] == false) {
+                } else if (mode == 0) {
                     shutterContact.setShutterState(OpenClosedType.CLOSED);
                     logger.debug("Device {} ({}): Status: Closed", rfAddress, device.getType().toString());
                 } else {
@@ -230,13 +264,38 @@ public abstract class Device {
 
                 break;
             default:
-                logger.debug("Unhandled Device. DataBytes: " + Utils.getHex(raw));
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Unhandled Device. DataBytes: {}",
+                            Utils.getHex(Arrays.copyOfRange(raw, offset, offset + length)));
+                }
                 break;
 
         }
         return device;
     }
 
+    /**
+     * Checks whether the RF address of the device matches the three bytes in
+     * raw at the offset, without creating a string from the bytes.
+     *
+     * @param raw the decoded L message
+     * @param offset the index of the RF address in raw
+     * @return true if the RF address matches
+     */
+    public boolean hasRFAddress(byte[] raw, int offset) {
+        if (rfAddress == null || rfAddress.length() != 6) {
+            return false;
+        }
+        for (int i = 0; i < 3; i++) {
+            int value = (Character.digit(rfAddress.charAt(i * 2), 16) << 4)
+                    | Character.digit(rfAddress.charAt(i * 2 + 1), 16);
+            if (value != (raw[offset + i] & 0xFF)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private final void setBatteryLow(boolean batteryLow) {
         if (this.batteryLow != batteryLow) {
             this.updated = true;
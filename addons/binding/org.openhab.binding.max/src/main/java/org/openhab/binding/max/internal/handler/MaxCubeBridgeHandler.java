@@ -17,14 +17,16 @@ import java.io.OutputStreamWriter;
 import java.math.BigDecimal;
 import java.net.ConnectException;
 import java.net.Socket;
-import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
@@ -78,6 +80,12 @@ import org.slf4j.LoggerFactory;
  * {@link MaxCubeBridgeHandler} is the handler for a MAX! Cube and connects it
  * to the framework. All {@link MaxDevicesHandler}s use the
  * {@link MaxCubeBridgeHandler} to execute the actual commands.
+ * <p>
+ * Each bridge owns its connection to the cube and the lock that guards it, so a slow cube doesn't hold up commands
+ * to other cubes. Queued commands are written to the cube together and the responses are read afterwards.
+ * <p>
+ * A reader thread processes the messages from the cube as they arrive. After each L: message only the devices whose
+ * state has changed are passed to their {@link MaxDevicesHandler}.
  *
  * @author Marcel Verpaalen - Initial contribution OH2 version
  * @author Andreas Heil (info@aheil.de) - OH1 version
@@ -99,9 +107,22 @@ public class MaxCubeBridgeHandler extends BaseBridgeHandler {
     /** timeout on network connection **/
     private static final int NETWORK_TIMEOUT = 10000;
 
-    private ArrayList<Device> devices = new ArrayList<Device>();
+    /**
+     * The messages are processed on the reader thread while the commands are built on the scheduler threads, so
+     * the rooms, configurations and device state are guarded by deviceLock
+     */
+    private final Object deviceLock = new Object();
+    private List<Device> devices = new CopyOnWriteArrayList<Device>();
+    private Map<String, Device> devicesBySerial = new ConcurrentHashMap<String, Device>();
     private ArrayList<RoomInformation> rooms;
-    private HashSet<String> lastActiveDevices = new HashSet<String>();
+    private Set<String> lastActiveDevices = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * Devices without changes are still passed to their handler at this interval in milliseconds, as the handlers
+     * use the updates to check when the actual temperature needs to be refreshed
+     */
+    private static final long DEVICE_UNCHANGED_DISPATCH_INTERVAL = 60000;
+    private Map<String, Long> lastDispatched = new ConcurrentHashMap<String, Long>();
 
     /** MAX! Thermostat default off temperature */
     private static final DecimalType DEFAULT_OFF_TEMPERATURE = new DecimalType(4.5);
@@ -115,6 +136,9 @@ public class MaxCubeBridgeHandler extends BaseBridgeHandler {
     private static final int MAX_COMMANDS = 50;
     private ArrayBlockingQueue<SendCommand> commandQueue = new ArrayBlockingQueue<SendCommand>(MAX_COMMANDS);
 
+    /** maximum number of queued commands written to the cube before reading the responses */
+    private static final int MAX_PIPELINED_COMMANDS = 10;
+
     private SendCommand lastCommandId = null;
 
     private String ipAddress;
@@ -138,15 +162,20 @@ public class MaxCubeBridgeHandler extends BaseBridgeHandler {
     private int freeMemorySlots;
 
     /**
-     * connection socket and reader/writer for execute method
+     * connection socket and reader/writer for execute method, guarded by cubeLock
      */
+    private final Object cubeLock = new Object();
     private Socket socket = null;
-    private BufferedReader reader = null;
+    private CubeReader reader = null;
     private OutputStreamWriter writer = null;
+    private long responseTimeout = NETWORK_TIMEOUT;
 
     private boolean previousOnline = false;
 
+    private final CommandStatistics commandStatistics = new CommandStatistics();
+
     private List<DeviceStatusListener> deviceStatusListeners = new CopyOnWriteArrayList<>();
+    private Map<String, MaxDevicesHandler> deviceHandlers = new ConcurrentHashMap<String, MaxDevicesHandler>();
 
     private ScheduledFuture<?> pollingJob;
     private Runnable pollingRunnable = new Runnable() {
@@ -271,15 +300,13 @@ public class MaxCubeBridgeHandler extends BaseBridgeHandler {
         if (previousOnline) {
             updateStatus(ThingStatus.ONLINE, ThingStatusDetail.CONFIGURATION_PENDING, "Inclusion");
             logger.info("Start MAX! inclusion mode for 60 seconds");
-            try {
-                socket.setSoTimeout((80000));
+            synchronized (cubeLock) {
+                responseTimeout = 80000;
                 if (!sendCubeCommand(new N_Command())) {
                     logger.debug("Error during Inclusion mode");
                 }
                 logger.info("End MAX! inclusion mode");
-                socket.setSoTimeout((NETWORK_TIMEOUT));
-            } catch (SocketException e) {
-                logger.debug("Timeout during MAX! inclusion mode");
+                responseTimeout = NETWORK_TIMEOUT;
             }
         } else {
             logger.warn("Need to be online to start inclusion mode");
@@ -311,33 +338,74 @@ public class MaxCubeBridgeHandler extends BaseBridgeHandler {
     }
 
     /**
-     * Takes a command from the command queue and send it to
-     * {@link executeCommand} for execution.
+     * Takes the commands from the command queue and sends them to the cube in
+     * one go, up to {@link #MAX_PIPELINED_COMMANDS} at a time.
      *
      */
-    private synchronized void sendCommands() {
-
-        SendCommand sendCommand = commandQueue.poll();
-        if (sendCommand != null) {
-            CubeCommand cmd = sendCommand.getCubeCommand();
-            if (cmd == null) {
-                cmd = getCommand(sendCommand);
+    private void sendCommands() {
+        List<SendCommand> sendCommands = new ArrayList<SendCommand>();
+        List<CubeCommand> cmds = new ArrayList<CubeCommand>();
+
+        while (!commandQueue.isEmpty()) {
+            sendCommands.clear();
+            cmds.clear();
+            SendCommand sendCommand;
+            while (cmds.size() < MAX_PIPELINED_COMMANDS && (sendCommand = commandQueue.poll()) != null) {
+                CubeCommand cmd = sendCommand.getCubeCommand();
+                if (cmd == null) {
+                    synchronized (deviceLock) {
+                        cmd = getCommand(sendCommand);
+                    }
+                }
+                if (cmd != null) {
+                    sendCommands.add(sendCommand);
+                    cmds.add(cmd);
+                    if (cmd.getReturnStrings() == null) {
+                        // The cube closes the connection, so nothing can follow this command
+                        break;
+                    }
+                }
+            }
+            if (cmds.isEmpty()) {
+                return;
             }
-            if (cmd != null) {
-                // Actual sending of the data to the Max! Cube Lan Gateway
-                if (sendCubeCommand(cmd)) {
+
+            // Actual sending of the data to the Max! Cube Lan Gateway
+            int sent = sendCubeCommands(cmds);
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < sendCommands.size(); i++) {
+                sendCommand = sendCommands.get(i);
+                if (i < sent) {
+                    commandStatistics.commandSent(now - sendCommand.getQueuedAt());
                     logger.debug("Command {} ({}:{}) sent to MAX! Cube at IP: {}", sendCommand.getId(),
                             sendCommand.getKey(), sendCommand.getCommandText(), ipAddress);
                 } else {
+                    commandStatistics.commandFailed();
                     logger.warn("Error sending command {} ({}:{}) to MAX! Cube at IP: {}", sendCommand.getId(),
                             sendCommand.getKey(), sendCommand.getCommandText(), ipAddress);
                 }
             }
+            logger.debug("MAX! Cube {} command statistics: {}", ipAddress, commandStatistics);
+
+            if (sent < cmds.size()) {
+                // Leave the remaining commands for the next run, the connection has been lost
+                return;
+            }
         }
     }
 
     /**
-     * initiates read data from the MAX! Cube bridge
+     * Gets a copy of the statistics for the commands sent to this cube
+     *
+     * @return the {@link CommandStatistics} for this cube
+     */
+    public CommandStatistics getCommandStatistics() {
+        return new CommandStatistics(commandStatistics);
+    }
+
+    /**
+     * initiates read data from the MAX! Cube bridge. The devices are
+     * updated by the reader thread when the L: message is received.
      */
     private void refreshData() {
 
@@ -345,31 +413,6 @@ public class MaxCubeBridgeHandler extends BaseBridgeHandler {
             if (sendCubeCommand(new L_Command())) {
                 updateStatus(ThingStatus.ONLINE);
                 previousOnline = true;
-                for (Device di : devices) {
-                    if (lastActiveDevices != null && lastActiveDevices.contains(di.getSerialNumber())) {
-                        for (DeviceStatusListener deviceStatusListener : deviceStatusListeners) {
-                            try {
-                                deviceStatusListener.onDeviceStateChanged(getThing().getUID(), di);
-                            } catch (Exception e) {
-                                logger.error("An exception occurred while calling the DeviceStatusListener", e);
-                                unregisterDeviceStatusListener(deviceStatusListener);
-                            }
-                        }
-                    }
-                    // New device, not seen before, pass to Discovery
-                    else {
-                        for (DeviceStatusListener deviceStatusListener : deviceStatusListeners) {
-                            try {
-                                deviceStatusListener.onDeviceAdded(getThing(), di);
-                                di.setUpdated(true);
-                                deviceStatusListener.onDeviceStateChanged(getThing().getUID(), di);
-                            } catch (Exception e) {
-                                logger.error("An exception occurred while calling the DeviceStatusListener", e);
-                            }
-                            lastActiveDevices.add(di.getSerialNumber());
-                        }
-                    }
-                }
             } else if (previousOnline) {
                 onConnectionLost();
             }
@@ -379,6 +422,57 @@ public class MaxCubeBridgeHandler extends BaseBridgeHandler {
         }
     }
 
+    /**
+     * Passes the devices that are new or have changed since the last L:
+     * message to the listeners.
+     */
+    private void dispatchDeviceUpdates() {
+        long now = System.currentTimeMillis();
+        for (Device di : devices) {
+            String serialNumber = di.getSerialNumber();
+            devicesBySerial.put(serialNumber.toUpperCase(), di);
+
+            // New device, not seen before, pass to Discovery
+            if (!deviceStatusListeners.isEmpty() && lastActiveDevices.add(serialNumber)) {
+                for (DeviceStatusListener deviceStatusListener : deviceStatusListeners) {
+                    try {
+                        deviceStatusListener.onDeviceAdded(getThing(), di);
+                    } catch (Exception e) {
+                        logger.error("An exception occurred while calling the DeviceStatusListener", e);
+                    }
+                }
+                di.setUpdated(true);
+            }
+
+            Long dispatched = lastDispatched.get(serialNumber);
+            if (!di.isUpdated() && dispatched != null && now - dispatched < DEVICE_UNCHANGED_DISPATCH_INTERVAL) {
+                continue;
+            }
+            lastDispatched.put(serialNumber, now);
+
+            MaxDevicesHandler handler = deviceHandlers.get(serialNumber);
+            if (handler != null) {
+                try {
+                    handler.onDeviceStateChanged(getThing().getUID(), di);
+                } catch (Exception e) {
+                    logger.error("An exception occurred while calling the DeviceStatusListener", e);
+                    unregisterDeviceStatusListener(handler);
+                }
+            }
+            for (DeviceStatusListener deviceStatusListener : deviceStatusListeners) {
+                if (!(deviceStatusListener instanceof MaxDevicesHandler)) {
+                    try {
+                        deviceStatusListener.onDeviceStateChanged(getThing().getUID(), di);
+                    } catch (Exception e) {
+                        logger.error("An exception occurred while calling the DeviceStatusListener", e);
+                        unregisterDeviceStatusListener(deviceStatusListener);
+                    }
+                }
+            }
+            di.setUpdated(false);
+        }
+    }
+
     public void onConnectionLost() {
         logger.debug("Bridge connection lost. Updating thing status to OFFLINE.");
         previousOnline = false;
@@ -415,8 +509,13 @@ public class MaxCubeBridgeHandler extends BaseBridgeHandler {
             throw new NullPointerException("It's not allowed to pass a null deviceStatusListener.");
         }
         boolean result = deviceStatusListeners.add(deviceStatusListener);
-        if (result) {
-            // onUpdate();
+        if (deviceStatusListener instanceof MaxDevicesHandler) {
+            String serialNumber = ((MaxDevicesHandler) deviceStatusListener).getSerialNumber();
+            if (serialNumber != null) {
+                deviceHandlers.put(serialNumber, (MaxDevicesHandler) deviceStatusListener);
+                // Make sure the new handler gets the device state with the next L: message
+                lastDispatched.remove(serialNumber);
+            }
         }
         return result;
     }
@@ -426,6 +525,9 @@ public class MaxCubeBridgeHandler extends BaseBridgeHandler {
             throw new NullPointerException("It's not allowed to pass a null deviceStatusListener.");
         }
         boolean result = deviceStatusListeners.remove(deviceStatusListener);
+        if (deviceStatusListener instanceof MaxDevicesHandler) {
+            deviceHandlers.values().remove(deviceStatusListener);
+        }
         if (result) {
             clearDeviceList();
         }
@@ -434,6 +536,7 @@ public class MaxCubeBridgeHandler extends BaseBridgeHandler {
 
     public void clearDeviceList() {
         lastActiveDevices.clear();
+        lastDispatched.clear();
     }
 
     /**
@@ -443,120 +546,133 @@ public class MaxCubeBridgeHandler extends BaseBridgeHandler {
      * @param {@link CubeCommand}
      * @return boolean success
      */
-    private synchronized boolean sendCubeCommand(CubeCommand command) {
-        synchronized (MaxCubeBridgeHandler.class) {
-            boolean sendSuccess = false;
-            try {
-                if (socket == null || socket.isClosed()) {
-                    this.socketConnect();
-                } else {
-                    if (maxRequestsPerConnection > 0 && requestCount >= maxRequestsPerConnection) {
-                        logger.debug("maxRequestsPerConnection reached, reconnecting.");
-                        socket.close();
-                        this.socketConnect();
-                    } else {
-
-                        if (requestCount == 0) {
-                            logger.debug("Connect to MAX! Cube");
-                            readliness("L:");
-
-                        }
-                        if (!(requestCount == 0 && command instanceof L_Command)) {
+    private boolean sendCubeCommand(CubeCommand command) {
+        return sendCubeCommands(Collections.singletonList(command)) == 1;
+    }
 
-                            logger.debug("Sending request #{} to MAX! Cube", this.requestCount);
-                            if (writer == null) {
-                                logger.warn("Can't write to MAX! Cube");
-                                this.socketConnect();
-                            }
+    /**
+     * Sends the commands to the Max! Cube Lan gateway and processes the
+     * responses. All commands are written before the first response is read.
+     * If the cube closed a connection that was kept open, the commands are
+     * sent again on a new connection before they are reported as failed.
+     *
+     * @param commands the {@link CubeCommand}s to send
+     * @return the number of commands for which the response was received
+     */
+    private int sendCubeCommands(List<CubeCommand> commands) {
+        synchronized (cubeLock) {
+            int completed = 0;
+            boolean resent = false;
+            boolean retry = true;
+            while (retry) {
+                retry = false;
+                boolean connected = false;
+                try {
+                    if (socket != null && maxRequestsPerConnection > 0 && requestCount >= maxRequestsPerConnection) {
+                        logger.debug("maxRequestsPerConnection reached, reconnecting.");
+                        socketClose();
+                    }
+                    connected = socketConnectIfClosed();
 
-                            writer.write(command.getCommandString());
-                            logger.trace("Write string to Max! Cube {}: {}", ipAddress, command.getCommandString());
-                            writer.flush();
+                    StringBuilder data = new StringBuilder();
+                    for (CubeCommand command : commands) {
+                        data.append(command.getCommandString());
+                    }
+                    if (connected && commands.size() == 1 && commands.get(0) instanceof L_Command) {
+                        // The L: message has just been received with the initial messages
+                        logger.debug("Received device list from MAX! Cube on connect");
+                        completed = 1;
+                    } else {
+                        int expected = 0;
+                        for (CubeCommand command : commands) {
                             if (command.getReturnStrings() != null) {
-                                readliness(command.getReturnStrings());
-                            } else {
-                                socketClose();
+                                reader.expectResponse(command.getReturnStrings());
+                                expected++;
                             }
+                        }
 
+                        logger.debug("Sending {} request(s) #{} to MAX! Cube", commands.size(), requestCount);
+                        writer.write(data.toString());
+                        logger.trace("Write string to Max! Cube {}: {}", ipAddress, data);
+                        writer.flush();
+                        requestCount += commands.size();
+
+                        int missing = reader.awaitResponses(responseTimeout);
+                        completed = commands.size() - missing;
+                        if (missing > 0) {
+                            logger.debug("No response from MAX! Cube {} to {} of {} request(s)", ipAddress, missing,
+                                    expected);
+                            // Nothing got through on a connection the cube had already closed, so send again
+                            retry = !resent && !connected && missing == expected && reader.isClosed();
+                            socketClose(); // reconnect on next execution
+                        } else if (expected < commands.size()) {
+                            // The cube closes the connection after a command without response
+                            socketClose();
                         }
+                    }
 
+                    if (!exclusive) {
+                        socketClose();
                     }
+                } catch (ConnectException e) {
+                    logger.debug("Connection timed out on {} port {}", ipAddress, port);
+                    socketClose(); // reconnect on next execution
+                } catch (UnknownHostException e) {
+                    logger.debug("Host error occurred during execution: {}", e.getMessage());
+                    socketClose(); // reconnect on next execution
+                } catch (IOException e) {
+                    logger.debug("IO error occurred during execution: {}", e.getMessage());
+                    // The write fails if the cube had already closed the connection, so send again
+                    retry = !resent && socket != null && !connected;
+                    socketClose(); // reconnect on next execution
+                } catch (Exception e) {
+                    logger.debug("Exception occurred during execution: {}", e.getMessage(), e);
+                    socketClose(); // reconnect on next execution
                 }
-
-                requestCount++;
-                sendSuccess = true;
-
-                if (!exclusive) {
-                    socketClose();
+                if (retry) {
+                    logger.debug("Resending {} request(s) to MAX! Cube {} on a new connection", commands.size(),
+                            ipAddress);
+                    completed = 0;
+                    resent = true;
                 }
-            } catch (ConnectException e) {
-                logger.debug("Connection timed out on {} port {}", ipAddress, port);
-                sendSuccess = false;
-                socketClose(); // reconnect on next execution
-            } catch (UnknownHostException e) {
-                logger.debug("Host error occurred during execution: {}", e.getMessage());
-                sendSuccess = false;
-                socketClose(); // reconnect on next execution
-            } catch (IOException e) {
-                logger.debug("IO error occurred during execution: {}", e.getMessage());
-                sendSuccess = false;
-                socketClose(); // reconnect on next execution
-            } catch (Exception e) {
-                logger.debug("Exception occurred during execution: {}", e.getMessage(), e);
-                sendSuccess = false;
-                socketClose(); // reconnect on next execution
             }
-            return sendSuccess;
+            return completed;
         }
     }
 
     /**
-     * Read line from the Cube and process the message.
+     * Process a line received from the Cube.
      *
-     * @param terminator String with ending messagetype e.g. L:
-     * @throws IOException
+     * @param raw the line received
      */
-    private void readliness(String terminator) throws IOException {
-        if (terminator == null) {
-            return;
-        }
-        boolean cont = true;
-        while (cont) {
-            String raw = reader.readLine();
-            if (raw != null) {
-                logger.trace("message block: '{}'", raw);
-                try {
-                    this.messageProcessor.addReceivedLine(raw);
-                    if (this.messageProcessor.isMessageAvailable()) {
-                        Message message = this.messageProcessor.pull();
-                        processMessage(message);
-
-                    }
-                } catch (UnprocessableMessageException e) {
-                    if (raw.contentEquals("M:")) {
-                        logger.info("No Rooms information found. Configure your MAX! Cube: {}", ipAddress);
-                        this.messageProcessor.reset();
-                    } else {
-                        logger.info("Message could not be processed: '{}' from MAX! Cube lan gateway: {}:", raw,
-                                ipAddress);
-                        this.messageProcessor.reset();
-                    }
-                } catch (Exception e) {
-                    logger.info("Error while handling message block: '{}' from MAX! Cube lan gateway: {}:", raw,
-                            ipAddress, e.getMessage(), e);
-                    this.messageProcessor.reset();
-                }
-                if (terminator == null || raw.startsWith(terminator)) {
-                    cont = false;
+    private void processLine(String raw) {
+        logger.trace("message block: '{}'", raw);
+        try {
+            this.messageProcessor.addReceivedLine(raw);
+            if (this.messageProcessor.isMessageAvailable()) {
+                Message message = this.messageProcessor.pull();
+                synchronized (deviceLock) {
+                    processMessage(message);
                 }
+
+            }
+        } catch (UnprocessableMessageException e) {
+            if (raw.contentEquals("M:")) {
+                logger.info("No Rooms information found. Configure your MAX! Cube: {}", ipAddress);
+                this.messageProcessor.reset();
             } else {
-                cont = false;
+                logger.info("Message could not be processed: '{}' from MAX! Cube lan gateway: {}:", raw, ipAddress);
+                this.messageProcessor.reset();
             }
+        } catch (Exception e) {
+            logger.info("Error while handling message block: '{}' from MAX! Cube lan gateway: {}:", raw, ipAddress,
+                    e.getMessage(), e);
+            this.messageProcessor.reset();
         }
     }
 
     /**
-     * Processes the message
+     * Processes the message, called with deviceLock held
      *
      * @param Message
      *            the decoded message data
@@ -627,6 +743,7 @@ public class MaxCubeBridgeHandler extends BaseBridgeHandler {
             } else if (message.getType() == MessageType.L) {
                 ((L_Message) message).updateDevices(devices, configurations);
                 logger.trace("{} devices found.", devices.size());
+                dispatchDeviceUpdates();
             } else if (message.getType() == MessageType.S) {
                 dutyCycle = ((S_Message) message).getDutyCycle();
                 freeMemorySlots = ((S_Message) message).getFreeMemorySlots();
@@ -701,15 +818,6 @@ public class MaxCubeBridgeHandler extends BaseBridgeHandler {
         roomPropertiesSet = true;
     }
 
-    private Device getDevice(String serialNumber, ArrayList<Device> devices) {
-        for (Device device : devices) {
-            if (device.getSerialNumber().toUpperCase().equals(serialNumber)) {
-                return device;
-            }
-        }
-        return null;
-    }
-
     /**
      * Returns the MAX! Device decoded during the last refreshData
      *
@@ -719,7 +827,7 @@ public class MaxCubeBridgeHandler extends BaseBridgeHandler {
      */
 
     public Device getDevice(String serialNumber) {
-        return getDevice(serialNumber, devices);
+        return devicesBySerial.get(serialNumber);
     }
 
     /**
@@ -770,7 +878,7 @@ public class MaxCubeBridgeHandler extends BaseBridgeHandler {
         Command command = sendCommand.getCommand();
 
         // send command to MAX! Cube LAN Gateway
-        HeatingThermostat device = (HeatingThermostat) getDevice(serialNumber, devices);
+        HeatingThermostat device = (HeatingThermostat) getDevice(serialNumber);
 
         if (device == null) {
             logger.debug("Cannot send command to device with serial number {}, device not listed.", serialNumber);
@@ -826,8 +934,12 @@ public class MaxCubeBridgeHandler extends BaseBridgeHandler {
      */
     public void sendDeviceAndRoomNameUpdate(String comment) {
         if (devices.size() > 0) {
-            SendCommand sendCommand = new SendCommand("Cube" + getThing().getThingTypeUID().getAsString(),
-                    new M_Command(devices, rooms), comment);
+            M_Command command;
+            synchronized (deviceLock) {
+                command = new M_Command(devices, rooms);
+            }
+            SendCommand sendCommand = new SendCommand("Cube" + getThing().getThingTypeUID().getAsString(), command,
+                    comment);
             queueCommand(sendCommand);
         } else {
             logger.debug("No devices to build room & device update message. Try later");
@@ -846,19 +958,42 @@ public class MaxCubeBridgeHandler extends BaseBridgeHandler {
                     "Delete device " + maxDeviceSerial + " from Cube!");
             queueCommand(sendCommand);
             devices.remove(device);
+            devicesBySerial.values().remove(device);
             sendDeviceAndRoomNameUpdate("Remove name entry for " + maxDeviceSerial);
             sendCommand = new SendCommand(maxDeviceSerial, new Q_Command(), "Reload Data");
             queueCommand(sendCommand);
         }
     }
 
-    private boolean socketConnect() throws UnknownHostException, IOException {
+    /**
+     * Opens a new connection to the cube if there is none, and reads the
+     * messages the cube sends on connect up to and including the L: message.
+     *
+     * @return true if a new connection was opened
+     */
+    private boolean socketConnectIfClosed() throws UnknownHostException, IOException {
+        if (socket != null && !socket.isClosed()) {
+            if (!reader.isClosed()) {
+                return false;
+            }
+            logger.debug("Connection to MAX! Cube {} was closed by the cube, reconnecting.", ipAddress);
+            socketClose();
+        }
         socket = new Socket(ipAddress, port);
-        socket.setSoTimeout((NETWORK_TIMEOUT));
         logger.debug("Open new connection... to {} port {}", ipAddress, port);
-        reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        reader = new CubeReader(new BufferedReader(new InputStreamReader(socket.getInputStream())));
         writer = new OutputStreamWriter(socket.getOutputStream());
         requestCount = 0;
+        reader.expectResponse("L:");
+
+        Thread thread = new Thread(reader, "MAX! Cube reader " + ipAddress);
+        thread.setDaemon(true);
+        thread.start();
+
+        if (reader.awaitResponses(NETWORK_TIMEOUT) > 0) {
+            socketClose();
+            throw new IOException("No response from MAX! Cube on connect");
+        }
         return true;
     }
 
@@ -870,8 +1005,150 @@ public class MaxCubeBridgeHandler extends BaseBridgeHandler {
         socket = null;
     }
 
+    /**
+     * Reads the lines from the connection to the cube until the connection
+     * is closed. The lines are processed as they arrive, whether or not
+     * they are the response to a command.
+     */
+    private class CubeReader implements Runnable {
+        private final BufferedReader in;
+
+        /** the start of the response lines that are expected, in order */
+        private final ArrayDeque<String> expectedResponses = new ArrayDeque<String>();
+        private boolean closed = false;
+
+        private CubeReader(BufferedReader in) {
+            this.in = in;
+        }
+
+        @Override
+        public void run() {
+            try {
+                String raw;
+                while ((raw = in.readLine()) != null) {
+                    processLine(raw);
+                    responseReceived(raw);
+                }
+            } catch (IOException e) {
+                logger.debug("Connection to MAX! Cube {} closed: {}", ipAddress, e.getMessage());
+            } finally {
+                synchronized (this) {
+                    closed = true;
+                    notifyAll();
+                }
+            }
+        }
+
+        private synchronized boolean isClosed() {
+            return closed;
+        }
+
+        private synchronized void expectResponse(String terminator) {
+            expectedResponses.add(terminator);
+        }
+
+        private synchronized void responseReceived(String raw) {
+            String terminator = expectedResponses.peek();
+            if (terminator != null && raw.startsWith(terminator)) {
+                expectedResponses.poll();
+                notifyAll();
+            }
+        }
+
+        /**
+         * Waits for the expected responses. The timeout is restarted each
+         * time a response is received.
+         *
+         * @param timeout the time in milliseconds to wait for each response
+         * @return the number of responses that were not received
+         */
+        private synchronized int awaitResponses(long timeout) {
+            int remaining = expectedResponses.size();
+            long deadline = System.currentTimeMillis() + timeout;
+            try {
+                while (!expectedResponses.isEmpty() && !closed) {
+                    if (expectedResponses.size() < remaining) {
+                        remaining = expectedResponses.size();
+                        deadline = System.currentTimeMillis() + timeout;
+                    }
+                    long wait = deadline - System.currentTimeMillis();
+                    if (wait <= 0) {
+                        break;
+                    }
+                    wait(wait);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            remaining = expectedResponses.size();
+            expectedResponses.clear();
+            return remaining;
+        }
+    }
+
     private void updateCubeState() {
         updateState(new ChannelUID(getThing().getUID(), CHANNEL_FREE_MEMORY), new DecimalType(freeMemorySlots));
         updateState(new ChannelUID(getThing().getUID(), CHANNEL_DUTY_CYCLE), new DecimalType(dutyCycle));
     }
+
+    /**
+     * Counters and latency of the commands sent to one cube. The latency is
+     * the time from queuing a command until the cube has responded.
+     */
+    public static class CommandStatistics {
+        private long sent;
+        private long failed;
+        private long latencyTotal;
+        private long latencyMax;
+
+        private CommandStatistics() {
+        }
+
+        private CommandStatistics(CommandStatistics stats) {
+            synchronized (stats) {
+                sent = stats.sent;
+                failed = stats.failed;
+                latencyTotal = stats.latencyTotal;
+                latencyMax = stats.latencyMax;
+            }
+        }
+
+        private synchronized void commandSent(long latency) {
+            sent++;
+            latencyTotal += latency;
+            latencyMax = Math.max(latencyMax, latency);
+        }
+
+        private synchronized void commandFailed() {
+            failed++;
+        }
+
+        public long getSent() {
+            return sent;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        /**
+         * @return the average time in milliseconds from queuing a command until the cube responded
+         */
+        public long getAverageLatency() {
+            return sent == 0 ? 0 : latencyTotal / sent;
+        }
+
+        /**
+         * @return the longest time in milliseconds from queuing a command until the cube responded
+         */
+        public long getMaxLatency() {
+            return latencyMax;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "sent=" + sent + ", failed=" + failed + ", latency avg=" + getAverageLatency() + "ms max="
+                    + latencyMax + "ms";
+        }
+    }
 }
@@ -452,6 +452,13 @@ public class MaxDevicesHandler extends BaseThingHandler implements DeviceStatusL
         forceRefresh = true;
     }
 
+    /**
+     * @return the serial number of the MAX! device handled by this handler
+     */
+    String getSerialNumber() {
+        return maxDeviceSerial;
+    }
+
     /**
      * Set the properties for this device
      *
@@ -29,6 +29,7 @@ public final class SendCommand {
     private String serialNumber;
     private String key;
     private String commandText;
+    private final long queuedAt = System.currentTimeMillis();
 
     public SendCommand(String serialNumber, ChannelUID channelUID, Command command) {
         commandId += 1;
@@ -147,4 +148,11 @@ public final class SendCommand {
         this.commandText = commandText;
     }
 
+    /**
+     * @return the time in milliseconds at which the command was created
+     */
+    public long getQueuedAt() {
+        return queuedAt;
+    }
+
 }
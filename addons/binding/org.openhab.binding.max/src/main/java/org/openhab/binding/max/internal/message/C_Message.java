@@ -16,7 +16,6 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 
-import org.apache.commons.net.util.Base64;
 import org.openhab.binding.max.internal.Utils;
 import org.openhab.binding.max.internal.device.DeviceType;
 import org.slf4j.Logger;
@@ -61,7 +60,11 @@ public final class C_Message extends Message {
 
         rfAddress = tokens[0];
 
-        byte[] bytes = Base64.decodeBase64(tokens[1].getBytes());
+        byte[] bytes = new byte[tokens[1].length() * 3 / 4];
+        int decodedLength = Utils.decodeBase64(tokens[1], 0, tokens[1].length(), bytes);
+        if (decodedLength < bytes.length) {
+            bytes = Arrays.copyOf(bytes, decodedLength);
+        }
 
         int[] data = new int[bytes.length];
 
@@ -12,8 +12,6 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
-import org.apache.commons.net.util.Base64;
-import org.openhab.binding.max.internal.Utils;
 import org.openhab.binding.max.internal.device.Device;
 import org.openhab.binding.max.internal.device.DeviceConfiguration;
 import org.slf4j.Logger;
@@ -36,50 +34,62 @@ public final class L_Message extends Message {
 
         List<Device> devices = new ArrayList<Device>();
 
-        byte[] decodedRawMessage = Base64.decodeBase64(getPayload().getBytes());
+        byte[] decodedRawMessage = new byte[getMaxDecodedLength()];
+        int length = decodePayload(decodedRawMessage);
 
-        MaxTokenizer tokenizer = new MaxTokenizer(decodedRawMessage);
-
-        while (tokenizer.hasMoreElements()) {
-            byte[] token = tokenizer.nextElement();
-            Device tempDevice = Device.create(token, configurations);
+        int offset = 0;
+        while (offset < length) {
+            int tokenLength = decodedRawMessage[offset++] & 0xFF;
+            if (offset + tokenLength > length) {
+                break;
+            }
+            Device tempDevice = Device.create(decodedRawMessage, offset, tokenLength, configurations);
             if (tempDevice != null) {
                 devices.add(tempDevice);
             }
+            offset += tokenLength;
         }
 
         return devices;
     }
 
+    /**
+     * Updates the devices with the real time information in this message.
+     * The device data is decoded in place, and the existing {@link Device}
+     * objects are updated, so only new devices are created.
+     *
+     * @param devices the known devices, new devices are added to this list
+     * @param configurations the device configurations received from the cube
+     * @return the devices
+     */
     public Collection<? extends Device> updateDevices(List<Device> devices, List<DeviceConfiguration> configurations) {
 
-        byte[] decodedRawMessage = Base64.decodeBase64(getPayload().getBytes());
+        byte[] decodedRawMessage = new byte[getMaxDecodedLength()];
+        int length = decodePayload(decodedRawMessage);
 
-        MaxTokenizer tokenizer = new MaxTokenizer(decodedRawMessage);
-
-        while (tokenizer.hasMoreElements()) {
-            byte[] token = tokenizer.nextElement();
-            String rfAddress = Utils.toHex(token[0] & 0xFF, token[1] & 0xFF, token[2] & 0xFF);
-            // logger.debug("token: "+token+" rfaddress: "+rfAddress);
+        int offset = 0;
+        while (offset < length) {
+            int tokenLength = decodedRawMessage[offset++] & 0xFF;
+            if (offset + tokenLength > length || tokenLength < 6) {
+                break;
+            }
 
             Device foundDevice = null;
             for (Device device : devices) {
-                // logger.debug(device.getRFAddress().toUpperCase()+ " vs "+rfAddress);
-                if (device.getRFAddress().toUpperCase().equals(rfAddress)) {
-                    // logger.debug("Updating device..."+rfAddress);
+                if (device.hasRFAddress(decodedRawMessage, offset)) {
                     foundDevice = device;
+                    break;
                 }
             }
             if (foundDevice != null) {
-                foundDevice = Device.update(token, configurations, foundDevice);
-                // devices.remove(token);
-                // devices.add(foundDevice);
+                Device.update(decodedRawMessage, offset, tokenLength, foundDevice);
             } else {
-                Device tempDevice = Device.create(token, configurations);
+                Device tempDevice = Device.create(decodedRawMessage, offset, tokenLength, configurations);
                 if (tempDevice != null) {
                     devices.add(tempDevice);
                 }
             }
+            offset += tokenLength;
         }
 
         return devices;
@@ -8,6 +8,7 @@
  */
 package org.openhab.binding.max.internal.message;
 
+import org.openhab.binding.max.internal.Utils;
 import org.slf4j.Logger;
 
 /**
@@ -33,4 +34,21 @@ public abstract class Message {
     protected final String getPayload() {
         return raw.substring(2, raw.length());
     }
+
+    /**
+     * Decodes the Base64 encoded payload straight from the received line.
+     *
+     * @param buffer the array to decode into, which must hold at least {@link #getMaxDecodedLength()} bytes
+     * @return the number of bytes decoded
+     */
+    protected final int decodePayload(byte[] buffer) {
+        return Utils.decodeBase64(raw, 2, raw.length(), buffer);
+    }
+
+    /**
+     * @return the maximum number of bytes the Base64 encoded payload decodes to
+     */
+    protected final int getMaxDecodedLength() {
+        return (raw.length() - 2) * 3 / 4;
+    }
 }
@@ -34,6 +34,8 @@ public class MessageProcessor {
 
     public static final String SEPARATOR = ":";
 
+    private static final MessageType[] MESSAGE_TYPES = MessageType.values();
+
     /**
      * The message that was created from last line received. (Null if no message
      * available yet)
@@ -226,8 +228,13 @@ public class MessageProcessor {
      */
     private static MessageType getMessageType(String line) {
 
-        for (MessageType msgType : MessageType.values()) {
-            if (line.startsWith(msgType.name() + SEPARATOR)) {
+        // All message types are a single letter followed by the separator
+        if (line.length() < 2 || line.charAt(1) != SEPARATOR.charAt(0)) {
+            return null;
+        }
+        char type = line.charAt(0);
+        for (MessageType msgType : MESSAGE_TYPES) {
+            if (msgType.name().charAt(0) == type) {
                 return msgType;
             }
         }
@@ -0,0 +1,260 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.rfxcom.internal;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.binding.rfxcom.internal.RFXComTransmitQueue.TransmitStatistics;
+import org.openhab.binding.rfxcom.internal.connector.RFXComConnectorInterface;
+import org.openhab.binding.rfxcom.internal.connector.RFXComEventListener;
+import org.openhab.binding.rfxcom.internal.messages.RFXComBaseMessage.PacketType;
+import org.openhab.binding.rfxcom.internal.messages.RFXComLighting2Message;
+import org.openhab.binding.rfxcom.internal.messages.RFXComTransmitterMessage;
+import org.openhab.binding.rfxcom.internal.messages.RFXComTransmitterMessage.Response;
+
+/**
+ * Tests cases for {@link RFXComTransmitQueue}.
+ *
+ * @author agent
+ */
+public class RFXComTransmitQueueTest {
+    private static final int TIMEOUT = 100;
+
+    private ScheduledThreadPoolExecutor scheduler;
+    private RecordingConnector connector;
+    private final List<String> errors = new ArrayList<String>();
+
+    private final RFXComTransmitQueue.TransmitListener listener = new RFXComTransmitQueue.TransmitListener() {
+        @Override
+        public void communicationError(String reason) {
+            synchronized (errors) {
+                errors.add(reason);
+            }
+        }
+    };
+
+    @Before
+    public void setUp() {
+        scheduler = new ScheduledThreadPoolExecutor(1);
+        connector = new RecordingConnector();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void messageIsAcknowledged() throws Exception {
+        RFXComTransmitQueue queue = createQueue(4, 1);
+        Future<Response> future = queue.send(new RFXComLighting2Message());
+
+        assertEquals(1, connector.getSent().size());
+        assertFalse(future.isDone());
+
+        queue.responseReceived(response(connector.getSeqNbr(0), Response.ACK));
+        assertEquals(Response.ACK, future.get(1, TimeUnit.SECONDS));
+
+        TransmitStatistics stats = queue.getStatistics().get(PacketType.LIGHTING2);
+        assertEquals(1, stats.getTransmitted());
+        assertEquals(1, stats.getAcknowledged());
+        assertEquals(0, stats.getFailed());
+    }
+
+    @Test
+    public void windowLimitsMessagesInFlight() throws Exception {
+        RFXComTransmitQueue queue = createQueue(2, 1);
+        Future<Response> first = queue.send(new RFXComLighting2Message());
+        Future<Response> second = queue.send(new RFXComLighting2Message());
+        Future<Response> third = queue.send(new RFXComLighting2Message());
+        assertEquals(2, connector.getSent().size());
+
+        // Responses can arrive in any order
+        queue.responseReceived(response(connector.getSeqNbr(1), Response.ACK));
+        assertEquals(Response.ACK, second.get(1, TimeUnit.SECONDS));
+        assertFalse(first.isDone());
+        assertEquals(3, connector.getSent().size());
+
+        queue.responseReceived(response(connector.getSeqNbr(0), Response.ACK));
+        queue.responseReceived(response(connector.getSeqNbr(2), Response.ACK));
+        assertEquals(Response.ACK, first.get(1, TimeUnit.SECONDS));
+        assertEquals(Response.ACK, third.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void nakIsResentUntilRetriesUsed() throws Exception {
+        RFXComTransmitQueue queue = createQueue(4, 1);
+        Future<Response> future = queue.send(new RFXComLighting2Message());
+
+        queue.responseReceived(response(connector.getSeqNbr(0), Response.NAK));
+        assertEquals(2, connector.getSent().size());
+        assertFalse(future.isDone());
+        assertTrue(connector.getSeqNbr(0) != connector.getSeqNbr(1));
+
+        queue.responseReceived(response(connector.getSeqNbr(1), Response.NAK));
+        assertEquals(Response.NAK, future.get(1, TimeUnit.SECONDS));
+        assertEquals(2, connector.getSent().size());
+
+        TransmitStatistics stats = queue.getStatistics().get(PacketType.LIGHTING2);
+        assertEquals(2, stats.getTransmitted());
+        assertEquals(1, stats.getResent());
+        assertEquals(1, stats.getFailed());
+    }
+
+    @Test
+    public void invalidAddressIsNotResent() throws Exception {
+        RFXComTransmitQueue queue = createQueue(4, 1);
+        Future<Response> future = queue.send(new RFXComLighting2Message());
+
+        queue.responseReceived(response(connector.getSeqNbr(0), Response.NAK_INVALID_AC_ADDRESS));
+        assertEquals(Response.NAK_INVALID_AC_ADDRESS, future.get(1, TimeUnit.SECONDS));
+        assertEquals(1, connector.getSent().size());
+    }
+
+    @Test
+    public void timeoutIsResentThenFailed() throws Exception {
+        RFXComTransmitQueue queue = createQueue(4, 1);
+        Future<Response> future = queue.send(new RFXComLighting2Message());
+
+        try {
+            future.get(TIMEOUT * 10, TimeUnit.MILLISECONDS);
+            fail("Message without response was not failed");
+        } catch (ExecutionException e) {
+            // Expected
+        }
+        assertEquals(2, connector.getSent().size());
+
+        // The error is reported once the message has been failed
+        long deadline = System.currentTimeMillis() + TIMEOUT * 10;
+        synchronized (errors) {
+            while (errors.isEmpty() && System.currentTimeMillis() < deadline) {
+                errors.wait(10);
+            }
+            assertEquals(1, errors.size());
+        }
+
+        // A late response is ignored
+        queue.responseReceived(response(connector.getSeqNbr(1), Response.ACK));
+        assertEquals(0, queue.getStatistics().get(PacketType.LIGHTING2).getAcknowledged());
+    }
+
+    @Test
+    public void queuedMessageCanBeCancelled() throws Exception {
+        RFXComTransmitQueue queue = new RFXComTransmitQueue(scheduler, listener, 1, TIMEOUT, 1);
+        Future<Response> queued = queue.send(new RFXComLighting2Message());
+        assertTrue(queued.cancel(false));
+        assertTrue(queued.isCancelled());
+
+        queue.start(connector);
+        Future<Response> sent = queue.send(new RFXComLighting2Message());
+        assertEquals(1, connector.getSent().size());
+
+        // Once sent the transceiver will transmit the message anyway
+        assertFalse(sent.cancel(false));
+        queue.responseReceived(response(connector.getSeqNbr(0), Response.ACK));
+        assertEquals(Response.ACK, sent.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void writeErrorIsReported() throws Exception {
+        RFXComTransmitQueue queue = createQueue(4, 1);
+        connector.failWrites = true;
+        Future<Response> future = queue.send(new RFXComLighting2Message());
+
+        try {
+            future.get(1, TimeUnit.SECONDS);
+            fail("Message that couldn't be written was not failed");
+        } catch (ExecutionException e) {
+            // Expected
+        }
+        synchronized (errors) {
+            assertEquals(1, errors.size());
+        }
+    }
+
+    @Test
+    public void stopFailsOutstandingMessages() throws Exception {
+        RFXComTransmitQueue queue = createQueue(1, 1);
+        Future<Response> inFlight = queue.send(new RFXComLighting2Message());
+        Future<Response> queued = queue.send(new RFXComLighting2Message());
+
+        queue.stop();
+        assertTrue(inFlight.isDone());
+        assertTrue(queued.isDone());
+
+        // Sequence numbers are free again once restarted
+        queue.start(connector);
+        queue.send(new RFXComLighting2Message());
+        assertEquals(2, connector.getSent().size());
+    }
+
+    private RFXComTransmitQueue createQueue(int window, int retries) {
+        RFXComTransmitQueue queue = new RFXComTransmitQueue(scheduler, listener, window, TIMEOUT, retries);
+        queue.start(connector);
+        return queue;
+    }
+
+    private RFXComTransmitterMessage response(byte seqNbr, Response response) {
+        RFXComTransmitterMessage message = new RFXComTransmitterMessage();
+        message.seqNbr = seqNbr;
+        message.response = response;
+        return message;
+    }
+
+    /**
+     * Records the packets written to the transceiver
+     */
+    private static class RecordingConnector implements RFXComConnectorInterface {
+        private final List<byte[]> sent = new ArrayList<byte[]>();
+        private volatile boolean failWrites = false;
+
+        @Override
+        public void connect(String device) {
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public synchronized void sendMessage(byte[] data) throws IOException {
+            if (failWrites) {
+                throw new IOException("Write failed");
+            }
+            sent.add(data);
+        }
+
+        @Override
+        public void addEventListener(RFXComEventListener listener) {
+        }
+
+        @Override
+        public void removeEventListener(RFXComEventListener listener) {
+        }
+
+        synchronized List<byte[]> getSent() {
+            return new ArrayList<byte[]>(sent);
+        }
+
+        synchronized byte getSeqNbr(int packet) {
+            return sent.get(packet)[3];
+        }
+    }
+}
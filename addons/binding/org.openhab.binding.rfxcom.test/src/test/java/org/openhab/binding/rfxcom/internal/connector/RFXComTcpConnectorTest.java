@@ -0,0 +1,152 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.rfxcom.internal.connector;
+
+import static org.junit.Assert.*;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests cases for {@link RFXComTcpConnector}, connected to a loopback server in place of the transceiver.
+ *
+ * @author agent
+ */
+public class RFXComTcpConnectorTest {
+    private static final int TIMEOUT = 5000;
+
+    private ServerSocket server;
+    private Socket socket;
+    private RFXComTcpConnector connector;
+
+    private final BlockingQueue<byte[]> packets = new LinkedBlockingQueue<byte[]>();
+    private final BlockingQueue<String> errors = new LinkedBlockingQueue<String>();
+
+    @Before
+    public void setUp() throws Exception {
+        server = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+        server.setSoTimeout(TIMEOUT);
+
+        connector = new RFXComTcpConnector();
+        connector.addEventListener(new RFXComEventListener() {
+            @Override
+            public void packetReceived(byte[] packet) {
+                packets.add(packet);
+            }
+
+            @Override
+            public void errorOccured(String error) {
+                errors.add(error);
+            }
+        });
+        connect();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        connector.disconnect();
+        if (socket != null) {
+            socket.close();
+        }
+        server.close();
+    }
+
+    @Test
+    public void messagesAreWritten() throws Exception {
+        byte[] first = new byte[] { 0x04, 0x02, 0x01, 0x01, 0x00 };
+        byte[] second = new byte[] { 0x07, 0x10, 0x01, 0x02, 0x42, 0x08, 0x01, 0x00 };
+        connector.sendMessage(first);
+        connector.sendMessage(second);
+
+        DataInputStream input = new DataInputStream(socket.getInputStream());
+        byte[] received = new byte[first.length + second.length];
+        input.readFully(received);
+
+        byte[] expected = new byte[received.length];
+        System.arraycopy(first, 0, expected, 0, first.length);
+        System.arraycopy(second, 0, expected, first.length, second.length);
+        assertArrayEquals(expected, received);
+    }
+
+    @Test
+    public void packetsAreSplitByLength() throws Exception {
+        OutputStream output = socket.getOutputStream();
+
+        // A stray zero byte, then a packet split over two writes followed by the start of the next packet
+        output.write(new byte[] { 0x00, 0x07, 0x10, 0x01, 0x02 });
+        output.flush();
+        Thread.sleep(50);
+        output.write(new byte[] { 0x42, 0x08, 0x01, 0x00, 0x04, 0x02 });
+        output.flush();
+        Thread.sleep(50);
+        output.write(new byte[] { 0x01, 0x03, 0x00 });
+        output.flush();
+
+        assertArrayEquals(new byte[] { 0x07, 0x10, 0x01, 0x02, 0x42, 0x08, 0x01, 0x00 }, nextPacket());
+        assertArrayEquals(new byte[] { 0x04, 0x02, 0x01, 0x03, 0x00 }, nextPacket());
+        assertNull(packets.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void lostConnectionIsReported() throws Exception {
+        socket.close();
+        socket = null;
+
+        assertNotNull("Connection loss not reported", errors.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+        try {
+            connector.sendMessage(new byte[] { 0x04, 0x02, 0x01, 0x01, 0x00 });
+            fail("Message sent on closed connection");
+        } catch (IOException e) {
+            // Expected
+        }
+
+        // The connection is restored by connecting again
+        connect();
+        OutputStream output = socket.getOutputStream();
+        output.write(new byte[] { 0x04, 0x02, 0x01, 0x04, 0x00 });
+        output.flush();
+        assertArrayEquals(new byte[] { 0x04, 0x02, 0x01, 0x04, 0x00 }, nextPacket());
+    }
+
+    @Test
+    public void eventLoopIsKeptAcrossReconnects() throws Exception {
+        RFXComTcpEventLoop loop = RFXComTcpEventLoop.acquire();
+        RFXComTcpEventLoop.release();
+
+        connector.disconnect();
+        socket.close();
+        connect();
+
+        RFXComTcpEventLoop reconnectedLoop = RFXComTcpEventLoop.acquire();
+        RFXComTcpEventLoop.release();
+        assertSame(loop, reconnectedLoop);
+    }
+
+    private void connect() throws Exception {
+        connector.connect("127.0.0.1:" + server.getLocalPort());
+        socket = server.accept();
+    }
+
+    private byte[] nextPacket() throws InterruptedException {
+        byte[] packet = packets.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertNotNull("No packet received", packet);
+        return packet;
+    }
+}
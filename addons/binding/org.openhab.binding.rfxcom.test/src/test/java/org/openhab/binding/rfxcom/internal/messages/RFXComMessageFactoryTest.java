@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.rfxcom.internal.messages;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.junit.Test;
+import org.openhab.binding.rfxcom.internal.exceptions.RFXComException;
+import org.openhab.binding.rfxcom.internal.exceptions.RFXComNotImpException;
+import org.openhab.binding.rfxcom.internal.messages.RFXComBaseMessage.PacketType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tests cases for {@link RFXComMessageFactory}. The time taken to decode a stream of received packets is reported.
+ *
+ * @author agent
+ */
+public class RFXComMessageFactoryTest {
+    private static final Logger logger = LoggerFactory.getLogger(RFXComMessageFactoryTest.class);
+
+    /**
+     * Packets as received from a transceiver, one of each type commonly seen
+     */
+    private static final String[] RECEIVED_PACKETS = { "0402010900", "0710015242080780", "0B11000101010A0B0C01010F70",
+            "0820000AD05A010450", "0850010BAE01006359", "0851010CAE01450169", "0A52010DAE0100C83C0259",
+            "0B55020EAE01000000109A69", "1056010F2F000087000000140049000079", "115A0110A61200000000000000000000C979" };
+
+    private static final PacketType[] RECEIVED_TYPES = { PacketType.TRANSMITTER_MESSAGE, PacketType.LIGHTING1,
+            PacketType.LIGHTING2, PacketType.SECURITY1, PacketType.TEMPERATURE, PacketType.HUMIDITY,
+            PacketType.TEMPERATURE_HUMIDITY, PacketType.RAIN, PacketType.WIND, PacketType.ENERGY };
+
+    private static final int PACKETS = 100000;
+
+    @Test
+    public void packetsAreDecodedToTheirMessageClass() throws RFXComException, RFXComNotImpException {
+        for (int cnt = 0; cnt < RECEIVED_PACKETS.length; cnt++) {
+            byte[] packet = DatatypeConverter.parseHexBinary(RECEIVED_PACKETS[cnt]);
+            RFXComBaseMessage message = (RFXComBaseMessage) RFXComMessageFactory.createMessage(packet);
+
+            assertEquals(RECEIVED_TYPES[cnt], message.packetType);
+            assertEquals(packet[3], message.seqNbr);
+        }
+    }
+
+    @Test(expected = RFXComNotImpException.class)
+    public void unknownPacketTypeIsNotImplemented() throws RFXComException, RFXComNotImpException {
+        RFXComMessageFactory.createMessage(new byte[] { 0x04, (byte) 0xFE, 0x00, 0x00, 0x00 });
+    }
+
+    @Test(expected = RFXComException.class)
+    public void shortPacketIsRejected() throws RFXComException, RFXComNotImpException {
+        RFXComMessageFactory.createMessage(new byte[] { 0x03, PacketType.LIGHTING2.toByte(), 0x00, 0x00 });
+    }
+
+    @Test
+    public void decodeTime() throws RFXComException, RFXComNotImpException {
+        List<byte[]> packets = new ArrayList<byte[]>();
+        for (String packet : RECEIVED_PACKETS) {
+            packets.add(DatatypeConverter.parseHexBinary(packet));
+        }
+
+        // Warm up before timing
+        decode(packets, PACKETS / 10);
+
+        long start = System.nanoTime();
+        int decoded = decode(packets, PACKETS);
+        long time = System.nanoTime() - start;
+
+        logger.info("Decoded {} packets in {}ms, {}ns per packet", decoded, time / 1000000, time / decoded);
+
+        assertEquals(PACKETS, decoded);
+        assertTrue("Decoding took " + time / 1000000 + "ms", time < 10000000000L);
+    }
+
+    private int decode(List<byte[]> packets, int count) throws RFXComException, RFXComNotImpException {
+        int decoded = 0;
+        for (int cnt = 0; cnt < count; cnt++) {
+            RFXComMessage message = RFXComMessageFactory.createMessage(packets.get(cnt % packets.size()));
+            if (message != null) {
+                decoded++;
+            }
+        }
+        return decoded;
+    }
+}
@@ -8,9 +8,11 @@
  */
 package org.openhab.binding.rfxcom.handler;
 
-import java.io.IOException;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
@@ -24,14 +26,17 @@ import org.eclipse.smarthome.core.thing.binding.BaseBridgeHandler;
 import org.eclipse.smarthome.core.types.Command;
 import org.openhab.binding.rfxcom.RFXComBindingConstants;
 import org.openhab.binding.rfxcom.internal.DeviceMessageListener;
+import org.openhab.binding.rfxcom.internal.RFXComTransmitQueue;
+import org.openhab.binding.rfxcom.internal.RFXComTransmitQueue.TransmitStatistics;
 import org.openhab.binding.rfxcom.internal.config.RFXComBridgeConfiguration;
 import org.openhab.binding.rfxcom.internal.connector.RFXComConnectorInterface;
 import org.openhab.binding.rfxcom.internal.connector.RFXComEventListener;
 import org.openhab.binding.rfxcom.internal.connector.RFXComJD2XXConnector;
 import org.openhab.binding.rfxcom.internal.connector.RFXComSerialConnector;
+import org.openhab.binding.rfxcom.internal.connector.RFXComTcpConnector;
 import org.openhab.binding.rfxcom.internal.exceptions.RFXComException;
 import org.openhab.binding.rfxcom.internal.exceptions.RFXComNotImpException;
-import org.openhab.binding.rfxcom.internal.messages.RFXComBaseMessage;
+import org.openhab.binding.rfxcom.internal.messages.RFXComBaseMessage.PacketType;
 import org.openhab.binding.rfxcom.internal.messages.RFXComInterfaceMessage;
 import org.openhab.binding.rfxcom.internal.messages.RFXComInterfaceMessage.Commands;
 import org.openhab.binding.rfxcom.internal.messages.RFXComInterfaceMessage.SubType;
@@ -39,6 +44,7 @@ import org.openhab.binding.rfxcom.internal.messages.RFXComInterfaceMessage.Trans
 import org.openhab.binding.rfxcom.internal.messages.RFXComMessage;
 import org.openhab.binding.rfxcom.internal.messages.RFXComMessageFactory;
 import org.openhab.binding.rfxcom.internal.messages.RFXComTransmitterMessage;
+import org.openhab.binding.rfxcom.internal.messages.RFXComTransmitterMessage.Response;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -58,14 +64,37 @@ public class RFXComBridgeHandler extends BaseBridgeHandler {
     RFXComConnectorInterface connector = null;
     private MessageListener eventListener = new MessageListener();
 
+    /**
+     * Listeners notified of all device messages
+     */
     private List<DeviceMessageListener> deviceStatusListeners = new CopyOnWriteArrayList<>();
 
-    private static final int timeout = 5000;
-    private static byte seqNbr = 0;
-    private static RFXComTransmitterMessage responseMessage = null;
-    private Object notifierObject = new Object();
+    /**
+     * Listeners for a single device, keyed by device ID. Messages are only passed to the listeners for the device
+     * that sent them rather than to every device handler.
+     */
+    private Map<String, CopyOnWriteArrayList<DeviceMessageListener>> deviceListeners = new ConcurrentHashMap<>();
+
+    private static final int DEFAULT_TRANSMIT_WINDOW = 4;
+    private static final int DEFAULT_TRANSMIT_TIMEOUT = 5000;
+    private static final int DEFAULT_TRANSMIT_RETRIES = 1;
+    private static final int STATISTICS_INTERVAL = 60;
+
+    private static final int CONNECTION_CHECK_INTERVAL = 60;
+    private static final int RECONNECT_DELAY_MIN = 5;
+    private static final int RECONNECT_DELAY_MAX = 600;
+
+    private volatile RFXComTransmitQueue transmitQueue = null;
     private RFXComBridgeConfiguration configuration = null;
     private ScheduledFuture<?> connectorTask;
+    private ScheduledFuture<?> statisticsTask;
+
+    /**
+     * Guards the connector task, so it isn't rescheduled once the handler is disposed
+     */
+    private final Object connectorLock = new Object();
+    private boolean connectionCheckEnabled = false;
+    private volatile int reconnectDelay = RECONNECT_DELAY_MIN;
 
     public RFXComBridgeHandler(Bridge br) {
         super(br);
@@ -80,14 +109,30 @@ public class RFXComBridgeHandler extends BaseBridgeHandler {
     public void dispose() {
         logger.debug("Handler disposed.");
 
+        synchronized (connectorLock) {
+            connectionCheckEnabled = false;
+            if (connectorTask != null) {
+                connectorTask.cancel(true);
+                connectorTask = null;
+            }
+        }
+
         if (connector != null) {
             connector.removeEventListener(eventListener);
             connector.disconnect();
         }
 
-        if (connectorTask != null && !connectorTask.isCancelled()) {
-            connectorTask.cancel(true);
-            connectorTask = null;
+        if (statisticsTask != null) {
+            statisticsTask.cancel(true);
+            statisticsTask = null;
+        }
+
+        if (transmitQueue != null) {
+            transmitQueue.stop();
+            for (Map.Entry<PacketType, TransmitStatistics> entry : transmitQueue.getStatistics().entrySet()) {
+                logger.debug("Transmit statistics for {}: {}", entry.getKey(), entry.getValue());
+            }
+            transmitQueue = null;
         }
 
         super.dispose();
@@ -100,41 +145,116 @@ public class RFXComBridgeHandler extends BaseBridgeHandler {
 
         configuration = getConfigAs(RFXComBridgeConfiguration.class);
 
-        if (connectorTask == null || connectorTask.isCancelled()) {
-            connectorTask = scheduler.scheduleAtFixedRate(new Runnable() {
+        if (transmitQueue != null) {
+            transmitQueue.stop();
+        }
+        transmitQueue = new RFXComTransmitQueue(scheduler, new RFXComTransmitQueue.TransmitListener() {
+
+            @Override
+            public void communicationError(String reason) {
+                logger.warn("RFXCOM transceiver communication error: {}", reason);
+                updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR);
+            }
+        }, getConfigValue(configuration.transmitWindow, DEFAULT_TRANSMIT_WINDOW),
+                getConfigValue(configuration.transmitTimeout, DEFAULT_TRANSMIT_TIMEOUT),
+                getConfigValue(configuration.transmitRetries, DEFAULT_TRANSMIT_RETRIES));
+
+        synchronized (connectorLock) {
+            connectionCheckEnabled = true;
+            reconnectDelay = RECONNECT_DELAY_MIN;
+            scheduleConnectionCheck(0);
+        }
+
+        if (statisticsTask == null) {
+            statisticsTask = scheduler.scheduleWithFixedDelay(new Runnable() {
 
                 @Override
                 public void run() {
-                    logger.debug("Checking RFXCOM transceiver connection, thing status = {}", thing.getStatus());
-                    if (thing.getStatus() != ThingStatus.ONLINE) {
-                        connect();
-                    }
+                    updateTransmitStatistics();
                 }
-            }, 0, 60, TimeUnit.SECONDS);
+            }, STATISTICS_INTERVAL, STATISTICS_INTERVAL, TimeUnit.SECONDS);
         }
     }
 
-    private static synchronized byte getSeqNumber() {
-        return seqNbr;
-    }
+    /**
+     * Publishes the transmit statistics of each packet type as a bridge property
+     */
+    private void updateTransmitStatistics() {
+        RFXComTransmitQueue queue = transmitQueue;
+        if (queue == null) {
+            return;
+        }
 
-    private static synchronized byte getNextSeqNumber() {
-        if (++seqNbr == 0) {
-            seqNbr = 1;
+        Map<String, String> properties = editProperties();
+        boolean changed = false;
+        for (Map.Entry<PacketType, TransmitStatistics> entry : queue.getStatistics().entrySet()) {
+            String name = RFXComBindingConstants.PROPERTY_TRANSMIT_STATISTICS + entry.getKey();
+            String statistics = entry.getValue().toString();
+            if (!statistics.equals(properties.get(name))) {
+                properties.put(name, statistics);
+                changed = true;
+            }
+        }
+        if (changed) {
+            updateProperties(properties);
         }
+    }
 
-        return seqNbr;
+    /**
+     * Schedules the next check of the transceiver connection, replacing any check already scheduled
+     *
+     * @param delay the delay in seconds
+     */
+    private void scheduleConnectionCheck(int delay) {
+        synchronized (connectorLock) {
+            if (!connectionCheckEnabled) {
+                return;
+            }
+            if (connectorTask != null) {
+                connectorTask.cancel(false);
+            }
+            connectorTask = scheduler.schedule(new Runnable() {
+
+                @Override
+                public void run() {
+                    checkConnection();
+                }
+            }, delay, TimeUnit.SECONDS);
+        }
     }
 
-    private static synchronized RFXComTransmitterMessage getResponseMessage() {
-        return responseMessage;
+    /**
+     * Reconnects if the transceiver is offline. Failed attempts are retried with an exponential backoff up to
+     * {@link #RECONNECT_DELAY_MAX}, so an unreachable transceiver isn't hammered with connection attempts.
+     */
+    private void checkConnection() {
+        logger.debug("Checking RFXCOM transceiver connection, thing status = {}", thing.getStatus());
+        if (thing.getStatus() == ThingStatus.ONLINE) {
+            scheduleConnectionCheck(CONNECTION_CHECK_INTERVAL);
+            return;
+        }
+
+        if (connect()) {
+            reconnectDelay = RECONNECT_DELAY_MIN;
+            scheduleConnectionCheck(CONNECTION_CHECK_INTERVAL);
+        } else {
+            int delay = reconnectDelay;
+            logger.debug("Reconnecting to RFXCOM transceiver in {}s", delay);
+            reconnectDelay = Math.min(delay * 2, RECONNECT_DELAY_MAX);
+            scheduleConnectionCheck(delay);
+        }
     }
 
-    private static synchronized void setResponseMessage(RFXComTransmitterMessage respMessage) {
-        responseMessage = respMessage;
+    private static int getConfigValue(Integer value, int defaultValue) {
+        return value == null ? defaultValue : value;
     }
 
-    private void connect() {
+    /**
+     * Connects to the transceiver, then resets and configures it
+     *
+     * @return true if the transceiver is connected
+     */
+    private boolean connect() {
         logger.debug("Connecting to RFXCOM transceiver");
 
         try {
@@ -150,9 +270,16 @@ public class RFXComBridgeHandler extends BaseBridgeHandler {
                 if (connector == null) {
                     connector = new RFXComJD2XXConnector();
                 }
+            } else if (configuration.host != null) {
+                deviceName = configuration.host + ":" + configuration.port;
+                if (connector == null) {
+                    connector = new RFXComTcpConnector();
+                }
             }
 
             if (connector != null) {
+                // Messages sent before the reset will never be acknowledged
+                transmitQueue.stop();
                 connector.disconnect();
                 connector.connect(deviceName);
 
@@ -205,6 +332,8 @@ public class RFXComBridgeHandler extends BaseBridgeHandler {
                 logger.debug("Start receiver");
                 connector.sendMessage(RFXComMessageFactory.CMD_START_RECEIVER);
                 updateStatus(ThingStatus.ONLINE);
+                transmitQueue.start(connector);
+                return true;
             }
         } catch (NoSuchPortException e) {
             logger.error("Connection to RFXCOM transceiver failed: invalid port");
@@ -214,6 +343,7 @@ public class RFXComBridgeHandler extends BaseBridgeHandler {
             logger.error("Error occured when trying to load native library for OS '{}' version '{}', processor '{}'",
                     System.getProperty("os.name"), System.getProperty("os.version"), System.getProperty("os.arch"), e);
         }
+        return false;
     }
 
     private byte[] createConfMessage(String bridgeType, RFXComBridgeConfiguration conf) {
@@ -246,6 +376,7 @@ public class RFXComBridgeHandler extends BaseBridgeHandler {
                     break;
 
                 case RFXComBindingConstants.BRIDGE_TYPE_MANUAL_BRIDGE:
+                case RFXComBindingConstants.BRIDGE_TYPE_TCP_BRIDGE:
                     if (conf.transceiverType != null) {
                         switch (conf.transceiverType) {
                             case RFXComBindingConstants.TRANSCEIVER_433_92MHz:
@@ -300,53 +431,20 @@ public class RFXComBridgeHandler extends BaseBridgeHandler {
         throw new IllegalArgumentException("");
     }
 
-    public synchronized void sendMessage(RFXComMessage msg) throws RFXComException {
-
-        ((RFXComBaseMessage) msg).seqNbr = getNextSeqNumber();
-        byte[] data = msg.decodeMessage();
-
-        logger.debug("Transmitting message '{}'", msg);
-        logger.trace("Transmitting data: {}", DatatypeConverter.printHexBinary(data));
-
-        setResponseMessage(null);
-
-        try {
-            connector.sendMessage(data);
-        } catch (IOException e) {
-            updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR);
-            throw new RFXComException(e);
-        }
-
-        try {
-
-            RFXComTransmitterMessage resp = null;
-            synchronized (notifierObject) {
-                notifierObject.wait(timeout);
-                resp = getResponseMessage();
-            }
-
-            if (resp != null) {
-                switch (resp.response) {
-                    case ACK:
-                    case ACK_DELAYED:
-                        logger.debug("Command successfully transmitted, '{}' received", resp.response);
-                        break;
-
-                    case NAK:
-                    case NAK_INVALID_AC_ADDRESS:
-                    case UNKNOWN:
-                        logger.error("Command transmit failed, '{}' received", resp.response);
-                        break;
-                }
-            } else {
-                logger.warn("No response received from transceiver");
-                updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR);
-            }
-
-        } catch (InterruptedException ie) {
-            logger.error("No acknowledge received from RFXCOM controller, timeout {}ms ", timeout);
-            updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR);
+    /**
+     * Queues a message for transmission. The caller isn't blocked while the message is sent, the returned
+     * {@link Future} completes when the transceiver acknowledges the message.
+     *
+     * @param msg the message to send
+     * @return a {@link Future} for the transceiver response
+     * @throws RFXComException if the bridge isn't initialized
+     */
+    public Future<Response> sendMessage(RFXComMessage msg) throws RFXComException {
+        RFXComTransmitQueue queue = transmitQueue;
+        if (queue == null) {
+            throw new RFXComException("RFXCOM bridge is not initialized");
         }
+        return queue.send(msg);
     }
 
     private class MessageListener implements RFXComEventListener {
@@ -364,27 +462,18 @@ public class RFXComBridgeHandler extends BaseBridgeHandler {
                                 msg.transceiverType, msg.hardwareVersion1, msg.hardwareVersion2, msg.firmwareVersion);
                     }
                 } else if (message instanceof RFXComTransmitterMessage) {
-                    RFXComTransmitterMessage resp = (RFXComTransmitterMessage) message;
-
-                    byte seqNbr = getSeqNumber();
-                    if (resp.seqNbr == seqNbr) {
-                        logger.debug("Transmitter response received: {}", message.toString());
-                        setResponseMessage(resp);
-                        synchronized (notifierObject) {
-                            notifierObject.notify();
-                        }
-                    } else {
-                        logger.warn("Sequence number '{}' does not match, expecting number '{}'", resp.seqNbr, seqNbr);
+                    logger.debug("Transmitter response received: {}", message.toString());
+                    RFXComTransmitQueue queue = transmitQueue;
+                    if (queue != null) {
+                        queue.responseReceived((RFXComTransmitterMessage) message);
                     }
 
                 } else {
+                    notifyListeners(deviceStatusListeners, message);
 
-                    for (DeviceMessageListener deviceStatusListener : deviceStatusListeners) {
-                        try {
-                            deviceStatusListener.onDeviceMessageReceived(getThing().getUID(), message);
-                        } catch (Exception e) {
-                            logger.error("An exception occurred while calling the DeviceStatusListener", e);
-                        }
+                    List<DeviceMessageListener> listeners = deviceListeners.get(message.getDeviceId());
+                    if (listeners != null) {
+                        notifyListeners(listeners, message);
                     }
                 }
             } catch (RFXComNotImpException e) {
@@ -397,10 +486,23 @@ public class RFXComBridgeHandler extends BaseBridgeHandler {
             updateStatus(ThingStatus.ONLINE);
         }
 
+        private void notifyListeners(List<DeviceMessageListener> listeners, RFXComMessage message) {
+            for (DeviceMessageListener deviceStatusListener : listeners) {
+                try {
+                    deviceStatusListener.onDeviceMessageReceived(getThing().getUID(), message);
+                } catch (Exception e) {
+                    logger.error("An exception occurred while calling the DeviceStatusListener", e);
+                }
+            }
+        }
+
         @Override
         public void errorOccured(String error) {
             logger.error("Error occured: {}", error);
             updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR);
+
+            // Reconnect without waiting for the next connection check
+            scheduleConnectionCheck(reconnectDelay);
         }
     }
 
@@ -418,4 +520,49 @@ public class RFXComBridgeHandler extends BaseBridgeHandler {
         return deviceStatusListeners.remove(deviceStatusListener);
     }
 
+    /**
+     * Registers a listener for the messages from one device
+     *
+     * @param deviceId the device ID, as returned by {@link RFXComMessage#getDeviceId()}
+     * @param deviceStatusListener the listener
+     * @return true if the listener was added, false if it was already registered for the device
+     */
+    public boolean registerDeviceStatusListener(String deviceId, DeviceMessageListener deviceStatusListener) {
+        if (deviceId == null || deviceStatusListener == null) {
+            throw new IllegalArgumentException("It's not allowed to pass a null deviceId or deviceStatusListener.");
+        }
+        synchronized (deviceListeners) {
+            CopyOnWriteArrayList<DeviceMessageListener> listeners = deviceListeners.get(deviceId);
+            if (listeners == null) {
+                listeners = new CopyOnWriteArrayList<>();
+                deviceListeners.put(deviceId, listeners);
+            }
+            return listeners.addIfAbsent(deviceStatusListener);
+        }
+    }
+
+    /**
+     * Unregisters a listener for the messages from one device
+     *
+     * @param deviceId the device ID the listener was registered with
+     * @param deviceStatusListener the listener
+     * @return true if the listener was removed
+     */
+    public boolean unregisterDeviceStatusListener(String deviceId, DeviceMessageListener deviceStatusListener) {
+        if (deviceId == null || deviceStatusListener == null) {
+            throw new IllegalArgumentException("It's not allowed to pass a null deviceId or deviceStatusListener.");
+        }
+        synchronized (deviceListeners) {
+            CopyOnWriteArrayList<DeviceMessageListener> listeners = deviceListeners.get(deviceId);
+            if (listeners == null) {
+                return false;
+            }
+            boolean removed = listeners.remove(deviceStatusListener);
+            if (listeners.isEmpty()) {
+                deviceListeners.remove(deviceId);
+            }
+            return removed;
+        }
+    }
+
 }
\ No newline at end of file
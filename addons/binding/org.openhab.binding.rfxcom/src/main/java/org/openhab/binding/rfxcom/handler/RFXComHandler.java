@@ -52,6 +52,7 @@ public class RFXComHandler extends BaseThingHandler implements DeviceMessageList
     private RFXComBridgeHandler bridgeHandler;
 
     private RFXComDeviceConfiguration config;
+    private String registeredDeviceId;
 
     public RFXComHandler(Thing thing) {
         super(thing);
@@ -119,7 +120,7 @@ public class RFXComHandler extends BaseThingHandler implements DeviceMessageList
             logger.debug("Bridge initialized");
 
             bridgeHandler = (RFXComBridgeHandler) thingHandler;
-            bridgeHandler.registerDeviceStatusListener(this);
+            registerDeviceStatusListener();
 
             if (config.deviceId == null || config.subType == null) {
                 updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.CONFIGURATION_ERROR,
@@ -137,12 +138,28 @@ public class RFXComHandler extends BaseThingHandler implements DeviceMessageList
     @Override
     public void bridgeHandlerDisposed(ThingHandler thingHandler, Bridge bridge) {
         logger.debug("Bridge disposed");
-        if (bridgeHandler != null) {
-            bridgeHandler.unregisterDeviceStatusListener(this);
-        }
+        unregisterDeviceStatusListener();
         bridgeHandler = null;
     }
 
+    private void registerDeviceStatusListener() {
+        if (config.deviceId != null && config.deviceId.equals(registeredDeviceId)) {
+            return;
+        }
+        unregisterDeviceStatusListener();
+        if (config.deviceId != null) {
+            bridgeHandler.registerDeviceStatusListener(config.deviceId, this);
+            registeredDeviceId = config.deviceId;
+        }
+    }
+
+    private void unregisterDeviceStatusListener() {
+        if (bridgeHandler != null && registeredDeviceId != null) {
+            bridgeHandler.unregisterDeviceStatusListener(registeredDeviceId, this);
+        }
+        registeredDeviceId = null;
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -151,6 +168,7 @@ public class RFXComHandler extends BaseThingHandler implements DeviceMessageList
     @Override
     public void dispose() {
         logger.debug("Thing {} disposed.", getThing().getUID());
+        unregisterDeviceStatusListener();
         super.dispose();
     }
 
@@ -0,0 +1,474 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.rfxcom.internal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.openhab.binding.rfxcom.internal.connector.RFXComConnectorInterface;
+import org.openhab.binding.rfxcom.internal.exceptions.RFXComException;
+import org.openhab.binding.rfxcom.internal.messages.RFXComBaseMessage;
+import org.openhab.binding.rfxcom.internal.messages.RFXComBaseMessage.PacketType;
+import org.openhab.binding.rfxcom.internal.messages.RFXComMessage;
+import org.openhab.binding.rfxcom.internal.messages.RFXComTransmitterMessage;
+import org.openhab.binding.rfxcom.internal.messages.RFXComTransmitterMessage.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link RFXComTransmitQueue} sends messages to the RFXCOM transceiver without blocking the caller.
+ * <p>
+ * Each message is given a sequence number and kept in an in-flight table until the transceiver replies with a
+ * {@link RFXComTransmitterMessage} carrying the same sequence number. Up to a configurable number of messages can be
+ * in flight at once, further messages wait in the queue. A message that is NAKed because the transmitter didn't lock
+ * on the frequency, or that gets no response, is resent until the retry limit is reached.
+ * <p>
+ * The latency from queuing a message until it's acknowledged is recorded for each packet type.
+ *
+ * @author agent - Initial contribution
+ */
+public class RFXComTransmitQueue {
+
+    private Logger logger = LoggerFactory.getLogger(RFXComTransmitQueue.class);
+
+    /**
+     * Notified when the transceiver can't be reached
+     */
+    public interface TransmitListener {
+        /**
+         * Called when a message couldn't be written, or no response was received after all retries
+         *
+         * @param reason description of the error
+         */
+        void communicationError(String reason);
+    }
+
+    private final ScheduledExecutorService scheduler;
+    private final TransmitListener listener;
+    private final int window;
+    private final int timeout;
+    private final int retries;
+
+    private RFXComConnectorInterface connector = null;
+
+    private final LinkedList<TransmitFuture> pending = new LinkedList<TransmitFuture>();
+    private final TransmitFuture[] inFlight = new TransmitFuture[256];
+    private int inFlightCount = 0;
+    private byte seqNbr = 0;
+
+    private final Map<PacketType, TransmitStatistics> statistics = new EnumMap<PacketType, TransmitStatistics>(
+            PacketType.class);
+
+    /**
+     * Creates the queue
+     *
+     * @param scheduler the scheduler used for response timeouts
+     * @param listener the {@link TransmitListener} notified of communication errors
+     * @param window the maximum number of messages waiting for a response
+     * @param timeout the time in milliseconds to wait for a response
+     * @param retries the number of times a message is resent after a NAK or timeout
+     */
+    public RFXComTransmitQueue(ScheduledExecutorService scheduler, TransmitListener listener, int window,
+            int timeout, int retries) {
+        this.scheduler = scheduler;
+        this.listener = listener;
+        this.window = Math.max(1, Math.min(window, 255));
+        this.timeout = Math.max(100, timeout);
+        this.retries = Math.max(0, retries);
+    }
+
+    /**
+     * Sets the connector used to write messages and sends any queued messages
+     *
+     * @param connector the connected {@link RFXComConnectorInterface}
+     */
+    public void start(RFXComConnectorInterface connector) {
+        String error;
+        synchronized (this) {
+            this.connector = connector;
+            error = transmitPending();
+        }
+        notifyError(error);
+    }
+
+    /**
+     * Stops transmitting. All queued and in-flight messages are failed.
+     */
+    public void stop() {
+        List<TransmitFuture> failed = new ArrayList<TransmitFuture>();
+        synchronized (this) {
+            connector = null;
+            failed.addAll(pending);
+            pending.clear();
+            for (int cnt = 0; cnt < inFlight.length; cnt++) {
+                if (inFlight[cnt] != null) {
+                    failed.add(inFlight[cnt]);
+                    inFlight[cnt].cancelTimeout();
+                    inFlight[cnt] = null;
+                }
+            }
+            inFlightCount = 0;
+        }
+        for (TransmitFuture future : failed) {
+            future.complete(null, new RFXComException("Transmit queue stopped"));
+        }
+    }
+
+    /**
+     * Queues a message for transmission. The message sequence number is assigned when it's sent.
+     *
+     * @param message the message to send
+     * @return a {@link Future} which completes with the transceiver response
+     */
+    public Future<Response> send(RFXComMessage message) {
+        TransmitFuture future = new TransmitFuture((RFXComBaseMessage) message);
+        String error;
+        synchronized (this) {
+            pending.add(future);
+            error = transmitPending();
+        }
+        notifyError(error);
+        return future;
+    }
+
+    /**
+     * Processes a response from the transceiver. The response is matched to the in-flight message with the same
+     * sequence number.
+     *
+     * @param response the {@link RFXComTransmitterMessage} received
+     */
+    public void responseReceived(RFXComTransmitterMessage response) {
+        TransmitFuture completed = null;
+        String error;
+        synchronized (this) {
+            TransmitFuture future = removeInFlight(response.seqNbr);
+            if (future == null) {
+                logger.warn("Transmitter response for unknown sequence number '{}'", response.seqNbr & 0xFF);
+                return;
+            }
+
+            TransmitStatistics stats = getStatistics(future.message.packetType);
+            long latency = System.currentTimeMillis() - future.queuedAt;
+            switch (response.response) {
+                case ACK:
+                case ACK_DELAYED:
+                    logger.debug("Command successfully transmitted, '{}' received after {}ms", response.response,
+                            latency);
+                    stats.acknowledged++;
+                    stats.latencyTotal += latency;
+                    stats.latencyMax = Math.max(stats.latencyMax, latency);
+                    completed = future;
+                    break;
+
+                case NAK:
+                    // The transmitter didn't lock on the frequency, so there's a good chance a resend will work
+                    if (future.attempts <= retries) {
+                        logger.debug("Command transmit failed, '{}' received, resending", response.response);
+                        stats.resent++;
+                        pending.addFirst(future);
+                        break;
+                    }
+                    // Fall through
+                case NAK_INVALID_AC_ADDRESS:
+                case UNKNOWN:
+                    logger.error("Command transmit failed, '{}' received", response.response);
+                    stats.failed++;
+                    completed = future;
+                    break;
+            }
+            error = transmitPending();
+        }
+        if (completed != null) {
+            completed.complete(response.response, null);
+        }
+        notifyError(error);
+    }
+
+    private void responseTimeout(TransmitFuture future, byte seq) {
+        boolean failed = false;
+        String error;
+        synchronized (this) {
+            if (inFlight[seq & 0xFF] != future) {
+                // Response has already been received
+                return;
+            }
+            removeInFlight(seq);
+
+            TransmitStatistics stats = getStatistics(future.message.packetType);
+            if (future.attempts <= retries) {
+                logger.debug("No response received from transceiver for sequence number '{}', resending", seq & 0xFF);
+                stats.resent++;
+                pending.addFirst(future);
+            } else {
+                logger.warn("No response received from transceiver");
+                stats.failed++;
+                failed = true;
+            }
+            error = transmitPending();
+        }
+        if (failed) {
+            future.complete(null, new RFXComException("No response received from transceiver"));
+            if (error == null) {
+                error = "No response received from transceiver";
+            }
+        }
+        notifyError(error);
+    }
+
+    /**
+     * Writes queued messages until the window is full. Must be called while holding the lock.
+     *
+     * @return an error description if a write failed, otherwise null
+     */
+    private String transmitPending() {
+        while (connector != null && inFlightCount < window && !pending.isEmpty()) {
+            TransmitFuture future = pending.poll();
+            if (future.isCancelled()) {
+                continue;
+            }
+
+            final byte seq = getNextSeqNumber();
+            future.message.seqNbr = seq;
+            future.attempts++;
+
+            try {
+                byte[] data = future.message.decodeMessage();
+
+                logger.debug("Transmitting message '{}'", future.message);
+                logger.trace("Transmitting data: {}", DatatypeConverter.printHexBinary(data));
+
+                connector.sendMessage(data);
+            } catch (IOException e) {
+                future.complete(null, new RFXComException(e));
+                return e.getMessage();
+            }
+
+            inFlight[seq & 0xFF] = future;
+            inFlightCount++;
+            getStatistics(future.message.packetType).transmitted++;
+
+            final TransmitFuture timeoutFuture = future;
+            future.timeoutTask = scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    responseTimeout(timeoutFuture, seq);
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+        }
+        return null;
+    }
+
+    private TransmitFuture removeInFlight(byte seq) {
+        TransmitFuture future = inFlight[seq & 0xFF];
+        if (future != null) {
+            inFlight[seq & 0xFF] = null;
+            inFlightCount--;
+            future.cancelTimeout();
+        }
+        return future;
+    }
+
+    /**
+     * Gets the next free sequence number. Sequence number 0 is used by the initialisation commands.
+     */
+    private byte getNextSeqNumber() {
+        do {
+            if (++seqNbr == 0) {
+                seqNbr = 1;
+            }
+        } while (inFlight[seqNbr & 0xFF] != null);
+
+        return seqNbr;
+    }
+
+    private TransmitStatistics getStatistics(PacketType packetType) {
+        TransmitStatistics stats = statistics.get(packetType);
+        if (stats == null) {
+            stats = new TransmitStatistics();
+            statistics.put(packetType, stats);
+        }
+        return stats;
+    }
+
+    private void notifyError(String error) {
+        if (error != null && listener != null) {
+            listener.communicationError(error);
+        }
+    }
+
+    /**
+     * Gets a copy of the transmit statistics for each packet type sent
+     *
+     * @return map of {@link TransmitStatistics} for each {@link PacketType}
+     */
+    public synchronized Map<PacketType, TransmitStatistics> getStatistics() {
+        Map<PacketType, TransmitStatistics> copy = new EnumMap<PacketType, TransmitStatistics>(PacketType.class);
+        for (Map.Entry<PacketType, TransmitStatistics> entry : statistics.entrySet()) {
+            copy.put(entry.getKey(), new TransmitStatistics(entry.getValue()));
+        }
+        return copy;
+    }
+
+    /**
+     * Transmit counters and acknowledge latency for one packet type
+     */
+    public static class TransmitStatistics {
+        private long transmitted;
+        private long acknowledged;
+        private long resent;
+        private long failed;
+        private long latencyTotal;
+        private long latencyMax;
+
+        private TransmitStatistics() {
+        }
+
+        private TransmitStatistics(TransmitStatistics stats) {
+            transmitted = stats.transmitted;
+            acknowledged = stats.acknowledged;
+            resent = stats.resent;
+            failed = stats.failed;
+            latencyTotal = stats.latencyTotal;
+            latencyMax = stats.latencyMax;
+        }
+
+        public long getTransmitted() {
+            return transmitted;
+        }
+
+        public long getAcknowledged() {
+            return acknowledged;
+        }
+
+        public long getResent() {
+            return resent;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        /**
+         * @return the average time in milliseconds from queuing a message until it was acknowledged
+         */
+        public long getAverageLatency() {
+            return acknowledged == 0 ? 0 : latencyTotal / acknowledged;
+        }
+
+        /**
+         * @return the longest time in milliseconds from queuing a message until it was acknowledged
+         */
+        public long getMaxLatency() {
+            return latencyMax;
+        }
+
+        @Override
+        public String toString() {
+            return "transmitted=" + transmitted + ", acknowledged=" + acknowledged + ", resent=" + resent
+                    + ", failed=" + failed + ", latency avg=" + getAverageLatency() + "ms max=" + latencyMax + "ms";
+        }
+    }
+
+    /**
+     * The {@link Future} returned for each queued message. The attempts and timeout task are guarded by the queue lock.
+     */
+    private class TransmitFuture implements Future<Response> {
+        private final RFXComBaseMessage message;
+        private final long queuedAt = System.currentTimeMillis();
+        private final CountDownLatch latch = new CountDownLatch(1);
+
+        private int attempts = 0;
+        private ScheduledFuture<?> timeoutTask;
+
+        private volatile boolean cancelled = false;
+        private volatile Response response;
+        private volatile RFXComException exception;
+
+        private TransmitFuture(RFXComBaseMessage message) {
+            this.message = message;
+        }
+
+        private void complete(Response response, RFXComException exception) {
+            if (latch.getCount() == 0) {
+                return;
+            }
+            this.response = response;
+            this.exception = exception;
+            latch.countDown();
+        }
+
+        private void cancelTimeout() {
+            if (timeoutTask != null) {
+                timeoutTask.cancel(false);
+                timeoutTask = null;
+            }
+        }
+
+        /**
+         * Only messages that are still queued can be cancelled, once sent the transceiver will transmit them anyway
+         */
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            synchronized (RFXComTransmitQueue.this) {
+                if (attempts != 0 || isDone()) {
+                    return false;
+                }
+                cancelled = true;
+                pending.remove(this);
+            }
+            complete(null, new RFXComException("Transmit cancelled"));
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return latch.getCount() == 0;
+        }
+
+        @Override
+        public Response get() throws InterruptedException, ExecutionException {
+            latch.await();
+            return getResult();
+        }
+
+        @Override
+        public Response get(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            if (!latch.await(timeout, unit)) {
+                throw new TimeoutException();
+            }
+            return getResult();
+        }
+
+        private Response getResult() throws ExecutionException {
+            if (exception != null) {
+                throw new ExecutionException(exception);
+            }
+            return response;
+        }
+    }
+}
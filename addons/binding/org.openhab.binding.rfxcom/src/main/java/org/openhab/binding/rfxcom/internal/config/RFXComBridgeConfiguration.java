@@ -17,6 +17,10 @@ public class RFXComBridgeConfiguration {
     // Serial port for manual configuration
     public String serialPort;
 
+    // Host and port for transceivers accessed over TCP/IP
+    public String host;
+    public Integer port;
+
     // Configuration for discovered bridge devices
     public String bridgeId;
 
@@ -27,6 +31,11 @@ public class RFXComBridgeConfiguration {
 
     public String setMode;
 
+    // Transmit queue
+    public Integer transmitWindow;
+    public Integer transmitTimeout;
+    public Integer transmitRetries;
+
     // Enabled protocols
     public boolean enableUndecoded;
     public boolean enableImagintronixOpus;
@@ -9,46 +9,261 @@
 package org.openhab.binding.rfxcom.internal.connector;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.xml.bind.DatatypeConverter;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * RFXCOM connector for TCP/IP communication.
+ * RFXCOM connector for TCP/IP communication, e.g. to a transceiver connected to ser2net.
+ * <p>
+ * The connection is handled by the shared {@link RFXComTcpEventLoop}. Received data is collected in a buffer and
+ * split into messages using the length byte at the start of each message. If the connection is lost, the channel is
+ * closed and listeners are notified. The connector doesn't reconnect by itself - the bridge handler reconnects by
+ * calling {@link #connect(String)} again, which also lets it reset and configure the transceiver.
  *
  * @author Pauli Anttila - Initial contribution
  */
-public class RFXComTcpConnector implements RFXComConnectorInterface {
+public class RFXComTcpConnector implements RFXComConnectorInterface, RFXComTcpEventLoop.ChannelHandler {
 
     private static final Logger logger = LoggerFactory.getLogger(RFXComTcpConnector.class);
 
-    RFXComTcpConnector() {
+    private static final int CONNECT_TIMEOUT = 10000;
+
+    private final List<RFXComEventListener> listeners = new CopyOnWriteArrayList<RFXComEventListener>();
+
+    /**
+     * Messages are at most 128 bytes, so the buffer always has room for a complete message
+     */
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(256);
+    private final ConcurrentLinkedQueue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<ByteBuffer>();
+
+    private volatile RFXComTcpEventLoop eventLoop = null;
+    private InetSocketAddress address = null;
+    private volatile SocketChannel channel = null;
+    private volatile boolean connected = false;
+    private SelectionKey key = null;
+
+    public RFXComTcpConnector() {
 
     }
 
+    /**
+     * Connects to the transceiver
+     *
+     * @param device the address of the transceiver as host:port
+     */
     @Override
-    public void connect(String device) throws Exception {
-        logger.error("connect not implemented");
+    public synchronized void connect(String device) throws Exception {
+        disconnect();
+
+        int separator = device.lastIndexOf(':');
+        if (separator <= 0) {
+            throw new IllegalArgumentException("Address '" + device + "' should be in the format host:port");
+        }
+        address = new InetSocketAddress(device.substring(0, separator),
+                Integer.parseInt(device.substring(separator + 1)));
+
+        logger.debug("Connecting to {}", address);
+        final SocketChannel socketChannel = SocketChannel.open();
+        try {
+            socketChannel.socket().connect(address, CONNECT_TIMEOUT);
+            socketChannel.configureBlocking(false);
+        } catch (IOException e) {
+            socketChannel.close();
+            throw e;
+        }
+
+        eventLoop = RFXComTcpEventLoop.acquire();
+        channel = socketChannel;
+        connected = true;
+
+        eventLoop.execute(new Runnable() {
+            @Override
+            public void run() {
+                register(socketChannel, SelectionKey.OP_READ);
+            }
+        });
     }
 
     @Override
-    public void disconnect() {
-        logger.error("disconnect not implemented");
+    public synchronized void disconnect() {
+        if (eventLoop == null) {
+            return;
+        }
+        logger.debug("Disconnecting");
+
+        connected = false;
+        final SocketChannel socketChannel = channel;
+        channel = null;
+        writeQueue.clear();
+
+        eventLoop.execute(new Runnable() {
+            @Override
+            public void run() {
+                closeChannel(socketChannel);
+            }
+        });
+        RFXComTcpEventLoop.release();
+        eventLoop = null;
+
+        logger.debug("Closed");
     }
 
     @Override
     public void sendMessage(byte[] data) throws IOException {
-        logger.error("sendPacket not implemented");
+        RFXComTcpEventLoop loop = eventLoop;
+        if (!connected || loop == null) {
+            throw new IOException("Not connected to " + address);
+        }
+        logger.trace("Send data (len={}): {}", data.length, DatatypeConverter.printHexBinary(data));
+
+        writeQueue.add(ByteBuffer.wrap(data));
+        loop.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (key != null && key.isValid() && connected) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                }
+            }
+        });
     }
 
     @Override
     public void addEventListener(RFXComEventListener listener) {
-        logger.error("addEventListener not implemented");
+        if (!listeners.contains(listener)) {
+            listeners.add(listener);
+        }
     }
 
     @Override
     public void removeEventListener(RFXComEventListener listener) {
-        logger.error("removeEventListener not implemented");
+        listeners.remove(listener);
+    }
+
+    /**
+     * Registers the channel with the event loop. Called on the loop thread.
+     */
+    private void register(SocketChannel socketChannel, int ops) {
+        RFXComTcpEventLoop loop = eventLoop;
+        if (socketChannel != channel || loop == null) {
+            // Disconnected in the meantime
+            closeChannel(socketChannel);
+            return;
+        }
+        try {
+            if (!writeQueue.isEmpty()) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+            readBuffer.clear();
+            key = loop.register(socketChannel, ops, this);
+        } catch (IOException e) {
+            connectionLost(socketChannel, e.getMessage());
+        }
+    }
+
+    @Override
+    public void channelReady(SelectionKey selectionKey) {
+        SocketChannel socketChannel = (SocketChannel) selectionKey.channel();
+        try {
+            if (selectionKey.isReadable()) {
+                if (socketChannel.read(readBuffer) < 0) {
+                    connectionLost(socketChannel, "Connection closed by " + address);
+                    return;
+                }
+                processReadBuffer();
+            }
+            if (selectionKey.isValid() && selectionKey.isWritable()) {
+                ByteBuffer buffer;
+                while ((buffer = writeQueue.peek()) != null) {
+                    socketChannel.write(buffer);
+                    if (buffer.hasRemaining()) {
+                        // Socket buffer is full, wait until it can be written again
+                        return;
+                    }
+                    writeQueue.poll();
+                }
+                selectionKey.interestOps(SelectionKey.OP_READ);
+            }
+        } catch (IOException e) {
+            connectionLost(socketChannel, e.getMessage());
+        }
+    }
+
+    /**
+     * Splits the received data into messages. The first byte of each message is the number of bytes that follow.
+     * Bytes that can't be the start of a message are skipped, in the same way as the serial connector.
+     */
+    private void processReadBuffer() {
+        readBuffer.flip();
+        while (readBuffer.hasRemaining()) {
+            int msgLen = readBuffer.get(readBuffer.position());
+            if (msgLen <= 0) {
+                readBuffer.get();
+                continue;
+            }
+            if (readBuffer.remaining() < msgLen + 1) {
+                break;
+            }
+            byte[] msg = new byte[msgLen + 1];
+            readBuffer.get(msg);
+            logger.trace("Received data (len={}): {}", msg.length, DatatypeConverter.printHexBinary(msg));
+            sendMsgToListeners(msg);
+        }
+        readBuffer.compact();
+    }
+
+    /**
+     * Closes the channel and notifies the listeners, so the bridge handler can reconnect. Called on the loop thread.
+     */
+    private void connectionLost(SocketChannel socketChannel, String reason) {
+        closeChannel(socketChannel);
+        if (socketChannel != channel || !connected) {
+            return;
+        }
+
+        logger.warn("Connection to RFXCOM transceiver at {} lost: {}", address, reason);
+        connected = false;
+        writeQueue.clear();
+        sendErrorToListeners(reason);
+    }
+
+    private void closeChannel(SocketChannel socketChannel) {
+        if (socketChannel == null) {
+            return;
+        }
+        try {
+            socketChannel.close();
+        } catch (IOException e) {
+            // quietly close
+        }
     }
 
+    private void sendMsgToListeners(byte[] msg) {
+        for (RFXComEventListener listener : listeners) {
+            try {
+                listener.packetReceived(msg);
+            } catch (Exception e) {
+                logger.error("Event listener invoking error", e);
+            }
+        }
+    }
+
+    private void sendErrorToListeners(String error) {
+        for (RFXComEventListener listener : listeners) {
+            try {
+                listener.errorOccured(error);
+            } catch (Exception e) {
+                logger.error("Event listener invoking error", e);
+            }
+        }
+    }
 }
@@ -0,0 +1,191 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.rfxcom.internal.connector;
+
+import java.io.IOException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Event loop shared by all {@link RFXComTcpConnector}s. A single thread runs the selector for every TCP connection,
+ * rather than each bridge having its own reader thread. Tasks that touch the channels are passed to the loop with
+ * {@link #execute(Runnable)} so they run on the loop thread.
+ * <p>
+ * The loop is started when the first connector acquires it. Once the last connector releases it, the loop keeps
+ * running for {@link #IDLE_TIMEOUT} before it's stopped, so a bridge that reconnects reuses the same loop thread
+ * rather than stopping it and starting a new one.
+ *
+ * @author agent - Initial contribution
+ */
+class RFXComTcpEventLoop implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(RFXComTcpEventLoop.class);
+
+    /**
+     * Handles the selection events for one channel
+     */
+    interface ChannelHandler {
+        /**
+         * Called on the loop thread when the channel is ready for one of its interest operations
+         *
+         * @param key the {@link SelectionKey} for the channel
+         */
+        void channelReady(SelectionKey key);
+    }
+
+    /**
+     * Time in milliseconds the loop keeps running once it's no longer used
+     */
+    static final long IDLE_TIMEOUT = 30000;
+
+    private static RFXComTcpEventLoop instance = null;
+    private static int users = 0;
+
+    private final Selector selector;
+    private final Thread thread;
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+    /**
+     * Time the last user released the loop, or 0 while it's in use. Guarded by the class lock.
+     */
+    private long idleSince = 0;
+
+    private RFXComTcpEventLoop() throws IOException {
+        selector = Selector.open();
+        thread = new Thread(this, "RFXCOM TCP event loop");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Gets the shared event loop, starting it if needed. Every call must be matched with a call to
+     * {@link #release()}.
+     *
+     * @return the shared {@link RFXComTcpEventLoop}
+     * @throws IOException if the selector can't be opened
+     */
+    static synchronized RFXComTcpEventLoop acquire() throws IOException {
+        if (instance == null) {
+            instance = new RFXComTcpEventLoop();
+        }
+        users++;
+        instance.idleSince = 0;
+        return instance;
+    }
+
+    /**
+     * Releases the shared event loop. The loop is stopped once it hasn't been used for {@link #IDLE_TIMEOUT}.
+     */
+    static synchronized void release() {
+        if (instance == null || --users > 0) {
+            return;
+        }
+        users = 0;
+        instance.idleSince = System.currentTimeMillis();
+        instance.selector.wakeup();
+    }
+
+    /**
+     * Gets the time to wait in the selector, and stops the loop once it has been idle for {@link #IDLE_TIMEOUT}
+     *
+     * @return the select timeout in milliseconds, 0 to wait until woken, or -1 if the loop is stopped
+     */
+    private long getSelectTimeout() {
+        synchronized (RFXComTcpEventLoop.class) {
+            if (idleSince == 0) {
+                return 0;
+            }
+            long remaining = idleSince + IDLE_TIMEOUT - System.currentTimeMillis();
+            if (remaining > 0) {
+                return remaining;
+            }
+            if (instance == this) {
+                instance = null;
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Runs a task on the loop thread
+     *
+     * @param task the task to run
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Registers a channel with the selector. Must be called on the loop thread.
+     *
+     * @param channel the non-blocking channel
+     * @param ops the interest operations
+     * @param handler the {@link ChannelHandler} called when the channel is ready
+     * @return the {@link SelectionKey} for the channel
+     * @throws IOException if the channel is closed
+     */
+    SelectionKey register(SelectableChannel channel, int ops, ChannelHandler handler) throws IOException {
+        return channel.register(selector, ops, handler);
+    }
+
+    @Override
+    public void run() {
+        logger.debug("RFXCOM TCP event loop started");
+
+        long timeout;
+        while ((timeout = getSelectTimeout()) >= 0) {
+            try {
+                selector.select(timeout);
+
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+                    if (key.isValid()) {
+                        ((ChannelHandler) key.attachment()).channelReady(key);
+                    }
+                }
+
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+            } catch (Exception e) {
+                logger.error("Error in RFXCOM TCP event loop", e);
+            }
+        }
+
+        // Run the tasks queued while the loop was stopping, so channels that were never registered are closed
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+        for (SelectionKey key : selector.keys()) {
+            try {
+                key.channel().close();
+            } catch (IOException e) {
+                // quietly close
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            // quietly close
+        }
+
+        logger.debug("RFXCOM TCP event loop stopped");
+    }
+}
@@ -82,6 +82,19 @@ public abstract class RFXComBaseMessage implements RFXComMessage {
 
     }
 
+    /**
+     * Packet types indexed by the packet type byte, so received packets don't need to search the enum values
+     */
+    private static final PacketType[] packetTypes = new PacketType[256];
+
+    static {
+        for (PacketType pt : PacketType.values()) {
+            if (pt != PacketType.UNKNOWN) {
+                packetTypes[pt.toByte() & 0xFF] = pt;
+            }
+        }
+    }
+
     public byte[] rawMessage;
     public PacketType packetType = PacketType.UNKNOWN;
     public byte packetId = 0;
@@ -103,15 +116,8 @@ public abstract class RFXComBaseMessage implements RFXComMessage {
 
         rawMessage = data;
 
-        packetType = PacketType.UNKNOWN;
         packetId = data[1];
-
-        for (PacketType pt : PacketType.values()) {
-            if (pt.toByte() == data[1]) {
-                packetType = pt;
-                break;
-            }
-        }
+        packetType = getPacketType(data[1]);
 
         subType = data[2];
         seqNbr = data[3];
@@ -123,6 +129,17 @@ public abstract class RFXComBaseMessage implements RFXComMessage {
 
     }
 
+    /**
+     * Gets the {@link PacketType} from the packet type byte
+     *
+     * @param packetType the packet type byte
+     * @return the {@link PacketType}, or {@link PacketType#UNKNOWN} if it's not known
+     */
+    static PacketType getPacketType(byte packetType) {
+        PacketType pt = packetTypes[packetType & 0xFF];
+        return pt == null ? PacketType.UNKNOWN : pt;
+    }
+
     @Override
     public String toString() {
         String str = "";
@@ -8,69 +8,18 @@
  */
 package org.openhab.binding.rfxcom.internal.messages;
 
-import java.lang.reflect.Constructor;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
-
 import org.openhab.binding.rfxcom.internal.exceptions.RFXComException;
 import org.openhab.binding.rfxcom.internal.exceptions.RFXComNotImpException;
 import org.openhab.binding.rfxcom.internal.messages.RFXComBaseMessage.PacketType;
 
+/**
+ * Creates the message class for a packet type. Messages are created directly rather than by reflection, since
+ * a message is created for every packet received.
+ *
+ * @author Pauli Anttila - Initial contribution
+ */
 public class RFXComMessageFactory {
 
-    final static String classUrl = "org.openhab.binding.rfxcom.internal.messages.";
-
-    @SuppressWarnings("serial")
-    private static final Map<PacketType, String> messageClasses = Collections
-            .unmodifiableMap(new HashMap<PacketType, String>() {
-                {
-                    put(PacketType.INTERFACE_CONTROL, "RFXComControlMessage");
-                    put(PacketType.INTERFACE_MESSAGE, "RFXComInterfaceMessage");
-                    put(PacketType.TRANSMITTER_MESSAGE, "RFXComTransmitterMessage");
-                    put(PacketType.UNDECODED_RF_MESSAGE, "RFXComUndecodedRFMessage");
-                    put(PacketType.LIGHTING1, "RFXComLighting1Message");
-                    put(PacketType.LIGHTING2, "RFXComLighting2Message");
-                    put(PacketType.LIGHTING3, "RFXComLighting3Message");
-                    put(PacketType.LIGHTING4, "RFXComLighting4Message");
-                    put(PacketType.LIGHTING5, "RFXComLighting5Message");
-                    put(PacketType.LIGHTING6, "RFXComLighting6Message");
-                    put(PacketType.CHIME, "RFXComChimeMessage");
-                    put(PacketType.FAN, "RFXComFanMessage");
-                    put(PacketType.CURTAIN1, "RFXComCurtain1Message");
-                    put(PacketType.BLINDS1, "RFXComBlinds1Message");
-                    put(PacketType.RFY, "RFXComRfyMessage");
-                    put(PacketType.SECURITY1, "RFXComSecurity1Message");
-                    put(PacketType.CAMERA1, "RFXComCamera1Message");
-                    put(PacketType.REMOTE_CONTROL, "RFXComRemoteControlMessage");
-                    put(PacketType.THERMOSTAT1, "RFXComThermostat1Message");
-                    put(PacketType.THERMOSTAT2, "RFXComThermostat2Message");
-                    put(PacketType.THERMOSTAT3, "RFXComThermostat3Message");
-                    put(PacketType.BBQ1, "RFXComBBQMessage");
-                    put(PacketType.TEMPERATURE_RAIN, "RFXComTemperatureRainMessage");
-                    put(PacketType.TEMPERATURE, "RFXComTemperatureMessage");
-                    put(PacketType.HUMIDITY, "RFXComHumidityMessage");
-                    put(PacketType.TEMPERATURE_HUMIDITY, "RFXComTemperatureHumidityMessage");
-                    put(PacketType.BAROMETRIC, "RFXComBarometricMessage");
-                    put(PacketType.TEMPERATURE_HUMIDITY_BAROMETRIC, "RFXComTemperatureHumidityBarometricMessage");
-                    put(PacketType.RAIN, "RFXComRainMessage");
-                    put(PacketType.WIND, "RFXComWindMessage");
-                    put(PacketType.UV, "RFXComUVMessage");
-                    put(PacketType.DATE_TIME, "RFXComDateTimeMessage");
-                    put(PacketType.CURRENT, "RFXComCurrentMessage");
-                    put(PacketType.ENERGY, "RFXComEnergyMessage");
-                    put(PacketType.CURRENT_ENERGY, "RFXComCurrentEnergyMessage");
-                    put(PacketType.POWER, "RFXComPowerMessage");
-                    put(PacketType.WEIGHT, "RFXComWeightMessage");
-                    put(PacketType.GAS, "RFXComGasMessage");
-                    put(PacketType.WATER, "RFXComWaterMessage");
-                    put(PacketType.RFXSENSOR, "RFXComRFXSensorMessage");
-                    put(PacketType.RFXMETER, "RFXComRFXMeterMessage");
-                    put(PacketType.FS20, "RFXComFS20Message");
-                    put(PacketType.IO_LINES, "RFXComIOLinesMessage");
-                }
-            });
-
     /**
      * Command to reset RFXCOM controller.
      * 
@@ -101,35 +50,63 @@ public class RFXComMessageFactory {
 
     public static RFXComMessage createMessage(PacketType packetType) throws RFXComException, RFXComNotImpException {
 
-        try {
-            String className = messageClasses.get(packetType);
-            Class<?> cl = Class.forName(classUrl + className);
-            return (RFXComMessage) cl.newInstance();
-
-        } catch (ClassNotFoundException e) {
-            throw new RFXComNotImpException("Message " + packetType + " not implemented", e);
-
-        } catch (Exception e) {
-            throw new RFXComException(e);
+        switch (packetType) {
+            case INTERFACE_CONTROL:
+                return new RFXComControlMessage();
+            case INTERFACE_MESSAGE:
+                return new RFXComInterfaceMessage();
+            case TRANSMITTER_MESSAGE:
+                return new RFXComTransmitterMessage();
+            case LIGHTING1:
+                return new RFXComLighting1Message();
+            case LIGHTING2:
+                return new RFXComLighting2Message();
+            case LIGHTING4:
+                return new RFXComLighting4Message();
+            case LIGHTING5:
+                return new RFXComLighting5Message();
+            case LIGHTING6:
+                return new RFXComLighting6Message();
+            case CURTAIN1:
+                return new RFXComCurtain1Message();
+            case BLINDS1:
+                return new RFXComBlinds1Message();
+            case RFY:
+                return new RFXComRfyMessage();
+            case SECURITY1:
+                return new RFXComSecurity1Message();
+            case THERMOSTAT1:
+                return new RFXComThermostat1Message();
+            case TEMPERATURE:
+                return new RFXComTemperatureMessage();
+            case HUMIDITY:
+                return new RFXComHumidityMessage();
+            case TEMPERATURE_HUMIDITY:
+                return new RFXComTemperatureHumidityMessage();
+            case RAIN:
+                return new RFXComRainMessage();
+            case WIND:
+                return new RFXComWindMessage();
+            case ENERGY:
+                return new RFXComEnergyMessage();
+            default:
+                throw new RFXComNotImpException("Message " + packetType + " not implemented");
         }
     }
 
     public static RFXComMessage createMessage(byte[] packet) throws RFXComException, RFXComNotImpException {
 
-        PacketType packetType = getPacketType(packet[1]);
+        if (packet.length < 5) {
+            throw new RFXComException("Packet too short, length " + packet.length);
+        }
 
+        RFXComMessage message = createMessage(RFXComBaseMessage.getPacketType(packet[1]));
         try {
-            String className = messageClasses.get(packetType);
-            Class<?> cl = Class.forName(classUrl + className);
-            Constructor<?> c = cl.getConstructor(byte[].class);
-            return (RFXComMessage) c.newInstance(packet);
-
-        } catch (ClassNotFoundException e) {
-            throw new RFXComNotImpException("Message " + packetType + " not implemented", e);
-
-        } catch (Exception e) {
+            message.encodeMessage(packet);
+        } catch (RuntimeException e) {
             throw new RFXComException(e);
         }
+        return message;
     }
 
     public static PacketType convertPacketType(String packetType) throws IllegalArgumentException {
@@ -142,14 +119,4 @@ public class RFXComMessageFactory {
 
         throw new IllegalArgumentException("Unknown packet type " + packetType);
     }
-
-    private static PacketType getPacketType(byte packetType) {
-        for (PacketType p : PacketType.values()) {
-            if (p.toByte() == packetType) {
-                return p;
-            }
-        }
-
-        return PacketType.UNKNOWN;
-    }
 }
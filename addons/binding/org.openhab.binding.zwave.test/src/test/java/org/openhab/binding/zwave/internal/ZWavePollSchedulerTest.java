@@ -0,0 +1,177 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.zwave.internal;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.binding.zwave.internal.protocol.SerialMessage;
+import org.openhab.binding.zwave.internal.protocol.SerialMessage.SerialMessageClass;
+import org.openhab.binding.zwave.internal.protocol.SerialMessage.SerialMessagePriority;
+import org.openhab.binding.zwave.internal.protocol.SerialMessage.SerialMessageType;
+import org.openhab.binding.zwave.internal.simulator.ZWaveSimulatedNetwork;
+
+/**
+ * Tests cases for {@link ZWavePollScheduler}. The timer is run by the test, one tick at a time.
+ *
+ * @author agent
+ */
+public class ZWavePollSchedulerTest {
+    private ZWaveSimulatedNetwork network;
+    private ManualScheduler executor;
+    private ZWavePollScheduler scheduler;
+
+    private int currentTick = 0;
+
+    @Before
+    public void setUp() throws IOException {
+        network = new ZWaveSimulatedNetwork(0, 0, 0);
+        executor = new ManualScheduler();
+        scheduler = new ZWavePollScheduler(network.getController(), executor);
+        scheduler.start();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.stop();
+        executor.shutdownNow();
+        network.shutdown();
+    }
+
+    @Test
+    public void nodeIsPolledEveryPeriod() {
+        RecordingTask task = new RecordingTask(0);
+        scheduler.schedule(2, task, 5000, 0);
+
+        tick(21);
+
+        assertEquals(Integer.valueOf(1), task.ticks.get(0));
+        assertEquals(5, task.ticks.size());
+        for (int cnt = 1; cnt < task.ticks.size(); cnt++) {
+            assertEquals(5, task.ticks.get(cnt) - task.ticks.get(cnt - 1));
+        }
+    }
+
+    @Test
+    public void nodesAreSpreadOverThePeriod() {
+        List<RecordingTask> tasks = new ArrayList<RecordingTask>();
+        for (int node = 2; node < 12; node++) {
+            RecordingTask task = new RecordingTask(0);
+            tasks.add(task);
+            scheduler.schedule(node, task, 10000, 10000);
+        }
+
+        tick(10);
+
+        // Each node has its first poll in a different slot
+        Set<Integer> ticks = new HashSet<Integer>();
+        for (RecordingTask task : tasks) {
+            assertEquals(1, task.ticks.size());
+            ticks.add(task.ticks.get(0));
+        }
+        assertEquals(10, ticks.size());
+    }
+
+    @Test
+    public void cancelledNodeIsNotPolled() {
+        RecordingTask task = new RecordingTask(0);
+        scheduler.schedule(2, task, 2000, 0);
+        tick(1);
+        scheduler.cancel(2);
+        tick(10);
+
+        assertEquals(1, task.ticks.size());
+    }
+
+    @Test
+    public void pollsAreDeferredOnceAirtimeIsUsed() {
+        // With the initial response time of 100ms, 10% airtime allows one message per second
+        scheduler.setAirtime(10);
+        List<RecordingTask> tasks = new ArrayList<RecordingTask>();
+        for (int node = 2; node < 7; node++) {
+            RecordingTask task = new RecordingTask(node);
+            tasks.add(task);
+            scheduler.schedule(node, task, 60000, 0);
+        }
+
+        tick(5);
+
+        Set<Integer> ticks = new HashSet<Integer>();
+        for (RecordingTask task : tasks) {
+            assertEquals(1, task.ticks.size());
+            ticks.add(task.ticks.get(0));
+        }
+        assertEquals(5, ticks.size());
+    }
+
+    private void tick(int ticks) {
+        for (int cnt = 0; cnt < ticks; cnt++) {
+            currentTick++;
+            executor.tick.run();
+        }
+    }
+
+    /**
+     * Records the ticks at which the poll ran
+     */
+    private class RecordingTask implements ZWavePollScheduler.PollTask {
+        private final int nodeId;
+        private final List<Integer> ticks = new ArrayList<Integer>();
+
+        /**
+         * @param nodeId the node to return a poll message for, or 0 to return no messages
+         */
+        RecordingTask(int nodeId) {
+            this.nodeId = nodeId;
+        }
+
+        @Override
+        public List<SerialMessage> getPollMessages() {
+            ticks.add(currentTick);
+            List<SerialMessage> messages = new ArrayList<SerialMessage>();
+            if (nodeId != 0) {
+                SerialMessage message = new SerialMessage(nodeId, SerialMessageClass.SendData,
+                        SerialMessageType.Request, SerialMessageClass.ApplicationCommandHandler,
+                        SerialMessagePriority.Poll);
+                message.setMessagePayload(new byte[] { (byte) nodeId, 2, 0x25, 0x02 });
+                messages.add(message);
+            }
+            return messages;
+        }
+    }
+
+    /**
+     * Holds on to the timer task so the test can run it
+     */
+    private static class ManualScheduler extends ScheduledThreadPoolExecutor {
+        private Runnable tick;
+
+        ManualScheduler() {
+            super(1);
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period,
+                TimeUnit unit) {
+            tick = command;
+            return null;
+        }
+    }
+}
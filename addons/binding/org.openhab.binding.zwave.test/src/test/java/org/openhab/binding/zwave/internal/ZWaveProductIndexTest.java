@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.zwave.internal;
+
+import static org.junit.Assert.*;
+import static org.openhab.binding.zwave.ZWaveBindingConstants.BINDING_ID;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.smarthome.core.thing.ThingTypeUID;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tests cases for {@link ZWaveProductIndex}. The lookups are checked against a scan of the product list, and the
+ * time taken by both is reported.
+ *
+ * @author agent
+ */
+public class ZWaveProductIndexTest {
+    private static final Logger logger = LoggerFactory.getLogger(ZWaveProductIndexTest.class);
+
+    private static final int MANUFACTURERS = 50;
+    private static final int TYPES = 4;
+    private static final int IDS = 10;
+
+    @Test
+    public void versionsAreMatched() {
+        List<ZWaveProduct> products = new ArrayList<ZWaveProduct>();
+        products.add(product(1, 2, 3, null, "1.9"));
+        products.add(product(1, 2, 3, "2.0", null));
+        ZWaveProductIndex index = new ZWaveProductIndex(products, true);
+
+        assertSame(products.get(0), index.findProduct(1, 2, 3, "1.5"));
+        assertSame(products.get(1), index.findProduct(1, 2, 3, "2.1"));
+        assertNull(index.findProduct(1, 2, 4, "1.5"));
+        assertNull(index.findProduct(2, 2, 3, "1.5"));
+    }
+
+    @Test
+    public void firstDefinedProductIsFound() {
+        List<ZWaveProduct> products = new ArrayList<ZWaveProduct>();
+        products.add(product(1, 2, null, null, null));
+        products.add(product(1, 2, 3, null, null));
+        products.add(product(1, 5, 3, null, null));
+        products.add(product(1, 5, null, null, null));
+        ZWaveProductIndex index = new ZWaveProductIndex(products, true);
+
+        // A product that matches any ID is used if it's defined before the specific product
+        assertSame(products.get(0), index.findProduct(1, 2, 3, "1.0"));
+        assertSame(products.get(0), index.findProduct(1, 2, 4, "1.0"));
+        assertSame(products.get(2), index.findProduct(1, 5, 3, "1.0"));
+        assertSame(products.get(3), index.findProduct(1, 5, 4, "1.0"));
+    }
+
+    @Test
+    public void lookupMatchesScanAndIsFaster() {
+        List<ZWaveProduct> products = new ArrayList<ZWaveProduct>();
+        for (int manufacturer = 0; manufacturer < MANUFACTURERS; manufacturer++) {
+            for (int type = 0; type < TYPES; type++) {
+                for (int id = 0; id < IDS; id++) {
+                    products.add(product(manufacturer, type, id, null, "1.9"));
+                    products.add(product(manufacturer, type, id, "2.0", null));
+                }
+                products.add(product(manufacturer, type, null, null, null));
+            }
+        }
+        ZWaveProductIndex index = new ZWaveProductIndex(products, true);
+
+        // Include devices that aren't in the database
+        long start = System.nanoTime();
+        List<ZWaveProduct> scanned = new ArrayList<ZWaveProduct>();
+        for (int manufacturer = 0; manufacturer <= MANUFACTURERS; manufacturer++) {
+            for (int type = 0; type < TYPES; type++) {
+                for (int id = 0; id <= IDS; id++) {
+                    scanned.add(scan(products, manufacturer, type, id, "1.0"));
+                    scanned.add(scan(products, manufacturer, type, id, "2.0"));
+                }
+            }
+        }
+        long scanTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        List<ZWaveProduct> found = new ArrayList<ZWaveProduct>();
+        for (int manufacturer = 0; manufacturer <= MANUFACTURERS; manufacturer++) {
+            for (int type = 0; type < TYPES; type++) {
+                for (int id = 0; id <= IDS; id++) {
+                    found.add(index.findProduct(manufacturer, type, id, "1.0"));
+                    found.add(index.findProduct(manufacturer, type, id, "2.0"));
+                }
+            }
+        }
+        long indexTime = System.nanoTime() - start;
+
+        logger.info("{} lookups in {} products: scan {}us, index {}us", found.size(), products.size(),
+                scanTime / 1000, indexTime / 1000);
+
+        assertEquals(scanned.size(), found.size());
+        for (int cnt = 0; cnt < scanned.size(); cnt++) {
+            assertSame(scanned.get(cnt), found.get(cnt));
+        }
+        assertTrue(indexTime < scanTime);
+    }
+
+    private ZWaveProduct scan(List<ZWaveProduct> products, int manufacturer, int type, int id, String version) {
+        for (ZWaveProduct product : products) {
+            if (product.match(manufacturer, type, id, version)) {
+                return product;
+            }
+        }
+        return null;
+    }
+
+    private ZWaveProduct product(int manufacturer, int type, Integer id, String versionMin, String versionMax) {
+        ThingTypeUID thingTypeUID = new ThingTypeUID(BINDING_ID,
+                String.format("device_%d_%d_%s_%s", manufacturer, type, id, versionMin));
+        return new ZWaveProduct(thingTypeUID, manufacturer, type, id, versionMin, versionMax);
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.zwave.internal;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests cases for {@link ZWaveReportCadence}.
+ *
+ * @author agent
+ */
+public class ZWaveReportCadenceTest {
+    private static final long PERIOD = 300000;
+
+    @Test
+    public void silentChannelIsPolledEveryPeriod() {
+        ZWaveReportCadence cadence = new ZWaveReportCadence();
+
+        assertEquals(20, getPollTimes(cadence, 0, 20, 0).size());
+    }
+
+    @Test
+    public void pollResponsesDontBackOff() {
+        ZWaveReportCadence cadence = new ZWaveReportCadence();
+
+        // The device only reports in response to the poll
+        List<Long> polls = getPollTimes(cadence, 0, 20, 0);
+        for (int cnt = 0; cnt < 20; cnt++) {
+            cadence.reportReceived(cnt * PERIOD + 2000);
+        }
+
+        assertEquals(20, polls.size());
+        assertEquals(0, cadence.getCadence());
+    }
+
+    @Test
+    public void reportingChannelBacksOff() {
+        ZWaveReportCadence cadence = new ZWaveReportCadence();
+
+        // The device reports every minute - polls are due every 5 minutes
+        List<Long> polls = getPollTimes(cadence, 0, 64, 60000);
+
+        assertEquals(60000, cadence.getCadence());
+        assertEquals(PERIOD << ZWaveReportCadence.BACKOFF_MAX, cadence.getPollInterval(PERIOD));
+
+        // The skipped polls double the interval each time until the maximum is reached
+        assertEquals(Long.valueOf(15 * PERIOD), polls.get(0));
+        for (int cnt = 1; cnt < polls.size(); cnt++) {
+            assertEquals(PERIOD << ZWaveReportCadence.BACKOFF_MAX, polls.get(cnt) - polls.get(cnt - 1));
+        }
+        assertTrue(polls.size() < 64 / (1 << ZWaveReportCadence.BACKOFF_MAX));
+    }
+
+    @Test
+    public void pollingResumesWhenReportsStop() {
+        ZWaveReportCadence cadence = new ZWaveReportCadence();
+
+        assertTrue(getPollTimes(cadence, 0, 10, 60000).isEmpty());
+        assertEquals(PERIOD << ZWaveReportCadence.BACKOFF_MAX, cadence.getPollInterval(PERIOD));
+
+        // No more reports - the channel is polled every period again once its state is stale
+        List<Long> polls = getPollTimes(cadence, 10, 10, 0);
+        assertEquals(Long.valueOf(11 * PERIOD), polls.get(0));
+        assertEquals(10, polls.size());
+        assertEquals(PERIOD, cadence.getPollInterval(PERIOD));
+    }
+
+    @Test
+    public void infrequentReportsSkipOnePoll() {
+        ZWaveReportCadence cadence = new ZWaveReportCadence();
+
+        // The device reports every 10 minutes, so half of the polls are skipped, but there's no backoff
+        List<Long> polls = getPollTimes(cadence, 0, 20, 600000);
+
+        assertEquals(10, polls.size());
+        assertEquals(PERIOD, cadence.getPollInterval(PERIOD));
+    }
+
+    /**
+     * Runs the polls due in the given number of periods, with the device sending its own reports at a fixed interval
+     * in between. The reports are offset from the polls so they aren't taken as poll responses.
+     *
+     * @return the times at which the channel was polled
+     */
+    private List<Long> getPollTimes(ZWaveReportCadence cadence, int firstPeriod, int periods, long reportInterval) {
+        List<Long> polls = new ArrayList<Long>();
+        long report = firstPeriod * PERIOD + PERIOD / 10;
+        for (int cnt = firstPeriod + 1; cnt <= firstPeriod + periods; cnt++) {
+            long now = cnt * PERIOD;
+            while (reportInterval != 0 && report < now) {
+                cadence.reportReceived(report);
+                report += reportInterval;
+            }
+            if (cadence.isPollRequired(now, PERIOD)) {
+                cadence.polled(now);
+                polls.add(now);
+            }
+        }
+        return polls;
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.zwave.internal.protocol;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.binding.zwave.internal.protocol.SerialMessage.SerialMessageClass;
+import org.openhab.binding.zwave.internal.protocol.SerialMessage.SerialMessagePriority;
+import org.openhab.binding.zwave.internal.protocol.SerialMessage.SerialMessageType;
+import org.openhab.binding.zwave.internal.protocol.commandclass.ZWaveCommandClass.CommandClass;
+import org.openhab.binding.zwave.internal.protocol.commandclass.ZWaveSecurityCommandClass;
+import org.openhab.binding.zwave.internal.simulator.ZWaveSimulatedNetwork;
+
+/**
+ * Tests cases for {@link ZWaveSendQueue}.
+ *
+ * @author agent
+ */
+public class ZWaveSendQueueTest {
+    private ZWaveSimulatedNetwork network;
+    private ZWaveSendQueue queue;
+
+    @Before
+    public void setUp() throws IOException {
+        // The queue only needs the controller to look up the nodes, so the network is empty
+        network = new ZWaveSimulatedNetwork(0, 0, 0);
+        queue = new ZWaveSendQueue(network.getController());
+    }
+
+    @After
+    public void tearDown() {
+        network.shutdown();
+    }
+
+    @Test
+    public void nodesAreServedRoundRobin() throws InterruptedException {
+        SerialMessage first = message(2, SerialMessagePriority.Get, 1);
+        SerialMessage second = message(2, SerialMessagePriority.Get, 2);
+        SerialMessage third = message(3, SerialMessagePriority.Get, 1);
+        queue.add(first);
+        queue.add(second);
+        queue.add(third);
+
+        assertSame(first, poll());
+        assertSame(third, poll());
+        assertSame(second, poll());
+        assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void higherPriorityIsSentFirst() throws InterruptedException {
+        SerialMessage poll = message(2, SerialMessagePriority.Poll, 1);
+        SerialMessage set = message(3, SerialMessagePriority.Set, 1);
+        queue.add(poll);
+        queue.add(set);
+
+        assertSame(set, poll());
+        assertSame(poll, poll());
+    }
+
+    @Test
+    public void nonceReportIsSentFirst() throws InterruptedException {
+        SerialMessage get = message(2, SerialMessagePriority.Immediate, 1);
+        SerialMessage nonce = new SerialMessage(3, SerialMessageClass.SendData, SerialMessageType.Request,
+                SerialMessageClass.SendData, SerialMessagePriority.Poll);
+        nonce.setMessagePayload(new byte[] { 3, 10, (byte) CommandClass.SECURITY.getKey(),
+                ZWaveSecurityCommandClass.SECURITY_NONCE_REPORT, 1, 2, 3, 4, 5, 6, 7, 8 });
+        queue.add(get);
+        queue.add(nonce);
+
+        assertSame(nonce, poll());
+        assertSame(get, poll());
+    }
+
+    @Test
+    public void duplicatePollsAreDiscarded() {
+        queue.add(message(2, SerialMessagePriority.Poll, 1));
+        queue.add(message(2, SerialMessagePriority.Poll, 1));
+        queue.add(message(2, SerialMessagePriority.Poll, 2));
+
+        assertEquals(2, queue.size());
+    }
+
+    @Test
+    public void nodeIsHeldWhileTransactionOutstanding() throws InterruptedException {
+        SerialMessage first = message(2, SerialMessagePriority.Get, 1);
+        SerialMessage second = message(2, SerialMessagePriority.Get, 2);
+        SerialMessage other = message(3, SerialMessagePriority.Get, 1);
+        queue.add(first);
+        queue.add(second);
+
+        assertSame(first, poll());
+        queue.transactionStarted(2);
+        assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+
+        // Other nodes aren't held up
+        queue.add(other);
+        assertSame(other, poll());
+
+        queue.transactionCompleted(2, false);
+        assertSame(second, poll());
+    }
+
+    @Test
+    public void failingNodeIsQuarantined() throws InterruptedException {
+        for (int cnt = 0; cnt < 4; cnt++) {
+            queue.transactionStarted(2);
+            queue.transactionCompleted(2, true);
+        }
+        assertTrue(queue.isNodeQuarantined(2));
+
+        // Messages to the node are held, but it can still be pinged
+        queue.add(message(2, SerialMessagePriority.Get, 1));
+        SerialMessage ping = new SerialMessage(2, SerialMessageClass.SendData, SerialMessageType.Request,
+                SerialMessageClass.SendData, SerialMessagePriority.High);
+        ping.setMessagePayload(new byte[] { 2, 1, (byte) CommandClass.NO_OPERATION.getKey() });
+        queue.add(ping);
+        assertEquals(0, queue.size());
+        assertSame(ping, poll());
+
+        queue.transactionStarted(2);
+        queue.transactionCompleted(2, false);
+        assertFalse(queue.isNodeQuarantined(2));
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    public void deadNodeIsQuarantinedUntilAlive() {
+        queue.add(message(2, SerialMessagePriority.Get, 1));
+
+        queue.setNodeDead(2, true);
+        assertTrue(queue.isNodeQuarantined(2));
+        assertEquals(0, queue.size());
+
+        queue.setNodeDead(2, false);
+        assertFalse(queue.isNodeQuarantined(2));
+        assertEquals(1, queue.size());
+    }
+
+    private SerialMessage poll() throws InterruptedException {
+        return queue.poll(1, TimeUnit.SECONDS);
+    }
+
+    private SerialMessage message(int nodeId, SerialMessagePriority priority, int command) {
+        SerialMessage message = new SerialMessage(nodeId, SerialMessageClass.SendData, SerialMessageType.Request,
+                SerialMessageClass.ApplicationCommandHandler, priority);
+        message.setMessagePayload(
+                new byte[] { (byte) nodeId, 2, (byte) CommandClass.SWITCH_BINARY.getKey(), (byte) command });
+        return message;
+    }
+}
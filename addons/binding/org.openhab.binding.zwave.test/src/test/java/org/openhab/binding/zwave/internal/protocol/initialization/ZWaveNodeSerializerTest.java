@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.zwave.internal.protocol.initialization;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.binding.zwave.internal.protocol.ZWaveNode;
+import org.openhab.binding.zwave.internal.simulator.ZWaveSimulatedNetwork;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.xml.StaxDriver;
+
+/**
+ * Tests the migration of the XML node files into the {@link ZWaveNodeStore}.
+ *
+ * @author agent
+ */
+public class ZWaveNodeSerializerTest {
+    private ZWaveSimulatedNetwork network;
+    private File folder;
+
+    @Before
+    public void setUp() throws IOException {
+        network = new ZWaveSimulatedNetwork(0, 0, 0);
+        folder = Files.createTempDirectory("zwave-serializer").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        network.shutdown();
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        folder.delete();
+    }
+
+    @Test
+    public void xmlFilesAreMigrated() throws IOException {
+        writeXmlFile(new ZWaveNode(0x1234, 5, network.getController()));
+
+        ZWaveNodeSerializer serializer = new ZWaveNodeSerializer(folder.getPath());
+        ZWaveNode node = serializer.DeserializeNode(5);
+        serializer.close();
+
+        assertNotNull(node);
+        assertEquals(5, node.getNodeId());
+        assertEquals(Integer.valueOf(0x1234), node.getHomeId());
+
+        // The XML file is kept as a backup
+        assertFalse(new File(folder, "node5.xml").exists());
+        assertTrue(new File(folder, "node5.xml.migrated").exists());
+    }
+
+    @Test
+    public void storedNodeIsNotOverwritten() throws IOException {
+        ZWaveNodeStore store = ZWaveNodeStore.getStore(folder.getPath());
+        store.put(5, new byte[] { 1, 2, 3 });
+
+        writeXmlFile(new ZWaveNode(0x1234, 5, network.getController()));
+        ZWaveNodeSerializer serializer = new ZWaveNodeSerializer(folder.getPath());
+
+        assertArrayEquals(new byte[] { 1, 2, 3 }, store.get(5));
+        serializer.close();
+        store.release();
+    }
+
+    private void writeXmlFile(ZWaveNode node) throws IOException {
+        XStream stream = new XStream(new StaxDriver());
+        stream.processAnnotations(ZWaveNode.class);
+
+        Writer writer = new OutputStreamWriter(
+                new FileOutputStream(new File(folder, "node" + node.getNodeId() + ".xml")), "UTF-8");
+        try {
+            stream.toXML(node, writer);
+        } finally {
+            writer.close();
+        }
+    }
+}
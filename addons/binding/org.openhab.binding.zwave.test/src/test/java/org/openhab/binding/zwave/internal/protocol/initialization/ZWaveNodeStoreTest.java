@@ -0,0 +1,206 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.zwave.internal.protocol.initialization;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests cases for {@link ZWaveNodeStore}.
+ *
+ * @author agent
+ */
+public class ZWaveNodeStoreTest {
+    private File folder;
+    private File journal;
+
+    @Before
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("zwave-nodestore").toFile();
+        journal = new File(folder, "nodes.journal");
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        folder.delete();
+    }
+
+    @Test
+    public void nodesAreReadBackAfterReopen() {
+        ZWaveNodeStore store = open();
+        assertTrue(store.put(2, new byte[] { 1, 2, 3 }));
+        assertTrue(store.put(3, new byte[] { 4, 5 }));
+        assertTrue(store.put(2, new byte[] { 6 }));
+        store.release();
+
+        store = open();
+        assertEquals(2, store.getNodeIds().size());
+        assertArrayEquals(new byte[] { 6 }, store.get(2));
+        assertArrayEquals(new byte[] { 4, 5 }, store.get(3));
+        store.release();
+    }
+
+    @Test
+    public void unchangedNodeIsNotWritten() {
+        ZWaveNodeStore store = open();
+        assertTrue(store.put(2, new byte[] { 1, 2, 3 }));
+        long length = journal.length();
+
+        assertFalse(store.put(2, new byte[] { 1, 2, 3 }));
+        assertEquals(length, journal.length());
+        store.release();
+    }
+
+    @Test
+    public void removedNodeIsNotReadBack() {
+        ZWaveNodeStore store = open();
+        store.put(2, new byte[] { 1 });
+        store.put(3, new byte[] { 2 });
+        assertTrue(store.remove(2));
+        assertFalse(store.remove(2));
+        store.release();
+
+        store = open();
+        assertNull(store.get(2));
+        assertArrayEquals(new byte[] { 2 }, store.get(3));
+        store.release();
+    }
+
+    @Test
+    public void truncatedRecordIsDiscarded() throws IOException {
+        ZWaveNodeStore store = open();
+        store.put(2, new byte[] { 1, 2, 3 });
+        long length = journal.length();
+        store.put(3, new byte[] { 4, 5, 6 });
+        store.release();
+
+        // The binding stopped part way through writing the last record
+        setLength(journal.length() - 2);
+
+        store = open();
+        assertArrayEquals(new byte[] { 1, 2, 3 }, store.get(2));
+        assertNull(store.get(3));
+        assertEquals(length, journal.length());
+
+        // New records are written after the last good one
+        store.put(4, new byte[] { 7 });
+        store.release();
+
+        store = open();
+        assertEquals(2, store.getNodeIds().size());
+        assertArrayEquals(new byte[] { 7 }, store.get(4));
+        store.release();
+    }
+
+    @Test
+    public void corruptRecordIsDiscarded() throws IOException {
+        ZWaveNodeStore store = open();
+        store.put(2, new byte[] { 1, 2, 3 });
+        long length = journal.length();
+        store.put(3, new byte[] { 4, 5, 6 });
+        store.release();
+
+        // Corrupt the data of the last record so the CRC doesn't match
+        RandomAccessFile file = new RandomAccessFile(journal, "rw");
+        try {
+            file.seek(journal.length() - 5);
+            file.write(0xFF);
+        } finally {
+            file.close();
+        }
+
+        store = open();
+        assertArrayEquals(new byte[] { 1, 2, 3 }, store.get(2));
+        assertNull(store.get(3));
+        assertEquals(length, journal.length());
+        store.release();
+    }
+
+    @Test
+    public void unknownJournalIsStartedAgain() throws IOException {
+        ZWaveNodeStore store = open();
+        store.put(2, new byte[] { 1, 2, 3 });
+        store.release();
+
+        setLength(4);
+
+        store = open();
+        assertTrue(store.getNodeIds().isEmpty());
+        store.put(3, new byte[] { 4 });
+        store.release();
+
+        store = open();
+        assertArrayEquals(new byte[] { 4 }, store.get(3));
+        store.release();
+    }
+
+    @Test
+    public void journalIsCompacted() {
+        ZWaveNodeStore store = open();
+        byte[] data = new byte[1000];
+        for (int cnt = 0; cnt < 200; cnt++) {
+            data[0] = (byte) cnt;
+            store.put(2, data.clone());
+        }
+
+        // Only the live record is kept once superseded records outweigh it
+        assertTrue(journal.length() < 100000);
+        store.release();
+
+        store = open();
+        assertEquals((byte) 199, store.get(2)[0]);
+        store.release();
+    }
+
+    @Test
+    public void releasedStoreIsNotWritten() {
+        ZWaveNodeStore store = open();
+        ZWaveNodeStore shared = open();
+        assertSame(store, shared);
+
+        shared.release();
+        assertTrue(store.put(2, new byte[] { 1 }));
+
+        store.release();
+        assertFalse(store.put(3, new byte[] { 2 }));
+
+        // The store is read again the next time it is requested
+        shared = open();
+        assertNotSame(store, shared);
+        assertArrayEquals(new byte[] { 1 }, shared.get(2));
+        shared.release();
+    }
+
+    private ZWaveNodeStore open() {
+        return ZWaveNodeStore.getStore(folder.getPath());
+    }
+
+    private void setLength(long length) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(journal, "rw");
+        try {
+            file.setLength(length);
+        } finally {
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.zwave.internal.simulator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openhab.binding.zwave.internal.protocol.SerialMessage;
+import org.openhab.binding.zwave.internal.protocol.ZWaveController;
+import org.openhab.binding.zwave.internal.protocol.ZWaveNode;
+import org.openhab.binding.zwave.internal.protocol.commandclass.ZWaveBinarySwitchCommandClass;
+import org.openhab.binding.zwave.internal.protocol.commandclass.ZWaveCommandClass.CommandClass;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures the command throughput and latency of a network.
+ * <p>
+ * A fixed number of SWITCH_BINARY GET commands are sent to the nodes in turn, keeping a set number of commands
+ * outstanding at once. The latency of each command is measured from the time it's passed to the controller until
+ * the transaction completes, so it includes the time spent waiting in the send queue as well as the time on the
+ * network.
+ *
+ * @author agent
+ */
+public class ZWaveBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(ZWaveBenchmark.class);
+
+    /**
+     * Notified when the benchmark completes
+     */
+    public interface BenchmarkListener {
+        /**
+         * Called once all commands have completed
+         *
+         * @param benchmark the completed {@link ZWaveBenchmark}
+         */
+        void benchmarkComplete(ZWaveBenchmark benchmark);
+    }
+
+    private final ZWaveController controller;
+    private final List<Integer> nodes;
+    private final int commands;
+    private final int concurrency;
+    private final BenchmarkListener listener;
+
+    private final Map<SerialMessage, Long> outstanding = new IdentityHashMap<SerialMessage, Long>();
+    private final long[] latencies;
+    private int sent = 0;
+    private int completed = 0;
+    private int failed = 0;
+    private long startTime = 0;
+    private long endTime = 0;
+
+    /**
+     * Creates the benchmark
+     *
+     * @param controller the {@link ZWaveController} for the network
+     * @param nodes the nodes to send commands to. These must support SWITCH_BINARY.
+     * @param commands the total number of commands to send
+     * @param concurrency the number of commands to keep outstanding
+     * @param listener the {@link BenchmarkListener} notified on completion
+     */
+    public ZWaveBenchmark(ZWaveController controller, List<Integer> nodes, int commands, int concurrency,
+            BenchmarkListener listener) {
+        this.controller = controller;
+        this.nodes = new ArrayList<Integer>(nodes);
+        this.commands = commands;
+        this.concurrency = Math.max(1, concurrency);
+        this.listener = listener;
+        this.latencies = new long[commands];
+    }
+
+    /**
+     * Starts sending commands
+     */
+    public void start() {
+        synchronized (this) {
+            if (startTime != 0) {
+                return;
+            }
+            startTime = System.currentTimeMillis();
+        }
+        logger.info("Benchmark started: {} commands to {} nodes with {} outstanding", commands, nodes.size(),
+                concurrency);
+
+        for (int cnt = 0; cnt < concurrency; cnt++) {
+            sendNext();
+        }
+        checkComplete();
+    }
+
+    /**
+     * Called when a transaction completes. Transactions that weren't started by the benchmark are ignored.
+     *
+     * @param message the completed message
+     * @param state true if the transaction was successful
+     */
+    public void transactionCompleted(SerialMessage message, boolean state) {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Long sendTime = outstanding.remove(message);
+            if (sendTime == null) {
+                return;
+            }
+            latencies[completed++] = now - sendTime;
+            if (!state) {
+                failed++;
+            }
+        }
+
+        sendNext();
+        checkComplete();
+    }
+
+    private void checkComplete() {
+        synchronized (this) {
+            // Finished once all commands have completed, or there are no nodes left to send to
+            if (endTime != 0 || completed != sent || (sent != commands && !nodes.isEmpty())) {
+                return;
+            }
+            endTime = System.currentTimeMillis();
+        }
+
+        logger.info("Benchmark complete: {} commands in {}ms. {} commands/sec, latency p50 {}ms, p99 {}ms.",
+                completed, getDuration(), String.format("%.1f", getCommandsPerSecond()), getLatency(50),
+                getLatency(99));
+        if (failed != 0) {
+            logger.warn("Benchmark: {} of {} commands failed", failed, completed);
+        }
+        listener.benchmarkComplete(this);
+    }
+
+    private void sendNext() {
+        while (true) {
+            SerialMessage message;
+            synchronized (this) {
+                if (sent == commands || nodes.isEmpty()) {
+                    return;
+                }
+                message = getCommand(nodes.get(sent % nodes.size()));
+                if (message == null) {
+                    // The node can't be used - drop it and try the next
+                    nodes.remove(sent % nodes.size());
+                    continue;
+                }
+                sent++;
+                outstanding.put(message, System.currentTimeMillis());
+            }
+            controller.sendData(message);
+            return;
+        }
+    }
+
+    private SerialMessage getCommand(int nodeId) {
+        ZWaveNode node = controller.getNode(nodeId);
+        if (node == null) {
+            return null;
+        }
+        ZWaveBinarySwitchCommandClass commandClass = (ZWaveBinarySwitchCommandClass) node
+                .getCommandClass(CommandClass.SWITCH_BINARY);
+        if (commandClass == null) {
+            return null;
+        }
+        return commandClass.getValueMessage();
+    }
+
+    /**
+     * Gets the time taken to complete all commands
+     *
+     * @return the time in milliseconds
+     */
+    public synchronized long getDuration() {
+        return (endTime == 0 ? System.currentTimeMillis() : endTime) - startTime;
+    }
+
+    /**
+     * Gets the average number of commands completed per second
+     *
+     * @return commands per second
+     */
+    public synchronized double getCommandsPerSecond() {
+        return completed * 1000.0 / Math.max(1, getDuration());
+    }
+
+    /**
+     * Gets the latency at a percentile of the completed commands
+     *
+     * @param percentile the percentile (1 to 100)
+     * @return the latency in milliseconds, or -1 if no commands have completed
+     */
+    public synchronized long getLatency(int percentile) {
+        if (completed == 0) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(latencies, completed);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * completed) - 1;
+        return sorted[Math.min(completed - 1, Math.max(0, index))];
+    }
+
+    /**
+     * Gets the number of commands that failed
+     *
+     * @return number of commands
+     */
+    public synchronized int getFailed() {
+        return failed;
+    }
+}
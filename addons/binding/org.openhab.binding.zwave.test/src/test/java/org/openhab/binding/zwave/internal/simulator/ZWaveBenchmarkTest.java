@@ -0,0 +1,65 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.zwave.internal.simulator;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the {@link ZWaveBenchmark} against a {@link ZWaveSimulatedNetwork}, and reports the startup time, command
+ * throughput and latency of the binding.
+ *
+ * @author agent
+ */
+public class ZWaveBenchmarkTest {
+    private static final Logger logger = LoggerFactory.getLogger(ZWaveBenchmarkTest.class);
+
+    private static final int LISTENING_NODES = 10;
+    private static final int SLEEPING_NODES = 2;
+    private static final int LATENCY = 5;
+    private static final long TIMEOUT = 120000;
+
+    private ZWaveSimulatedNetwork network;
+
+    @Before
+    public void setUp() throws IOException {
+        network = new ZWaveSimulatedNetwork(LISTENING_NODES, SLEEPING_NODES, LATENCY);
+    }
+
+    @After
+    public void tearDown() {
+        network.shutdown();
+    }
+
+    @Test
+    public void benchmark() throws InterruptedException {
+        // Sleeping nodes must not hold up the initialisation of the mains powered nodes
+        long startup = network.awaitInitialised(TIMEOUT);
+        assertTrue("Network not initialised", startup > 0);
+
+        ZWaveBenchmark benchmark = network.runBenchmark(500, 4, TIMEOUT);
+        assertNotNull("Benchmark not complete", benchmark);
+
+        logger.info("Simulated network of {} nodes: startup {}ms, {} commands/sec, latency p50 {}ms, p99 {}ms",
+                LISTENING_NODES + SLEEPING_NODES, startup, String.format("%.1f", benchmark.getCommandsPerSecond()),
+                benchmark.getLatency(50), benchmark.getLatency(99));
+
+        assertEquals(0, benchmark.getFailed());
+        assertTrue(benchmark.getCommandsPerSecond() > 0);
+        assertTrue(benchmark.getLatency(50) >= LATENCY);
+        assertTrue(benchmark.getLatency(99) >= benchmark.getLatency(50));
+    }
+}
@@ -0,0 +1,216 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.zwave.internal.simulator;
+
+import static org.openhab.binding.zwave.ZWaveBindingConstants.BINDING_ID;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.smarthome.core.thing.Bridge;
+import org.eclipse.smarthome.core.thing.ThingUID;
+import org.eclipse.smarthome.core.thing.binding.builder.BridgeBuilder;
+import org.openhab.binding.zwave.handler.ZWaveControllerHandler;
+import org.openhab.binding.zwave.internal.protocol.SerialMessage;
+import org.openhab.binding.zwave.internal.protocol.ZWaveController;
+import org.openhab.binding.zwave.internal.protocol.ZWaveEventListener;
+import org.openhab.binding.zwave.internal.protocol.event.ZWaveEvent;
+import org.openhab.binding.zwave.internal.protocol.event.ZWaveInitializationStateEvent;
+import org.openhab.binding.zwave.internal.protocol.event.ZWaveTransactionCompletedEvent;
+import org.openhab.binding.zwave.internal.protocol.initialization.ZWaveNodeInitStage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs a {@link ZWaveController} against a {@link ZWaveVirtualStick}, so the performance of the binding can be
+ * measured without any hardware.
+ * <p>
+ * The time from startup until all mains powered nodes are initialised is recorded, and a {@link ZWaveBenchmark} can
+ * then be run to measure the command throughput and latency. The nodes are saved in a temporary folder which is
+ * removed on {@link #shutdown()}, so the simulator never overwrites the nodes of a real network.
+ *
+ * @author agent
+ */
+public class ZWaveSimulatedNetwork implements ZWaveVirtualStick.StickListener, ZWaveEventListener {
+    private static final Logger logger = LoggerFactory.getLogger(ZWaveSimulatedNetwork.class);
+
+    private final ZWaveVirtualStick stick;
+    private final File nodeStore;
+    private final ZWaveController controller;
+
+    private final long startTime;
+    private long startupTime = 0;
+    private final Set<Integer> nodesPending = new HashSet<Integer>();
+
+    private volatile ZWaveBenchmark benchmark;
+
+    /**
+     * Creates the network and starts the controller
+     *
+     * @param listening the number of mains powered nodes
+     * @param sleeping the number of battery nodes
+     * @param latency the time in milliseconds taken to transmit a frame to a node and receive the acknowledgement
+     * @throws IOException if the folder for the node store can't be created
+     */
+    public ZWaveSimulatedNetwork(int listening, int sleeping, int latency) throws IOException {
+        stick = new ZWaveVirtualStick(this);
+        stick.setLatency(latency);
+        stick.addNodes(listening, sleeping, 0, 0, 60);
+
+        nodeStore = Files.createTempDirectory("zwave-simulator").toFile();
+        nodesPending.addAll(stick.getListeningNodes());
+
+        Map<String, String> config = new HashMap<String, String>();
+        config.put("nodeStore", nodeStore.getPath());
+
+        Bridge bridge = BridgeBuilder.create(new ThingUID(BINDING_ID, "simulator", "test")).build();
+        startTime = System.currentTimeMillis();
+        controller = new ZWaveController(new StickControllerHandler(bridge), config);
+        controller.addEventListener(this);
+        stick.start();
+    }
+
+    /**
+     * Gets the controller for the network
+     *
+     * @return the {@link ZWaveController}
+     */
+    public ZWaveController getController() {
+        return controller;
+    }
+
+    /**
+     * Waits until all mains powered nodes have completed initialisation
+     *
+     * @param timeout the time to wait in milliseconds
+     * @return the time from startup until the nodes were initialised in milliseconds, or -1 on timeout
+     * @throws InterruptedException
+     */
+    public synchronized long awaitInitialised(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (!nodesPending.isEmpty()) {
+            long wait = deadline - System.currentTimeMillis();
+            if (wait <= 0) {
+                logger.warn("Simulated network not initialised. Nodes {} still pending.", nodesPending);
+                return -1;
+            }
+            wait(wait);
+        }
+        return startupTime;
+    }
+
+    /**
+     * Runs a benchmark against the mains powered nodes and waits for it to complete
+     *
+     * @param commands the total number of commands to send
+     * @param concurrency the number of commands to keep outstanding
+     * @param timeout the time to wait in milliseconds
+     * @return the completed {@link ZWaveBenchmark}, or null on timeout
+     * @throws InterruptedException
+     */
+    public ZWaveBenchmark runBenchmark(int commands, int concurrency, long timeout) throws InterruptedException {
+        final Object lock = new Object();
+        final boolean[] complete = new boolean[1];
+        List<Integer> nodes = stick.getListeningNodes();
+        ZWaveBenchmark newBenchmark = new ZWaveBenchmark(controller, nodes, commands, concurrency,
+                new ZWaveBenchmark.BenchmarkListener() {
+                    @Override
+                    public void benchmarkComplete(ZWaveBenchmark benchmark) {
+                        synchronized (lock) {
+                            complete[0] = true;
+                            lock.notifyAll();
+                        }
+                    }
+                });
+        benchmark = newBenchmark;
+        newBenchmark.start();
+
+        long deadline = System.currentTimeMillis() + timeout;
+        synchronized (lock) {
+            while (!complete[0]) {
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) {
+                    return null;
+                }
+                lock.wait(wait);
+            }
+        }
+        return newBenchmark;
+    }
+
+    /**
+     * Stops the controller and the stick, and removes the node store
+     */
+    public void shutdown() {
+        controller.removeEventListener(this);
+        controller.shutdown();
+        controller.getNodeSerializer().close();
+        stick.stop();
+        logger.info("Stopped ZWave simulator. {} frames received, {} frames sent, {} frames lost.",
+                stick.getFramesReceived(), stick.getFramesSent(), stick.getFramesLost());
+
+        File[] files = nodeStore.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        nodeStore.delete();
+    }
+
+    @Override
+    public void receive(SerialMessage message) {
+        controller.incomingPacket(message);
+    }
+
+    @Override
+    public void ZWaveIncomingEvent(ZWaveEvent event) {
+        if (event instanceof ZWaveTransactionCompletedEvent) {
+            ZWaveBenchmark currentBenchmark = benchmark;
+            if (currentBenchmark != null) {
+                ZWaveTransactionCompletedEvent completedEvent = (ZWaveTransactionCompletedEvent) event;
+                currentBenchmark.transactionCompleted(completedEvent.getCompletedMessage(),
+                        completedEvent.getState());
+            }
+            return;
+        }
+
+        if (event instanceof ZWaveInitializationStateEvent
+                && ((ZWaveInitializationStateEvent) event).getStage() == ZWaveNodeInitStage.DONE) {
+            synchronized (this) {
+                if (!nodesPending.remove(event.getNodeId()) || !nodesPending.isEmpty()) {
+                    return;
+                }
+                startupTime = System.currentTimeMillis() - startTime;
+                notifyAll();
+            }
+            logger.info("ZWave simulator: all mains powered nodes initialised in {}ms", startupTime);
+        }
+    }
+
+    /**
+     * Passes the frames sent by the controller to the stick
+     */
+    private class StickControllerHandler extends ZWaveControllerHandler {
+        StickControllerHandler(Bridge bridge) {
+            super(bridge);
+        }
+
+        @Override
+        public void sendPacket(SerialMessage serialMessage) {
+            stick.transmit(serialMessage.getMessageBuffer());
+        }
+    }
+}
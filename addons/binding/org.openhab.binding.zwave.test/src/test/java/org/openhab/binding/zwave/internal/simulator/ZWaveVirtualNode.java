@@ -0,0 +1,221 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.zwave.internal.simulator;
+
+import org.openhab.binding.zwave.internal.protocol.ZWaveDeviceClass.Basic;
+import org.openhab.binding.zwave.internal.protocol.ZWaveDeviceClass.Generic;
+import org.openhab.binding.zwave.internal.protocol.commandclass.ZWaveCommandClass.CommandClass;
+
+/**
+ * A simulated node on the {@link ZWaveVirtualStick} network.
+ * <p>
+ * Listening nodes are simple binary switches. Battery nodes are binary sensors that are only able to receive frames
+ * while they are awake. Each node supports the command classes needed to complete initialisation, and answers GET
+ * commands with the matching REPORT.
+ *
+ * @author agent
+ */
+class ZWaveVirtualNode {
+    private static final int MANUFACTURER_ID = 0x7FFF;
+    private static final int DEVICE_TYPE_SWITCH = 0x0001;
+    private static final int DEVICE_TYPE_SENSOR = 0x0002;
+
+    private static final int CMD_SET = 0x01;
+    private static final int CMD_GET = 0x02;
+    private static final int CMD_REPORT = 0x03;
+
+    private static final int MANUFACTURER_SPECIFIC_GET = 0x04;
+    private static final int MANUFACTURER_SPECIFIC_REPORT = 0x05;
+    private static final int VERSION_GET = 0x11;
+    private static final int VERSION_REPORT = 0x12;
+    private static final int VERSION_COMMAND_CLASS_GET = 0x13;
+    private static final int VERSION_COMMAND_CLASS_REPORT = 0x14;
+    private static final int WAKE_UP_INTERVAL_SET = 0x04;
+    private static final int WAKE_UP_INTERVAL_GET = 0x05;
+    private static final int WAKE_UP_INTERVAL_REPORT = 0x06;
+    static final int WAKE_UP_NOTIFICATION = 0x07;
+    static final int WAKE_UP_NO_MORE_INFORMATION = 0x08;
+
+    private static final CommandClass[] LISTENING_CLASSES = { CommandClass.SWITCH_BINARY, CommandClass.BASIC,
+            CommandClass.MANUFACTURER_SPECIFIC, CommandClass.VERSION };
+    private static final CommandClass[] SLEEPING_CLASSES = { CommandClass.SENSOR_BINARY, CommandClass.BASIC,
+            CommandClass.BATTERY, CommandClass.WAKE_UP, CommandClass.MANUFACTURER_SPECIFIC, CommandClass.VERSION };
+
+    private final int nodeId;
+    private final boolean listening;
+    private final int latency;
+
+    private int value = 0;
+    private int batteryLevel = 100;
+    private int wakeupInterval;
+    private int wakeupNode = 1;
+    private boolean awake = false;
+
+    /**
+     * Creates a simulated node
+     *
+     * @param nodeId the node ID
+     * @param listening true if the node is always listening, false for a battery node
+     * @param latency the additional time in milliseconds the node takes to respond to a command
+     * @param wakeupInterval the wakeup interval in seconds for battery nodes
+     */
+    ZWaveVirtualNode(int nodeId, boolean listening, int latency, int wakeupInterval) {
+        this.nodeId = nodeId;
+        this.listening = listening;
+        this.latency = latency;
+        this.wakeupInterval = wakeupInterval;
+    }
+
+    int getNodeId() {
+        return nodeId;
+    }
+
+    boolean isListening() {
+        return listening;
+    }
+
+    int getLatency() {
+        return latency;
+    }
+
+    int getWakeupInterval() {
+        return wakeupInterval;
+    }
+
+    /**
+     * Returns true if the node is able to receive a frame
+     *
+     * @return true if the node is listening or awake
+     */
+    synchronized boolean isReachable() {
+        return listening || awake;
+    }
+
+    synchronized void setAwake(boolean awake) {
+        this.awake = awake;
+    }
+
+    /**
+     * Gets the protocol information returned by the controller for IdentifyNode
+     *
+     * @return the IdentifyNode response payload
+     */
+    byte[] getProtocolInfo() {
+        // Routing, 40k, version 3 - plus listening for mains powered nodes
+        int capabilities = (listening ? 0x80 : 0x00) | 0x40 | 0x10 | 0x02;
+        byte[] info = getDeviceClass();
+        return new byte[] { (byte) capabilities, 0x10, 0x00, info[0], info[1], info[2] };
+    }
+
+    /**
+     * Gets the node information frame sent in an ApplicationUpdate
+     *
+     * @return the device class, followed by the supported command classes
+     */
+    byte[] getNodeInformation() {
+        CommandClass[] commandClasses = listening ? LISTENING_CLASSES : SLEEPING_CLASSES;
+        byte[] nif = new byte[3 + commandClasses.length];
+        System.arraycopy(getDeviceClass(), 0, nif, 0, 3);
+        for (int cnt = 0; cnt < commandClasses.length; cnt++) {
+            nif[3 + cnt] = (byte) commandClasses[cnt].getKey();
+        }
+        return nif;
+    }
+
+    private byte[] getDeviceClass() {
+        if (listening) {
+            return new byte[] { (byte) Basic.ROUTING_SLAVE.getKey(), (byte) Generic.BINARY_SWITCH.getKey(), 0x01 };
+        }
+        return new byte[] { (byte) Basic.ROUTING_SLAVE.getKey(), (byte) Generic.BINARY_SENSOR.getKey(), 0x01 };
+    }
+
+    private boolean supports(int commandClass) {
+        for (CommandClass supported : listening ? LISTENING_CLASSES : SLEEPING_CLASSES) {
+            if (supported.getKey() == commandClass) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Processes a command sent to the node
+     *
+     * @param frame the buffer holding the command
+     * @param offset the offset of the command class in the buffer
+     * @param length the length of the command, including the command class
+     * @return the command sent back to the controller, or null if the command doesn't generate a response
+     */
+    synchronized byte[] handleCommand(byte[] frame, int offset, int length) {
+        if (length < 2) {
+            return null;
+        }
+        int commandClass = frame[offset] & 0xFF;
+        int command = frame[offset + 1] & 0xFF;
+        int param = length > 2 ? frame[offset + 2] & 0xFF : 0;
+
+        if (!supports(commandClass)) {
+            return null;
+        }
+
+        switch (CommandClass.getCommandClass(commandClass)) {
+            case BASIC:
+            case SWITCH_BINARY:
+            case SENSOR_BINARY:
+                if (command == CMD_SET) {
+                    value = param;
+                    return null;
+                }
+                if (command == CMD_GET) {
+                    return new byte[] { (byte) commandClass, CMD_REPORT, (byte) value };
+                }
+                break;
+            case BATTERY:
+                if (command == CMD_GET) {
+                    return new byte[] { (byte) commandClass, CMD_REPORT, (byte) batteryLevel };
+                }
+                break;
+            case MANUFACTURER_SPECIFIC:
+                if (command == MANUFACTURER_SPECIFIC_GET) {
+                    int type = listening ? DEVICE_TYPE_SWITCH : DEVICE_TYPE_SENSOR;
+                    return new byte[] { (byte) commandClass, MANUFACTURER_SPECIFIC_REPORT,
+                            (byte) (MANUFACTURER_ID >> 8), (byte) MANUFACTURER_ID, (byte) (type >> 8), (byte) type,
+                            (byte) (nodeId >> 8), (byte) nodeId };
+                }
+                break;
+            case VERSION:
+                if (command == VERSION_GET) {
+                    return new byte[] { (byte) commandClass, VERSION_REPORT, 0x03, 0x04, 0x05, 0x01, 0x00 };
+                }
+                if (command == VERSION_COMMAND_CLASS_GET) {
+                    return new byte[] { (byte) commandClass, VERSION_COMMAND_CLASS_REPORT, (byte) param,
+                            (byte) (supports(param) ? 1 : 0) };
+                }
+                break;
+            case WAKE_UP:
+                if (command == WAKE_UP_INTERVAL_SET && length >= 6) {
+                    wakeupInterval = ((frame[offset + 2] & 0xFF) << 16) | ((frame[offset + 3] & 0xFF) << 8)
+                            | (frame[offset + 4] & 0xFF);
+                    wakeupNode = frame[offset + 5] & 0xFF;
+                    return null;
+                }
+                if (command == WAKE_UP_INTERVAL_GET) {
+                    return new byte[] { (byte) commandClass, WAKE_UP_INTERVAL_REPORT, (byte) (wakeupInterval >> 16),
+                            (byte) (wakeupInterval >> 8), (byte) wakeupInterval, (byte) wakeupNode };
+                }
+                if (command == WAKE_UP_NO_MORE_INFORMATION) {
+                    awake = false;
+                }
+                break;
+            default:
+                break;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,520 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.zwave.internal.simulator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openhab.binding.zwave.internal.protocol.SerialMessage;
+import org.openhab.binding.zwave.internal.protocol.SerialMessage.SerialMessageClass;
+import org.openhab.binding.zwave.internal.protocol.SerialMessage.SerialMessageType;
+import org.openhab.binding.zwave.internal.protocol.ZWaveDeviceClass.Basic;
+import org.openhab.binding.zwave.internal.protocol.ZWaveDeviceClass.Generic;
+import org.openhab.binding.zwave.internal.protocol.ZWaveDeviceClass.Specific;
+import org.openhab.binding.zwave.internal.protocol.commandclass.ZWaveCommandClass.CommandClass;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Simulates a Z-Wave serial stick, and the network of nodes behind it.
+ * <p>
+ * Frames are exchanged with the binding in their serial form, so the simulator exercises the same framing and
+ * message processing as a real stick. The stick answers the requests the binding uses to initialise the network, and
+ * passes SendData frames to the simulated nodes. Responses are delayed to model the time taken on the radio - the
+ * stick can only transmit one frame at a time, each node can add its own latency, and a percentage of frames can be
+ * lost.
+ * <p>
+ * All replies are delivered from a single thread in the order they are due, so the binding sees the RESPONSE,
+ * callback REQUEST and node reply in the same order as from a real stick.
+ *
+ * @author agent
+ */
+public class ZWaveVirtualStick {
+    private static final Logger logger = LoggerFactory.getLogger(ZWaveVirtualStick.class);
+
+    private static final int SOF = 0x01;
+    private static final int NODE_BYTES = 29;
+    private static final int MAX_NODES = 232;
+    private static final int OWN_NODE_ID = 1;
+    private static final int HOME_ID = 0xC0DE5EED;
+
+    private static final int RESPONSE_DELAY = 1;
+    private static final int AWAKE_PERIOD = 10000;
+
+    private static final int TRANSMIT_COMPLETE_OK = 0x00;
+    private static final int TRANSMIT_COMPLETE_NO_ACK = 0x01;
+
+    private static final int NODE_INFO_RECEIVED = 0x84;
+    private static final int NODE_INFO_REQ_FAILED = 0x81;
+
+    private static final int REQUEST_NEIGHBOR_UPDATE_STARTED = 0x21;
+    private static final int REQUEST_NEIGHBOR_UPDATE_DONE = 0x22;
+
+    private static final SerialMessageClass[] SUPPORTED_FUNCTIONS = { SerialMessageClass.SerialApiGetInitData,
+            SerialMessageClass.GetControllerCapabilities, SerialMessageClass.SerialApiSetTimeouts,
+            SerialMessageClass.SerialApiGetCapabilities, SerialMessageClass.SendData, SerialMessageClass.GetVersion,
+            SerialMessageClass.MemoryGetId, SerialMessageClass.IdentifyNode, SerialMessageClass.AssignReturnRoute,
+            SerialMessageClass.DeleteReturnRoute, SerialMessageClass.RequestNodeNeighborUpdate,
+            SerialMessageClass.AssignSucReturnRoute, SerialMessageClass.DeleteSUCReturnRoute,
+            SerialMessageClass.GetSucNodeId, SerialMessageClass.RequestNodeInfo, SerialMessageClass.IsFailedNodeID,
+            SerialMessageClass.GetRoutingInfo };
+
+    /**
+     * Receives the frames sent by the stick
+     */
+    public interface StickListener {
+        /**
+         * Called when the stick sends a frame to the binding
+         *
+         * @param message the {@link SerialMessage} decoded from the frame
+         */
+        void receive(SerialMessage message);
+    }
+
+    private final StickListener listener;
+    private final Map<Integer, ZWaveVirtualNode> nodes = new TreeMap<Integer, ZWaveVirtualNode>();
+    private final Random random = new Random();
+    private final List<ScheduledFuture<?>> wakeupJobs = new ArrayList<ScheduledFuture<?>>();
+
+    private ScheduledExecutorService executor = null;
+
+    private int latency = 20;
+    private int loss = 0;
+    private long radioBusyUntil = 0;
+
+    private long framesReceived = 0;
+    private long framesSent = 0;
+    private long framesLost = 0;
+
+    /**
+     * Creates the simulated stick
+     *
+     * @param listener the {@link StickListener} receiving the frames sent by the stick
+     */
+    public ZWaveVirtualStick(StickListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Sets the time taken to transmit a frame to a node and receive the acknowledgement
+     *
+     * @param latency the time in milliseconds
+     */
+    public void setLatency(int latency) {
+        this.latency = Math.max(0, latency);
+    }
+
+    /**
+     * Sets the percentage of frames to nodes that are lost
+     *
+     * @param loss percentage of frames (0 to 100)
+     */
+    public void setLoss(int loss) {
+        this.loss = Math.min(100, Math.max(0, loss));
+    }
+
+    /**
+     * Adds nodes to the network. Node IDs are allocated sequentially after the controller.
+     *
+     * @param listening the number of mains powered nodes
+     * @param sleeping the number of battery nodes
+     * @param slow the number of the mains powered nodes that respond slowly
+     * @param slowLatency the additional time in milliseconds taken by slow nodes to respond
+     * @param wakeupInterval the wakeup interval of battery nodes in seconds
+     */
+    public synchronized void addNodes(int listening, int sleeping, int slow, int slowLatency, int wakeupInterval) {
+        int nodeId = OWN_NODE_ID + nodes.size() + 1;
+        for (int cnt = 0; cnt < listening + sleeping && nodeId < MAX_NODES; cnt++, nodeId++) {
+            boolean isListening = cnt < listening;
+            int nodeLatency = isListening && cnt < slow ? slowLatency : 0;
+            nodes.put(nodeId, new ZWaveVirtualNode(nodeId, isListening, nodeLatency, wakeupInterval));
+        }
+        logger.debug("Simulated network has {} nodes", nodes.size());
+    }
+
+    /**
+     * Gets the IDs of the mains powered nodes
+     *
+     * @return list of node IDs
+     */
+    public synchronized List<Integer> getListeningNodes() {
+        List<Integer> listening = new ArrayList<Integer>();
+        for (ZWaveVirtualNode node : nodes.values()) {
+            if (node.isListening()) {
+                listening.add(node.getNodeId());
+            }
+        }
+        return Collections.unmodifiableList(listening);
+    }
+
+    /**
+     * Gets the number of nodes on the network, excluding the controller
+     *
+     * @return number of nodes
+     */
+    public synchronized int getNodeCount() {
+        return nodes.size();
+    }
+
+    /**
+     * Gets the number of frames received from the binding
+     *
+     * @return number of frames
+     */
+    public synchronized long getFramesReceived() {
+        return framesReceived;
+    }
+
+    /**
+     * Gets the number of frames sent to the binding
+     *
+     * @return number of frames
+     */
+    public synchronized long getFramesSent() {
+        return framesSent;
+    }
+
+    /**
+     * Gets the number of frames to or from nodes that were lost
+     *
+     * @return number of frames
+     */
+    public synchronized long getFramesLost() {
+        return framesLost;
+    }
+
+    /**
+     * Starts the stick. Battery nodes start waking up at random times within their wakeup interval.
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor();
+
+        for (final ZWaveVirtualNode node : nodes.values()) {
+            if (node.isListening() || node.getWakeupInterval() <= 0) {
+                continue;
+            }
+            long period = node.getWakeupInterval() * 1000L;
+            wakeupJobs.add(executor.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    wakeUp(node);
+                }
+            }, (long) (random.nextDouble() * period), period, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    /**
+     * Stops the stick. Any frames still due are discarded.
+     */
+    public synchronized void stop() {
+        for (ScheduledFuture<?> job : wakeupJobs) {
+            job.cancel(false);
+        }
+        wakeupJobs.clear();
+
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Processes a frame sent to the stick by the binding
+     *
+     * @param frame the frame, including the SOF and checksum
+     */
+    public synchronized void transmit(byte[] frame) {
+        if (executor == null) {
+            return;
+        }
+        if (frame.length < 5 || (frame[0] & 0xFF) != SOF || (frame[1] & 0xFF) != frame.length - 2
+                || checksum(frame) != frame[frame.length - 1]) {
+            logger.warn("Simulated stick received invalid frame {}", SerialMessage.bb2hex(frame));
+            return;
+        }
+        framesReceived++;
+
+        // Only requests are sent to the stick
+        if (frame[2] != 0x00) {
+            return;
+        }
+
+        SerialMessageClass messageClass = SerialMessageClass.getMessageClass(frame[3] & 0xFF);
+        int payloadLength = frame.length - 5;
+        int nodeId = payloadLength > 0 ? frame[4] & 0xFF : 0;
+        int lastByte = payloadLength > 1 ? frame[frame.length - 2] & 0xFF : 0;
+        if (messageClass == null) {
+            logger.debug("Simulated stick received unknown function 0x{}", Integer.toHexString(frame[3] & 0xFF));
+            return;
+        }
+
+        switch (messageClass) {
+            case SendData:
+                sendData(frame);
+                break;
+            case GetVersion:
+                byte[] version = new byte[13];
+                byte[] versionString = "Z-Wave 4.05".getBytes();
+                System.arraycopy(versionString, 0, version, 0, versionString.length);
+                version[12] = 0x01;
+                respond(messageClass, version);
+                break;
+            case MemoryGetId:
+                respond(messageClass, (byte) (HOME_ID >> 24), (byte) (HOME_ID >> 16), (byte) (HOME_ID >> 8),
+                        (byte) HOME_ID, (byte) OWN_NODE_ID);
+                break;
+            case SerialApiGetCapabilities:
+                byte[] capabilities = new byte[8 + 32];
+                capabilities[0] = 0x05;
+                capabilities[2] = (byte) 0x7F;
+                capabilities[3] = (byte) 0xFF;
+                for (SerialMessageClass function : SUPPORTED_FUNCTIONS) {
+                    capabilities[8 + (function.getKey() - 1) / 8] |= 1 << ((function.getKey() - 1) % 8);
+                }
+                respond(messageClass, capabilities);
+                break;
+            case SerialApiSetTimeouts:
+                respond(messageClass, (byte) 0x0F, (byte) 0x0A);
+                break;
+            case GetSucNodeId:
+                respond(messageClass, (byte) OWN_NODE_ID);
+                break;
+            case GetControllerCapabilities:
+                // Real primary and SUC
+                respond(messageClass, (byte) 0x18);
+                break;
+            case SerialApiGetInitData:
+                byte[] initData = new byte[3 + NODE_BYTES + 2];
+                initData[0] = 0x05;
+                initData[1] = 0x08;
+                initData[2] = NODE_BYTES;
+                setNodeBit(initData, 3, OWN_NODE_ID);
+                for (Integer id : nodes.keySet()) {
+                    setNodeBit(initData, 3, id);
+                }
+                initData[3 + NODE_BYTES] = 0x03;
+                initData[4 + NODE_BYTES] = 0x01;
+                respond(messageClass, initData);
+                break;
+            case IdentifyNode:
+                respond(messageClass, getProtocolInfo(nodeId));
+                break;
+            case GetRoutingInfo:
+                respond(messageClass, getNeighbours(nodeId));
+                break;
+            case IsFailedNodeID:
+                respond(messageClass, (byte) 0x00);
+                break;
+            case RequestNodeInfo:
+                respond(messageClass, (byte) 0x01);
+                requestNodeInfo(nodeId);
+                break;
+            case RequestNodeNeighborUpdate:
+                long due = reserveRadio(latency);
+                request(due, messageClass, (byte) 0x00, (byte) REQUEST_NEIGHBOR_UPDATE_STARTED);
+                request(reserveRadio(latency * nodes.size()), messageClass, (byte) 0x00,
+                        (byte) REQUEST_NEIGHBOR_UPDATE_DONE);
+                break;
+            case AssignReturnRoute:
+            case AssignSucReturnRoute:
+            case DeleteReturnRoute:
+            case DeleteSUCReturnRoute:
+                respond(messageClass, (byte) 0x01);
+                request(reserveRadio(latency), messageClass, (byte) lastByte, (byte) TRANSMIT_COMPLETE_OK);
+                break;
+            case SerialApiSoftReset:
+                break;
+            default:
+                logger.debug("Simulated stick received unsupported function {}", messageClass);
+                respond(messageClass, (byte) 0x01);
+                break;
+        }
+    }
+
+    private void sendData(byte[] frame) {
+        // SOF, length, type, class, node, data length, data..., transmit options, callback, checksum
+        int nodeId = frame[4] & 0xFF;
+        int dataLength = frame[5] & 0xFF;
+        if (frame.length < 9 + dataLength) {
+            logger.warn("NODE {}: Simulated stick received invalid SendData", nodeId);
+            return;
+        }
+        int callbackId = frame[6 + dataLength + 1] & 0xFF;
+
+        respond(SerialMessageClass.SendData, (byte) 0x01);
+
+        ZWaveVirtualNode node = nodes.get(nodeId);
+        long due = reserveRadio(latency + (node == null ? 0 : node.getLatency()));
+        boolean delivered = node != null && node.isReachable() && !isLost();
+        if (callbackId != 0) {
+            request(due, SerialMessageClass.SendData, (byte) callbackId,
+                    (byte) (delivered ? TRANSMIT_COMPLETE_OK : TRANSMIT_COMPLETE_NO_ACK));
+        }
+        if (!delivered) {
+            return;
+        }
+
+        byte[] reply = node.handleCommand(frame, 6, dataLength);
+        if (reply != null && !isLost()) {
+            applicationCommand(due + latency + node.getLatency(), nodeId, reply);
+        }
+    }
+
+    private void requestNodeInfo(int nodeId) {
+        ZWaveVirtualNode node = nodes.get(nodeId);
+        long due = reserveRadio(latency + (node == null ? 0 : node.getLatency()));
+        if (node == null || !node.isReachable() || isLost()) {
+            request(due, SerialMessageClass.ApplicationUpdate, (byte) NODE_INFO_REQ_FAILED, (byte) 0x00,
+                    (byte) 0x00);
+            return;
+        }
+        request(due + latency, SerialMessageClass.ApplicationUpdate, nodeInformation(node));
+    }
+
+    private synchronized void wakeUp(ZWaveVirtualNode node) {
+        if (executor == null || node.isReachable()) {
+            return;
+        }
+        node.setAwake(true);
+
+        byte[] notification = { (byte) CommandClass.WAKE_UP.getKey(), ZWaveVirtualNode.WAKE_UP_NOTIFICATION };
+        applicationCommand(reserveRadio(latency), node.getNodeId(), notification);
+
+        // The node goes back to sleep if the binding doesn't tell it to
+        final ZWaveVirtualNode sleepingNode = node;
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                sleepingNode.setAwake(false);
+            }
+        }, AWAKE_PERIOD, TimeUnit.MILLISECONDS);
+    }
+
+    private byte[] nodeInformation(ZWaveVirtualNode node) {
+        byte[] nif = node.getNodeInformation();
+        byte[] payload = new byte[3 + nif.length];
+        payload[0] = (byte) NODE_INFO_RECEIVED;
+        payload[1] = (byte) node.getNodeId();
+        payload[2] = (byte) nif.length;
+        System.arraycopy(nif, 0, payload, 3, nif.length);
+        return payload;
+    }
+
+    private byte[] getProtocolInfo(int nodeId) {
+        if (nodeId == OWN_NODE_ID) {
+            return new byte[] { (byte) 0xD2, 0x16, 0x00, (byte) Basic.STATIC_CONTROLLER.getKey(),
+                    (byte) Generic.STATIC_CONTROLLER.getKey(), (byte) Specific.PC_CONTROLLER.getKey() };
+        }
+        ZWaveVirtualNode node = nodes.get(nodeId);
+        if (node == null) {
+            return new byte[6];
+        }
+        return node.getProtocolInfo();
+    }
+
+    private byte[] getNeighbours(int nodeId) {
+        // Every node can hear the controller and all mains powered nodes
+        byte[] neighbours = new byte[NODE_BYTES];
+        if (nodeId != OWN_NODE_ID) {
+            setNodeBit(neighbours, 0, OWN_NODE_ID);
+        }
+        for (ZWaveVirtualNode node : nodes.values()) {
+            if (node.isListening() && node.getNodeId() != nodeId) {
+                setNodeBit(neighbours, 0, node.getNodeId());
+            }
+        }
+        return neighbours;
+    }
+
+    private void setNodeBit(byte[] buffer, int offset, int nodeId) {
+        buffer[offset + (nodeId - 1) / 8] |= 1 << ((nodeId - 1) % 8);
+    }
+
+    private boolean isLost() {
+        if (loss != 0 && random.nextInt(100) < loss) {
+            framesLost++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reserves the radio to transmit a frame. Frames are sent one after another, so a frame can't start until the
+     * previous one has finished.
+     *
+     * @param duration the time in milliseconds the frame occupies the radio
+     * @return the time the frame is complete
+     */
+    private long reserveRadio(long duration) {
+        // The RESPONSE is always sent before the radio starts transmitting
+        long start = Math.max(System.currentTimeMillis() + RESPONSE_DELAY, radioBusyUntil);
+        radioBusyUntil = start + duration;
+        return radioBusyUntil;
+    }
+
+    private void applicationCommand(long due, int nodeId, byte[] command) {
+        byte[] payload = new byte[3 + command.length];
+        payload[0] = 0x00;
+        payload[1] = (byte) nodeId;
+        payload[2] = (byte) command.length;
+        System.arraycopy(command, 0, payload, 3, command.length);
+        request(due, SerialMessageClass.ApplicationCommandHandler, payload);
+    }
+
+    private void respond(SerialMessageClass messageClass, byte... payload) {
+        deliver(System.currentTimeMillis() + RESPONSE_DELAY, SerialMessageType.Response, messageClass, payload);
+    }
+
+    private void request(long due, SerialMessageClass messageClass, byte... payload) {
+        deliver(due, SerialMessageType.Request, messageClass, payload);
+    }
+
+    private void deliver(long due, SerialMessageType messageType, SerialMessageClass messageClass, byte[] payload) {
+        final byte[] frame = new byte[payload.length + 5];
+        frame[0] = SOF;
+        frame[1] = (byte) (payload.length + 3);
+        frame[2] = (byte) messageType.ordinal();
+        frame[3] = (byte) messageClass.getKey();
+        System.arraycopy(payload, 0, frame, 4, payload.length);
+        frame[frame.length - 1] = checksum(frame);
+
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (ZWaveVirtualStick.this) {
+                    framesSent++;
+                }
+                try {
+                    listener.receive(new SerialMessage(frame, 0, frame.length));
+                } catch (Exception e) {
+                    logger.error("Exception delivering simulated frame", e);
+                }
+            }
+        }, Math.max(0, due - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    }
+
+    private static byte checksum(byte[] frame) {
+        byte checksum = (byte) 0xFF;
+        for (int cnt = 1; cnt < frame.length - 1; cnt++) {
+            checksum ^= frame[cnt];
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.zwave.internal.simulator;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.binding.zwave.internal.protocol.SerialMessage;
+import org.openhab.binding.zwave.internal.protocol.SerialMessage.SerialMessageClass;
+import org.openhab.binding.zwave.internal.protocol.SerialMessage.SerialMessagePriority;
+import org.openhab.binding.zwave.internal.protocol.SerialMessage.SerialMessageType;
+
+/**
+ * Tests cases for {@link ZWaveVirtualStick}.
+ *
+ * @author agent
+ */
+public class ZWaveVirtualStickTest {
+
+    private final BlockingQueue<SerialMessage> received = new LinkedBlockingQueue<SerialMessage>();
+    private ZWaveVirtualStick stick;
+
+    @Before
+    public void setUp() {
+        stick = new ZWaveVirtualStick(new ZWaveVirtualStick.StickListener() {
+            @Override
+            public void receive(SerialMessage message) {
+                received.add(message);
+            }
+        });
+        stick.setLatency(1);
+        stick.addNodes(3, 2, 0, 0, 0);
+        stick.start();
+    }
+
+    @After
+    public void tearDown() {
+        stick.stop();
+    }
+
+    @Test
+    public void nodesAreAllocatedAfterController() {
+        assertEquals(5, stick.getNodeCount());
+        assertEquals(Arrays.asList(2, 3, 4), stick.getListeningNodes());
+    }
+
+    @Test
+    public void initDataListsAllNodes() throws InterruptedException {
+        stick.transmit(request(SerialMessageClass.SerialApiGetInitData));
+
+        SerialMessage response = received.poll(5, TimeUnit.SECONDS);
+        assertNotNull(response);
+        assertEquals(SerialMessageType.Response, response.getMessageType());
+        assertEquals(SerialMessageClass.SerialApiGetInitData, response.getMessageClass());
+
+        // Controller and nodes 2 to 6 are in the first byte of the node bitmap
+        assertEquals(0x3F, response.getMessagePayload()[3] & 0xFF);
+        assertEquals(1, stick.getFramesReceived());
+        assertEquals(1, stick.getFramesSent());
+    }
+
+    @Test
+    public void invalidFramesAreIgnored() throws InterruptedException {
+        byte[] frame = request(SerialMessageClass.GetVersion);
+        frame[frame.length - 1]++;
+        stick.transmit(frame);
+
+        assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+        assertEquals(0, stick.getFramesReceived());
+    }
+
+    @Test
+    public void nothingIsSentOnceStopped() throws InterruptedException {
+        stick.stop();
+        stick.transmit(request(SerialMessageClass.GetVersion));
+
+        assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    private byte[] request(SerialMessageClass messageClass) {
+        return new SerialMessage(messageClass, SerialMessageType.Request, messageClass, SerialMessagePriority.High)
+                .getMessageBuffer();
+    }
+}
@@ -30,6 +30,8 @@ public class ZWaveBindingConstants {
     public final static String CONFIGURATION_PORT = "port";
     public final static String CONFIGURATION_MASTER = "controller_master";
     public final static String CONFIGURATION_SUC = "controller_suc";
+    public final static String CONFIGURATION_MAXINFLIGHT = "controller_maxinflight";
+    public final static String CONFIGURATION_POLLAIRTIME = "controller_pollairtime";
     public final static String CONFIGURATION_NETWORKKEY = "security_networkkey";
 
     public final static String CONFIGURATION_SWITCHALLMODE = "switchall_mode";
@@ -68,6 +70,9 @@ public class ZWaveBindingConstants {
     public final static String PROPERTY_CLASS_BASIC = "zwave_class_basic";
     public final static String PROPERTY_CLASS_GENERIC = "zwave_class_generic";
     public final static String PROPERTY_CLASS_SPECIFIC = "zwave_class_specific";
+    public final static String PROPERTY_SECURITY_STATISTICS = "zwave_security_statistics";
+    public final static String PROPERTY_INIT_PROGRESS = "zwave_init_progress";
+    public final static String PROPERTY_INIT_REMAINING = "zwave_init_remaining";
 
     public final static String CHANNEL_SERIAL_SOF = "serial_sof";
     public final static String CHANNEL_SERIAL_ACK = "serial_ack";
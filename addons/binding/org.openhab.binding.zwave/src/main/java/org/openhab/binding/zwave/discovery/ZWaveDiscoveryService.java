@@ -101,12 +101,9 @@ public class ZWaveDiscoveryService extends AbstractDiscoveryService {
         logger.debug("NODE {}: Scanning for things to match {}", node.getNodeId(), node.toString());
 
         ThingTypeUID thingTypeUID = null;
-        for (ZWaveProduct product : ZWaveConfigProvider.getProductIndex()) {
-            logger.debug("Scanning {}", product.toString());
-            if (product.match(node) == true) {
-                thingTypeUID = product.getThingTypeUID();
-                break;
-            }
+        ZWaveProduct product = ZWaveConfigProvider.getProduct(node);
+        if (product != null) {
+            thingTypeUID = product.getThingTypeUID();
         }
         logger.debug("Found {}", thingTypeUID);
 
@@ -164,17 +161,7 @@ public class ZWaveDiscoveryService extends AbstractDiscoveryService {
 
         ThingUID bridgeUID = controllerHandler.getThing().getUID();
 
-        ZWaveProduct foundProduct = null;
-        for (ZWaveProduct product : ZWaveConfigProvider.getProductIndex()) {
-            if (product == null) {
-                continue;
-            }
-            // logger.debug("Checking {}", product.getThingTypeUID());
-            if (product.match(node) == true) {
-                foundProduct = product;
-                break;
-            }
-        }
+        ZWaveProduct foundProduct = ZWaveConfigProvider.getProduct(node);
 
         // Remove the temporary thing
         // String thingId = "node" + node.getNodeId();
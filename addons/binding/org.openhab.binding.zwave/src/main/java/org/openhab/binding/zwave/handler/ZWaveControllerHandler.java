@@ -10,6 +10,7 @@ package org.openhab.binding.zwave.handler;
 
 import static org.openhab.binding.zwave.ZWaveBindingConstants.*;
 
+import java.math.BigDecimal;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Hashtable;
@@ -29,6 +30,7 @@ import org.eclipse.smarthome.core.types.Command;
 import org.openhab.binding.zwave.ZWaveBindingConstants;
 import org.openhab.binding.zwave.discovery.ZWaveDiscoveryService;
 import org.openhab.binding.zwave.internal.ZWaveNetworkMonitor;
+import org.openhab.binding.zwave.internal.ZWavePollScheduler;
 import org.openhab.binding.zwave.internal.protocol.SerialMessage;
 import org.openhab.binding.zwave.internal.protocol.ZWaveController;
 import org.openhab.binding.zwave.internal.protocol.ZWaveEventListener;
@@ -38,6 +40,7 @@ import org.openhab.binding.zwave.internal.protocol.event.ZWaveEvent;
 import org.openhab.binding.zwave.internal.protocol.event.ZWaveInitializationStateEvent;
 import org.openhab.binding.zwave.internal.protocol.event.ZWaveNetworkEvent;
 import org.openhab.binding.zwave.internal.protocol.event.ZWaveNetworkStateEvent;
+import org.openhab.binding.zwave.internal.protocol.initialization.ZWaveNodeInitCoordinator;
 import org.osgi.framework.ServiceRegistration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -60,8 +63,13 @@ public abstract class ZWaveControllerHandler extends BaseBridgeHandler implement
     // Network monitoring class
     ZWaveNetworkMonitor networkMonitor;
 
+    // Scheduler for polling all nodes on the network
+    private volatile ZWavePollScheduler pollScheduler;
+
     private Boolean isMaster;
     private Boolean isSUC;
+    private Integer maxInFlight;
+    private Integer pollAirtime;
     private String networkKey;
 
     public ZWaveControllerHandler(Bridge bridge) {
@@ -87,6 +95,20 @@ public abstract class ZWaveControllerHandler extends BaseBridgeHandler implement
             isSUC = false;
         }
 
+        param = getConfig().get(CONFIGURATION_MAXINFLIGHT);
+        if (param instanceof BigDecimal && param != null) {
+            maxInFlight = ((BigDecimal) param).intValue();
+        } else {
+            maxInFlight = null;
+        }
+
+        param = getConfig().get(CONFIGURATION_POLLAIRTIME);
+        if (param instanceof BigDecimal && param != null) {
+            pollAirtime = ((BigDecimal) param).intValue();
+        } else {
+            pollAirtime = null;
+        }
+
         param = getConfig().get(CONFIGURATION_NETWORKKEY);
         if (param instanceof String && param != null) {
             networkKey = (String) param;
@@ -118,6 +140,9 @@ public abstract class ZWaveControllerHandler extends BaseBridgeHandler implement
         Map<String, String> config = new HashMap<String, String>();
         config.put("masterController", isMaster.toString());
         config.put("isSUC", isSUC ? "true" : "false");
+        if (maxInFlight != null) {
+            config.put("maxInFlight", maxInFlight.toString());
+        }
 
         // MAJOR BODGE
         // The security class uses a static member to set the key so for now
@@ -143,6 +168,13 @@ public abstract class ZWaveControllerHandler extends BaseBridgeHandler implement
         // this.networkMonitor.resetOnError(softReset);
         // }
 
+        // Polls for all nodes are scheduled centrally so we can limit the load on the network
+        pollScheduler = new ZWavePollScheduler(controller, scheduler);
+        if (pollAirtime != null) {
+            pollScheduler.setAirtime(pollAirtime);
+        }
+        pollScheduler.start();
+
         // The config service needs to know the controller and the network monitor...
         // this.zConfigurationService = new ZWaveConfiguration(this.zController, this.networkMonitor);
         // zController.addEventListener(this.zConfigurationService);
@@ -171,10 +203,18 @@ public abstract class ZWaveControllerHandler extends BaseBridgeHandler implement
         // this.converterHandler = null;
         // }
 
+        ZWavePollScheduler pollScheduler = this.pollScheduler;
+        if (pollScheduler != null) {
+            this.pollScheduler = null;
+            pollScheduler.stop();
+        }
+
         ZWaveController controller = this.controller;
         if (controller != null) {
             this.controller = null;
             controller.removeEventListener(this);
+            controller.shutdown();
+            controller.getNodeSerializer().close();
         }
     }
 
@@ -317,6 +357,30 @@ public abstract class ZWaveControllerHandler extends BaseBridgeHandler implement
                 default:
                     break;
             }
+            updateInitialisationProgress();
+        }
+    }
+
+    /**
+     * Publishes the progress of the node initialisation, and the estimated time until it's complete, as properties
+     */
+    private void updateInitialisationProgress() {
+        ZWaveController controller = this.controller;
+        if (controller == null) {
+            return;
+        }
+
+        ZWaveNodeInitCoordinator coordinator = controller.getNodeInitCoordinator();
+        String progress = Long.toString(Math.round(coordinator.getProgress() * 100));
+        long remaining = coordinator.getEstimatedTimeRemaining();
+        String remainingSeconds = remaining < 0 ? "" : Long.toString(remaining / 1000);
+
+        Map<String, String> properties = getThing().getProperties();
+        if (!progress.equals(properties.get(PROPERTY_INIT_PROGRESS))) {
+            getThing().setProperty(PROPERTY_INIT_PROGRESS, progress);
+        }
+        if (!remainingSeconds.equals(properties.get(PROPERTY_INIT_REMAINING))) {
+            getThing().setProperty(PROPERTY_INIT_REMAINING, remainingSeconds);
         }
     }
 
@@ -380,6 +444,15 @@ public abstract class ZWaveControllerHandler extends BaseBridgeHandler implement
         controller.sendData(message);
     }
 
+    /**
+     * Gets the scheduler used to poll nodes on this network
+     *
+     * @return the {@link ZWavePollScheduler} or null if the network isn't initialised
+     */
+    public ZWavePollScheduler getPollScheduler() {
+        return pollScheduler;
+    }
+
     public boolean addEventListener(ZWaveThingHandler zWaveThingHandler) {
         if (controller == null) {
             return false;
@@ -141,6 +141,10 @@ public class ZWaveSerialHandler extends ZWaveControllerHandler {
     /**
      * ZWave controller Receive Thread. Takes care of receiving all messages.
      * It uses a semaphore to synchronize communication with the sending thread.
+     * <p>
+     * Data is read from the serial port in blocks into a single receive buffer that is reused for the life of the
+     * thread. Frames are decoded directly from the buffer once they are complete, so the only allocation per frame is
+     * the payload of the {@link SerialMessage} passed to the controller.
      */
     private class ZWaveReceiveThread extends Thread implements SerialPortEventListener {
 
@@ -149,8 +153,21 @@ public class ZWaveSerialHandler extends ZWaveControllerHandler {
         private static final int NAK = 0x15;
         private static final int CAN = 0x18;
 
+        // Large enough to hold two maximum length frames
+        private static final int RECEIVE_BUFFER_SIZE = 520;
+
         private final Logger logger = LoggerFactory.getLogger(ZWaveReceiveThread.class);
 
+        private final byte[] buffer = new byte[RECEIVE_BUFFER_SIZE];
+        private int head = 0;
+        private int tail = 0;
+
+        private final ChannelUID channelSOF = new ChannelUID(getThing().getUID(), CHANNEL_SERIAL_SOF);
+        private final ChannelUID channelACK = new ChannelUID(getThing().getUID(), CHANNEL_SERIAL_ACK);
+        private final ChannelUID channelNAK = new ChannelUID(getThing().getUID(), CHANNEL_SERIAL_NAK);
+        private final ChannelUID channelCAN = new ChannelUID(getThing().getUID(), CHANNEL_SERIAL_CAN);
+        private final ChannelUID channelOOF = new ChannelUID(getThing().getUID(), CHANNEL_SERIAL_OOF);
+
         @Override
         public void serialEvent(SerialPortEvent arg0) {
             try {
@@ -178,6 +195,110 @@ public class ZWaveSerialHandler extends ZWaveControllerHandler {
             }
         }
 
+        /**
+         * Reads whatever data is available from the serial port into the receive buffer.
+         * Data that has already been processed is removed from the start of the buffer first if we need the space.
+         *
+         * @return the number of bytes read. 0 if the read timed out.
+         * @throws IOException
+         */
+        private int readSerialData() throws IOException {
+            if (head == tail) {
+                head = 0;
+                tail = 0;
+            } else if (head != 0 && tail == buffer.length) {
+                System.arraycopy(buffer, head, buffer, 0, tail - head);
+                tail -= head;
+                head = 0;
+            }
+
+            int read = serialPort.getInputStream().read(buffer, tail, buffer.length - tail);
+            if (read > 0) {
+                tail += read;
+                return read;
+            }
+            return 0;
+        }
+
+        /**
+         * Processes all complete frames in the receive buffer
+         *
+         * @return true if there is a partial frame left in the buffer
+         */
+        private boolean processReceiveBuffer() {
+            while (head < tail) {
+                int nextByte = buffer[head] & 0xFF;
+                switch (nextByte) {
+                    case SOF:
+                        // Wait until we have the complete frame
+                        if (tail - head < 2) {
+                            return true;
+                        }
+                        int frameLength = (buffer[head + 1] & 0xFF) + 2;
+                        if (tail - head < frameLength) {
+                            return true;
+                        }
+
+                        // Keep track of statistics
+                        SOFCount++;
+                        updateState(channelSOF, new DecimalType(SOFCount));
+
+                        if (logger.isDebugEnabled()) {
+                            logger.debug("Receive Message = {}", SerialMessage.bb2hex(buffer, head, frameLength));
+                        }
+                        SerialMessage recvMessage = new SerialMessage(buffer, head, frameLength);
+                        head += frameLength;
+                        if (recvMessage.isValid) {
+                            logger.trace("Message is valid, sending ACK");
+                            sendResponse(ACK);
+
+                            incomingMessage(recvMessage);
+                        } else {
+                            logger.error("Message is invalid, discarding");
+                            sendResponse(NAK);
+                        }
+                        break;
+                    case ACK:
+                        head++;
+                        // Keep track of statistics
+                        ACKCount++;
+                        updateState(channelACK, new DecimalType(ACKCount));
+                        logger.trace("Received ACK");
+                        break;
+                    case NAK:
+                        head++;
+                        NAKCount++;
+                        updateState(channelNAK, new DecimalType(NAKCount));
+                        logger.error("Protocol error (NAK), discarding");
+
+                        // TODO: Add NAK processing
+                        break;
+                    case CAN:
+                        head++;
+                        CANCount++;
+                        updateState(channelCAN, new DecimalType(CANCount));
+                        logger.error("Protocol error (CAN), resending");
+                        try {
+                            Thread.sleep(100);
+                        } catch (InterruptedException e) {
+                            interrupt();
+                            return false;
+                        }
+
+                        // TODO: Add CAN processing (Resend?)
+                        break;
+                    default:
+                        head++;
+                        OOFCount++;
+                        updateState(channelOOF, new DecimalType(OOFCount));
+                        logger.warn(String.format("Protocol error (OOF). Got 0x%02X. Sending NAK.", nextByte));
+                        sendResponse(NAK);
+                        break;
+                }
+            }
+            return false;
+        }
+
         /**
          * Run method. Runs the actual receiving process.
          */
@@ -189,101 +310,25 @@ public class ZWaveSerialHandler extends ZWaveControllerHandler {
                 sendResponse(NAK);
 
                 while (!interrupted()) {
-                    int nextByte;
-
+                    int read;
                     try {
-                        nextByte = serialPort.getInputStream().read();
-
-                        if (nextByte == -1) {
-                            continue;
-                        }
+                        read = readSerialData();
                     } catch (IOException e) {
                         logger.error("Got I/O exception {} during receiving. exiting thread.", e.getLocalizedMessage());
                         break;
                     }
 
-                    switch (nextByte) {
-                        case SOF:
-                            // Keep track of statistics
-                            SOFCount++;
-                            updateState(new ChannelUID(getThing().getUID(), CHANNEL_SERIAL_SOF),
-                                    new DecimalType(SOFCount));
-
-                            int messageLength;
-                            try {
-                                messageLength = serialPort.getInputStream().read();
-                            } catch (IOException e) {
-                                logger.error("Got I/O exception {} during receiving. exiting thread.",
-                                        e.getLocalizedMessage());
-
-                                break;
-                            }
-
-                            byte[] buffer = new byte[messageLength + 2];
-                            buffer[0] = SOF;
-                            buffer[1] = (byte) messageLength;
-                            int total = 0;
-
-                            while (total < messageLength) {
-                                try {
-                                    int read = serialPort.getInputStream().read(buffer, total + 2,
-                                            messageLength - total);
-                                    total += (read > 0 ? read : 0);
-                                } catch (IOException e) {
-                                    logger.error("Got I/O exception {} during receiving. exiting thread.",
-                                            e.getLocalizedMessage());
-                                    return;
-                                }
-                            }
-
-                            logger.debug("Receive Message = {}", SerialMessage.bb2hex(buffer));
-                            SerialMessage recvMessage = new SerialMessage(buffer);
-                            if (recvMessage.isValid) {
-                                logger.trace("Message is valid, sending ACK");
-                                sendResponse(ACK);
-
-                                incomingMessage(recvMessage);
-                            } else {
-                                logger.error("Message is invalid, discarding");
-                                sendResponse(NAK);
-                            }
-                            break;
-                        case ACK:
-                            // Keep track of statistics
-                            ACKCount++;
-                            updateState(new ChannelUID(getThing().getUID(), CHANNEL_SERIAL_ACK),
-                                    new DecimalType(ACKCount));
-                            logger.trace("Received ACK");
-                            break;
-                        case NAK:
-                            NAKCount++;
-                            updateState(new ChannelUID(getThing().getUID(), CHANNEL_SERIAL_NAK),
-                                    new DecimalType(NAKCount));
-                            logger.error("Protocol error (NAK), discarding");
-
-                            // TODO: Add NAK processing
-                            break;
-                        case CAN:
-                            CANCount++;
-                            updateState(new ChannelUID(getThing().getUID(), CHANNEL_SERIAL_CAN),
-                                    new DecimalType(CANCount));
-                            logger.error("Protocol error (CAN), resending");
-                            try {
-                                Thread.sleep(100);
-                            } catch (InterruptedException e) {
-                                break;
-                            }
-
-                            // TODO: Add CAN processing (Resend?)
-                            break;
-                        default:
-                            OOFCount++;
-                            updateState(new ChannelUID(getThing().getUID(), CHANNEL_SERIAL_OOF),
-                                    new DecimalType(OOFCount));
-                            logger.warn(String.format("Protocol error (OOF). Got 0x%02X. Sending NAK.", nextByte));
+                    if (read == 0) {
+                        // If the rest of a frame doesn't arrive within the timeout, it's never going to
+                        if (head != tail) {
+                            logger.warn("Timeout receiving frame. Discarding {} bytes.", tail - head);
+                            head = tail;
                             sendResponse(NAK);
-                            break;
+                        }
+                        continue;
                     }
+
+                    processReceiveBuffer();
                 }
             } catch (Exception e) {
                 logger.error("Exception during ZWave thread: Receive {}", e);
@@ -17,7 +17,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 import org.eclipse.smarthome.config.core.Configuration;
@@ -37,9 +37,12 @@ import org.eclipse.smarthome.core.types.RefreshType;
 import org.eclipse.smarthome.core.types.State;
 import org.openhab.binding.zwave.ZWaveBindingConstants;
 import org.openhab.binding.zwave.internal.ZWaveConfigProvider;
+import org.openhab.binding.zwave.internal.ZWavePollScheduler;
 import org.openhab.binding.zwave.internal.ZWaveProduct;
+import org.openhab.binding.zwave.internal.ZWaveReportCadence;
 import org.openhab.binding.zwave.internal.converter.ZWaveCommandClassConverter;
 import org.openhab.binding.zwave.internal.protocol.SerialMessage;
+import org.openhab.binding.zwave.internal.protocol.SerialMessage.SerialMessagePriority;
 import org.openhab.binding.zwave.internal.protocol.ZWaveAssociation;
 import org.openhab.binding.zwave.internal.protocol.ZWaveAssociationGroup;
 import org.openhab.binding.zwave.internal.protocol.ZWaveConfigurationParameter;
@@ -50,7 +53,9 @@ import org.openhab.binding.zwave.internal.protocol.commandclass.ZWaveCommandClas
 import org.openhab.binding.zwave.internal.protocol.commandclass.ZWaveCommandClass.CommandClass;
 import org.openhab.binding.zwave.internal.protocol.commandclass.ZWaveConfigurationCommandClass;
 import org.openhab.binding.zwave.internal.protocol.commandclass.ZWaveConfigurationCommandClass.ZWaveConfigurationParameterEvent;
+import org.openhab.binding.zwave.internal.protocol.commandclass.ZWaveMultiCommandCommandClass;
 import org.openhab.binding.zwave.internal.protocol.commandclass.ZWaveNodeNamingCommandClass;
+import org.openhab.binding.zwave.internal.protocol.commandclass.ZWaveSecurityCommandClass;
 import org.openhab.binding.zwave.internal.protocol.commandclass.ZWaveSwitchAllCommandClass;
 import org.openhab.binding.zwave.internal.protocol.commandclass.ZWaveWakeUpCommandClass;
 import org.openhab.binding.zwave.internal.protocol.commandclass.ZWaveWakeUpCommandClass.ZWaveWakeUpEvent;
@@ -62,7 +67,6 @@ import org.openhab.binding.zwave.internal.protocol.event.ZWaveInitializationStat
 import org.openhab.binding.zwave.internal.protocol.event.ZWaveNetworkEvent;
 import org.openhab.binding.zwave.internal.protocol.event.ZWaveNodeStatusEvent;
 import org.openhab.binding.zwave.internal.protocol.event.ZWaveTransactionCompletedEvent;
-import org.openhab.binding.zwave.internal.protocol.initialization.ZWaveNodeSerializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -86,7 +90,7 @@ public class ZWaveThingHandler extends ConfigStatusThingHandler implements ZWave
     private Map<Integer, ZWaveConfigSubParameter> subParameters = new HashMap<Integer, ZWaveConfigSubParameter>();
     private Map<String, Object> pendingCfg = new HashMap<String, Object>();
 
-    private ScheduledFuture<?> pollingJob = null;
+    private ZWavePollScheduler pollScheduler = null;
     private final long POLLING_PERIOD_MIN = 15;
     private final long POLLING_PERIOD_MAX = 7200;
     private final long POLLING_PERIOD_DEFAULT = 1800;
@@ -94,6 +98,9 @@ public class ZWaveThingHandler extends ConfigStatusThingHandler implements ZWave
     private final long REFRESH_POLL_DELAY = 50;
     private long pollingPeriod = POLLING_PERIOD_DEFAULT;
 
+    // Reports received for each channel, so channels that report on their own are polled less often
+    private Map<ChannelUID, ZWaveReportCadence> reportCadence = new ConcurrentHashMap<ChannelUID, ZWaveReportCadence>();
+
     public ZWaveThingHandler(Thing zwaveDevice) {
         super(zwaveDevice);
     }
@@ -277,17 +284,8 @@ public class ZWaveThingHandler extends ConfigStatusThingHandler implements ZWave
             return;
         }
 
-        ZWaveProduct foundProduct = null;
-        for (ZWaveProduct product : ZWaveConfigProvider.getProductIndex()) {
-            if (product == null) {
-                continue;
-            }
-            // logger.debug("Checking {}", product.getThingTypeUID());
-            if (product.match(deviceManufacturer, deviceType, deviceId, parmVersion) == true) {
-                foundProduct = product;
-                break;
-            }
-        }
+        ZWaveProduct foundProduct = ZWaveConfigProvider.getProduct(deviceManufacturer, deviceType, deviceId,
+                parmVersion);
 
         // Did we find the thing type?
         if (foundProduct == null) {
@@ -305,8 +303,11 @@ public class ZWaveThingHandler extends ConfigStatusThingHandler implements ZWave
      * @param initialPeriod time to start in milliseconds
      */
     private void startPolling(long initialPeriod) {
-        if (pollingJob != null) {
-            pollingJob.cancel(true);
+        stopPolling();
+
+        if (controllerHandler == null || controllerHandler.getPollScheduler() == null) {
+            logger.debug("NODE {}: Polling deferred until controller initialised", nodeId);
+            return;
         }
 
         if (pollingPeriod < POLLING_PERIOD_MIN) {
@@ -321,46 +322,105 @@ public class ZWaveThingHandler extends ConfigStatusThingHandler implements ZWave
             pollingPeriod = POLLING_PERIOD_MAX;
         }
 
-        Runnable pollingRunnable = new Runnable() {
+        ZWavePollScheduler.PollTask pollTask = new ZWavePollScheduler.PollTask() {
             @Override
-            public void run() {
+            public List<SerialMessage> getPollMessages() {
                 logger.debug("NODE {}: Polling...", nodeId);
                 ZWaveNode node = controllerHandler.getNode(nodeId);
                 if (node == null || node.isInitializationComplete() == false) {
                     logger.debug("NODE {}: Polling deferred until initialisation complete", nodeId);
-                    return;
+                    return null;
                 }
 
+                updateSecurityStatistics(node);
+
+                long now = System.currentTimeMillis();
                 List<SerialMessage> messages = new ArrayList<SerialMessage>();
                 for (ZWaveThingChannel channel : thingChannelsPoll) {
                     logger.debug("NODE {}: Polling {}", nodeId, channel.getUID());
                     if (channel.converter == null) {
                         logger.debug("NODE {}: Polling aborted as no converter found for {}", nodeId, channel.getUID());
+                    } else if (!getReportCadence(channel.getUID()).isPollRequired(now, pollingPeriod * 1000)) {
+                        logger.debug("NODE {}: Polling skipped as reports received for {}", nodeId, channel.getUID());
                     } else {
                         List<SerialMessage> poll = channel.converter.executeRefresh(channel, node);
                         if (poll != null) {
-                            messages.addAll(poll);
+                            getReportCadence(channel.getUID()).polled(now);
+                            for (SerialMessage message : poll) {
+                                // Channels sharing a command class often generate the same request
+                                if (message != null && !messages.contains(message)) {
+                                    messages.add(message);
+                                }
+                            }
                         }
                     }
                 }
 
-                // Send all the messages
-                for (SerialMessage message : messages) {
-                    controllerHandler.sendData(message);
+                // The scheduler sends the messages
+                List<SerialMessage> pollMessages = coalescePollMessages(node, messages);
+                for (SerialMessage message : pollMessages) {
+                    message.setPriority(SerialMessagePriority.Poll);
                 }
+                return pollMessages;
             }
         };
 
-        pollingJob = scheduler.scheduleAtFixedRate(pollingRunnable, initialPeriod, pollingPeriod * 1000,
-                TimeUnit.MILLISECONDS);
+        pollScheduler = controllerHandler.getPollScheduler();
+        pollScheduler.schedule(nodeId, pollTask, pollingPeriod * 1000, initialPeriod);
         logger.debug("NODE {}: Polling intialised at {} seconds - start in {} milliseconds.", nodeId, pollingPeriod,
                 initialPeriod);
     }
 
+    private void stopPolling() {
+        if (pollScheduler != null) {
+            pollScheduler.cancel(nodeId);
+            pollScheduler = null;
+        }
+    }
+
     private void startPolling() {
         startPolling(pollingPeriod * 1000);
     }
 
+    private ZWaveReportCadence getReportCadence(ChannelUID channelUID) {
+        ZWaveReportCadence cadence = reportCadence.get(channelUID);
+        if (cadence == null) {
+            cadence = new ZWaveReportCadence();
+            reportCadence.put(channelUID, cadence);
+        }
+        return cadence;
+    }
+
+    /**
+     * Combines the poll messages into as few frames as possible using the MULTI_CMD command class if the node
+     * supports it. Messages that need security encapsulation are sent individually.
+     *
+     * @param node the node being polled
+     * @param messages the poll messages
+     * @return the list of messages to send
+     */
+    private List<SerialMessage> coalescePollMessages(ZWaveNode node, List<SerialMessage> messages) {
+        ZWaveMultiCommandCommandClass multiCommandClass = (ZWaveMultiCommandCommandClass) node
+                .getCommandClass(CommandClass.MULTI_CMD);
+        if (multiCommandClass == null || messages.size() < 2) {
+            return messages;
+        }
+
+        List<SerialMessage> result = new ArrayList<SerialMessage>();
+        List<SerialMessage> combinable = new ArrayList<SerialMessage>();
+        for (SerialMessage message : messages) {
+            if (node.doesMessageRequireSecurityEncapsulation(message)) {
+                result.add(message);
+            } else {
+                combinable.add(message);
+            }
+        }
+        result.addAll(multiCommandClass.getMultiCommandEncapMessages(combinable));
+
+        logger.debug("NODE {}: Combined {} poll messages into {} frames", nodeId, messages.size(), result.size());
+        return result;
+    }
+
     @Override
     public void bridgeHandlerInitialized(ThingHandler thingHandler, Bridge bridge) {
         logger.debug("NODE {}: Controller initialised. Starting device intialisation.", nodeId);
@@ -392,6 +452,9 @@ public class ZWaveThingHandler extends ConfigStatusThingHandler implements ZWave
         if (((ZWaveControllerHandler) thingHandler).addEventListener(this) == true) {
             controllerHandler = (ZWaveControllerHandler) thingHandler;
             updateNeighbours();
+
+            // Start any polling that was deferred until the controller was available
+            startPolling();
         } else {
             logger.warn("NODE {}: Controller failed to register event handler.", nodeId);
         }
@@ -400,16 +463,13 @@ public class ZWaveThingHandler extends ConfigStatusThingHandler implements ZWave
     @Override
     public void dispose() {
         logger.debug("Handler disposed. Unregistering listener.");
+        stopPolling();
         if (nodeId != 0) {
             if (controllerHandler != null) {
                 controllerHandler.removeEventListener(this);
             }
             nodeId = 0;
         }
-
-        if (pollingJob != null) {
-            pollingJob.cancel(true);
-        }
     }
 
     @Override
@@ -665,10 +725,7 @@ public class ZWaveThingHandler extends ConfigStatusThingHandler implements ZWave
                 if ("reinit".equals(cfg[1]) && "GO".equals(valueObject)) {
                     logger.debug("NODE {}: Re-initialising node!", nodeId);
 
-                    // Delete the saved XML
-                    ZWaveNodeSerializer nodeSerializer = new ZWaveNodeSerializer();
-                    nodeSerializer.DeleteNode(nodeId);
-
+                    // The controller deletes the saved node before starting again
                     controllerHandler.reinitialiseNode(nodeId);
                 }
 
@@ -694,6 +751,7 @@ public class ZWaveThingHandler extends ConfigStatusThingHandler implements ZWave
         }
 
         if (command == RefreshType.REFRESH) {
+            reportCadence.clear();
             startPolling(REFRESH_POLL_DELAY);
             return;
         }
@@ -968,6 +1026,7 @@ public class ZWaveThingHandler extends ConfigStatusThingHandler implements ZWave
                 if (state != null) {
                     logger.debug("Updating {} to {}", channel.getUID(), state);
 
+                    getReportCadence(channel.getUID()).reportReceived(System.currentTimeMillis());
                     updateState(channel.getUID(), state);
                 }
             }
@@ -1091,6 +1150,8 @@ public class ZWaveThingHandler extends ConfigStatusThingHandler implements ZWave
                 unit = TimeUnit.SECONDS;
             }
 
+            // This is requested to check the result of a command, so make sure all channels are polled
+            reportCadence.clear();
             startPolling(unit.toMillis(delay));
         }
     }
@@ -1115,6 +1176,25 @@ public class ZWaveThingHandler extends ConfigStatusThingHandler implements ZWave
         updateProperty(ZWaveBindingConstants.PROPERTY_NEIGHBOURS, neighbours);
     }
 
+    /**
+     * Publishes the secure frame statistics of the node as a property, so the cost of security can be seen per device
+     *
+     * @param node the {@link ZWaveNode}
+     */
+    private void updateSecurityStatistics(ZWaveNode node) {
+        ZWaveSecurityCommandClass securityCommandClass = (ZWaveSecurityCommandClass) node
+                .getCommandClass(CommandClass.SECURITY);
+        if (securityCommandClass == null) {
+            return;
+        }
+
+        String statistics = securityCommandClass.getStatistics().toString();
+        if (!statistics.equals(getThing().getProperties().get(ZWaveBindingConstants.PROPERTY_SECURITY_STATISTICS))) {
+            logger.debug("NODE {}: Security statistics {}", nodeId, statistics);
+            updateProperty(ZWaveBindingConstants.PROPERTY_SECURITY_STATISTICS, statistics);
+        }
+    }
+
     public class ZWaveThingChannel {
         ChannelUID uid;
         int endpoint;
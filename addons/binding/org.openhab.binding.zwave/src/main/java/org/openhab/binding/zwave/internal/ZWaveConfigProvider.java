@@ -31,6 +31,7 @@ import org.eclipse.smarthome.core.thing.Thing;
 import org.eclipse.smarthome.core.thing.ThingRegistry;
 import org.eclipse.smarthome.core.thing.ThingTypeUID;
 import org.eclipse.smarthome.core.thing.ThingUID;
+import org.eclipse.smarthome.core.thing.binding.ThingTypeProvider;
 import org.eclipse.smarthome.core.thing.type.ThingType;
 import org.eclipse.smarthome.core.thing.type.ThingTypeRegistry;
 import org.openhab.binding.zwave.ZWaveBindingConstants;
@@ -45,14 +46,16 @@ import org.slf4j.LoggerFactory;
 import com.google.common.collect.ImmutableSet;
 
 public class ZWaveConfigProvider implements ConfigDescriptionProvider, ConfigOptionProvider {
-    private final Logger logger = LoggerFactory.getLogger(ZWaveConfigProvider.class);
+    private static final Logger logger = LoggerFactory.getLogger(ZWaveConfigProvider.class);
 
     private static ThingRegistry thingRegistry;
     private static ThingTypeRegistry thingTypeRegistry;
     private static ConfigDescriptionRegistry configDescriptionRegistry;
 
     private static Set<ThingTypeUID> zwaveThingTypeUIDList = new HashSet<ThingTypeUID>();
-    private static List<ZWaveProduct> productIndex = new ArrayList<ZWaveProduct>();
+    private static volatile ZWaveProductIndex productIndex = new ZWaveProductIndex(new ArrayList<ZWaveProduct>(),
+            false);
+    private static final Object productIndexLock = new Object();
 
     // The following is a list of classes that are controllable.
     // This is used to filter endpoints so that when we display a list of nodes/endpoints
@@ -73,10 +76,20 @@ public class ZWaveConfigProvider implements ConfigDescriptionProvider, ConfigOpt
 
     protected void setThingTypeRegistry(ThingTypeRegistry thingTypeRegistry) {
         ZWaveConfigProvider.thingTypeRegistry = thingTypeRegistry;
+        invalidateProductIndex();
     }
 
     protected void unsetThingTypeRegistry(ThingTypeRegistry thingTypeRegistry) {
         ZWaveConfigProvider.thingTypeRegistry = null;
+        invalidateProductIndex();
+    }
+
+    protected void addThingTypeProvider(ThingTypeProvider thingTypeProvider) {
+        invalidateProductIndex();
+    }
+
+    protected void removeThingTypeProvider(ThingTypeProvider thingTypeProvider) {
+        invalidateProductIndex();
     }
 
     protected void setConfigDescriptionRegistry(ConfigDescriptionRegistry configDescriptionRegistry) {
@@ -226,18 +239,47 @@ public class ZWaveConfigProvider implements ConfigDescriptionProvider, ConfigOpt
         return new ConfigDescription(uri, parameters, groups);
     }
 
-    private static void initialiseZWaveThings() {
+    private static void invalidateProductIndex() {
+        synchronized (productIndexLock) {
+            productIndex = new ZWaveProductIndex(new ArrayList<ZWaveProduct>(), false);
+        }
+    }
+
+    /**
+     * Gets the product index, building it if it is not complete. Thing types are loaded from the XML files in the
+     * background, so the binding's thing types may not be in the registry when we first use it. All thing types of
+     * the binding are added together, so the presence of the controller type is enough to know they are loaded. Once
+     * built, the index is only discarded when a thing type provider is added or removed.
+     */
+    private static ZWaveProductIndex initialiseZWaveThings() {
+        ZWaveProductIndex index = productIndex;
+        if (index.isComplete()) {
+            return index;
+        }
+
         // Check that we know about the registry
-        if (thingTypeRegistry == null) {
-            return;
+        ThingTypeRegistry registry = thingTypeRegistry;
+        if (registry == null) {
+            return index;
         }
 
-        synchronized (productIndex) {
-            zwaveThingTypeUIDList = new HashSet<ThingTypeUID>();
-            productIndex = new ArrayList<ZWaveProduct>();
+        synchronized (productIndexLock) {
+            if (productIndex.isComplete()) {
+                return productIndex;
+            }
+
+            // Don't enumerate the thing types until ours are available
+            if (registry.getThingType(ZWaveBindingConstants.CONTROLLER_SERIAL) == null) {
+                return productIndex;
+            }
 
             // Get all the thing types
-            Collection<ThingType> thingTypes = thingTypeRegistry.getThingTypes();
+            Collection<ThingType> thingTypes = registry.getThingTypes();
+
+            long start = System.currentTimeMillis();
+            Set<ThingTypeUID> thingTypeUIDList = new HashSet<ThingTypeUID>();
+            List<ZWaveProduct> products = new ArrayList<ZWaveProduct>();
+
             for (ThingType thingType : thingTypes) {
                 // Is this for our binding?
                 if (ZWaveBindingConstants.BINDING_ID.equals(thingType.getBindingId()) == false) {
@@ -245,7 +287,7 @@ public class ZWaveConfigProvider implements ConfigDescriptionProvider, ConfigOpt
                 }
 
                 // Create a list of all things supported by this binding
-                zwaveThingTypeUIDList.add(thingType.getUID());
+                thingTypeUIDList.add(thingType.getUID());
 
                 // Get the properties
                 Map<String, String> thingProperties = thingType.getProperties();
@@ -269,20 +311,46 @@ public class ZWaveConfigProvider implements ConfigDescriptionProvider, ConfigOpt
                     }
                     String versionMin = thingProperties.get(ZWaveBindingConstants.PROPERTY_XML_VERSIONMIN);
                     String versionMax = thingProperties.get(ZWaveBindingConstants.PROPERTY_XML_VERSIONMAX);
-                    productIndex.add(new ZWaveProduct(thingType.getUID(),
+                    products.add(new ZWaveProduct(thingType.getUID(),
                             Integer.parseInt(thingProperties.get(ZWaveBindingConstants.PROPERTY_XML_MANUFACTURER), 16),
                             type, id, versionMin, versionMax));
                 }
-
             }
+
+            zwaveThingTypeUIDList = thingTypeUIDList;
+            productIndex = new ZWaveProductIndex(products, true);
+            logger.debug("Product index built with {} products from {} thing types in {}ms", products.size(),
+                    thingTypeUIDList.size(), System.currentTimeMillis() - start);
+            return productIndex;
         }
     }
 
-    public static synchronized List<ZWaveProduct> getProductIndex() {
-        // if (productIndex.size() == 0) {
-        initialiseZWaveThings();
-        // }
-        return productIndex;
+    public static List<ZWaveProduct> getProductIndex() {
+        return initialiseZWaveThings().getProducts();
+    }
+
+    /**
+     * Finds the product in the database that matches the device.
+     *
+     * @param manufacturer the manufacturer ID
+     * @param type the device type
+     * @param id the device ID
+     * @param version the application version
+     * @return the {@link ZWaveProduct} or null if the device isn't known
+     */
+    public static ZWaveProduct getProduct(int manufacturer, int type, int id, String version) {
+        return initialiseZWaveThings().findProduct(manufacturer, type, id, version);
+    }
+
+    /**
+     * Finds the product in the database that matches the node.
+     *
+     * @param node the {@link ZWaveNode}
+     * @return the {@link ZWaveProduct} or null if the device isn't known
+     */
+    public static ZWaveProduct getProduct(ZWaveNode node) {
+        return getProduct(node.getManufacturer(), node.getDeviceType(), node.getDeviceId(),
+                node.getApplicationVersion());
     }
 
     public static Set<ThingTypeUID> getSupportedThingTypes() {
@@ -307,12 +375,11 @@ public class ZWaveConfigProvider implements ConfigDescriptionProvider, ConfigOpt
             return null;
         }
 
-        for (ZWaveProduct product : ZWaveConfigProvider.getProductIndex()) {
-            if (product.match(node) == true) {
-                return thingTypeRegistry.getThingType(product.thingTypeUID);
-            }
+        ZWaveProduct product = getProduct(node);
+        if (product == null) {
+            return null;
         }
-        return null;
+        return thingTypeRegistry.getThingType(product.thingTypeUID);
     }
 
     public static ConfigDescription getThingTypeConfig(ThingType type) {
@@ -34,7 +34,6 @@ import org.openhab.binding.zwave.internal.protocol.event.ZWaveInitializationStat
 import org.openhab.binding.zwave.internal.protocol.event.ZWaveNetworkEvent;
 import org.openhab.binding.zwave.internal.protocol.event.ZWaveNodeStatusEvent;
 import org.openhab.binding.zwave.internal.protocol.event.ZWaveTransactionCompletedEvent;
-import org.openhab.binding.zwave.internal.protocol.initialization.ZWaveNodeSerializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -462,8 +461,7 @@ public final class ZWaveNetworkMonitor implements ZWaveEventListener {
                 // (neighbors etc)
                 healing.node.setHealState(this.getNodeState(healing.node.getNodeId()));
 
-                ZWaveNodeSerializer nodeSerializer = new ZWaveNodeSerializer();
-                nodeSerializer.SerializeNode(healing.node);
+                zController.getNodeSerializer().SerializeNode(healing.node);
                 return;
             }
         }
@@ -589,8 +587,7 @@ public final class ZWaveNetworkMonitor implements ZWaveEventListener {
                 // (neighbors etc)
                 healing.node.setHealState(this.getNodeState(healing.node.getNodeId()));
 
-                ZWaveNodeSerializer nodeSerializer = new ZWaveNodeSerializer();
-                nodeSerializer.SerializeNode(healing.node);
+                zController.getNodeSerializer().SerializeNode(healing.node);
                 break;
             default:
                 break;
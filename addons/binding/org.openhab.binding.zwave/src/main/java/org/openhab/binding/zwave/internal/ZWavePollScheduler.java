@@ -0,0 +1,294 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.zwave.internal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openhab.binding.zwave.internal.protocol.SerialMessage;
+import org.openhab.binding.zwave.internal.protocol.ZWaveController;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Schedules the polling of all nodes on a network.
+ * <p>
+ * Rather than each thing running its own timer, all polls are held on a single timing wheel that ticks once a second.
+ * When a node is registered, its first poll is placed in the least loaded slot within its polling period (with a random
+ * choice between equally loaded slots) so that nodes with the same period don't all poll at the same time.
+ * <p>
+ * The amount of traffic generated by polling is also limited to a fraction of the throughput of the network. The
+ * throughput is estimated from the average transaction time reported by the controller, and polls are deferred to the
+ * next tick once the budget is used up. This ensures polling can't swamp the network and delay commands from the user.
+ *
+ * @author agent
+ */
+public class ZWavePollScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(ZWavePollScheduler.class);
+
+    private static final long TICK_PERIOD = 1000;
+    private static final int WHEEL_SIZE = 512;
+    private static final int BUDGET_TICKS = 10;
+    private static final int DEFAULT_AIRTIME = 25;
+
+    /**
+     * Implemented by anything that wants to be polled by the scheduler
+     */
+    public interface PollTask {
+        /**
+         * Called when the poll is due.
+         *
+         * @return the list of messages to send to the node. May be empty if nothing needs polling.
+         */
+        List<SerialMessage> getPollMessages();
+    }
+
+    private class PollEntry {
+        final int nodeId;
+        final PollTask task;
+        final int periodTicks;
+        int slot;
+        int rounds;
+
+        PollEntry(int nodeId, PollTask task, int periodTicks) {
+            this.nodeId = nodeId;
+            this.task = task;
+            this.periodTicks = periodTicks;
+        }
+    }
+
+    private final ZWaveController controller;
+    private final ScheduledExecutorService scheduler;
+    private final Random random = new Random();
+
+    private final List<List<PollEntry>> wheel = new ArrayList<List<PollEntry>>(WHEEL_SIZE);
+    private final Map<Integer, PollEntry> entries = new HashMap<Integer, PollEntry>();
+    private int currentSlot = 0;
+
+    private int airtime = DEFAULT_AIRTIME;
+    private double budget = 0;
+
+    private ScheduledFuture<?> tickJob = null;
+
+    /**
+     * Creates the poll scheduler for a network
+     *
+     * @param controller the {@link ZWaveController} used to send the polls
+     * @param scheduler the executor used to run the timer
+     */
+    public ZWavePollScheduler(ZWaveController controller, ScheduledExecutorService scheduler) {
+        this.controller = controller;
+        this.scheduler = scheduler;
+
+        for (int slot = 0; slot < WHEEL_SIZE; slot++) {
+            wheel.add(new ArrayList<PollEntry>());
+        }
+    }
+
+    /**
+     * Sets the maximum percentage of the network throughput that can be used for polling
+     *
+     * @param airtime percentage of network throughput (1 to 100)
+     */
+    public synchronized void setAirtime(int airtime) {
+        if (airtime < 1) {
+            airtime = 1;
+        }
+        if (airtime > 100) {
+            airtime = 100;
+        }
+        this.airtime = airtime;
+    }
+
+    /**
+     * Starts the timer
+     */
+    public synchronized void start() {
+        if (tickJob != null) {
+            return;
+        }
+
+        tickJob = scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    tick();
+                } catch (Exception e) {
+                    logger.error("Exception during poll scheduling", e);
+                }
+            }
+        }, TICK_PERIOD, TICK_PERIOD, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the timer and removes all registered polls
+     */
+    public synchronized void stop() {
+        if (tickJob != null) {
+            tickJob.cancel(false);
+            tickJob = null;
+        }
+
+        for (List<PollEntry> slot : wheel) {
+            slot.clear();
+        }
+        entries.clear();
+    }
+
+    /**
+     * Registers a node for polling. Any existing registration for the node is replaced.
+     * <p>
+     * If the initial delay is at least as long as the polling period, the first poll is placed in the least loaded
+     * slot within the period to spread the load. Shorter delays are used to get a quick update following a command,
+     * and are honoured as closely as the timer allows.
+     *
+     * @param nodeId the node to poll
+     * @param task the {@link PollTask} called when the poll is due
+     * @param period the polling period in milliseconds
+     * @param initialDelay the time before the first poll in milliseconds
+     */
+    public synchronized void schedule(int nodeId, PollTask task, long period, long initialDelay) {
+        cancel(nodeId);
+
+        PollEntry entry = new PollEntry(nodeId, task, toTicks(period));
+        int delayTicks;
+        if (initialDelay >= period) {
+            delayTicks = findQuietestOffset(entry.periodTicks);
+        } else {
+            delayTicks = toTicks(initialDelay);
+        }
+
+        entries.put(nodeId, entry);
+        insert(entry, delayTicks);
+
+        logger.debug("NODE {}: Poll scheduled every {} seconds - first poll in {} seconds.", nodeId,
+                entry.periodTicks, delayTicks);
+    }
+
+    /**
+     * Removes the node from the scheduler
+     *
+     * @param nodeId the node to stop polling
+     */
+    public synchronized void cancel(int nodeId) {
+        PollEntry entry = entries.remove(nodeId);
+        if (entry != null) {
+            wheel.get(entry.slot).remove(entry);
+        }
+    }
+
+    /**
+     * Gets the number of polls that can be sent per tick before polling is deferred
+     *
+     * @return the number of messages per tick
+     */
+    private double getBudgetPerTick() {
+        long responseTime = Math.max(1, controller.getAverageResponseTime());
+        return ((double) TICK_PERIOD / responseTime) * airtime / 100;
+    }
+
+    private int toTicks(long time) {
+        return (int) Math.max(1, (time + TICK_PERIOD - 1) / TICK_PERIOD);
+    }
+
+    private int findQuietestOffset(int periodTicks) {
+        int window = Math.min(periodTicks, WHEEL_SIZE);
+        int quietest = Integer.MAX_VALUE;
+        int matches = 0;
+        int offset = window;
+        for (int cnt = 1; cnt <= window; cnt++) {
+            int load = wheel.get((currentSlot + cnt) % WHEEL_SIZE).size();
+            if (load < quietest) {
+                quietest = load;
+                matches = 1;
+                offset = cnt;
+            } else if (load == quietest && random.nextInt(++matches) == 0) {
+                // Reservoir sample so each of the quietest slots is equally likely
+                offset = cnt;
+            }
+        }
+
+        // For periods longer than the wheel, also spread over the number of rotations
+        if (periodTicks > WHEEL_SIZE) {
+            int rotations = periodTicks / WHEEL_SIZE;
+            offset += random.nextInt(rotations) * WHEEL_SIZE;
+            if (offset > periodTicks) {
+                offset -= WHEEL_SIZE;
+            }
+        }
+        return offset;
+    }
+
+    private void insert(PollEntry entry, int delayTicks) {
+        entry.slot = (currentSlot + delayTicks) % WHEEL_SIZE;
+        entry.rounds = (delayTicks - 1) / WHEEL_SIZE;
+        wheel.get(entry.slot).add(entry);
+    }
+
+    private synchronized void tick() {
+        currentSlot = (currentSlot + 1) % WHEEL_SIZE;
+
+        // Accumulate the budget, but don't allow it to build up indefinitely
+        double budgetPerTick = getBudgetPerTick();
+        budget = Math.min(budget + budgetPerTick, Math.max(1, budgetPerTick * BUDGET_TICKS));
+
+        List<PollEntry> slot = wheel.get(currentSlot);
+        List<PollEntry> polled = new ArrayList<PollEntry>();
+        List<PollEntry> deferred = new ArrayList<PollEntry>();
+        Iterator<PollEntry> iterator = slot.iterator();
+        while (iterator.hasNext()) {
+            PollEntry entry = iterator.next();
+            if (entry.rounds > 0) {
+                entry.rounds--;
+                continue;
+            }
+            iterator.remove();
+
+            // Once the budget is used, defer remaining polls to the next tick.
+            // A poll may overdraw the budget so that large nodes are never starved.
+            if (budget <= 0) {
+                deferred.add(entry);
+                continue;
+            }
+
+            List<SerialMessage> messages = null;
+            try {
+                messages = entry.task.getPollMessages();
+            } catch (Exception e) {
+                logger.error("NODE {}: Exception during polling", entry.nodeId, e);
+            }
+            if (messages != null) {
+                for (SerialMessage message : messages) {
+                    controller.sendData(message);
+                }
+                budget -= messages.size();
+            }
+            polled.add(entry);
+        }
+
+        // Reschedule once we've finished with the slot as the entry may end up back in the same slot
+        for (PollEntry entry : polled) {
+            insert(entry, entry.periodTicks);
+        }
+
+        if (!deferred.isEmpty()) {
+            logger.debug("Poll airtime limit reached - deferring {} polls", deferred.size());
+            for (PollEntry entry : deferred) {
+                insert(entry, 1);
+            }
+        }
+    }
+}
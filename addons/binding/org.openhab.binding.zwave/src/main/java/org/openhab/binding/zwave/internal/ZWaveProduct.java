@@ -74,6 +74,16 @@ public class ZWaveProduct {
             return false;
         }
 
+        return matchVersion(vIn);
+    }
+
+    /**
+     * Checks if the version is within the range supported by this product
+     *
+     * @param vIn the device version
+     * @return true if the version matches
+     */
+    boolean matchVersion(Version vIn) {
         // If the node version is less than the database version, then no match
         if (versionMin != null) {
             if (vIn.compareTo(versionMin) < 0) {
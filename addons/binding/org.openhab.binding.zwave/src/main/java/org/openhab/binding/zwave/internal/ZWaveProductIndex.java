@@ -0,0 +1,161 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.zwave.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.osgi.framework.Version;
+
+/**
+ * Immutable index of the {@link ZWaveProduct}s defined in the thing database.
+ * <p>
+ * Products are held in buckets keyed by manufacturer, device type and device ID, so finding the product for a device
+ * only needs to check the versions of the few products sharing the same IDs. Products that match any device ID are
+ * held in a separate bucket for the manufacturer and type.
+ * <p>
+ * Where more than one product matches, the product defined first is returned - the same result as scanning the list
+ * of products in order.
+ *
+ * @author agent
+ */
+public class ZWaveProductIndex {
+    private final List<ZWaveProduct> products;
+    private final Map<ProductKey, List<IndexedProduct>> buckets = new HashMap<ProductKey, List<IndexedProduct>>();
+    private final boolean complete;
+
+    private static class ProductKey {
+        private final int manufacturer;
+        private final int type;
+        private final Integer id;
+
+        ProductKey(int manufacturer, int type, Integer id) {
+            this.manufacturer = manufacturer;
+            this.type = type;
+            this.id = id;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = manufacturer;
+            result = 31 * result + type;
+            result = 31 * result + (id == null ? -1 : id);
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ProductKey)) {
+                return false;
+            }
+            ProductKey other = (ProductKey) obj;
+            if (manufacturer != other.manufacturer || type != other.type) {
+                return false;
+            }
+            return id == null ? other.id == null : id.equals(other.id);
+        }
+    }
+
+    private static class IndexedProduct {
+        private final int order;
+        private final ZWaveProduct product;
+
+        IndexedProduct(int order, ZWaveProduct product) {
+            this.order = order;
+            this.product = product;
+        }
+    }
+
+    /**
+     * Creates the index
+     *
+     * @param products the list of products, in order of preference
+     * @param complete true if the index was built from the loaded thing types of the binding, false if the thing
+     *            types weren't available yet and the index needs to be rebuilt once they are
+     */
+    ZWaveProductIndex(List<ZWaveProduct> products, boolean complete) {
+        this.products = Collections.unmodifiableList(new ArrayList<ZWaveProduct>(products));
+        this.complete = complete;
+
+        int order = 0;
+        for (ZWaveProduct product : this.products) {
+            // Products without a type can't be indexed - these are never defined in the database
+            if (product.manufacturer == null || product.type == null) {
+                continue;
+            }
+
+            ProductKey key = new ProductKey(product.manufacturer, product.type, product.id);
+            List<IndexedProduct> bucket = buckets.get(key);
+            if (bucket == null) {
+                bucket = new ArrayList<IndexedProduct>(1);
+                buckets.put(key, bucket);
+            }
+            bucket.add(new IndexedProduct(order++, product));
+        }
+    }
+
+    /**
+     * Gets the list of all products
+     *
+     * @return unmodifiable list of {@link ZWaveProduct}s
+     */
+    public List<ZWaveProduct> getProducts() {
+        return products;
+    }
+
+    /**
+     * Checks if the index was built from the loaded thing types of the binding
+     *
+     * @return true if the index doesn't need to be rebuilt
+     */
+    boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Finds the product matching a device
+     *
+     * @param manufacturer the manufacturer ID
+     * @param type the device type
+     * @param id the device ID
+     * @param version the application version
+     * @return the matching {@link ZWaveProduct}, or null if the device is not in the database
+     */
+    public ZWaveProduct findProduct(int manufacturer, int type, int id, String version) {
+        Version deviceVersion = new Version(version);
+
+        IndexedProduct found = findInBucket(buckets.get(new ProductKey(manufacturer, type, id)), deviceVersion, null);
+        found = findInBucket(buckets.get(new ProductKey(manufacturer, type, null)), deviceVersion, found);
+
+        return found == null ? null : found.product;
+    }
+
+    private IndexedProduct findInBucket(List<IndexedProduct> bucket, Version version, IndexedProduct found) {
+        if (bucket == null) {
+            return found;
+        }
+
+        // Buckets are in order, so only the first match is of interest
+        for (IndexedProduct candidate : bucket) {
+            if (found != null && candidate.order > found.order) {
+                break;
+            }
+            if (candidate.product.matchVersion(version)) {
+                return candidate;
+            }
+        }
+        return found;
+    }
+}
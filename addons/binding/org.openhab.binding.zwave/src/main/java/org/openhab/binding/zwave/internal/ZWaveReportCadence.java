@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.zwave.internal;
+
+/**
+ * Tracks the reports received for a channel so that channels which report on their own are polled less often.
+ * <p>
+ * Reports received within {@link #POLL_RESPONSE_WINDOW} of a poll are taken to be the response to the poll. The
+ * interval between the other, unsolicited, reports is averaged to find the cadence at which the device reports by
+ * itself. While reports keep arriving at that cadence, and at least once per polling period, the channel doesn't need
+ * polling. Each poll that is skipped doubles the interval to the next one, up to 2^{@link #BACKOFF_MAX} polling
+ * periods, where a poll is still sent in case a report has been missed. Once the reports stop, the channel is polled
+ * at the normal period again.
+ * <p>
+ * A device that reports less often than the polling period isn't backed off, but a poll is still skipped if a report
+ * has been received within the period.
+ *
+ * @author agent
+ */
+public class ZWaveReportCadence {
+    static final long POLL_RESPONSE_WINDOW = 10000;
+    static final int BACKOFF_MAX = 3;
+
+    // The weight of the latest interval in the average cadence is 1/CADENCE_WEIGHT
+    private static final int CADENCE_WEIGHT = 4;
+
+    private long lastReport = 0;
+    private long lastPoll = 0;
+    private long cadence = 0;
+    private int backoff = 0;
+    private long nextPoll = 0;
+
+    /**
+     * Records a report from the device
+     *
+     * @param now the time the report was received
+     */
+    public synchronized void reportReceived(long now) {
+        if (lastPoll != 0 && now - lastPoll <= POLL_RESPONSE_WINDOW) {
+            // Response to our poll
+            return;
+        }
+
+        if (lastReport != 0) {
+            long interval = now - lastReport;
+            cadence = cadence == 0 ? interval : cadence + (interval - cadence) / CADENCE_WEIGHT;
+        }
+        lastReport = now;
+    }
+
+    /**
+     * Records that the channel has been polled
+     *
+     * @param now the time of the poll
+     */
+    public synchronized void polled(long now) {
+        lastPoll = now;
+    }
+
+    /**
+     * Checks if the channel needs to be polled. This is called each time the poll for the node is due.
+     *
+     * @param now the current time
+     * @param period the polling period in milliseconds
+     * @return true if the channel should be polled
+     */
+    public synchronized boolean isPollRequired(long now, long period) {
+        if (!isReporting(now, period)) {
+            backoff = 0;
+            nextPoll = 0;
+            return lastReport == 0 || now - lastReport >= period;
+        }
+
+        if (now < nextPoll) {
+            return false;
+        }
+
+        boolean required = backoff == BACKOFF_MAX;
+        if (backoff < BACKOFF_MAX) {
+            backoff++;
+        }
+
+        // Allow half a period so the poll isn't missed if the timer runs a little early
+        nextPoll = now + (period << backoff) - period / 2;
+        return required;
+    }
+
+    /**
+     * Gets the average interval between unsolicited reports
+     *
+     * @return the interval in milliseconds, or 0 if not enough reports have been received
+     */
+    public synchronized long getCadence() {
+        return cadence;
+    }
+
+    /**
+     * Gets the interval at which the channel is currently polled
+     *
+     * @param period the polling period in milliseconds
+     * @return the interval in milliseconds
+     */
+    public synchronized long getPollInterval(long period) {
+        return period << backoff;
+    }
+
+    private boolean isReporting(long now, long period) {
+        return cadence != 0 && cadence <= period && now - lastReport < 2 * cadence;
+    }
+}
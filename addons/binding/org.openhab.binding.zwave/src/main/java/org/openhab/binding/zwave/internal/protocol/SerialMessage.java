@@ -139,25 +139,49 @@ public class SerialMessage {
      * @param buffer the buffer to create the SerialMessage from.
      */
     public SerialMessage(int nodeId, byte[] buffer) {
-        logger.trace("NODE {}: Creating new SerialMessage from buffer = {}", nodeId, SerialMessage.bb2hex(buffer));
-        messageLength = buffer.length - 2; // buffer[1];
-        byte messageCheckSumm = calculateChecksum(buffer);
-        byte messageCheckSummReceived = buffer[messageLength + 1];
+        this(nodeId, buffer, 0, buffer.length);
+    }
+
+    /**
+     * Constructor. Creates a new instance of the SerialMessage class from a frame held within a larger buffer. This
+     * allows frames to be decoded directly from the receive buffer - the checksum is checked in place, and only the
+     * payload is copied.
+     *
+     * @param buffer the buffer holding the frame
+     * @param offset the offset of the SOF at the start of the frame
+     * @param length the length of the frame, including the SOF and checksum
+     */
+    public SerialMessage(byte[] buffer, int offset, int length) {
+        this(255, buffer, offset, length);
+    }
+
+    private SerialMessage(int nodeId, byte[] buffer, int offset, int length) {
+        if (logger.isTraceEnabled()) {
+            logger.trace("NODE {}: Creating new SerialMessage from buffer = {}", nodeId,
+                    SerialMessage.bb2hex(buffer, offset, length));
+        }
+        messageLength = length - 2; // buffer[1];
+        byte messageCheckSumm = calculateChecksum(buffer, offset, length);
+        byte messageCheckSummReceived = buffer[offset + messageLength + 1];
         if (messageCheckSumm == messageCheckSummReceived) {
             logger.trace("NODE {}: Checksum matched", nodeId);
             isValid = true;
         } else {
-            logger.trace("NODE {}: Checksum error. Calculated = 0x%02X, Received = 0x%02X", nodeId, messageCheckSumm,
-                    messageCheckSummReceived);
+            if (logger.isTraceEnabled()) {
+                logger.trace(String.format("NODE %d: Checksum error. Calculated = 0x%02X, Received = 0x%02X", nodeId,
+                        messageCheckSumm, messageCheckSummReceived));
+            }
             isValid = false;
             return;
         }
         this.priority = SerialMessagePriority.High;
-        this.messageType = buffer[2] == 0x00 ? SerialMessageType.Request : SerialMessageType.Response;
-        this.messageClass = SerialMessageClass.getMessageClass(buffer[3] & 0xFF);
-        this.messagePayload = ArrayUtils.subarray(buffer, 4, messageLength + 1);
+        this.messageType = buffer[offset + 2] == 0x00 ? SerialMessageType.Request : SerialMessageType.Response;
+        this.messageClass = SerialMessageClass.getMessageClass(buffer[offset + 3] & 0xFF);
+        this.messagePayload = ArrayUtils.subarray(buffer, offset + 4, offset + messageLength + 1);
         this.messageNode = nodeId;
-        logger.trace("NODE {}: Message payload = {}", getMessageNode(), SerialMessage.bb2hex(messagePayload));
+        if (logger.isTraceEnabled()) {
+            logger.trace("NODE {}: Message payload = {}", getMessageNode(), SerialMessage.bb2hex(messagePayload));
+        }
     }
 
     /**
@@ -167,8 +191,20 @@ public class SerialMessage {
      * @return string the string representation
      */
     static public String bb2hex(byte[] bb) {
-        StringBuilder result = new StringBuilder();
-        for (int i = 0; i < bb.length; i++) {
+        return bb2hex(bb, 0, bb.length);
+    }
+
+    /**
+     * Converts part of a byte array to a hexadecimal string representation
+     *
+     * @param bb the byte array to convert
+     * @param offset the first byte to convert
+     * @param length the number of bytes to convert
+     * @return string the string representation
+     */
+    static public String bb2hex(byte[] bb, int offset, int length) {
+        StringBuilder result = new StringBuilder(length * 3);
+        for (int i = offset; i < offset + length; i++) {
             result.append(String.format("%02X ", bb[i]));
         }
         return result.toString();
@@ -185,11 +221,26 @@ public class SerialMessage {
      * @return the checksum value.
      */
     private static byte calculateChecksum(byte[] buffer) {
+        return calculateChecksum(buffer, 0, buffer.length);
+    }
+
+    /**
+     * Calculates the checksum for a frame held within a larger buffer.
+     * The SOF at the start, and the checksum at the end of the frame are excluded.
+     *
+     * @param buffer the buffer holding the frame
+     * @param offset the offset of the start of the frame
+     * @param length the length of the frame
+     * @return the checksum value.
+     */
+    private static byte calculateChecksum(byte[] buffer, int offset, int length) {
         byte checkSum = (byte) 0xFF;
-        for (int i = 1; i < buffer.length - 1; i++) {
+        for (int i = offset + 1; i < offset + length - 1; i++) {
             checkSum = (byte) (checkSum ^ buffer[i]);
         }
-        logger.trace(String.format("Calculated checksum = 0x%02X", checkSum));
+        if (logger.isTraceEnabled()) {
+            logger.trace(String.format("Calculated checksum = 0x%02X", checkSum));
+        }
         return checkSum;
     }
 
@@ -243,7 +294,9 @@ public class SerialMessage {
         result[result.length - 1] = 0x01;
         result[result.length - 1] = calculateChecksum(result);
 
-        logger.debug("Assembled message buffer = " + SerialMessage.bb2hex(result));
+        if (logger.isDebugEnabled()) {
+            logger.debug("Assembled message buffer = {}", SerialMessage.bb2hex(result));
+        }
         return result;
     }
 
@@ -11,6 +11,8 @@ package org.openhab.binding.zwave.internal.protocol;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
@@ -38,6 +40,7 @@ import org.openhab.binding.zwave.internal.protocol.event.ZWaveNetworkEvent;
 import org.openhab.binding.zwave.internal.protocol.event.ZWaveNetworkStateEvent;
 import org.openhab.binding.zwave.internal.protocol.event.ZWaveNodeStatusEvent;
 import org.openhab.binding.zwave.internal.protocol.event.ZWaveTransactionCompletedEvent;
+import org.openhab.binding.zwave.internal.protocol.initialization.ZWaveNodeInitCoordinator;
 import org.openhab.binding.zwave.internal.protocol.initialization.ZWaveNodeInitStage;
 import org.openhab.binding.zwave.internal.protocol.initialization.ZWaveNodeSerializer;
 import org.openhab.binding.zwave.internal.protocol.security.SecurityEncapsulatedSerialMessage;
@@ -82,9 +85,12 @@ public class ZWaveController {
     private static final Logger logger = LoggerFactory.getLogger(ZWaveController.class);
 
     private static final int ZWAVE_RESPONSE_TIMEOUT = 5000;
-    private static final int INITIAL_TX_QUEUE_SIZE = 128;
     private static final int INITIAL_RX_QUEUE_SIZE = 8;
     private static final long WATCHDOG_TIMER_PERIOD = 10000;
+    private static final int DEFAULT_MAX_IN_FLIGHT = 4;
+    private static final int MAX_IN_FLIGHT_LIMIT = 8;
+    private static final long INITIAL_AVERAGE_RESPONSE_TIME = 100;
+    private static final long RESPONSE_TIME_SMOOTHING = 16;
 
     public static final int TRANSMIT_OPTION_ACK = 0x01;
     public static final int TRANSMIT_OPTION_AUTO_ROUTE = 0x04;
@@ -92,19 +98,29 @@ public class ZWaveController {
 
     private final ConcurrentHashMap<Integer, ZWaveNode> zwaveNodes = new ConcurrentHashMap<Integer, ZWaveNode>();
     private final ArrayList<ZWaveEventListener> zwaveEventListeners = new ArrayList<ZWaveEventListener>();
-    private final PriorityBlockingQueue<SerialMessage> sendQueue = new PriorityBlockingQueue<SerialMessage>(
-            INITIAL_TX_QUEUE_SIZE, new SerialMessage.SerialMessageComparator(this));
+    private final ZWaveSendQueue sendQueue = new ZWaveSendQueue(this);
     private final PriorityBlockingQueue<SerialMessage> recvQueue = new PriorityBlockingQueue<SerialMessage>(
             INITIAL_RX_QUEUE_SIZE, new SerialMessage.SerialMessageComparator(this));
     private ZWaveSendThread sendThread;
     private ZWaveInputThread inputThread;
 
     private final Semaphore sendAllowed = new Semaphore(1);
-    private final Semaphore transactionCompleted = new Semaphore(1);
     private volatile SerialMessage lastSentMessage = null;
-    private long lastMessageStartTime = 0;
     private long longestResponseTime = 0;
+    private volatile long averageResponseTime = INITIAL_AVERAGE_RESPONSE_TIME;
     private int zWaveResponseTimeout = ZWAVE_RESPONSE_TIMEOUT;
+
+    /**
+     * Transactions that have been sent to the stick and are not yet complete. All access to the transaction table
+     * must be synchronized on transactionLock.
+     */
+    private final Object transactionLock = new Object();
+    private final List<ZWaveTransaction> transactions = new ArrayList<ZWaveTransaction>();
+    private final Map<Integer, ZWaveTransaction> transactionsByCallback = new HashMap<Integer, ZWaveTransaction>();
+    private SerialMessage pendingControllerMessage = null;
+    private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+    private final ZWaveNodeInitCoordinator initCoordinator;
+    private final ZWaveNodeSerializer nodeSerializer;
     private Timer watchdog;
 
     private String zWaveVersion = "Unknown";
@@ -150,6 +166,8 @@ public class ZWaveController {
         final boolean isSUC = "true".equals(config.get("isSUC"));
         final Integer timeout = config.containsKey("timeout") ? Integer.parseInt(config.get("timeout")) : 0;
         final boolean reset = "true".equals(config.get("softReset"));
+        final Integer inFlight = config.containsKey("maxInFlight") ? Integer.parseInt(config.get("maxInFlight"))
+                : DEFAULT_MAX_IN_FLIGHT;
 
         logger.info("Starting ZWave controller");
         this.masterController = masterController;
@@ -159,7 +177,21 @@ public class ZWaveController {
         if (timeout != null && timeout >= 1500 && timeout <= 10000) {
             zWaveResponseTimeout = timeout;
         }
+        if (inFlight != null && inFlight >= 1 && inFlight <= MAX_IN_FLIGHT_LIMIT) {
+            maxInFlight = inFlight;
+        }
         logger.info("ZWave timeout is set to {}ms. Soft reset is {}.", zWaveResponseTimeout, reset);
+        logger.info("ZWave maximum transactions in flight is {}.", maxInFlight);
+
+        // Node initialisation can use the full pipeline
+        initCoordinator = new ZWaveNodeInitCoordinator(maxInFlight);
+
+        // Networks can keep their nodes in their own store so they don't overwrite each other
+        if (config.containsKey("nodeStore")) {
+            nodeSerializer = new ZWaveNodeSerializer(config.get("nodeStore"));
+        } else {
+            nodeSerializer = new ZWaveNodeSerializer();
+        }
         // this.watchdog = new Timer(true);
         // this.watchdog.schedule(new WatchDogTimerTask(), WATCHDOG_TIMER_PERIOD, WATCHDOG_TIMER_PERIOD);
 
@@ -189,6 +221,22 @@ public class ZWaveController {
         }
     }
 
+    /**
+     * Stops the controller threads and the node initialisation. Called when the controller handler is disposed.
+     */
+    public void shutdown() {
+        logger.debug("Shutting down ZWave controller");
+
+        initCoordinator.shutdown();
+
+        if (sendThread != null) {
+            sendThread.interrupt();
+        }
+        if (inputThread != null) {
+            inputThread.interrupt();
+        }
+    }
+
     // Incoming message handlers
 
     /**
@@ -214,7 +262,127 @@ public class ZWaveController {
             }
         } catch (ZWaveSerialMessageException e) {
             logger.error("Error processing incoming message: {}", e.getMessage());
+        } finally {
+            // The frame may have released the stick, so let the send thread check if it can send the next request
+            synchronized (transactionLock) {
+                transactionLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Finds the message of the outstanding transaction that an incoming frame relates to.
+     * <ul>
+     * <li>The SendData callback REQUEST is correlated using the callback ID.
+     * <li>An ApplicationCommandHandler REQUEST is correlated using the source node - we only ever have a single
+     * transaction outstanding for each node.
+     * <li>Everything else relates to the transaction that currently owns the stick.
+     * </ul>
+     * If no transaction can be found, the last message sent is returned so that the message processors always have a
+     * message to check against.
+     *
+     * @param incomingMessage
+     *            the incoming message
+     * @return the {@link SerialMessage} the incoming message most likely relates to
+     * @throws ZWaveSerialMessageException
+     */
+    private SerialMessage getTransactionMessage(SerialMessage incomingMessage) throws ZWaveSerialMessageException {
+        synchronized (transactionLock) {
+            if (incomingMessage.getMessageType() == SerialMessageType.Request) {
+                switch (incomingMessage.getMessageClass()) {
+                    case SendData:
+                        ZWaveTransaction callbackTransaction = transactionsByCallback
+                                .get(incomingMessage.getMessagePayloadByte(0));
+                        if (callbackTransaction != null) {
+                            return callbackTransaction.getMessage();
+                        }
+                        break;
+                    case ApplicationCommandHandler:
+                        int nodeId = incomingMessage.getMessagePayloadByte(1);
+                        for (ZWaveTransaction transaction : transactions) {
+                            if (transaction.isPipelined() && transaction.getNodeId() == nodeId) {
+                                return transaction.getMessage();
+                            }
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+
+            for (ZWaveTransaction transaction : transactions) {
+                if (!transaction.isStickReleased()) {
+                    return transaction.getMessage();
+                }
+            }
+        }
+
+        return lastSentMessage;
+    }
+
+    /**
+     * Completes the transaction for the specified message, and notifies the listeners.
+     *
+     * @param transactionMessage
+     *            the message sent to start the transaction
+     * @param result
+     *            the result of the transaction
+     */
+    private void completeTransaction(SerialMessage transactionMessage, boolean result) {
+        if (transactionMessage == null) {
+            return;
         }
+
+        ZWaveTransaction transaction = removeTransaction(transactionMessage, !result);
+        notifyEventListeners(new ZWaveTransactionCompletedEvent(transactionMessage, result));
+
+        if (transaction == null) {
+            logger.debug("NODE {}: Transaction completed, but it was no longer outstanding.",
+                    transactionMessage.getMessageNode());
+            return;
+        }
+
+        long responseTime = System.currentTimeMillis() - transaction.getStartTime();
+        if (responseTime > longestResponseTime) {
+            longestResponseTime = responseTime;
+        }
+        averageResponseTime = (averageResponseTime * (RESPONSE_TIME_SMOOTHING - 1) + responseTime)
+                / RESPONSE_TIME_SMOOTHING;
+        logger.debug("NODE {}: Response processed after {}ms/{}ms.", transactionMessage.getMessageNode(),
+                responseTime, longestResponseTime);
+    }
+
+    /**
+     * Removes the transaction for the specified message from the transaction table, and lets the send queue know that
+     * the node can accept another transaction.
+     *
+     * @param transactionMessage
+     *            the message sent to start the transaction
+     * @param failed
+     *            true if the transaction timed out or failed
+     * @return the removed {@link ZWaveTransaction} or null if it wasn't found
+     */
+    private ZWaveTransaction removeTransaction(SerialMessage transactionMessage, boolean failed) {
+        synchronized (transactionLock) {
+            Iterator<ZWaveTransaction> iterator = transactions.iterator();
+            while (iterator.hasNext()) {
+                ZWaveTransaction transaction = iterator.next();
+                if (transaction.getMessage() != transactionMessage) {
+                    continue;
+                }
+                iterator.remove();
+                if (transactionsByCallback.get(transaction.getCallbackId()) == transaction) {
+                    transactionsByCallback.remove(transaction.getCallbackId());
+                }
+                if (transaction.isPipelined()) {
+                    sendQueue.transactionCompleted(transaction.getNodeId(), failed);
+                }
+                transactionLock.notifyAll();
+                logger.trace("Transaction removed. {} transactions outstanding.", transactions.size());
+                return transaction;
+            }
+        }
+        return null;
     }
 
     /**
@@ -237,12 +405,10 @@ public class ZWaveController {
 
         boolean result;
         try {
-            result = processor.handleRequest(this, lastSentMessage, incomingMessage);
+            SerialMessage transactionMessage = getTransactionMessage(incomingMessage);
+            result = processor.handleRequest(this, transactionMessage, incomingMessage);
             if (processor.isTransactionComplete()) {
-                notifyEventListeners(new ZWaveTransactionCompletedEvent(this.lastSentMessage, result));
-                transactionCompleted.release();
-                logger.trace("Released. Transaction completed permit count -> {}",
-                        transactionCompleted.availablePermits());
+                completeTransaction(transactionMessage, result);
             }
         } catch (ZWaveSerialMessageException e) {
             // TODO Auto-generated catch block
@@ -280,11 +446,10 @@ public class ZWaveController {
             return;
         }
 
-        boolean result = processor.handleResponse(this, lastSentMessage, incomingMessage);
+        SerialMessage transactionMessage = getTransactionMessage(incomingMessage);
+        boolean result = processor.handleResponse(this, transactionMessage, incomingMessage);
         if (processor.isTransactionComplete()) {
-            notifyEventListeners(new ZWaveTransactionCompletedEvent(this.lastSentMessage, result));
-            transactionCompleted.release();
-            logger.trace("Released. Transaction completed permit count -> {}", transactionCompleted.availablePermits());
+            completeTransaction(transactionMessage, result);
         }
 
         switch (incomingMessage.getMessageClass()) {
@@ -348,6 +513,9 @@ public class ZWaveController {
      * @param nodeId
      */
     public void reinitialiseNode(int nodeId) {
+        // Delete the saved node so it isn't restored
+        nodeSerializer.DeleteNode(nodeId);
+
         this.zwaveNodes.remove(nodeId);
         addNode(nodeId);
     }
@@ -387,8 +555,7 @@ public class ZWaveController {
 
             ZWaveNode node = null;
             try {
-                ZWaveNodeSerializer nodeSerializer = new ZWaveNodeSerializer();
-                node = nodeSerializer.DeserializeNode(nodeId);
+                node = controller.getNodeSerializer().DeserializeNode(nodeId);
             } catch (Exception e) {
                 logger.error("NODE {}: Restore from config: Error deserialising XML file. {}", nodeId, e.toString());
                 node = null;
@@ -522,6 +689,34 @@ public class ZWaveController {
         return this.sendQueue.size();
     }
 
+    /**
+     * Gets the smoothed time taken to complete a transaction. This gives an estimate of the throughput of the
+     * network, and is used to limit the amount of traffic generated by background tasks such as polling.
+     *
+     * @return the average response time in milliseconds
+     */
+    public long getAverageResponseTime() {
+        return averageResponseTime;
+    }
+
+    /**
+     * Gets the coordinator used to initialise the nodes. This provides the progress of the network initialisation.
+     *
+     * @return the {@link ZWaveNodeInitCoordinator}
+     */
+    public ZWaveNodeInitCoordinator getNodeInitCoordinator() {
+        return initCoordinator;
+    }
+
+    /**
+     * Gets the serializer used to save the nodes on this network
+     *
+     * @return the {@link ZWaveNodeSerializer}
+     */
+    public ZWaveNodeSerializer getNodeSerializer() {
+        return nodeSerializer;
+    }
+
     /**
      * Notify our own event listeners of a ZWave event.
      *
@@ -535,6 +730,13 @@ public class ZWaveController {
             listener.ZWaveIncomingEvent(event);
         }
 
+        // Let the send queue know about DEAD nodes so it stops wasting time sending to them
+        if (event instanceof ZWaveNodeStatusEvent) {
+            ZWaveNodeStatusEvent statusEvent = (ZWaveNodeStatusEvent) event;
+            sendQueue.setNodeDead(statusEvent.getNodeId(), statusEvent.getState() == ZWaveNodeState.DEAD
+                    || statusEvent.getState() == ZWaveNodeState.FAILED);
+        }
+
         // We also need to handle the inclusion internally within the controller
         if (event instanceof ZWaveInclusionEvent) {
             ZWaveInclusionEvent incEvent = (ZWaveInclusionEvent) event;
@@ -575,7 +777,6 @@ public class ZWaveController {
                     this.zwaveNodes.remove(incEvent.getNodeId());
 
                     // Remove the XML file
-                    ZWaveNodeSerializer nodeSerializer = new ZWaveNodeSerializer();
                     nodeSerializer.DeleteNode(event.getNodeId());
                     break;
                 default:
@@ -592,7 +793,6 @@ public class ZWaveController {
                     this.zwaveNodes.remove(networkEvent.getNodeId());
 
                     // Remove the XML file
-                    ZWaveNodeSerializer nodeSerializer = new ZWaveNodeSerializer();
                     nodeSerializer.DeleteNode(event.getNodeId());
                     break;
                 default:
@@ -787,6 +987,9 @@ public class ZWaveController {
         // If we're resetting, there's no point in queuing messages!
         sendQueue.clear();
         recvQueue.clear();
+        synchronized (transactionLock) {
+            pendingControllerMessage = null;
+        }
 
         SerialMessage msg = new ControllerSetDefaultMessageClass().doRequest();
         msg.attempts = 1;
@@ -1092,6 +1295,12 @@ public class ZWaveController {
     /**
      * ZWave controller Send Thread. Takes care of sending all messages. It uses a semaphore to synchronize
      * communication with the receiving thread.
+     * <p>
+     * Requests are tracked in the transaction table. Once the stick has accepted a SendData request, and reported the
+     * result of the transmission through the callback, it is free to accept the next request while we wait for the
+     * node to respond. This allows us to have up to maxInFlight transactions outstanding - one per node - so a slow
+     * node doesn't stall the rest of the network. Controller functions (all messages other than SendData) still
+     * require the stick to themselves.
      *
      * @author Jan-Willem Spuij
      * @author Chris Jackson
@@ -1117,22 +1326,48 @@ public class ZWaveController {
                     }
                     sendAllowed.release();
 
-                    // Take the next message from the send queue
-                    try {
-                        lastSentMessage = sendQueue.take();
-                        logger.debug("Took message from queue for sending. Queue length = {}", sendQueue.size());
-                    } catch (InterruptedException e) {
-                        logger.error("Send thread aborted!!!!!!!! {}", e);
-                        break;
+                    // Process any transactions that have timed out
+                    for (ZWaveTransaction transaction : getExpiredTransactions()) {
+                        handleTransactionTimeout(transaction);
                     }
 
-                    // Check we got a message
-                    if (lastSentMessage == null) {
-                        continue;
+                    // Wait until the stick is able to accept another request
+                    SerialMessage message = null;
+                    synchronized (transactionLock) {
+                        if (!isStickAvailable()) {
+                            transactionLock.wait(getTimeToNextTimeout());
+                            continue;
+                        }
+
+                        // A controller message is waiting for all transactions to complete
+                        if (pendingControllerMessage != null) {
+                            if (!transactions.isEmpty()) {
+                                transactionLock.wait(getTimeToNextTimeout());
+                                continue;
+                            }
+                            message = pendingControllerMessage;
+                            pendingControllerMessage = null;
+                        }
+                    }
+
+                    // Take the next message from the send queue
+                    if (message == null) {
+                        try {
+                            message = sendQueue.poll(getTimeToNextTimeout(), TimeUnit.MILLISECONDS);
+                        } catch (InterruptedException e) {
+                            logger.error("Send thread aborted!!!!!!!! {}", e);
+                            break;
+                        }
+
+                        // Check we got a message
+                        if (message == null) {
+                            continue;
+                        }
+                        logger.debug("Took message from queue for sending. Queue length = {}", sendQueue.size());
                     }
 
                     // Get the node for this message
-                    ZWaveNode node = getNode(lastSentMessage.getMessageNode());
+                    ZWaveNode node = getNode(message.getMessageNode());
 
                     // If it's a battery device, it needs to be awake, or we queue the frame until it is.
                     if (node != null && !node.isListening() && !node.isFrequentlyListening()) {
@@ -1140,8 +1375,7 @@ public class ZWaveController {
                                 .getCommandClass(CommandClass.WAKE_UP);
 
                         // If it's a battery operated device, check if it's awake or place in wake-up queue.
-                        if (wakeUpCommandClass != null
-                                && !wakeUpCommandClass.processOutgoingWakeupMessage(lastSentMessage)) {
+                        if (wakeUpCommandClass != null && !wakeUpCommandClass.processOutgoingWakeupMessage(message)) {
                             continue;
                         }
                     }
@@ -1158,7 +1392,7 @@ public class ZWaveController {
                     //
                     // A transaction is generally completed at the completion of step 4.
                     // However, for some messages, there may not be a further REQUEST so the transaction is terminated
-                    // at step 2. This is handled by the serial message class processor by setting transactionCompleted.
+                    // at step 2. This is handled by the serial message class processor by setting transactionComplete.
                     //
                     // It seems that some of these steps may occur out of order.
                     // For example, the requested message at step 4 may be received before the REQUEST at step 3. This
@@ -1166,81 +1400,152 @@ public class ZWaveController {
                     // the controller is lost. The device then sends the requested data, and then finally the ACK is
                     // received. We cover this by setting an 'AckPending' flag in the sent message.
                     // This needs to be cleared before the transaction is completed.
-
-                    // Clear the semaphore used to acknowledge the completed transaction.
-                    transactionCompleted.drainPermits();
-
-                    // Send the REQUEST message TO the controller
-                    ioHandler.sendPacket(lastSentMessage);
-                    lastMessageStartTime = System.currentTimeMillis();
-
-                    if (lastSentMessage instanceof SecurityEncapsulatedSerialMessage) {
-                        // now that we've sent the encapsulated version, replace lastSentMessage with the original
-                        // this is required because a resend requires a new nonce to be requested and a new
-                        // security encapsulated message to be built
-                        ((SecurityEncapsulatedSerialMessage) lastSentMessage).setTransmittedAt();
-                        // Take the callbackid from the encapsulated version and copy it to the original message
-                        int callbackId = lastSentMessage.getCallbackId();
-                        lastSentMessage = ((SecurityEncapsulatedSerialMessage) lastSentMessage)
+                    //
+                    // The stick is busy until step 3 has completed - after that we're only waiting for the device, so
+                    // we can start a transaction with another node. The callback ID from step 3, and the source node
+                    // from step 4, are used to find the transaction that an incoming frame belongs to.
+
+                    // If this is a security encapsulated message, the transaction is tracked using the original
+                    // message. This is required because a resend requires a new nonce to be requested and a new
+                    // security encapsulated message to be built.
+                    SerialMessage transactionMessage = message;
+                    if (message instanceof SecurityEncapsulatedSerialMessage) {
+                        transactionMessage = ((SecurityEncapsulatedSerialMessage) message)
                                 .getMessageBeingEncapsulated();
-                        lastSentMessage.setCallbackId(callbackId);
+                        // Take the callbackid from the encapsulated version and copy it to the original message
+                        transactionMessage.setCallbackId(message.getCallbackId());
                     }
 
-                    // Now wait for the RESPONSE, or REQUEST message FROM the controller
-                    // This will terminate when the transactionCompleted flag gets set
-                    // So, this might complete on a RESPONSE if there's an error (or no further REQUEST expected) or it
-                    // might complete on a subsequent REQUEST.
-                    try {
-                        if (!transactionCompleted.tryAcquire(1, zWaveResponseTimeout, TimeUnit.MILLISECONDS)) {
-                            timeOutCount.incrementAndGet();
-                            // If this is a SendData message, then we need to abort
-                            // This should only be sent if we didn't get the initial ACK!!!
-                            // So we need to check the ACK flag and only abort if it's not set
-                            if (lastSentMessage.getMessageClass() == SerialMessageClass.SendData
-                                    && lastSentMessage.isAckPending()) {
-                                SerialMessage serialMessage = new SerialMessage(SerialMessageClass.SendDataAbort,
-                                        SerialMessageType.Request, SerialMessageClass.SendData,
-                                        SerialMessagePriority.Immediate);
-                                logger.debug("NODE {}: Sending ABORT Message = {}", lastSentMessage.getMessageNode(),
-                                        SerialMessage.bb2hex(serialMessage.getMessageBuffer()));
-
-                                ioHandler.sendPacket(serialMessage);
+                    synchronized (transactionLock) {
+                        if (!ZWaveTransaction.isPipelined(message)) {
+                            // Controller messages need the stick to themselves
+                            if (!transactions.isEmpty()) {
+                                logger.debug("Deferring controller message until {} transactions complete.",
+                                        transactions.size());
+                                pendingControllerMessage = message;
+                                continue;
                             }
-
-                            // Check if we've exceeded the number of retries.
-                            // Requeue if we're ok, otherwise discard the message
-                            if (--lastSentMessage.attempts >= 0) {
-                                logger.error("NODE {}: Timeout while sending message. Requeueing - {} attempts left!",
-                                        lastSentMessage.getMessageNode(), lastSentMessage.attempts);
-                                if (lastSentMessage.getMessageClass() == SerialMessageClass.SendData) {
-                                    handleFailedSendDataRequest(lastSentMessage);
-                                } else {
-                                    enqueue(lastSentMessage);
-                                }
-                            } else {
-                                logger.warn("NODE {}: Too many retries. Discarding message: {}",
-                                        lastSentMessage.getMessageNode(), lastSentMessage.toString());
-                            }
-                            continue;
                         }
-                        long responseTime = System.currentTimeMillis() - lastMessageStartTime;
-                        if (responseTime > longestResponseTime) {
-                            longestResponseTime = responseTime;
+
+                        // The send queue won't give us another message for this node until the transaction completes
+                        ZWaveTransaction transaction = new ZWaveTransaction(transactionMessage, zWaveResponseTimeout);
+                        transactions.add(transaction);
+                        if (transaction.isPipelined()) {
+                            transactionsByCallback.put(transaction.getCallbackId(), transaction);
+                            sendQueue.transactionStarted(transaction.getNodeId());
                         }
-                        logger.debug("NODE {}: Response processed after {}ms/{}ms.", lastSentMessage.getMessageNode(),
-                                responseTime, longestResponseTime);
-                        logger.trace("Acquired. Transaction completed permit count -> {}",
-                                transactionCompleted.availablePermits());
-                    } catch (InterruptedException e) {
-                        logger.error("Send thread aborted!!!!!!!! {}", e);
-                        break;
+                        lastSentMessage = transactionMessage;
+                        logger.trace("Transaction started. {} transactions outstanding.", transactions.size());
+                    }
+
+                    // Send the REQUEST message TO the controller
+                    ioHandler.sendPacket(message);
+
+                    if (message instanceof SecurityEncapsulatedSerialMessage) {
+                        ((SecurityEncapsulatedSerialMessage) message).setTransmittedAt();
                     }
                 }
+            } catch (InterruptedException e) {
+                logger.error("Send thread aborted!!!!!!!! {}", e);
             } catch (Exception e) {
                 logger.error("Exception during ZWave thread: Send", e);
             }
             logger.debug("Stopped ZWave thread: Send");
         }
+
+        /**
+         * Checks if the stick can accept another request. Must be called with transactionLock held.
+         *
+         * @return true if a new transaction can be started
+         */
+        private boolean isStickAvailable() {
+            if (transactions.size() >= maxInFlight) {
+                return false;
+            }
+            for (ZWaveTransaction transaction : transactions) {
+                if (!transaction.isStickReleased()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Gets the time until the next transaction times out.
+         *
+         * @return time in milliseconds
+         */
+        private long getTimeToNextTimeout() {
+            synchronized (transactionLock) {
+                if (transactions.isEmpty()) {
+                    return zWaveResponseTimeout;
+                }
+
+                long deadline = Long.MAX_VALUE;
+                for (ZWaveTransaction transaction : transactions) {
+                    deadline = Math.min(deadline, transaction.getDeadline());
+                }
+                return Math.max(1, deadline - System.currentTimeMillis());
+            }
+        }
+
+        /**
+         * Removes all transactions that have timed out from the transaction table
+         *
+         * @return list of expired {@link ZWaveTransaction}s
+         */
+        private List<ZWaveTransaction> getExpiredTransactions() {
+            List<ZWaveTransaction> expired = new ArrayList<ZWaveTransaction>();
+            long now = System.currentTimeMillis();
+            synchronized (transactionLock) {
+                for (ZWaveTransaction transaction : transactions) {
+                    if (transaction.isExpired(now)) {
+                        expired.add(transaction);
+                    }
+                }
+            }
+            for (ZWaveTransaction transaction : expired) {
+                removeTransaction(transaction.getMessage(), true);
+            }
+            return expired;
+        }
+
+        /**
+         * Handles a transaction that has timed out. The message is resent if it has any attempts left.
+         *
+         * @param transaction the {@link ZWaveTransaction} that timed out
+         */
+        private void handleTransactionTimeout(ZWaveTransaction transaction) {
+            SerialMessage timedOutMessage = transaction.getMessage();
+            timeOutCount.incrementAndGet();
+
+            // If this is a SendData message, then we need to abort
+            // This should only be sent if we didn't get the initial ACK!!!
+            // So we need to check the ACK flag and only abort if it's not set
+            if (timedOutMessage.getMessageClass() == SerialMessageClass.SendData && timedOutMessage.isAckPending()) {
+                SerialMessage serialMessage = new SerialMessage(SerialMessageClass.SendDataAbort,
+                        SerialMessageType.Request, SerialMessageClass.SendData, SerialMessagePriority.Immediate);
+                logger.debug("NODE {}: Sending ABORT Message = {}", timedOutMessage.getMessageNode(),
+                        SerialMessage.bb2hex(serialMessage.getMessageBuffer()));
+
+                ioHandler.sendPacket(serialMessage);
+            }
+
+            // Check if we've exceeded the number of retries.
+            // Requeue if we're ok, otherwise discard the message
+            if (--timedOutMessage.attempts >= 0) {
+                logger.error("NODE {}: Timeout while sending message. Requeueing - {} attempts left!",
+                        timedOutMessage.getMessageNode(), timedOutMessage.attempts);
+                if (timedOutMessage.getMessageClass() == SerialMessageClass.SendData) {
+                    handleFailedSendDataRequest(timedOutMessage);
+                } else {
+                    enqueue(timedOutMessage);
+                }
+            } else {
+                logger.warn("NODE {}: Too many retries. Discarding message: {}", timedOutMessage.getMessageNode(),
+                        timedOutMessage.toString());
+            }
+        }
     }
 
     /**
@@ -0,0 +1,400 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.zwave.internal.protocol;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openhab.binding.zwave.internal.protocol.SerialMessage.SerialMessageClass;
+import org.openhab.binding.zwave.internal.protocol.SerialMessage.SerialMessagePriority;
+import org.openhab.binding.zwave.internal.protocol.commandclass.ZWaveCommandClass.CommandClass;
+import org.openhab.binding.zwave.internal.protocol.commandclass.ZWaveSecurityCommandClass;
+import org.openhab.binding.zwave.internal.protocol.commandclass.ZWaveWakeUpCommandClass;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Send queue for the ZWave controller. Messages are scheduled per node so that a single busy node can't starve the
+ * rest of the network -:
+ * <ul>
+ * <li>Security NONCE_REPORT messages are always sent first, since the device will only wait a short time for them.
+ * <li>Messages for awake battery nodes are sent before messages for listening nodes, which are sent before anything
+ * else (as the {@link SerialMessage.SerialMessageComparator} did).
+ * <li>Within each {@link SerialMessagePriority} the nodes are served round-robin, one message at a time.
+ * <li>Poll messages that are already in the queue for the node are discarded.
+ * <li>A node only has {@link #MAX_IN_FLIGHT_PER_NODE} transactions outstanding - further messages are held until it
+ * completes.
+ * <li>A node whose recent transactions have mostly timed out, or that has been marked DEAD, is quarantined. Its
+ * messages are held until the quarantine expires, with the quarantine period doubling each time the node fails
+ * again. NO_OPERATION messages (used by the network monitor to ping the node) bypass the quarantine so that we can
+ * find out when the node is back.
+ * </ul>
+ *
+ * @author agent
+ */
+public class ZWaveSendQueue {
+    private static final Logger logger = LoggerFactory.getLogger(ZWaveSendQueue.class);
+
+    private static final int MAX_IN_FLIGHT_PER_NODE = 1;
+    private static final int OUTCOME_WINDOW = 8;
+    private static final int OUTCOME_MIN_SAMPLES = 4;
+    private static final int OUTCOME_TIMEOUT_THRESHOLD = 50;
+    private static final long QUARANTINE_PERIOD_MIN = 5000;
+    private static final long QUARANTINE_PERIOD_MAX = 300000;
+
+    private final ZWaveController controller;
+
+    private final ArrayDeque<SerialMessage> nonceQueue = new ArrayDeque<SerialMessage>();
+    private final Map<SerialMessagePriority, LinkedHashMap<Integer, ArrayDeque<SerialMessage>>> priorityQueues = new HashMap<SerialMessagePriority, LinkedHashMap<Integer, ArrayDeque<SerialMessage>>>();
+    private final Map<Integer, NodeSchedule> nodeSchedules = new HashMap<Integer, NodeSchedule>();
+    private int queueLength = 0;
+
+    /**
+     * Defines the order in which nodes are considered - see {@link SerialMessage.SerialMessageComparator}
+     */
+    private enum NodeClass {
+        AWAKE,
+        LISTENING,
+        ANY
+    }
+
+    /**
+     * Constructor. Creates a new send queue for the controller.
+     *
+     * @param controller the {@link ZWaveController}
+     */
+    public ZWaveSendQueue(ZWaveController controller) {
+        this.controller = controller;
+        for (SerialMessagePriority priority : SerialMessagePriority.values()) {
+            priorityQueues.put(priority, new LinkedHashMap<Integer, ArrayDeque<SerialMessage>>());
+        }
+    }
+
+    /**
+     * Adds a message to the queue.
+     *
+     * @param serialMessage the {@link SerialMessage} to add
+     */
+    public synchronized void add(SerialMessage serialMessage) {
+        if (ZWaveSecurityCommandClass.isSecurityNonceReportMessage(serialMessage)) {
+            nonceQueue.add(serialMessage);
+        } else {
+            LinkedHashMap<Integer, ArrayDeque<SerialMessage>> nodeQueues = priorityQueues
+                    .get(serialMessage.getPriority());
+            ArrayDeque<SerialMessage> nodeQueue = nodeQueues.get(serialMessage.getMessageNode());
+            if (nodeQueue == null) {
+                nodeQueue = new ArrayDeque<SerialMessage>();
+                nodeQueues.put(serialMessage.getMessageNode(), nodeQueue);
+            } else if (serialMessage.getPriority() == SerialMessagePriority.Poll
+                    && nodeQueue.contains(serialMessage)) {
+                // The same poll is already waiting to be sent
+                logger.debug("NODE {}: Discarding duplicate poll message.", serialMessage.getMessageNode());
+                return;
+            }
+            nodeQueue.add(serialMessage);
+        }
+        queueLength++;
+        notifyAll();
+    }
+
+    /**
+     * Retrieves and removes the next message to send, waiting up to the specified time if no message is available.
+     *
+     * @param timeout the time to wait
+     * @param unit the {@link TimeUnit} of the timeout
+     * @return the next {@link SerialMessage} or null if the timeout expired
+     * @throws InterruptedException
+     */
+    public synchronized SerialMessage poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+        while (true) {
+            long now = System.currentTimeMillis();
+            SerialMessage serialMessage = selectNextMessage(now);
+            if (serialMessage != null) {
+                queueLength--;
+                return serialMessage;
+            }
+
+            long wait = Math.min(deadline, getNextQuarantineExpiry(now)) - now;
+            if (deadline <= now) {
+                return null;
+            }
+            wait(Math.max(1, wait));
+        }
+    }
+
+    /**
+     * Returns the number of messages in the queue that are available to be sent. Messages held for quarantined nodes
+     * are not included.
+     *
+     * @return the number of messages
+     */
+    public synchronized int size() {
+        int held = 0;
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Integer, NodeSchedule> entry : nodeSchedules.entrySet()) {
+            if (entry.getValue().isQuarantined(now)) {
+                held += getNodeQueueLength(entry.getKey());
+            }
+        }
+        return queueLength - held;
+    }
+
+    /**
+     * Removes all messages from the queue
+     */
+    public synchronized void clear() {
+        nonceQueue.clear();
+        for (LinkedHashMap<Integer, ArrayDeque<SerialMessage>> nodeQueues : priorityQueues.values()) {
+            nodeQueues.clear();
+        }
+        queueLength = 0;
+    }
+
+    /**
+     * Informs the queue that a transaction to the node has been started
+     *
+     * @param nodeId the node ID
+     */
+    public synchronized void transactionStarted(int nodeId) {
+        getNodeSchedule(nodeId).inFlight++;
+    }
+
+    /**
+     * Informs the queue that a transaction to the node has completed. This releases any messages held for the node,
+     * and updates the timeout statistics used to decide if the node should be quarantined.
+     *
+     * @param nodeId the node ID
+     * @param failed true if the transaction timed out or failed
+     */
+    public synchronized void transactionCompleted(int nodeId, boolean failed) {
+        NodeSchedule schedule = getNodeSchedule(nodeId);
+        if (schedule.inFlight > 0) {
+            schedule.inFlight--;
+        }
+
+        schedule.addOutcome(failed);
+        long now = System.currentTimeMillis();
+        if (!failed) {
+            // The node is responding, so it's out of quarantine
+            if (schedule.quarantineLevel != 0 && !schedule.dead) {
+                logger.debug("NODE {}: Transaction succeeded. Node released from quarantine.", nodeId);
+                schedule.quarantineUntil = 0;
+                schedule.quarantineLevel = 0;
+            }
+        } else if (!schedule.isQuarantined(now)
+                && (schedule.dead || schedule.getTimeoutRate() >= OUTCOME_TIMEOUT_THRESHOLD)) {
+            quarantine(nodeId, schedule, now);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Informs the queue of a change in the node state. DEAD and FAILED nodes are quarantined until they respond.
+     *
+     * @param nodeId the node ID
+     * @param dead true if the node is DEAD or FAILED
+     */
+    public synchronized void setNodeDead(int nodeId, boolean dead) {
+        NodeSchedule schedule = getNodeSchedule(nodeId);
+        if (schedule.dead == dead) {
+            return;
+        }
+        schedule.dead = dead;
+        if (dead) {
+            long now = System.currentTimeMillis();
+            if (!schedule.isQuarantined(now)) {
+                quarantine(nodeId, schedule, now);
+            }
+        } else {
+            logger.debug("NODE {}: Node is ALIVE. Node released from quarantine.", nodeId);
+            schedule.quarantineUntil = 0;
+            schedule.quarantineLevel = 0;
+            schedule.clearOutcomes();
+        }
+        notifyAll();
+    }
+
+    /**
+     * Returns true if the node is currently in quarantine
+     *
+     * @param nodeId the node ID
+     * @return true if messages to the node are being held
+     */
+    public synchronized boolean isNodeQuarantined(int nodeId) {
+        NodeSchedule schedule = nodeSchedules.get(nodeId);
+        return schedule != null && schedule.isQuarantined(System.currentTimeMillis());
+    }
+
+    private void quarantine(int nodeId, NodeSchedule schedule, long now) {
+        long period = Math.min(QUARANTINE_PERIOD_MAX, QUARANTINE_PERIOD_MIN << Math.min(schedule.quarantineLevel, 16));
+        schedule.quarantineUntil = now + period;
+        schedule.quarantineLevel++;
+        logger.debug("NODE {}: Node quarantined for {}ms (level {}).", nodeId, period, schedule.quarantineLevel);
+
+        // Polls will be regenerated when the node comes back, so don't hold them
+        ArrayDeque<SerialMessage> polls = priorityQueues.get(SerialMessagePriority.Poll).remove(nodeId);
+        if (polls != null) {
+            logger.debug("NODE {}: Discarding {} poll messages for quarantined node.", nodeId, polls.size());
+            queueLength -= polls.size();
+        }
+    }
+
+    private SerialMessage selectNextMessage(long now) {
+        // NONCE_REPORT trumps all
+        if (!nonceQueue.isEmpty()) {
+            return nonceQueue.poll();
+        }
+
+        for (NodeClass nodeClass : NodeClass.values()) {
+            for (SerialMessagePriority priority : SerialMessagePriority.values()) {
+                LinkedHashMap<Integer, ArrayDeque<SerialMessage>> nodeQueues = priorityQueues.get(priority);
+                Iterator<Map.Entry<Integer, ArrayDeque<SerialMessage>>> iterator = nodeQueues.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    Map.Entry<Integer, ArrayDeque<SerialMessage>> entry = iterator.next();
+                    ArrayDeque<SerialMessage> nodeQueue = entry.getValue();
+                    SerialMessage serialMessage = nodeQueue.peek();
+                    if (serialMessage == null) {
+                        iterator.remove();
+                        continue;
+                    }
+                    if (!isNodeClass(serialMessage, nodeClass) || !isSendable(serialMessage, now)) {
+                        continue;
+                    }
+
+                    // Move the node to the back of the queue for this priority
+                    nodeQueue.poll();
+                    iterator.remove();
+                    if (!nodeQueue.isEmpty()) {
+                        nodeQueues.put(entry.getKey(), nodeQueue);
+                    }
+                    return serialMessage;
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean isSendable(SerialMessage serialMessage, long now) {
+        if (!ZWaveTransaction.isPipelined(serialMessage)) {
+            return true;
+        }
+        NodeSchedule schedule = nodeSchedules.get(serialMessage.getMessageNode());
+        if (schedule == null) {
+            return true;
+        }
+        if (schedule.inFlight >= MAX_IN_FLIGHT_PER_NODE) {
+            return false;
+        }
+        return !schedule.isQuarantined(now) || isPingMessage(serialMessage);
+    }
+
+    private boolean isNodeClass(SerialMessage serialMessage, NodeClass nodeClass) {
+        if (nodeClass == NodeClass.ANY) {
+            return true;
+        }
+
+        boolean listening = true;
+        boolean awake = false;
+        if (serialMessage.getMessageClass() == SerialMessageClass.RequestNodeInfo
+                || serialMessage.getMessageClass() == SerialMessageClass.SendData) {
+            ZWaveNode node = controller.getNode(serialMessage.getMessageNode());
+            if (node != null && !node.isListening() && !node.isFrequentlyListening()) {
+                listening = false;
+                ZWaveWakeUpCommandClass wakeUpCommandClass = (ZWaveWakeUpCommandClass) node
+                        .getCommandClass(CommandClass.WAKE_UP);
+                awake = wakeUpCommandClass != null && wakeUpCommandClass.isAwake();
+            }
+        }
+
+        if (nodeClass == NodeClass.AWAKE) {
+            return awake;
+        }
+        return listening;
+    }
+
+    private boolean isPingMessage(SerialMessage serialMessage) {
+        byte[] payload = serialMessage.getMessagePayload();
+        return payload.length >= 3 && (payload[2] & 0xFF) == CommandClass.NO_OPERATION.getKey();
+    }
+
+    private long getNextQuarantineExpiry(long now) {
+        long expiry = Long.MAX_VALUE;
+        for (NodeSchedule schedule : nodeSchedules.values()) {
+            if (schedule.isQuarantined(now)) {
+                expiry = Math.min(expiry, schedule.quarantineUntil);
+            }
+        }
+        return expiry;
+    }
+
+    private int getNodeQueueLength(int nodeId) {
+        int length = 0;
+        for (LinkedHashMap<Integer, ArrayDeque<SerialMessage>> nodeQueues : priorityQueues.values()) {
+            ArrayDeque<SerialMessage> nodeQueue = nodeQueues.get(nodeId);
+            if (nodeQueue != null) {
+                length += nodeQueue.size();
+            }
+        }
+        return length;
+    }
+
+    private NodeSchedule getNodeSchedule(int nodeId) {
+        NodeSchedule schedule = nodeSchedules.get(nodeId);
+        if (schedule == null) {
+            schedule = new NodeSchedule();
+            nodeSchedules.put(nodeId, schedule);
+        }
+        return schedule;
+    }
+
+    /**
+     * Scheduling state for a single node
+     */
+    private static class NodeSchedule {
+        int inFlight = 0;
+        boolean dead = false;
+        long quarantineUntil = 0;
+        int quarantineLevel = 0;
+
+        // Bitmap of the most recent transaction outcomes - a set bit is a timeout
+        private int outcomes = 0;
+        private int outcomeCount = 0;
+
+        boolean isQuarantined(long now) {
+            return quarantineUntil > now;
+        }
+
+        void addOutcome(boolean failed) {
+            outcomes = ((outcomes << 1) | (failed ? 1 : 0)) & ((1 << OUTCOME_WINDOW) - 1);
+            if (outcomeCount < OUTCOME_WINDOW) {
+                outcomeCount++;
+            }
+        }
+
+        void clearOutcomes() {
+            outcomes = 0;
+            outcomeCount = 0;
+        }
+
+        /**
+         * Returns the percentage of recent transactions that timed out. Returns 0 until there are enough samples.
+         */
+        int getTimeoutRate() {
+            if (outcomeCount < OUTCOME_MIN_SAMPLES) {
+                return 0;
+            }
+            return Integer.bitCount(outcomes) * 100 / outcomeCount;
+        }
+    }
+}
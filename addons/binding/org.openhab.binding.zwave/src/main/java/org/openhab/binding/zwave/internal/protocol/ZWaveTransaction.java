@@ -0,0 +1,133 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.zwave.internal.protocol;
+
+import org.openhab.binding.zwave.internal.protocol.SerialMessage.SerialMessageClass;
+
+/**
+ * Holds the state of a single outstanding transaction with the controller.
+ * <p>
+ * A transaction starts when the request is written to the stick, and ends when the processor for one of the incoming
+ * frames flags it as complete, or when it times out. While the stick is still working on the request (ie until the
+ * RESPONSE, and for SendData the callback REQUEST, has been received) the transaction <i>owns the stick</i> and no
+ * further requests may be sent. Once the stick has released it, a SendData transaction is only waiting for the
+ * application reply from the node, and further requests to other nodes can be sent in parallel.
+ *
+ * @author agent
+ */
+public class ZWaveTransaction {
+    private final SerialMessage message;
+    private final long startTime;
+    private final long timeout;
+    private boolean stickReleased = false;
+
+    /**
+     * Creates a new transaction for the specified message.
+     *
+     * @param message the {@link SerialMessage} being sent
+     * @param timeout the time (in milliseconds) to wait for the transaction to complete
+     */
+    ZWaveTransaction(SerialMessage message, long timeout) {
+        this.message = message;
+        this.startTime = System.currentTimeMillis();
+        this.timeout = timeout;
+    }
+
+    /**
+     * Gets the message this transaction is for.
+     *
+     * @return the {@link SerialMessage}
+     */
+    public SerialMessage getMessage() {
+        return message;
+    }
+
+    /**
+     * Gets the destination node of the transaction
+     *
+     * @return the node ID, or 255 if the message isn't for a node
+     */
+    public int getNodeId() {
+        return message.getMessageNode();
+    }
+
+    /**
+     * Gets the callback ID used to correlate the SendData callback with this transaction
+     *
+     * @return the callback ID
+     */
+    public int getCallbackId() {
+        return message.getCallbackId();
+    }
+
+    /**
+     * Returns true if this transaction can run alongside other transactions. Only SendData requests are addressed to a
+     * single node and can be correlated by callback ID - everything else is a controller function that needs the stick
+     * to itself.
+     *
+     * @return true if the transaction may be pipelined
+     */
+    public boolean isPipelined() {
+        return isPipelined(message);
+    }
+
+    static boolean isPipelined(SerialMessage message) {
+        return message.getMessageClass() == SerialMessageClass.SendData && message.getMessageNode() != 255;
+    }
+
+    /**
+     * Returns true once the stick has finished processing the request. For SendData this is when the callback
+     * has been received, for all other requests it is only when the transaction completes.
+     *
+     * @return true if the stick can accept another request
+     */
+    public boolean isStickReleased() {
+        if (stickReleased) {
+            return true;
+        }
+        if (isPipelined() && !message.isAckPending()) {
+            stickReleased = true;
+        }
+        return stickReleased;
+    }
+
+    /**
+     * Gets the time the request was sent to the stick
+     *
+     * @return the start time in milliseconds
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Gets the time at which this transaction will time out
+     *
+     * @return the deadline in milliseconds
+     */
+    public long getDeadline() {
+        return startTime + timeout;
+    }
+
+    /**
+     * Returns true if the transaction has timed out
+     *
+     * @param now the current time in milliseconds
+     * @return true if the transaction has expired
+     */
+    public boolean isExpired(long now) {
+        return now >= getDeadline();
+    }
+
+    @Override
+    public String toString() {
+        return "ZWaveTransaction [node=" + getNodeId() + ", callbackId=" + getCallbackId() + ", class="
+                + message.getMessageClass() + ", stickReleased=" + stickReleased + "]";
+    }
+}
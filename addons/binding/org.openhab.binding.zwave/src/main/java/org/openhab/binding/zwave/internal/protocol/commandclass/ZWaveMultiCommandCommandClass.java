@@ -8,7 +8,12 @@
  */
 package org.openhab.binding.zwave.internal.protocol.commandclass;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.openhab.binding.zwave.internal.protocol.SerialMessage;
+import org.openhab.binding.zwave.internal.protocol.SerialMessage.SerialMessageClass;
+import org.openhab.binding.zwave.internal.protocol.SerialMessage.SerialMessageType;
 import org.openhab.binding.zwave.internal.protocol.ZWaveSerialMessageException;
 import org.openhab.binding.zwave.internal.protocol.ZWaveController;
 import org.openhab.binding.zwave.internal.protocol.ZWaveEndpoint;
@@ -32,6 +37,9 @@ public class ZWaveMultiCommandCommandClass extends ZWaveCommandClass {
 
     private static final int MULTI_COMMMAND_ENCAP = 0x01;
 
+    // Maximum size of the encapsulated commands so that the frame fits in a single Z-Wave frame
+    private static final int MULTI_COMMAND_MAX_LENGTH = 40;
+
     /**
      * Creates a new instance of the ZWaveMultiCommandCommandClass class.
      *
@@ -124,4 +132,76 @@ public class ZWaveMultiCommandCommandClass extends ZWaveCommandClass {
             offset += serialMessage.getMessagePayloadByte(offset) + 1;
         }
     }
+
+    /**
+     * Gets the messages required to send a list of commands to the node using the minimum number of frames. Commands
+     * are combined into MULTI_CMD encapsulation frames, up to the maximum frame size. If a frame would only contain a
+     * single command, the original message is used.
+     * <p>
+     * All messages must be SendData messages destined for this node, and must not require security encapsulation.
+     *
+     * @param serialMessages the messages to combine
+     * @return the list of messages to send
+     */
+    public List<SerialMessage> getMultiCommandEncapMessages(List<SerialMessage> serialMessages) {
+        List<SerialMessage> result = new ArrayList<SerialMessage>();
+        List<SerialMessage> frame = new ArrayList<SerialMessage>();
+        int frameLength = 0;
+
+        for (SerialMessage serialMessage : serialMessages) {
+            // The SendData payload is the node ID and the command length, followed by the command
+            int commandLength = serialMessage.getMessagePayload().length - 2;
+            if (commandLength <= 0) {
+                result.add(serialMessage);
+                continue;
+            }
+
+            if (frameLength + commandLength + 1 > MULTI_COMMAND_MAX_LENGTH) {
+                addMultiCommandEncapFrame(result, frame);
+                frame.clear();
+                frameLength = 0;
+            }
+            frame.add(serialMessage);
+            frameLength += commandLength + 1;
+        }
+        addMultiCommandEncapFrame(result, frame);
+
+        return result;
+    }
+
+    private void addMultiCommandEncapFrame(List<SerialMessage> result, List<SerialMessage> frame) {
+        if (frame.isEmpty()) {
+            return;
+        }
+        if (frame.size() == 1) {
+            result.add(frame.get(0));
+            return;
+        }
+
+        int length = 3;
+        for (SerialMessage serialMessage : frame) {
+            length += serialMessage.getMessagePayload().length - 1;
+        }
+
+        logger.debug("NODE {}: Creating new message for application command MULTI_COMMMAND_ENCAP with {} commands",
+                this.getNode().getNodeId(), frame.size());
+        byte[] newPayload = new byte[length + 2];
+        int offset = 0;
+        newPayload[offset++] = (byte) this.getNode().getNodeId();
+        newPayload[offset++] = (byte) length;
+        newPayload[offset++] = (byte) getCommandClass().getKey();
+        newPayload[offset++] = (byte) MULTI_COMMMAND_ENCAP;
+        newPayload[offset++] = (byte) frame.size();
+        for (SerialMessage serialMessage : frame) {
+            byte[] payload = serialMessage.getMessagePayload();
+            newPayload[offset++] = (byte) (payload.length - 2);
+            System.arraycopy(payload, 2, newPayload, offset, payload.length - 2);
+            offset += payload.length - 2;
+        }
+
+        SerialMessage message = new SerialMessage(this.getNode().getNodeId(), SerialMessageClass.SendData,
+                SerialMessageType.Request, SerialMessageClass.ApplicationCommandHandler, frame.get(0).getPriority());
+        message.setMessagePayload(newPayload);
+        result.add(message);
+    }
 }
@@ -19,6 +19,7 @@ import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
@@ -35,7 +36,6 @@ import org.openhab.binding.zwave.internal.protocol.ZWaveEndpoint;
 import org.openhab.binding.zwave.internal.protocol.ZWaveNode;
 import org.openhab.binding.zwave.internal.protocol.event.ZWaveInclusionEvent;
 import org.openhab.binding.zwave.internal.protocol.event.ZWaveInclusionEvent.Type;
-import org.openhab.binding.zwave.internal.protocol.initialization.ZWaveNodeSerializer;
 import org.openhab.binding.zwave.internal.protocol.security.SecurityEncapsulatedSerialMessage;
 import org.openhab.binding.zwave.internal.protocol.security.ZWaveSecureNonceTracker;
 import org.openhab.binding.zwave.internal.protocol.security.ZWaveSecureNonceTracker.Nonce;
@@ -289,6 +289,35 @@ public abstract class ZWaveSecurityCommandClass extends ZWaveCommandClass {
     @XStreamOmitField
     private long lastDeviceNonceReceivedAt = 0L;
 
+    /**
+     * Cipher instances used by {@link ZWaveSecurityEncapsulationThread} to encapsulate outgoing frames.
+     * Created on first use and rebuilt whenever the keys change
+     */
+    @XStreamOmitField
+    private volatile CipherContext transmitCipherContext;
+
+    /**
+     * Cipher instances used to decrypt incoming frames. These are separate from {@link #transmitCipherContext}
+     * since incoming frames are processed by the receive thread
+     */
+    @XStreamOmitField
+    private volatile CipherContext receiveCipherContext;
+
+    @XStreamOmitField
+    private AtomicLong framesEncapsulated = new AtomicLong();
+
+    @XStreamOmitField
+    private AtomicLong framesDecrypted = new AtomicLong();
+
+    @XStreamOmitField
+    private AtomicLong encapsulationTimeTotal = new AtomicLong();
+
+    @XStreamOmitField
+    private AtomicLong decryptionTimeTotal = new AtomicLong();
+
+    @XStreamOmitField
+    private AtomicLong sendLatencyTotal = new AtomicLong();
+
     // TODO: DB serialize
     /**
      * Flag to disable the use of {@link #SECURITY_MESSAGE_ENCAP_NONCE_GET}
@@ -497,14 +526,16 @@ public abstract class ZWaveSecurityCommandClass extends ZWaveCommandClass {
 
             byte[] macFromPacket = new byte[MAC_LENGTH];
             bais.read(macFromPacket);
-            Cipher cipher = Cipher.getInstance("AES/OFB/NoPadding");
-            cipher.init(Cipher.DECRYPT_MODE, encryptKey, new IvParameterSpec(initializationVector));
-            byte[] plaintextBytes = cipher.doFinal(ciphertextBytes);
+            long cryptoStart = System.nanoTime();
+            CipherContext cipherContext = getReceiveCipherContext();
+            byte[] plaintextBytes = cipherContext.crypt(Cipher.DECRYPT_MODE, initializationVector, ciphertextBytes);
             traceHex("plaintextBytes", plaintextBytes);
 
             byte driverNodeId = (byte) this.getController().getOwnNodeId();
-            byte[] mac = generateMAC(command, ciphertextBytes, (byte) this.getNode().getNodeId(), driverNodeId,
-                    initializationVector);
+            byte[] mac = generateMAC(cipherContext, command, ciphertextBytes, (byte) this.getNode().getNodeId(),
+                    driverNodeId, initializationVector);
+            framesDecrypted.incrementAndGet();
+            decryptionTimeTotal.addAndGet(System.nanoTime() - cryptoStart);
             if (Arrays.equals(mac, macFromPacket)) {
                 logger.trace("NODE {}: MAC Authentication of packet verified OK", this.getNode().getNodeId());
             } else {
@@ -608,6 +639,19 @@ public abstract class ZWaveSecurityCommandClass extends ZWaveCommandClass {
         // Finally, since we've cleanup duplicates and removed old entries, we can add the new frame{s} to our queue
         payloadEncapsulationQueue.addAll(securityPayloadFrameList);
 
+        // If the frame in flight won't bring a nonce back with its reply, request the nonce for the new frame now so
+        // it is in the pool by the time that transaction completes. During inclusion frames are sent one at a time.
+        SecurityEncapsulatedSerialMessage inFlight = lastEncapsulatedRequstMessage;
+        if (encapsulationThread != null && inFlight != null
+                && !bytesAreEqual(inFlight.getMessagePayload()[3], SECURITY_MESSAGE_ENCAP_NONCE_GET)) {
+            SerialMessage nonceGetMessage = nonceGeneration.buildNonceRefillIfNeeded();
+            if (nonceGetMessage != null) {
+                logger.debug("NODE {}: Requesting nonce for frame queued behind {}", getNode().getNodeId(),
+                        inFlight);
+                transmitMessage(nonceGetMessage);
+            }
+        }
+
         // Wake up the {@link ZWaveSecurityEncapsulationThread} so it can do what it needs to
         notifyEncapsulationThread();
     }
@@ -746,9 +790,10 @@ public abstract class ZWaveSecurityCommandClass extends ZWaveCommandClass {
             traceHex("IV:", initializationVector);
 
             // This will use hardware AES acceleration when possible (default in JDK 8)
-            Cipher encryptCipher = Cipher.getInstance("AES/OFB/NoPadding");
-            encryptCipher.init(Cipher.ENCRYPT_MODE, encryptKey, new IvParameterSpec(initializationVector));
-            byte[] ciphertextBytes = encryptCipher.doFinal(plaintextMessageBytes);
+            long cryptoStart = System.nanoTime();
+            CipherContext cipherContext = getTransmitCipherContext();
+            byte[] ciphertextBytes = cipherContext.crypt(Cipher.ENCRYPT_MODE, initializationVector,
+                    plaintextMessageBytes);
             traceHex("Encrypted Output", ciphertextBytes);
             baos.write(ciphertextBytes);
             // Append the nonce identifier which is the first byte of the device nonce
@@ -759,8 +804,9 @@ public abstract class ZWaveSecurityCommandClass extends ZWaveCommandClass {
             System.arraycopy(baos.toByteArray(), commandClassByteOffset, toMac, 0, toMacLength);
             // Generate the MAC
             byte sendingNode = (byte) this.getController().getOwnNodeId();
-            byte[] mac = generateMAC(commandByte, ciphertextBytes, sendingNode, (byte) getNode().getNodeId(),
-                    initializationVector);
+            byte[] mac = generateMAC(cipherContext, commandByte, ciphertextBytes, sendingNode,
+                    (byte) getNode().getNodeId(), initializationVector);
+            long cryptoTime = System.nanoTime() - cryptoStart;
             traceHex("Auth mac", mac);
             baos.write(mac);
             byte[] payload = baos.toByteArray();
@@ -771,6 +817,23 @@ public abstract class ZWaveSecurityCommandClass extends ZWaveCommandClass {
             message.setSecurityPayload(securityPayload);
             lastEncapsulatedRequstMessage = message;
             transmitMessage(message);
+
+            long sendLatency = System.currentTimeMillis() - securityPayload.getCreatedTime();
+            framesEncapsulated.incrementAndGet();
+            encapsulationTimeTotal.addAndGet(cryptoTime);
+            sendLatencyTotal.addAndGet(sendLatency);
+            logger.debug("NODE {}: Secure frame sent {}ms after being queued, encapsulated in {}us",
+                    getNode().getNodeId(), sendLatency, TimeUnit.NANOSECONDS.toMicros(cryptoTime));
+
+            // If more frames are waiting and the device won't send a nonce with its reply, request the next
+            // nonce now so it's in the pool by the time this transaction completes
+            if (commandByte == SECURITY_MESSAGE_ENCAP && !payloadEncapsulationQueue.isEmpty()) {
+                SerialMessage nonceGetMessage = nonceGeneration.buildNonceRefillIfNeeded();
+                if (nonceGetMessage != null) {
+                    logger.debug("NODE {}: Requesting nonce for next queued frame", getNode().getNodeId());
+                    transmitMessage(nonceGetMessage);
+                }
+            }
         } catch (GeneralSecurityException e) {
             logger.error("NODE {}: Error in sendNextMessageWithNonce, message not sent", e);
         } catch (IOException e) {
@@ -792,6 +855,49 @@ public abstract class ZWaveSecurityCommandClass extends ZWaveCommandClass {
         if (payloadEncapsulationQueue == null) {
             payloadEncapsulationQueue = new ConcurrentLinkedQueue<ZWaveSecurityPayloadFrame>();
         }
+        if (framesEncapsulated == null) {
+            framesEncapsulated = new AtomicLong();
+            framesDecrypted = new AtomicLong();
+            encapsulationTimeTotal = new AtomicLong();
+            decryptionTimeTotal = new AtomicLong();
+            sendLatencyTotal = new AtomicLong();
+        }
+    }
+
+    /**
+     * @return the {@link CipherContext} for outgoing frames, rebuilt if the keys have changed
+     */
+    private CipherContext getTransmitCipherContext() throws GeneralSecurityException {
+        CipherContext context = transmitCipherContext;
+        if (context == null || !context.usesKeys(encryptKey, authKey)) {
+            context = new CipherContext(encryptKey, authKey);
+            transmitCipherContext = context;
+        }
+        return context;
+    }
+
+    /**
+     * @return the {@link CipherContext} for incoming frames, rebuilt if the keys have changed
+     */
+    private CipherContext getReceiveCipherContext() throws GeneralSecurityException {
+        CipherContext context = receiveCipherContext;
+        if (context == null || !context.usesKeys(encryptKey, authKey)) {
+            context = new CipherContext(encryptKey, authKey);
+            receiveCipherContext = context;
+        }
+        return context;
+    }
+
+    /**
+     * Gets the figures of the secure frames exchanged with this node since the binding was started
+     *
+     * @return a snapshot of the {@link Statistics}
+     */
+    public Statistics getStatistics() {
+        checkInit();
+        return new Statistics(framesEncapsulated.get(), framesDecrypted.get(), sendLatencyTotal.get(),
+                encapsulationTimeTotal.get(), decryptionTimeTotal.get(), nonceGeneration.getNonceHits(),
+                nonceGeneration.getNonceMisses(), nonceGeneration.getAverageNonceRoundTrip());
     }
 
     public void startSecurityEncapsulationThread() {
@@ -858,6 +964,12 @@ public abstract class ZWaveSecurityCommandClass extends ZWaveCommandClass {
      */
     byte[] generateMAC(byte commandClass, byte[] ciphertext, byte sendingNode, byte receivingNode, byte[] iv)
             throws GeneralSecurityException {
+        return generateMAC(new CipherContext(encryptKey, authKey), commandClass, ciphertext, sendingNode,
+                receivingNode, iv);
+    }
+
+    private byte[] generateMAC(CipherContext cipherContext, byte commandClass, byte[] ciphertext, byte sendingNode,
+            byte receivingNode, byte[] iv) throws GeneralSecurityException {
         traceHex("generateMAC ciphertext", ciphertext);
         traceHex("generateMAC iv", iv);
         // Build a buffer containing a 4-byte header and the encrypted message data, padded with zeros to a 16-byte
@@ -874,9 +986,8 @@ public abstract class ZWaveSecurityCommandClass extends ZWaveCommandClass {
         traceHex("generateMAC NetworkKey", networkKey.getEncoded());
         traceHex("generateMAC Raw Auth (minus IV)", buffer);
 
-        // Encrypt the IV with ECB
-        Cipher encryptCipher = Cipher.getInstance("AES/ECB/NoPadding");
-        encryptCipher.init(Cipher.ENCRYPT_MODE, authKey);
+        // Encrypt the IV with ECB. The cipher is reset after each doFinal so it doesn't need to be initialised again
+        Cipher encryptCipher = cipherContext.getAuthCipher();
         tempAuth = encryptCipher.doFinal(iv);
         traceHex("generateMAC tmp1", tempAuth);
         // our temporary holding
@@ -899,7 +1010,6 @@ public abstract class ZWaveSecurityCommandClass extends ZWaveCommandClass {
                 // reset our block counter back to 0
                 block = 0;
 
-                encryptCipher.init(Cipher.ENCRYPT_MODE, authKey);
                 tempAuth = encryptCipher.doFinal(tempAuth);
             }
         }
@@ -911,7 +1021,6 @@ public abstract class ZWaveSecurityCommandClass extends ZWaveCommandClass {
                 tempAuth[i] = (byte) (encpck[i] ^ tempAuth[i]);
             }
 
-            encryptCipher.init(Cipher.ENCRYPT_MODE, authKey);
             tempAuth = encryptCipher.doFinal(tempAuth);
         }
         // we only care about the first 8 bytes of tempAuth as the mac
@@ -1141,6 +1250,39 @@ public abstract class ZWaveSecurityCommandClass extends ZWaveCommandClass {
         return result;
     }
 
+    /**
+     * Holds the AES cipher instances for one direction of traffic so they are created once rather than for every
+     * frame. The OFB cipher still needs to be initialised with each IV, but the ECB cipher used for the MAC is
+     * initialised once with the auth key. Instances are not thread safe, so each thread must use its own context.
+     */
+    private static class CipherContext {
+        private final SecretKey encryptKey;
+        private final SecretKey authKey;
+        private final Cipher cryptCipher;
+        private final Cipher authCipher;
+
+        private CipherContext(SecretKey encryptKey, SecretKey authKey) throws GeneralSecurityException {
+            this.encryptKey = encryptKey;
+            this.authKey = authKey;
+            cryptCipher = Cipher.getInstance("AES/OFB/NoPadding");
+            authCipher = Cipher.getInstance("AES/ECB/NoPadding");
+            authCipher.init(Cipher.ENCRYPT_MODE, authKey);
+        }
+
+        private boolean usesKeys(SecretKey encryptKey, SecretKey authKey) {
+            return this.encryptKey == encryptKey && this.authKey == authKey;
+        }
+
+        private byte[] crypt(int mode, byte[] iv, byte[] input) throws GeneralSecurityException {
+            cryptCipher.init(mode, encryptKey, new IvParameterSpec(iv));
+            return cryptCipher.doFinal(input);
+        }
+
+        private Cipher getAuthCipher() {
+            return authCipher;
+        }
+    }
+
     /**
      * Security encapsulation thread. This waits for 1) a device nonce to arrive
      * and 2) the last transaction to be completed. It will then use the device
@@ -1231,7 +1373,7 @@ public abstract class ZWaveSecurityCommandClass extends ZWaveCommandClass {
                                     logger.error("NODE {}: SECURITY_MESSAGE_ENCAP_NONCE_GET disabled",
                                             getNode().getNodeId());
                                     // Save the setting so we remember
-                                    new ZWaveNodeSerializer().SerializeNode(getNode());
+                                    getController().getNodeSerializer().SerializeNode(getNode());
                                 }
                             }
                             lastEncapsulatedRequstMessage = null;
@@ -1255,4 +1397,96 @@ public abstract class ZWaveSecurityCommandClass extends ZWaveCommandClass {
             }
         }
     }
+
+    /**
+     * Figures of the secure frames exchanged with a node
+     */
+    public static class Statistics {
+        private final long framesSent;
+        private final long framesReceived;
+        private final long sendLatencyTotal;
+        private final long encapsulationTimeTotal;
+        private final long decryptionTimeTotal;
+        private final long nonceHits;
+        private final long nonceMisses;
+        private final long averageNonceRoundTrip;
+
+        Statistics(long framesSent, long framesReceived, long sendLatencyTotal, long encapsulationTimeTotal,
+                long decryptionTimeTotal, long nonceHits, long nonceMisses, long averageNonceRoundTrip) {
+            this.framesSent = framesSent;
+            this.framesReceived = framesReceived;
+            this.sendLatencyTotal = sendLatencyTotal;
+            this.encapsulationTimeTotal = encapsulationTimeTotal;
+            this.decryptionTimeTotal = decryptionTimeTotal;
+            this.nonceHits = nonceHits;
+            this.nonceMisses = nonceMisses;
+            this.averageNonceRoundTrip = averageNonceRoundTrip;
+        }
+
+        /**
+         * @return the number of frames that have been encapsulated and sent
+         */
+        public long getFramesSent() {
+            return framesSent;
+        }
+
+        /**
+         * @return the number of frames that have been decrypted
+         */
+        public long getFramesReceived() {
+            return framesReceived;
+        }
+
+        /**
+         * @return the average time in milliseconds from a frame being queued until it is sent, or 0 if none sent
+         */
+        public long getAverageSendLatency() {
+            return framesSent == 0 ? 0 : sendLatencyTotal / framesSent;
+        }
+
+        /**
+         * @return the average time in microseconds to encrypt and MAC an outgoing frame, or 0 if none sent
+         */
+        public long getAverageEncapsulationTime() {
+            return framesSent == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(encapsulationTimeTotal / framesSent);
+        }
+
+        /**
+         * @return the average time in microseconds to decrypt and authenticate an incoming frame, or 0 if none
+         *         received
+         */
+        public long getAverageDecryptionTime() {
+            return framesReceived == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(decryptionTimeTotal / framesReceived);
+        }
+
+        /**
+         * @return the number of sends that found a useable device nonce in the pool
+         */
+        public long getNonceHits() {
+            return nonceHits;
+        }
+
+        /**
+         * @return the number of sends that had to wait for a nonce to be requested from the device
+         */
+        public long getNonceMisses() {
+            return nonceMisses;
+        }
+
+        /**
+         * @return the average time in milliseconds between requesting a nonce and receiving it, or 0 if none
+         *         received
+         */
+        public long getAverageNonceRoundTrip() {
+            return averageNonceRoundTrip;
+        }
+
+        @Override
+        public String toString() {
+            return "sent=" + framesSent + ", received=" + framesReceived + ", sendLatency="
+                    + getAverageSendLatency() + "ms, encapsulation=" + getAverageEncapsulationTime()
+                    + "us, decryption=" + getAverageDecryptionTime() + "us, nonceHits=" + nonceHits
+                    + ", nonceMisses=" + nonceMisses + ", nonceRoundTrip=" + averageNonceRoundTrip + "ms";
+        }
+    }
 }
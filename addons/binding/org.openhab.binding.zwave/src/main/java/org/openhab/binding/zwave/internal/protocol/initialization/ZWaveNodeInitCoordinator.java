@@ -0,0 +1,219 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.zwave.internal.protocol.initialization;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coordinates the initialisation of all nodes on the network.
+ * <p>
+ * Each node is initialised by its own {@link ZWaveNodeStageAdvancer}, and all advancers run at the same time. To
+ * stop them flooding the network, an advancer must hold one of a limited number of slots while it has a message
+ * outstanding. When the message completes the slot is passed to the next waiting advancer, so all nodes make
+ * progress in turn. Only listening nodes take part - messages to battery nodes are held in the wake-up queue until
+ * the node wakes up, so they would hold a slot while the node sleeps and could stall every other node.
+ * <p>
+ * The coordinator also tracks how many nodes have completed initialisation, and provides an estimate of the time
+ * until the remaining nodes are complete.
+ *
+ * @author agent
+ */
+public class ZWaveNodeInitCoordinator {
+    private static final Logger logger = LoggerFactory.getLogger(ZWaveNodeInitCoordinator.class);
+
+    private final int maxActive;
+
+    private final Set<ZWaveNodeStageAdvancer> active = new HashSet<ZWaveNodeStageAdvancer>();
+    private final ArrayDeque<ZWaveNodeStageAdvancer> waiting = new ArrayDeque<ZWaveNodeStageAdvancer>();
+
+    private final Map<Integer, Long> nodeStartTime = new HashMap<Integer, Long>();
+    private final Map<Integer, Long> nodeCompleteTime = new HashMap<Integer, Long>();
+    private long firstStartTime = 0;
+
+    private Timer timer = null;
+    private boolean shutdown = false;
+
+    /**
+     * Creates the coordinator
+     *
+     * @param maxActive the maximum number of nodes that can have initialisation messages outstanding at once
+     */
+    public ZWaveNodeInitCoordinator(int maxActive) {
+        this.maxActive = Math.max(1, maxActive);
+    }
+
+    /**
+     * Called by an advancer before it sends a message. If a slot is available, the advancer is given it and can
+     * send. Otherwise the advancer is queued, and will be restarted once a slot is free.
+     *
+     * @param advancer the {@link ZWaveNodeStageAdvancer} wanting to send
+     * @return true if the advancer holds a slot and can send
+     */
+    synchronized boolean acquire(ZWaveNodeStageAdvancer advancer) {
+        if (active.contains(advancer)) {
+            return true;
+        }
+
+        if (active.size() < maxActive && waiting.isEmpty()) {
+            active.add(advancer);
+            return true;
+        }
+
+        if (!shutdown && !waiting.contains(advancer)) {
+            waiting.add(advancer);
+            logger.debug("NODE {}: Node initialisation waiting for slot. {} active, {} waiting.",
+                    advancer.getNodeId(), active.size(), waiting.size());
+        }
+        return false;
+    }
+
+    /**
+     * Called by an advancer once it no longer has a message outstanding. The slot is passed to the next waiting
+     * advancer.
+     *
+     * @param advancer the {@link ZWaveNodeStageAdvancer} releasing its slot
+     */
+    void release(ZWaveNodeStageAdvancer advancer) {
+        final ZWaveNodeStageAdvancer next;
+        final Timer wakeTimer;
+        synchronized (this) {
+            waiting.remove(advancer);
+            if (!active.remove(advancer)) {
+                return;
+            }
+
+            next = waiting.poll();
+            if (next == null || shutdown) {
+                return;
+            }
+            active.add(next);
+
+            // Restart the waiting advancer from the timer so we don't recurse through the advancer
+            if (timer == null) {
+                timer = new Timer("ZWaveNodeInitCoordinator", true);
+            }
+            wakeTimer = timer;
+        }
+
+        logger.debug("NODE {}: Node initialisation slot passed to node {}", advancer.getNodeId(), next.getNodeId());
+        wakeTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                next.advanceNodeStage(null);
+            }
+        }, 0);
+    }
+
+    /**
+     * Stops passing slots to waiting advancers and cancels the timer. Called when the controller is shut down.
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+        waiting.clear();
+        active.clear();
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+    }
+
+    /**
+     * Records the start of initialisation for a node
+     *
+     * @param nodeId the node starting initialisation
+     */
+    synchronized void nodeStarted(int nodeId) {
+        long now = System.currentTimeMillis();
+        if (nodeStartTime.isEmpty() || nodeCompleteTime.size() == nodeStartTime.size()) {
+            firstStartTime = now;
+        }
+        nodeStartTime.put(nodeId, now);
+        nodeCompleteTime.remove(nodeId);
+    }
+
+    /**
+     * Records the completion of initialisation for a node
+     *
+     * @param nodeId the node that has completed initialisation
+     */
+    void nodeCompleted(int nodeId) {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Long start = nodeStartTime.get(nodeId);
+            if (start == null || nodeCompleteTime.containsKey(nodeId)) {
+                return;
+            }
+            nodeCompleteTime.put(nodeId, now);
+
+            if (getNodesComplete() == getNodesTotal()) {
+                logger.info("Initialisation of {} nodes complete in {}ms", getNodesTotal(), now - firstStartTime);
+            } else {
+                logger.debug("NODE {}: Initialisation complete in {}ms. {}/{} nodes complete, {}ms remaining.",
+                        nodeId, now - start, getNodesComplete(), getNodesTotal(), getEstimatedTimeRemaining());
+            }
+        }
+    }
+
+    /**
+     * Gets the number of nodes that have started initialisation
+     *
+     * @return number of nodes
+     */
+    public synchronized int getNodesTotal() {
+        return nodeStartTime.size();
+    }
+
+    /**
+     * Gets the number of nodes that have completed initialisation
+     *
+     * @return number of nodes
+     */
+    public synchronized int getNodesComplete() {
+        return nodeCompleteTime.size();
+    }
+
+    /**
+     * Gets the proportion of nodes that have completed initialisation
+     *
+     * @return progress between 0 and 1
+     */
+    public synchronized double getProgress() {
+        if (nodeStartTime.isEmpty()) {
+            return 1;
+        }
+        return (double) nodeCompleteTime.size() / nodeStartTime.size();
+    }
+
+    /**
+     * Estimates the time until all nodes have completed initialisation, based on the rate at which nodes have
+     * completed so far.
+     *
+     * @return the estimated time in milliseconds, or -1 if no estimate is available yet
+     */
+    public synchronized long getEstimatedTimeRemaining() {
+        int complete = nodeCompleteTime.size();
+        int remaining = nodeStartTime.size() - complete;
+        if (remaining == 0) {
+            return 0;
+        }
+        if (complete == 0) {
+            return -1;
+        }
+        return (System.currentTimeMillis() - firstStartTime) * remaining / complete;
+    }
+}
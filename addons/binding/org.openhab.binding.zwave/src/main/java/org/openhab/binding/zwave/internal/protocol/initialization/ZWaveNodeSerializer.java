@@ -9,13 +9,15 @@
 package org.openhab.binding.zwave.internal.protocol.initialization;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.eclipse.smarthome.config.core.ConfigConstants;
 import org.openhab.binding.zwave.ZWaveBindingConstants;
@@ -28,27 +30,46 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.thoughtworks.xstream.XStream;
-import com.thoughtworks.xstream.io.xml.PrettyPrintWriter;
+import com.thoughtworks.xstream.XStreamException;
+import com.thoughtworks.xstream.io.binary.BinaryStreamReader;
+import com.thoughtworks.xstream.io.binary.BinaryStreamWriter;
 import com.thoughtworks.xstream.io.xml.StaxDriver;
 
 /**
- * ZWaveNodeSerializer class. Serializes nodes to XML and back again.
+ * ZWaveNodeSerializer class. Serializes nodes to the {@link ZWaveNodeStore} and back again.
+ * <p>
+ * Nodes are serialised using the XStream binary format, which is much more compact and faster to parse than XML.
+ * Previous versions of the binding saved each node in its own XML file. These are migrated into the store the first
+ * time it is created, and renamed so they aren't used again.
  *
  * @author Chris Jackson
  * @author Jan-Willem Spuij
  */
 public class ZWaveNodeSerializer {
     private static final Logger logger = LoggerFactory.getLogger(ZWaveNodeSerializer.class);
+    private static final Pattern XML_FILE_PATTERN = Pattern.compile("node(\\d+)\\.xml");
+    private static final String XML_MIGRATED_EXTENSION = ".migrated";
+
     private final XStream stream = new XStream(new StaxDriver());
     private final String folderName;
+    private final ZWaveNodeStore store;
 
     /**
-     * Constructor. Creates a new instance of the {@link ZWaveNodeSerializer} class.
+     * Constructor. Creates a new instance of the {@link ZWaveNodeSerializer} class using the default folder.
      */
     public ZWaveNodeSerializer() {
+        this(ConfigConstants.getUserDataFolder() + "/" + ZWaveBindingConstants.BINDING_ID);
+    }
+
+    /**
+     * Constructor. Creates a new instance of the {@link ZWaveNodeSerializer} class using the specified folder.
+     *
+     * @param folderName the folder holding the node store
+     */
+    public ZWaveNodeSerializer(String folderName) {
         logger.trace("Initializing ZWaveNodeSerializer.");
 
-        folderName = ConfigConstants.getUserDataFolder() + "/" + ZWaveBindingConstants.BINDING_ID;
+        this.folderName = folderName;
 
         final File folder = new File(folderName);
 
@@ -78,11 +99,94 @@ public class ZWaveNodeSerializer {
                 stream.processAnnotations(inner);
             }
         }
+
+        store = ZWaveNodeStore.getStore(folderName);
+        synchronized (store) {
+            migrateXmlFiles();
+        }
         logger.trace("Initialized ZWaveNodeSerializer.");
     }
 
     /**
-     * Serializes an XML tree of a {@link ZWaveNode}
+     * Moves the nodes saved in the old XML files into the store. Once a node has been migrated, its XML file is
+     * renamed so it is kept as a backup but isn't migrated again. This runs every time the serializer is created, so
+     * files that couldn't be migrated, or were copied into the folder later, are picked up. A node that is already
+     * in the store is not overwritten.
+     */
+    private void migrateXmlFiles() {
+        File[] files = new File(folderName).listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return XML_FILE_PATTERN.matcher(name).matches();
+            }
+        });
+        if (files == null || files.length == 0) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        int migrated = 0;
+        for (File file : files) {
+            Matcher matcher = XML_FILE_PATTERN.matcher(file.getName());
+            if (!matcher.matches()) {
+                continue;
+            }
+            int nodeId = Integer.parseInt(matcher.group(1));
+
+            ZWaveNode node = readXmlFile(nodeId, file);
+            if (node == null) {
+                continue;
+            }
+
+            byte[] data = marshal(node);
+            if (data == null || (store.get(nodeId) == null && !store.put(nodeId, data))) {
+                continue;
+            }
+
+            if (!file.renameTo(new File(folderName, file.getName() + XML_MIGRATED_EXTENSION))) {
+                logger.warn("NODE {}: Unable to rename {} after migration", nodeId, file.getPath());
+            }
+            migrated++;
+        }
+        logger.info("Migrated {} of {} nodes to node store in {}ms", migrated, files.length,
+                System.currentTimeMillis() - start);
+    }
+
+    private ZWaveNode readXmlFile(int nodeId, File file) {
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            return (ZWaveNode) stream.fromXML(reader);
+        } catch (IOException e) {
+            logger.error("NODE {}: Error migrating from file: {}", nodeId, e.getMessage());
+        } catch (XStreamException e) {
+            logger.error("NODE {}: Error migrating from file: {}", nodeId, e.getMessage());
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+        return null;
+    }
+
+    private byte[] marshal(ZWaveNode node) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        BinaryStreamWriter writer = new BinaryStreamWriter(output);
+        try {
+            stream.marshal(node, writer);
+            writer.flush();
+            return output.toByteArray();
+        } catch (XStreamException e) {
+            logger.error("NODE {}: Error serializing node: {}", node.getNodeId(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Serializes a {@link ZWaveNode} to the store. The node is only written if it has changed since it was last saved.
      *
      * @param node
      *            the node to serialize
@@ -97,30 +201,17 @@ public class ZWaveNodeSerializer {
                 return;
             }
 
-            File file = new File(this.folderName, String.format("node%d.xml", node.getNodeId()));
-            BufferedWriter writer = null;
-
-            logger.debug("NODE {}: Serializing to file {}", node.getNodeId(), file.getPath());
+            logger.debug("NODE {}: Serializing to store", node.getNodeId());
 
-            try {
-                writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
-                stream.marshal(node, new PrettyPrintWriter(writer));
-                writer.flush();
-            } catch (IOException e) {
-                logger.error("NODE {}: Error serializing to file: {}", node.getNodeId(), e.getMessage());
-            } finally {
-                if (writer != null) {
-                    try {
-                        writer.close();
-                    } catch (IOException e) {
-                    }
-                }
+            byte[] data = marshal(node);
+            if (data != null) {
+                store.put(node.getNodeId(), data);
             }
         }
     }
 
     /**
-     * Deserializes an XML tree of a {@link ZWaveNode}
+     * Deserializes a {@link ZWaveNode} from the store
      *
      * @param nodeId
      *            the number of the node to deserialize
@@ -128,28 +219,18 @@ public class ZWaveNodeSerializer {
      */
     public ZWaveNode DeserializeNode(int nodeId) {
         synchronized (stream) {
-            File file = new File(this.folderName, String.format("node%d.xml", nodeId));
-            BufferedReader reader = null;
-
-            logger.debug("NODE {}: Serializing from file {}", nodeId, file.getPath());
+            logger.debug("NODE {}: Serializing from store", nodeId);
 
-            if (!file.exists()) {
-                logger.debug("NODE {}: Error serializing from file: file does not exist.", nodeId);
+            byte[] data = store.get(nodeId);
+            if (data == null) {
+                logger.debug("NODE {}: Error serializing from store: node does not exist.", nodeId);
                 return null;
             }
 
             try {
-                reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
-                return (ZWaveNode) stream.fromXML(reader);
-            } catch (IOException e) {
-                logger.error("NODE {}: Error serializing from file: {}", nodeId, e.getMessage());
-            } finally {
-                if (reader != null) {
-                    try {
-                        reader.close();
-                    } catch (IOException e) {
-                    }
-                }
+                return (ZWaveNode) stream.unmarshal(new BinaryStreamReader(new ByteArrayInputStream(data)));
+            } catch (XStreamException e) {
+                logger.error("NODE {}: Error serializing from store: {}", nodeId, e.getMessage());
             }
             return null;
         }
@@ -159,13 +240,18 @@ public class ZWaveNodeSerializer {
      * Deletes the persistence store for the specified node.
      *
      * @param nodeId The node ID to remove
-     * @return true if the file was deleted
+     * @return true if the node was deleted
      */
     public boolean DeleteNode(int nodeId) {
         synchronized (stream) {
-            File file = new File(this.folderName, String.format("node%d.xml", nodeId));
-
-            return file.delete();
+            return store.remove(nodeId);
         }
     }
+
+    /**
+     * Releases the node store. Nodes can't be saved once the serializer is closed.
+     */
+    public void close() {
+        store.release();
+    }
 }
@@ -107,17 +107,22 @@ import org.slf4j.LoggerFactory;
  * <p>
  * A DEAD node will use a backoff to reduce the traffic. We start sending data reasonably quickly, but if it fails, then
  * we reduce the retry timer by a factor of 2 until BACKOFF_TIMER_MAX is reached.
+ * <p>
+ * The advancers for all nodes run at the same time, and the {@link ZWaveNodeInitCoordinator} limits the number of nodes
+ * that can have a message outstanding at once. Nodes restored from the config file already have their static
+ * information, so listening nodes start directly at the dynamic stages. Battery nodes, and nodes using security, still
+ * start at WAIT so they are only initialised once awake.
  *
  * @author Chris Jackson
  * @author Jan-Willem Spuij
  */
 public class ZWaveNodeStageAdvancer implements ZWaveEventListener {
 
-    private static final ZWaveNodeSerializer nodeSerializer = new ZWaveNodeSerializer();
     private static final Logger logger = LoggerFactory.getLogger(ZWaveNodeStageAdvancer.class);
 
     private ZWaveNode node;
     private ZWaveController controller;
+    private ZWaveNodeInitCoordinator coordinator;
     private boolean restoredFromConfigfile = false;
 
     private ThingType thingType = null;
@@ -157,6 +162,7 @@ public class ZWaveNodeStageAdvancer implements ZWaveEventListener {
     public ZWaveNodeStageAdvancer(ZWaveNode node, ZWaveController controller) {
         this.node = node;
         this.controller = controller;
+        this.coordinator = controller.getNodeInitCoordinator();
 
         // Initialise the message queue
         msgQueue = new ArrayBlockingQueue<SerialMessage>(MAX_BUFFFER_LEN, true);
@@ -176,12 +182,45 @@ public class ZWaveNodeStageAdvancer implements ZWaveEventListener {
 
         wakeupCount = 0;
 
+        // Nodes restored from file already have their static information
+        if (isRestoredFromConfigfile()) {
+            if ((node.isListening() || node.isFrequentlyListening())
+                    && !node.supportsCommandClass(CommandClass.SECURITY)) {
+                logger.debug("NODE {}: Node advancer: Restored from file - starting at dynamic stages",
+                        node.getNodeId());
+                currentStage = ZWaveNodeInitStage.SESSION_START;
+            } else {
+                logger.debug("NODE {}: Node advancer: Restored from file - waiting for node", node.getNodeId());
+                currentStage = ZWaveNodeInitStage.WAIT;
+            }
+        }
+
+        coordinator.nodeStarted(node.getNodeId());
+
         // Set an event callback so we get notification of events
         controller.addEventListener(this);
 
         advanceNodeStage(null);
     }
 
+    /**
+     * Gets the node ID of the node being initialised
+     *
+     * @return the node ID
+     */
+    int getNodeId() {
+        return node.getNodeId();
+    }
+
+    /**
+     * Checks if the node being initialised is always listening
+     *
+     * @return true if the node is listening or frequently listening
+     */
+    boolean isNodeListening() {
+        return node.isListening() || node.isFrequentlyListening();
+    }
+
     /**
      * Handles the removal of frames from the send queue. This gets called after we have an ACK for our packet, but
      * before we get the response. The actual sending of frames, and the advancing is carried out in the
@@ -207,6 +246,7 @@ public class ZWaveNodeStageAdvancer implements ZWaveEventListener {
                     msgQueue.size());
 
             freeToSend = true;
+            coordinator.release(this);
 
             // We've sent a frame, let's process the stage...
             advanceNodeStage(incomingMessage.getMessageClass());
@@ -229,6 +269,14 @@ public class ZWaveNodeStageAdvancer implements ZWaveEventListener {
 
         // Check to see if we need to send a frame
         if (freeToSend == true) {
+            // Wait our turn if too many nodes are already initialising.
+            // The coordinator will restart us once a slot is free.
+            // Battery nodes don't take a slot since their messages wait in the wake-up queue until the node wakes.
+            if (isNodeListening() && coordinator.acquire(this) == false) {
+                logger.debug("NODE {}: Node advancer - waiting for other nodes", node.getNodeId());
+                return true;
+            }
+
             SerialMessage msg = msgQueue.peek();
             if (msg != null) {
                 freeToSend = false;
@@ -272,6 +320,7 @@ public class ZWaveNodeStageAdvancer implements ZWaveEventListener {
         // If this is a battery node, and we exceed the wakeup count without advancing the stage, then reset.
         if (wakeupCount >= 3) {
             msgQueue.clear();
+            coordinator.release(this);
             wakeupCount = 0;
         }
 
@@ -459,7 +508,7 @@ public class ZWaveNodeStageAdvancer implements ZWaveEventListener {
                                     logger.debug("NODE {}: Secure inclusion complete, continuing with inclusion",
                                             node.getNodeId());
                                     securityCommandClass.startSecurityEncapsulationThread();
-                                    nodeSerializer.SerializeNode(node); // TODO: DB remove
+                                    controller.getNodeSerializer().SerializeNode(node); // TODO: DB remove
                                     // retryTimer will be reset to a normal value below
                                     break;
                                 } else {
@@ -941,7 +990,7 @@ public class ZWaveNodeStageAdvancer implements ZWaveEventListener {
                 case STATIC_END:
                 case DONE:
                     // Save the node information to file
-                    nodeSerializer.SerializeNode(node);
+                    controller.getNodeSerializer().SerializeNode(node);
 
                     if (currentStage != ZWaveNodeInitStage.DONE) {
                         break;
@@ -954,6 +1003,10 @@ public class ZWaveNodeStageAdvancer implements ZWaveEventListener {
                     // We remove the event listener to reduce loading now that we're done
                     controller.removeEventListener(this);
 
+                    // Let other nodes use our slot
+                    coordinator.release(this);
+                    coordinator.nodeCompleted(node.getNodeId());
+
                     // Notify everyone!
                     ZWaveEvent zEvent = new ZWaveInitializationStateEvent(node.getNodeId(), ZWaveNodeInitStage.DONE);
                     controller.notifyEventListeners(zEvent);
@@ -1141,6 +1194,9 @@ public class ZWaveNodeStageAdvancer implements ZWaveEventListener {
                     // If this frame was successfully sent, then handle the stage advancer
                     if (((ZWaveTransactionCompletedEvent) event).getState() == true) {
                         handleNodeQueue(serialMessage);
+                    } else if (msgQueue.contains(serialMessage)) {
+                        // The node isn't responding - let other nodes continue while we wait to retry
+                        coordinator.release(this);
                     }
                     break;
                 default:
@@ -1214,6 +1270,7 @@ public class ZWaveNodeStageAdvancer implements ZWaveEventListener {
 
             // Kickstart comms - clear the queue and run the advancer
             msgQueue.clear();
+            coordinator.release(ZWaveNodeStageAdvancer.this);
             advanceNodeStage(null);
         }
     }
@@ -0,0 +1,405 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.zwave.internal.protocol.initialization;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent store for the serialised node state.
+ * <p>
+ * All nodes are held in a single append-only journal file. Each time a node is saved a new record is appended to
+ * the end of the journal, and the record is only written if the node state has actually changed since it was last
+ * saved. At startup the journal is read once, keeping the latest record for each node.
+ * <p>
+ * Once the journal contains more superseded records than live ones, it is compacted by writing the live records to
+ * a new file, which then replaces the journal.
+ * <p>
+ * Each record is protected with a CRC. If the binding is stopped while a record is being written, the incomplete
+ * record is discarded when the journal is next opened.
+ *
+ * @author agent
+ */
+public class ZWaveNodeStore {
+    private static final Logger logger = LoggerFactory.getLogger(ZWaveNodeStore.class);
+
+    private static final String JOURNAL_FILE = "nodes.journal";
+    private static final String COMPACT_FILE = "nodes.journal.tmp";
+
+    private static final int JOURNAL_MAGIC = 0x5A574E53;
+    private static final int JOURNAL_VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_OVERHEAD = 13;
+    private static final int RECORD_MAX_LENGTH = 0x1000000;
+
+    private static final byte RECORD_PUT = 1;
+    private static final byte RECORD_DELETE = 2;
+
+    private static final long COMPACT_MIN_SIZE = 65536;
+
+    private static final Map<String, ZWaveNodeStore> stores = new HashMap<String, ZWaveNodeStore>();
+
+    private final File folder;
+    private final File journalFile;
+    private final Map<Integer, byte[]> records = new HashMap<Integer, byte[]>();
+    private final String folderName;
+    private int users = 0;
+    private boolean released = false;
+
+    private DataOutputStream journal = null;
+    private FileOutputStream journalStream = null;
+    private long journalSize = 0;
+    private long liveSize = 0;
+
+    /**
+     * Gets the store for the specified folder. The store is opened the first time it is requested, and is shared by
+     * all users of the folder until each of them has called {@link #release()}.
+     *
+     * @param folderName the folder holding the journal
+     * @return the {@link ZWaveNodeStore}
+     */
+    public static synchronized ZWaveNodeStore getStore(String folderName) {
+        ZWaveNodeStore store = stores.get(folderName);
+        if (store == null) {
+            store = new ZWaveNodeStore(folderName);
+            stores.put(folderName, store);
+        }
+        store.users++;
+        return store;
+    }
+
+    private ZWaveNodeStore(String folderName) {
+        this.folderName = folderName;
+        this.folder = new File(folderName);
+        this.journalFile = new File(folder, JOURNAL_FILE);
+
+        long start = System.currentTimeMillis();
+        if (journalFile.exists()) {
+            load();
+        }
+        logger.debug("Loaded {} nodes from {} in {}ms", records.size(), journalFile.getPath(),
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Gets the folder the store is kept in
+     *
+     * @return the folder
+     */
+    public File getFolder() {
+        return folder;
+    }
+
+    /**
+     * Gets the IDs of all nodes in the store
+     *
+     * @return set of node IDs
+     */
+    public synchronized Set<Integer> getNodeIds() {
+        return new HashSet<Integer>(records.keySet());
+    }
+
+    /**
+     * Gets the stored state of a node
+     *
+     * @param nodeId the node to read
+     * @return the serialised node, or null if the node isn't in the store
+     */
+    public synchronized byte[] get(int nodeId) {
+        return records.get(nodeId);
+    }
+
+    /**
+     * Saves the state of a node. The record is only written if the state differs from the last saved state.
+     *
+     * @param nodeId the node to save
+     * @param data the serialised node
+     * @return true if the state was written to the journal
+     */
+    public synchronized boolean put(int nodeId, byte[] data) {
+        byte[] current = records.get(nodeId);
+        if (current != null && Arrays.equals(current, data)) {
+            logger.debug("NODE {}: Node state unchanged - not saved", nodeId);
+            return false;
+        }
+
+        if (!append(RECORD_PUT, nodeId, data)) {
+            return false;
+        }
+
+        if (current != null) {
+            liveSize -= RECORD_OVERHEAD + current.length;
+        }
+        records.put(nodeId, data);
+        liveSize += RECORD_OVERHEAD + data.length;
+
+        compactIfRequired();
+        return true;
+    }
+
+    /**
+     * Removes a node from the store
+     *
+     * @param nodeId the node to remove
+     * @return true if the node was in the store
+     */
+    public synchronized boolean remove(int nodeId) {
+        byte[] current = records.get(nodeId);
+        if (current == null) {
+            return false;
+        }
+
+        if (!append(RECORD_DELETE, nodeId, new byte[0])) {
+            return false;
+        }
+
+        records.remove(nodeId);
+        liveSize -= RECORD_OVERHEAD + current.length;
+
+        compactIfRequired();
+        return true;
+    }
+
+    /**
+     * Releases the store obtained from {@link #getStore(String)}. Once the last user has released it, the journal is
+     * closed and the store is discarded, so that it is read again the next time it is requested. Nodes saved to a
+     * discarded store are ignored.
+     */
+    public void release() {
+        synchronized (ZWaveNodeStore.class) {
+            if (users == 0 || --users > 0) {
+                return;
+            }
+            stores.remove(folderName);
+        }
+        synchronized (this) {
+            released = true;
+            close();
+        }
+        logger.debug("Closed node store {}", journalFile.getPath());
+    }
+
+    /**
+     * Closes the journal. It will be reopened if another node is saved.
+     */
+    public synchronized void close() {
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+            }
+            journal = null;
+            journalStream = null;
+        }
+    }
+
+    /**
+     * Reads the journal, keeping the latest record for each node. Reading stops at the first invalid record, and the
+     * journal is truncated so that new records are written after the last good one.
+     */
+    private void load() {
+        DataInputStream input = null;
+        long position = 0;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)));
+            if (input.readInt() != JOURNAL_MAGIC || input.readInt() != JOURNAL_VERSION) {
+                logger.error("Node store {} has an unknown format - ignoring", journalFile.getPath());
+                return;
+            }
+            position = HEADER_SIZE;
+
+            CRC32 crc = new CRC32();
+            while (true) {
+                byte type = input.readByte();
+                int nodeId = input.readInt();
+                int length = input.readInt();
+                if ((type != RECORD_PUT && type != RECORD_DELETE) || length < 0 || length > RECORD_MAX_LENGTH) {
+                    logger.warn("Node store {} has an invalid record at {}", journalFile.getPath(), position);
+                    break;
+                }
+
+                byte[] data = new byte[length];
+                input.readFully(data);
+                crc.reset();
+                crc.update(data);
+                if (input.readInt() != (int) crc.getValue()) {
+                    logger.warn("NODE {}: Node store {} has a corrupt record at {}", nodeId, journalFile.getPath(),
+                            position);
+                    break;
+                }
+
+                byte[] previous;
+                if (type == RECORD_PUT) {
+                    previous = records.put(nodeId, data);
+                    liveSize += RECORD_OVERHEAD + length;
+                } else {
+                    previous = records.remove(nodeId);
+                }
+                if (previous != null) {
+                    liveSize -= RECORD_OVERHEAD + previous.length;
+                }
+                position += RECORD_OVERHEAD + length;
+            }
+        } catch (EOFException e) {
+            // End of the journal
+        } catch (IOException e) {
+            logger.error("Error reading node store {}: {}", journalFile.getPath(), e.getMessage());
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+
+        journalSize = position;
+        if (position != 0 && position != journalFile.length()) {
+            logger.debug("Truncating node store {} to {} bytes", journalFile.getPath(), position);
+            RandomAccessFile file = null;
+            try {
+                file = new RandomAccessFile(journalFile, "rw");
+                file.setLength(position);
+            } catch (IOException e) {
+                logger.error("Error truncating node store {}: {}", journalFile.getPath(), e.getMessage());
+            } finally {
+                if (file != null) {
+                    try {
+                        file.close();
+                    } catch (IOException e) {
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean append(byte type, int nodeId, byte[] data) {
+        if (released) {
+            logger.debug("NODE {}: Node store {} is closed - not saved", nodeId, journalFile.getPath());
+            return false;
+        }
+        try {
+            if (journal == null) {
+                openJournal();
+            }
+            writeRecord(journal, type, nodeId, data);
+            journal.flush();
+            journalStream.getFD().sync();
+            journalSize += RECORD_OVERHEAD + data.length;
+            return true;
+        } catch (IOException e) {
+            logger.error("NODE {}: Error writing to node store {}: {}", nodeId, journalFile.getPath(), e.getMessage());
+            close();
+            return false;
+        }
+    }
+
+    private void openJournal() throws IOException {
+        if (!folder.exists()) {
+            folder.mkdirs();
+        }
+
+        // A journal that was found to be invalid is started again
+        if (journalSize < HEADER_SIZE) {
+            journalStream = new FileOutputStream(journalFile, false);
+            journal = new DataOutputStream(new BufferedOutputStream(journalStream));
+            journal.writeInt(JOURNAL_MAGIC);
+            journal.writeInt(JOURNAL_VERSION);
+            journalSize = HEADER_SIZE;
+            for (Map.Entry<Integer, byte[]> record : records.entrySet()) {
+                writeRecord(journal, RECORD_PUT, record.getKey(), record.getValue());
+                journalSize += RECORD_OVERHEAD + record.getValue().length;
+            }
+        } else {
+            journalStream = new FileOutputStream(journalFile, true);
+            journal = new DataOutputStream(new BufferedOutputStream(journalStream));
+        }
+    }
+
+    private void writeRecord(DataOutputStream output, byte type, int nodeId, byte[] data) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+
+        output.writeByte(type);
+        output.writeInt(nodeId);
+        output.writeInt(data.length);
+        output.write(data);
+        output.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Rewrites the journal with only the live records once the superseded records outweigh them
+     */
+    private void compactIfRequired() {
+        if (journalSize < COMPACT_MIN_SIZE || journalSize < (liveSize + HEADER_SIZE) * 2) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        long oldSize = journalSize;
+        close();
+
+        File compactFile = new File(folder, COMPACT_FILE);
+        FileOutputStream stream = null;
+        try {
+            stream = new FileOutputStream(compactFile, false);
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream));
+            output.writeInt(JOURNAL_MAGIC);
+            output.writeInt(JOURNAL_VERSION);
+            for (Map.Entry<Integer, byte[]> record : records.entrySet()) {
+                writeRecord(output, RECORD_PUT, record.getKey(), record.getValue());
+            }
+            output.flush();
+            stream.getFD().sync();
+            output.close();
+            stream = null;
+
+            if (!compactFile.renameTo(journalFile)) {
+                // Some platforms won't rename over an existing file
+                journalFile.delete();
+                if (!compactFile.renameTo(journalFile)) {
+                    logger.error("Error replacing node store {}", journalFile.getPath());
+                    journalSize = 0;
+                    return;
+                }
+            }
+            journalSize = liveSize + HEADER_SIZE;
+
+            logger.debug("Compacted node store {} from {} to {} bytes in {}ms", journalFile.getPath(), oldSize,
+                    journalSize, System.currentTimeMillis() - start);
+        } catch (IOException e) {
+            logger.error("Error compacting node store {}: {}", journalFile.getPath(), e.getMessage());
+            compactFile.delete();
+        } finally {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+}
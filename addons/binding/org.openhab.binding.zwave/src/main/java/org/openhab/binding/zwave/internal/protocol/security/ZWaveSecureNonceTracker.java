@@ -13,8 +13,9 @@ import java.util.LinkedList;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.openhab.binding.zwave.internal.protocol.SerialMessage;
 import org.openhab.binding.zwave.internal.protocol.SerialMessage.SerialMessageClass;
@@ -36,6 +37,11 @@ import org.slf4j.LoggerFactory;
  * Temporary storage is required in both cases. Each nonce also has suggested timeouts per the
  * zwave spec, those timeouts are also tracked in this class
  *
+ * Device nonces are held in a pool so that a frame can be encapsulated as soon as it is queued
+ * if an unexpired nonce is already in hand. The pool is refilled ahead of time when more frames
+ * are waiting to be sent, so the NONCE_GET round trip overlaps the previous transaction rather
+ * than delaying the next one.
+ *
  * @author Dave Badia
  *
  */
@@ -86,7 +92,12 @@ public class ZWaveSecureNonceTracker {
      * much time elapses we should request a new nonce. This timer is optional
      * but recommended
      */
-    private NonceTimer requestNonceTimer = null;
+    private volatile NonceTimer requestNonceTimer = null;
+
+    /**
+     * The time the outstanding nonce request was sent, used to measure the nonce round trip
+     */
+    private long requestNonceSentAt = 0L;
 
     /**
      * The last nonce request message sent to the device. We implement {@link ZWaveEventListener} since
@@ -99,6 +110,11 @@ public class ZWaveSecureNonceTracker {
 
     private long reseedAt = 0L;
 
+    private final AtomicLong nonceHits = new AtomicLong();
+    private final AtomicLong nonceMisses = new AtomicLong();
+    private final AtomicLong noncesReceived = new AtomicLong();
+    private final AtomicLong nonceRoundTripTotal = new AtomicLong();
+
     public ZWaveSecureNonceTracker(ZWaveNode node) {
         this.node = node;
     }
@@ -106,12 +122,31 @@ public class ZWaveSecureNonceTracker {
     /**
      * @return a useable {@link Nonce} or null if none are available
      */
-    public synchronized Nonce getUseableDeviceNonce() {
+    public Nonce getUseableDeviceNonce() {
         Nonce nonce = deviceNonceTable.getDeviceNonceToEncryptMessage();
+        if (nonce == null) {
+            nonceMisses.incrementAndGet();
+        } else {
+            nonceHits.incrementAndGet();
+        }
         logger.debug("NODE {}: getUseableDeviceNonce returning {}", node.getNodeId(), nonce);
         return nonce;
     }
 
+    /**
+     * Builds a {@link ZWaveSecurityCommandClass#SECURITY_NONCE_GET} to refill the device nonce pool
+     * ahead of the next send. Unlike {@link #buildNonceGetIfNeeded()} this will not request a nonce if
+     * a useable one is already in the pool.
+     *
+     * @return the nonce request message, or null if no request is needed
+     */
+    public synchronized SerialMessage buildNonceRefillIfNeeded() {
+        if (deviceNonceTable.hasUseableNonce()) {
+            return null;
+        }
+        return buildNonceGetIfNeeded();
+    }
+
     /**
      * @return true if a nonce has been requested from the node and a reply is pending
      */
@@ -149,6 +184,7 @@ public class ZWaveSecureNonceTracker {
             logger.warn("NODE {}: requestNonceTimer != null but generating a new request", node.getNodeId());
         }
         requestNonceTimer = new NonceTimer(NonceTimerType.REQUESTED, node);
+        requestNonceSentAt = System.currentTimeMillis();
         requestNonceMessage = message;
         return message;
     }
@@ -190,6 +226,7 @@ public class ZWaveSecureNonceTracker {
     public synchronized void sendingEncapNonceGet(SerialMessage message) {
         // No requestNonceTimer != null check since this will be called multiple times for teh same
         requestNonceTimer = new NonceTimer(NonceTimerType.REQUESTED, node);
+        requestNonceSentAt = System.currentTimeMillis();
         requestNonceMessage = message;
     }
 
@@ -203,10 +240,35 @@ public class ZWaveSecureNonceTracker {
             // The ZWaveSecurityEncapsulationThread will request a new one for us
             return;
         }
-        logger.debug("NODE {}: receivedNonceFromDevice nonce received setting requestNonceTimer to null",
-                node.getNodeId());
+        long roundTrip = System.currentTimeMillis() - requestNonceSentAt;
+        logger.debug("NODE {}: receivedNonceFromDevice nonce received after {}ms setting requestNonceTimer to null",
+                node.getNodeId(), roundTrip);
         requestNonceTimer = null;
         deviceNonceTable.addNonceFromDevice(nonceBytes);
+        noncesReceived.incrementAndGet();
+        nonceRoundTripTotal.addAndGet(roundTrip);
+    }
+
+    /**
+     * @return the number of sends that found a useable device nonce in the pool
+     */
+    public long getNonceHits() {
+        return nonceHits.get();
+    }
+
+    /**
+     * @return the number of sends that had to wait for a nonce to be requested from the device
+     */
+    public long getNonceMisses() {
+        return nonceMisses.get();
+    }
+
+    /**
+     * @return the average time in milliseconds between requesting a nonce and receiving it, or 0 if none received
+     */
+    public long getAverageNonceRoundTrip() {
+        long received = noncesReceived.get();
+        return received == 0 ? 0 : nonceRoundTripTotal.get() / received;
     }
 
     public Nonce getNonceWeGeneratedById(byte nonceId) {
@@ -545,8 +607,11 @@ public class ZWaveSecureNonceTracker {
      * Used in the encryption process for outgoing SECURITY messages
      */
     private class DeviceNonceTable {
-        private Map<Byte, Nonce> table = new ConcurrentHashMap<Byte, Nonce>();
-        private ConcurrentSkipListMap<Long, Nonce> timeToNonceMap = new ConcurrentSkipListMap<Long, Nonce>();
+        /**
+         * Nonces are received in order and all have the same validity, so they also expire in order.
+         * The oldest nonce is therefore always at the head of the queue.
+         */
+        private ConcurrentLinkedQueue<Nonce> queue = new ConcurrentLinkedQueue<Nonce>();
 
         private DeviceNonceTable() {
             super();
@@ -554,55 +619,41 @@ public class ZWaveSecureNonceTracker {
 
         private void addNonceFromDevice(byte[] nonceBytes) {
             Nonce deviceNonce = new Nonce(nonceBytes, new NonceTimer(NonceTimerType.RECEIVED, node));
-            table.put(deviceNonce.getNonceId(), deviceNonce);
-            timeToNonceMap.put(deviceNonce.getTimer().getExpiresAt(), deviceNonce);
+            queue.add(deviceNonce);
         }
 
         private Nonce getDeviceNonceToEncryptMessage() {
-            logger.debug("NODE {}: getDeviceNonceToEncryptMessage start deviceNonceTable={}, timeToNonceMap={}",
-                    node.getNodeId(), deviceNonceTable, timeToNonceMap);
             cleanup();
-            logger.debug("NODE {}: getDeviceNonceToEncryptMessage post cleanup deviceNonceTable={}, timeToNonceMap={}",
-                    node.getNodeId(), deviceNonceTable, timeToNonceMap);
-            Iterator<Nonce> iter = timeToNonceMap.values().iterator();
-            if (iter.hasNext()) {
-                Nonce nonce = iter.next();
+            Nonce nonce = queue.poll(); // Remove it since we are using it
+            if (nonce != null) {
                 logger.debug("NODE {}: getDeviceNonceToEncryptMessage returning DeviceNonce={}", node.getNodeId(),
                         nonce);
-                iter.remove(); // Remove it since we are using it
-                return nonce;
-            } else {
-                return null;
             }
+            return nonce;
+        }
+
+        private boolean hasUseableNonce() {
+            cleanup();
+            return !queue.isEmpty();
         }
 
         /**
-         * Remove any expired nonces from our table
+         * Remove any expired nonces from the head of the queue
          */
         private void cleanup() {
-            Iterator<Entry<Byte, Nonce>> iter = table.entrySet().iterator();
-            while (iter.hasNext()) {
-                Nonce nonce = iter.next().getValue();
-                if (nonce.getTimer() != null && nonce.getTimer().isExpired()) {
+            Nonce nonce = queue.peek();
+            while (nonce != null && nonce.getTimer().isExpired()) {
+                if (queue.remove(nonce)) {
                     logger.warn("NODE {}: Expiring nonce with id={}", node.getNodeId(), nonce.getNonceId());
-                    iter.remove();
-                    // Remove the nonce from timeToNonceIdMap
-                    byte nonceId = nonce.getNonceId();
-                    Iterator<Map.Entry<Long, Nonce>> iter2 = timeToNonceMap.entrySet().iterator();
-                    while (iter2.hasNext()) {
-                        Map.Entry<Long, Nonce> entry = iter2.next();
-                        if (nonceId == entry.getValue().getNonceId()) {
-                            iter2.remove();
-                        }
-                    }
                 }
+                nonce = queue.peek();
             }
         }
 
         @Override
         public String toString() {
             StringBuilder buf = new StringBuilder("NonceTable: [");
-            for (Nonce nonce : table.values()) {
+            for (Nonce nonce : queue) {
                 buf.append(nonce.toString()).append("    ");
             }
             return buf.toString();
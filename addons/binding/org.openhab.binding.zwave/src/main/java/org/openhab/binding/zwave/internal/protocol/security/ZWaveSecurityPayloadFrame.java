@@ -49,6 +49,7 @@ public class ZWaveSecurityPayloadFrame {
      * The time at which this message should be discarded from the encapsulation
      * queue if no nonce reply has been received
      */
+    private final long createdTime;
     private final long expirationTime;
 
     // data fields
@@ -106,7 +107,8 @@ public class ZWaveSecurityPayloadFrame {
         this.partBytes = partBuffer;
         this.totalParts = totalParts;
         this.sequenceByte = sequenceByte;
-        this.expirationTime = System.currentTimeMillis() + MESSAGE_EXPIRATION_MS;
+        this.createdTime = System.currentTimeMillis();
+        this.expirationTime = createdTime + MESSAGE_EXPIRATION_MS;
         // Replace the original payload bytes with ours
         String ourSerialMessageString = originalMessage.toString();
         int index = ourSerialMessageString.indexOf("payload");
@@ -153,6 +155,13 @@ public class ZWaveSecurityPayloadFrame {
         return logMessage;
     }
 
+    /**
+     * @return the time the frame was created, which is the time it was queued for encapsulation
+     */
+    public long getCreatedTime() {
+        return createdTime;
+    }
+
     public long getExpirationTime() {
         return expirationTime;
     }
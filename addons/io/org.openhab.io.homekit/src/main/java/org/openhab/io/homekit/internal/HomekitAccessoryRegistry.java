@@ -8,14 +8,17 @@
  */
 package org.openhab.io.homekit.internal;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.TreeMap;
 
+import org.eclipse.smarthome.core.storage.Storage;
 import org.openhab.io.homekit.internal.accessories.GroupedAccessory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,53 +30,153 @@ import com.beowulfe.hap.HomekitRoot;
  * Stores the created HomekitAccessories. GroupedAccessories are also held here
  * in a pre-created pending state until all required characteristics are found.
  *
+ * The registry remembers the tagged items each accessory was created from, so
+ * that item changes only rebuild the affected accessory. The configuration
+ * index advertised to Homekit clients is only incremented when the set of
+ * accessories has changed, it is kept in the storage to survive restarts.
+ *
  * @author Andy Lintner
  */
 class HomekitAccessoryRegistry {
 
+    private static final String CONFIGURATION_INDEX = "configurationIndex";
+    private static final String CONFIGURATION_HASH = "configurationHash";
+
     private HomekitRoot bridge;
-    private final List<HomekitAccessory> createdAccessories = new LinkedList<>();
-    private final Set<Integer> createdIds = new HashSet<>();
-    private final Map<String, GroupedAccessory> pendingGroupedAccessories = new HashMap<>();
+    private Storage<String> storage;
+    private final Map<Integer, AccessoryEntry> createdAccessories = new LinkedHashMap<>();
+    private final Map<String, AccessoryEntry> pendingGroupedAccessories = new HashMap<>();
     private final List<HomekitTaggedItem> pendingCharacteristics = new LinkedList<>();
+    private boolean changed = false;
 
     private final Logger logger = LoggerFactory.getLogger(HomekitAccessoryRegistry.class);
 
-    public void remove(HomekitTaggedItem taggedItem) {
-        Iterator<HomekitAccessory> i = createdAccessories.iterator();
+    /**
+     * Removes the accessory the given item belongs to. If the item is a
+     * characteristic of a grouped accessory, the accessory is removed as well
+     * and has to be created again from the returned root item.
+     *
+     * @return the root item of the removed grouped accessory, or null
+     */
+    public synchronized HomekitTaggedItem remove(HomekitTaggedItem taggedItem) {
+        String itemName = taggedItem.getItem().getName();
+        if (removeByName(pendingCharacteristics, itemName) != null) {
+            return null;
+        }
+
+        Iterator<AccessoryEntry> i = createdAccessories.values().iterator();
+        while (i.hasNext()) {
+            AccessoryEntry entry = i.next();
+            if (entry.contains(itemName)) {
+                i.remove();
+                if (bridge != null) {
+                    bridge.removeAccessory(entry.accessory);
+                }
+                changed = true;
+                logger.debug("Removed accessory " + entry.accessory.getId());
+                return releaseCharacteristics(entry, itemName);
+            }
+        }
+
+        i = pendingGroupedAccessories.values().iterator();
         while (i.hasNext()) {
-            HomekitAccessory accessory = i.next();
-            if (accessory.getId() == taggedItem.getId()) {
-                logger.debug("Removed accessory " + accessory.getId());
-                bridge.removeAccessory(accessory);
+            AccessoryEntry entry = i.next();
+            if (entry.contains(itemName)) {
                 i.remove();
+                return releaseCharacteristics(entry, itemName);
             }
         }
+        return null;
     }
 
     public synchronized void clear() {
-        while (!createdAccessories.isEmpty()) {
-            bridge.removeAccessory(createdAccessories.remove(0));
+        for (AccessoryEntry entry : createdAccessories.values()) {
+            if (bridge != null) {
+                bridge.removeAccessory(entry.accessory);
+            }
         }
-        createdIds.clear();
+        createdAccessories.clear();
+        pendingGroupedAccessories.clear();
+        pendingCharacteristics.clear();
+        changed = true;
     }
 
+    /**
+     * Sets the bridge and adds the created accessories to it. This should
+     * happen before the bridge is started, otherwise every accessory
+     * resets the client connections.
+     */
     public synchronized void setBridge(HomekitRoot bridge) {
         this.bridge = bridge;
-        createdAccessories.forEach(accessory -> bridge.addAccessory(accessory));
+        if (bridge != null) {
+            createdAccessories.values().forEach(entry -> bridge.addAccessory(entry.accessory));
+            changed = true;
+            commit();
+        }
+    }
+
+    public synchronized void setStorage(Storage<String> storage) {
+        this.storage = storage;
+    }
+
+    /**
+     * @return the tagged item with the given name which is used by a created
+     *         or pending accessory, or null if there is none
+     */
+    public synchronized HomekitTaggedItem get(String itemName) {
+        for (HomekitTaggedItem taggedItem : getItems()) {
+            if (taggedItem.getItem().getName().equals(itemName)) {
+                return taggedItem;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return all tagged items used by created or pending accessories
+     */
+    public synchronized List<HomekitTaggedItem> getItems() {
+        List<HomekitTaggedItem> items = new ArrayList<>(pendingCharacteristics);
+        for (AccessoryEntry entry : createdAccessories.values()) {
+            items.addAll(entry.items);
+        }
+        for (AccessoryEntry entry : pendingGroupedAccessories.values()) {
+            items.addAll(entry.items);
+        }
+        return items;
+    }
+
+    /**
+     * Replaces the stored tagged item of the same name by the given one,
+     * without recreating the accessory using it.
+     */
+    public synchronized void replace(HomekitTaggedItem taggedItem) {
+        if (replaceByName(pendingCharacteristics, taggedItem)) {
+            return;
+        }
+        List<AccessoryEntry> entries = new ArrayList<>(createdAccessories.values());
+        entries.addAll(pendingGroupedAccessories.values());
+        for (AccessoryEntry entry : entries) {
+            if (replaceByName(entry.items, taggedItem)) {
+                return;
+            }
+        }
     }
 
-    public synchronized void addRootDevice(HomekitAccessory accessory) {
+    public synchronized void addRootDevice(HomekitTaggedItem taggedItem, HomekitAccessory accessory) {
+        AccessoryEntry entry = new AccessoryEntry(accessory, taggedItem);
         if (accessory instanceof GroupedAccessory) {
             GroupedAccessory groupedAccessory = (GroupedAccessory) accessory;
-            pendingGroupedAccessories.put(groupedAccessory.getGroupName(), groupedAccessory);
-            for (HomekitTaggedItem characteristic : pendingCharacteristics) {
-                if (characteristic.getItem().getGroupNames().contains(groupedAccessory.getGroupName())) {
+            pendingGroupedAccessories.put(groupedAccessory.getGroupName(), entry);
+            for (HomekitTaggedItem characteristic : new ArrayList<>(pendingCharacteristics)) {
+                if (characteristic.getItem().getGroupNames().contains(groupedAccessory.getGroupName())
+                        && pendingGroupedAccessories.containsKey(groupedAccessory.getGroupName())) {
+                    pendingCharacteristics.remove(characteristic);
                     addCharacteristicToGroup(groupedAccessory.getGroupName(), characteristic);
                 }
             }
         } else {
-            doAddDevice(accessory);
+            doAddDevice(entry);
         }
     }
 
@@ -89,22 +192,128 @@ class HomekitAccessoryRegistry {
         logger.debug("Stored " + item.getItem().getName() + " until group is ready");
     }
 
+    /**
+     * Publishes the changes made since the last call: if the set of
+     * accessories is different from the one last advertised, the
+     * configuration index is incremented, which makes clients reload the
+     * accessories.
+     */
+    public synchronized void commit() {
+        if (!changed) {
+            return;
+        }
+        changed = false;
+
+        StringBuilder description = new StringBuilder();
+        for (AccessoryEntry entry : new TreeMap<>(createdAccessories).values()) {
+            description.append(entry.accessory.getId()).append(':').append(entry.accessory.getClass().getName())
+                    .append(':').append(entry.accessory.getLabel()).append(';');
+        }
+        String hash = Integer.toHexString(description.toString().hashCode());
+
+        int configurationIndex = 1;
+        if (storage != null) {
+            String storedIndex = storage.get(CONFIGURATION_INDEX);
+            if (storedIndex != null) {
+                configurationIndex = Integer.parseInt(storedIndex);
+            }
+            if (!hash.equals(storage.get(CONFIGURATION_HASH))) {
+                if (storedIndex != null) {
+                    configurationIndex++;
+                }
+                storage.put(CONFIGURATION_INDEX, Integer.toString(configurationIndex));
+                storage.put(CONFIGURATION_HASH, hash);
+                logger.debug("Accessories have changed, configuration index is now " + configurationIndex);
+            }
+        }
+        if (bridge != null) {
+            try {
+                bridge.setConfigurationIndex(configurationIndex);
+            } catch (IOException e) {
+                logger.error("Could not update configuration index: " + e.getMessage(), e);
+            }
+        }
+    }
+
     private void addCharacteristicToGroup(String group, HomekitTaggedItem item) {
-        GroupedAccessory accessory = pendingGroupedAccessories.get(group);
+        AccessoryEntry entry = pendingGroupedAccessories.get(group);
+        GroupedAccessory accessory = (GroupedAccessory) entry.accessory;
         accessory.addCharacteristic(item);
+        entry.items.add(item);
         if (accessory.isComplete()) {
             pendingGroupedAccessories.remove(group);
-            doAddDevice(accessory);
+            doAddDevice(entry);
         }
     }
 
-    private void doAddDevice(HomekitAccessory accessory) {
-        createdAccessories.add(accessory);
-        createdIds.add(accessory.getId());
+    private void doAddDevice(AccessoryEntry entry) {
+        createdAccessories.put(entry.accessory.getId(), entry);
         if (bridge != null) {
-            bridge.addAccessory(accessory);
+            bridge.addAccessory(entry.accessory);
+        }
+        changed = true;
+        logger.debug("Added accessory " + entry.accessory.getId());
+    }
+
+    /**
+     * Moves the characteristics of a removed grouped accessory, except the
+     * given one, back to the pending characteristics.
+     *
+     * @return the root item of the grouped accessory if it is not the given
+     *         item, null otherwise
+     */
+    private HomekitTaggedItem releaseCharacteristics(AccessoryEntry entry, String removedItemName) {
+        HomekitTaggedItem root = entry.items.get(0);
+        for (HomekitTaggedItem item : entry.items.subList(1, entry.items.size())) {
+            if (!item.getItem().getName().equals(removedItemName)) {
+                pendingCharacteristics.add(item);
+            }
         }
-        logger.debug("Added accessory " + accessory.getId());
+        return root.getItem().getName().equals(removedItemName) ? null : root;
     }
 
+    private static HomekitTaggedItem removeByName(List<HomekitTaggedItem> items, String itemName) {
+        Iterator<HomekitTaggedItem> i = items.iterator();
+        while (i.hasNext()) {
+            HomekitTaggedItem item = i.next();
+            if (item.getItem().getName().equals(itemName)) {
+                i.remove();
+                return item;
+            }
+        }
+        return null;
+    }
+
+    private static boolean replaceByName(List<HomekitTaggedItem> items, HomekitTaggedItem taggedItem) {
+        for (int i = 0; i < items.size(); i++) {
+            if (items.get(i).getItem().getName().equals(taggedItem.getItem().getName())) {
+                items.set(i, taggedItem);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * An accessory and the tagged items it was created from, the root item
+     * first.
+     */
+    private static class AccessoryEntry {
+        private final HomekitAccessory accessory;
+        private final List<HomekitTaggedItem> items = new ArrayList<>();
+
+        AccessoryEntry(HomekitAccessory accessory, HomekitTaggedItem root) {
+            this.accessory = accessory;
+            this.items.add(root);
+        }
+
+        boolean contains(String itemName) {
+            for (HomekitTaggedItem item : items) {
+                if (item.getItem().getName().equals(itemName)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
 }
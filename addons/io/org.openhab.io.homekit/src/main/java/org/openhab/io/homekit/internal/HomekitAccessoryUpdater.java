@@ -8,8 +8,16 @@
  */
 package org.openhab.io.homekit.internal;
 
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 import org.eclipse.smarthome.core.items.GenericItem;
 import org.eclipse.smarthome.core.items.Item;
@@ -26,6 +34,12 @@ import com.beowulfe.hap.HomekitCharacteristicChangeCallback;
  * Homekit library takes care of insuring only a single subscription exists for
  * each accessory.
  *
+ * Changes are not passed to Homekit on the thread of the item event. All changes
+ * of a characteristic within the notification delay are coalesced into a single
+ * notification, which is sent from a separate thread. If the subscriber provides
+ * the value of the characteristic, notifications are only sent when that value
+ * has changed.
+ *
  * @author Andy Lintner
  */
 public class HomekitAccessoryUpdater {
@@ -33,27 +47,48 @@ public class HomekitAccessoryUpdater {
     private Logger logger = LoggerFactory.getLogger(HomekitAccessoryUpdater.class);
     private final ConcurrentMap<ItemKey, Subscription> subscriptionsByName = new ConcurrentHashMap<>();
 
+    private volatile long notificationDelay = HomekitSettings.DEFAULT_NOTIFICATION_DELAY;
+    private ScheduledExecutorService executor;
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong unchanged = new AtomicLong();
+
     public void subscribe(GenericItem item, HomekitCharacteristicChangeCallback callback) {
         subscribe(item, null, callback);
     }
 
     public void subscribe(GenericItem item, String key, HomekitCharacteristicChangeCallback callback) {
+        subscribe(item, key, callback, null);
+    }
+
+    /**
+     * Subscribes to changes of the item, notifications are only sent if the
+     * value provided by the given supplier has changed since the last
+     * notification.
+     *
+     * @param item the item the characteristic is read from
+     * @param key distinguishes several characteristics of the same item, may be null
+     * @param callback notifies Homekit of the change
+     * @param value provides the characteristic value as it is sent to Homekit,
+     *            may be null to notify on every change
+     */
+    public void subscribe(GenericItem item, String key, HomekitCharacteristicChangeCallback callback,
+            Supplier<CompletableFuture<?>> value) {
         if (item == null) {
             return;
         }
-        ItemKey itemKey = new ItemKey(item, key);
-        if (subscriptionsByName.containsKey(itemKey)) {
-            logger.error("Received duplicate subscription on " + item.getName());
+        addSubscription(new ItemKey(item, key), new Subscription(item, callback, value));
+    }
+
+    private void addSubscription(ItemKey itemKey, Subscription subscription) {
+        Subscription previous = subscriptionsByName.put(itemKey, subscription);
+        if (previous != null) {
+            logger.error("Received duplicate subscription on " + itemKey.item.getName());
+            previous.cancel();
         }
-        subscriptionsByName.compute(itemKey, (k, v) -> {
-            if (v != null) {
-                logger.error("Received duplicate subscription on " + item.getName());
-                unsubscribe(item, key);
-            }
-            Subscription subscription = (changedItem, oldState, newState) -> callback.changed();
-            item.addStateChangeListener(subscription);
-            return subscription;
-        });
+        itemKey.item.addStateChangeListener(subscription);
     }
 
     public void unsubscribe(GenericItem item) {
@@ -64,22 +99,217 @@ public class HomekitAccessoryUpdater {
         if (item == null) {
             return;
         }
-        subscriptionsByName.computeIfPresent(new ItemKey(item, key), (k, v) -> {
-            item.removeStateChangeListener(v);
-            return null;
-        });
+        Subscription subscription = subscriptionsByName.remove(new ItemKey(item, key));
+        if (subscription != null) {
+            subscription.cancel();
+        }
+    }
+
+    /**
+     * Moves the subscriptions of an item to the instance replacing it in the
+     * item registry. The value of the last notification is kept, so Homekit
+     * is only notified if the new instance provides a different value.
+     */
+    public void replaceItem(GenericItem oldItem, GenericItem newItem) {
+        if (oldItem == newItem) {
+            return;
+        }
+        for (ItemKey itemKey : subscriptionsByName.keySet()) {
+            if (itemKey.item == oldItem) {
+                Subscription subscription = subscriptionsByName.remove(itemKey);
+                if (subscription != null) {
+                    subscription.cancel();
+                    addSubscription(new ItemKey(newItem, itemKey.key), new Subscription(newItem,
+                            subscription.callback, subscription.value, subscription.lastValue));
+                }
+            }
+        }
+    }
+
+    /**
+     * @param notificationDelay the time in milliseconds during which changes
+     *            of a characteristic are coalesced into one notification
+     */
+    public void setNotificationDelay(long notificationDelay) {
+        this.notificationDelay = Math.max(notificationDelay, 0);
+    }
+
+    /**
+     * Stops sending notifications, pending notifications are dropped.
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        logger.debug("Notification statistics: {}", getStatistics());
+    }
+
+    /**
+     * @return a snapshot of the notification counters
+     */
+    public Statistics getStatistics() {
+        return new Statistics(subscriptionsByName.size(), received.get(), sent.get(), coalesced.get(),
+                unchanged.get());
+    }
+
+    private synchronized ScheduledExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "homekit-notifications");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
     }
 
-    @FunctionalInterface
-    private static interface Subscription extends StateChangeListener {
+    private class Subscription implements StateChangeListener {
+        private final GenericItem item;
+        private final HomekitCharacteristicChangeCallback callback;
+        private final Supplier<CompletableFuture<?>> value;
+        private final AtomicBoolean pending = new AtomicBoolean();
+        private volatile boolean cancelled;
+
+        /**
+         * the value of the last notification, only written from the
+         * notification thread after construction
+         */
+        private volatile Object lastValue;
+
+        Subscription(GenericItem item, HomekitCharacteristicChangeCallback callback,
+                Supplier<CompletableFuture<?>> value) {
+            this.item = item;
+            this.callback = callback;
+            this.value = value;
+            this.lastValue = getValue();
+        }
+
+        Subscription(GenericItem item, HomekitCharacteristicChangeCallback callback,
+                Supplier<CompletableFuture<?>> value, Object lastValue) {
+            this.item = item;
+            this.callback = callback;
+            this.value = value;
+            this.lastValue = lastValue;
+        }
 
         @Override
-        public abstract void stateChanged(Item item, State oldState, State newState);
+        public void stateChanged(Item item, State oldState, State newState) {
+            received.incrementAndGet();
+            if (!pending.compareAndSet(false, true)) {
+                // a notification is already scheduled and will report this change
+                coalesced.incrementAndGet();
+                return;
+            }
+            try {
+                getExecutor().schedule(this::notifyChange, notificationDelay, TimeUnit.MILLISECONDS);
+            } catch (RuntimeException e) {
+                // the updater has been stopped
+                pending.set(false);
+            }
+        }
 
         @Override
-        default public void stateUpdated(Item item, State state) {
+        public void stateUpdated(Item item, State state) {
             // Do nothing on non-change update
         }
+
+        void cancel() {
+            cancelled = true;
+            item.removeStateChangeListener(this);
+        }
+
+        private void notifyChange() {
+            pending.set(false);
+            if (cancelled) {
+                return;
+            }
+            if (value != null) {
+                Object newValue = getValue();
+                if (Objects.equals(newValue, lastValue)) {
+                    unchanged.incrementAndGet();
+                    return;
+                }
+                lastValue = newValue;
+            }
+            sent.incrementAndGet();
+            try {
+                callback.changed();
+            } catch (Exception e) {
+                logger.error("Could not notify Homekit of change of " + item.getName(), e);
+            }
+        }
+
+        private Object getValue() {
+            if (value == null) {
+                return null;
+            }
+            try {
+                return value.get().getNow(null);
+            } catch (Exception e) {
+                logger.debug("Could not read value of " + item.getName(), e);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Counters of the item changes and the notifications sent for them.
+     */
+    public static class Statistics {
+        private final int subscriptions;
+        private final long received;
+        private final long sent;
+        private final long coalesced;
+        private final long unchanged;
+
+        Statistics(int subscriptions, long received, long sent, long coalesced, long unchanged) {
+            this.subscriptions = subscriptions;
+            this.received = received;
+            this.sent = sent;
+            this.coalesced = coalesced;
+            this.unchanged = unchanged;
+        }
+
+        public int getSubscriptions() {
+            return subscriptions;
+        }
+
+        /**
+         * @return the number of item changes of subscribed items
+         */
+        public long getReceived() {
+            return received;
+        }
+
+        /**
+         * @return the number of notifications sent to Homekit
+         */
+        public long getSent() {
+            return sent;
+        }
+
+        /**
+         * @return the number of changes merged into an already scheduled
+         *         notification
+         */
+        public long getCoalesced() {
+            return coalesced;
+        }
+
+        /**
+         * @return the number of notifications dropped because the
+         *         characteristic value had not changed
+         */
+        public long getUnchanged() {
+            return unchanged;
+        }
+
+        @Override
+        public String toString() {
+            return "subscriptions=" + subscriptions + ", received=" + received + ", sent=" + sent + ", coalesced="
+                    + coalesced + ", unchanged=" + unchanged;
+        }
     }
 
     private static class ItemKey {
@@ -9,10 +9,14 @@
 package org.openhab.io.homekit.internal;
 
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
+import org.eclipse.smarthome.core.items.GenericItem;
 import org.eclipse.smarthome.core.items.Item;
 import org.eclipse.smarthome.core.items.ItemRegistry;
 import org.eclipse.smarthome.core.items.ItemRegistryChangeListener;
+import org.eclipse.smarthome.core.storage.Storage;
 import org.openhab.io.homekit.internal.accessories.HomekitAccessoryFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,6 +26,8 @@ import com.beowulfe.hap.HomekitRoot;
 /**
  * Listens for changes to the item registry. When changes are detected, check
  * for Homekit tags and, if present, add the items to the HomekitAccessoryRegistry.
+ * Accessories are only created again if the items they were created from have
+ * changed in a way that affects the accessory.
  *
  * @author Andy Lintner
  */
@@ -36,32 +42,71 @@ public class HomekitChangeListener implements ItemRegistryChangeListener {
     @Override
     public synchronized void added(Item item) {
         HomekitTaggedItem taggedItem = new HomekitTaggedItem(item);
-        if (taggedItem.isTagged()) {
-            if (taggedItem.isRootDevice()) {
-                createRootDevice(taggedItem);
-            } else {
-                createCharacteristic(taggedItem);
-            }
+        HomekitTaggedItem registered = accessoryRegistry.get(item.getName());
+        if (registered != null) {
+            updated(registered.getItem(), item);
+            return;
         }
+        doAdd(taggedItem);
+        accessoryRegistry.commit();
     }
 
+    /**
+     * Updates the accessories after all items have been replaced. Accessories
+     * whose items are unchanged are kept, only accessories using a removed or
+     * changed item are created again.
+     */
     @Override
-    public void allItemsChanged(Collection<String> oldItemNames) {
-        clearAccessories();
+    public synchronized void allItemsChanged(Collection<String> oldItemNames) {
+        if (itemRegistry == null) {
+            clearAccessories();
+            return;
+        }
+        Map<String, HomekitTaggedItem> taggedItems = new HashMap<>();
+        for (Item item : itemRegistry.getAll()) {
+            HomekitTaggedItem taggedItem = new HomekitTaggedItem(item);
+            if (taggedItem.isTagged()) {
+                taggedItems.put(item.getName(), taggedItem);
+            }
+        }
+
+        for (HomekitTaggedItem registered : accessoryRegistry.getItems()) {
+            HomekitTaggedItem taggedItem = taggedItems.get(registered.getItem().getName());
+            if (taggedItem == null || !registered.isEquivalent(taggedItem)) {
+                // the root item of a grouped accessory is created again below
+                accessoryRegistry.remove(registered);
+            }
+        }
+
+        for (HomekitTaggedItem taggedItem : taggedItems.values()) {
+            HomekitTaggedItem registered = accessoryRegistry.get(taggedItem.getItem().getName());
+            if (registered == null) {
+                doAdd(taggedItem);
+            } else {
+                replace(registered, taggedItem);
+            }
+        }
+        accessoryRegistry.commit();
     }
 
     @Override
     public synchronized void removed(Item item) {
-        HomekitTaggedItem taggedItem = new HomekitTaggedItem(item);
-        if (taggedItem.isTagged()) {
-            accessoryRegistry.remove(taggedItem);
-        }
+        doRemove(new HomekitTaggedItem(item));
+        accessoryRegistry.commit();
     }
 
     @Override
-    public void updated(Item oldElement, Item element) {
-        removed(oldElement);
-        added(element);
+    public synchronized void updated(Item oldElement, Item element) {
+        HomekitTaggedItem taggedItem = new HomekitTaggedItem(element);
+        HomekitTaggedItem registered = accessoryRegistry.get(element.getName());
+        if (registered != null && registered.isEquivalent(taggedItem)) {
+            // the accessory stays the same, only the item instance changes
+            replace(registered, taggedItem);
+            return;
+        }
+        doRemove(new HomekitTaggedItem(oldElement));
+        doAdd(taggedItem);
+        accessoryRegistry.commit();
     }
 
     public synchronized void clearAccessories() {
@@ -72,6 +117,10 @@ public class HomekitChangeListener implements ItemRegistryChangeListener {
         accessoryRegistry.setBridge(bridge);
     }
 
+    public synchronized void setStorage(Storage<String> storage) {
+        accessoryRegistry.setStorage(storage);
+    }
+
     public synchronized void setItemRegistry(ItemRegistry itemRegistry) {
         this.itemRegistry = itemRegistry;
         itemRegistry.addRegistryChangeListener(this);
@@ -84,19 +133,51 @@ public class HomekitChangeListener implements ItemRegistryChangeListener {
 
     public void setSettings(HomekitSettings settings) {
         this.settings = settings;
+        updater.setNotificationDelay(settings.getNotificationDelay());
     }
 
     public void stop() {
         if (this.itemRegistry != null) {
             this.itemRegistry.removeRegistryChangeListener(this);
         }
+        updater.stop();
+    }
+
+    private void doAdd(HomekitTaggedItem taggedItem) {
+        if (taggedItem.isTagged()) {
+            if (taggedItem.isRootDevice()) {
+                createRootDevice(taggedItem);
+            } else {
+                createCharacteristic(taggedItem);
+            }
+        }
+    }
+
+    private void doRemove(HomekitTaggedItem taggedItem) {
+        if (taggedItem.isTagged()) {
+            HomekitTaggedItem groupRoot = accessoryRegistry.remove(taggedItem);
+            if (groupRoot != null) {
+                // a grouped accessory lost one of its characteristics, it
+                // stays pending until the characteristic is added again
+                createRootDevice(groupRoot);
+            }
+        }
+    }
+
+    private void replace(HomekitTaggedItem registered, HomekitTaggedItem taggedItem) {
+        if (registered.getItem() != taggedItem.getItem()) {
+            accessoryRegistry.replace(taggedItem);
+            if (registered.getItem() instanceof GenericItem && taggedItem.getItem() instanceof GenericItem) {
+                updater.replaceItem((GenericItem) registered.getItem(), (GenericItem) taggedItem.getItem());
+            }
+        }
     }
 
     private void createRootDevice(HomekitTaggedItem taggedItem) {
         try {
             logger.debug("Adding homekit device " + taggedItem.getItem().getName());
-            accessoryRegistry
-                    .addRootDevice(HomekitAccessoryFactory.create(taggedItem, itemRegistry, updater, settings));
+            accessoryRegistry.addRootDevice(taggedItem,
+                    HomekitAccessoryFactory.create(taggedItem, itemRegistry, updater, settings));
             logger.debug("Added homekit device " + taggedItem.getItem().getName());
         } catch (Exception e) {
             logger.error("Could not add device: " + e.getMessage(), e);
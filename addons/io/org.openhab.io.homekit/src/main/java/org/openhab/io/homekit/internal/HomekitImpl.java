@@ -92,7 +92,10 @@ public class HomekitImpl implements Homekit {
         homekit = new HomekitServer(settings.getNetworkInterface(), settings.getPort());
         bridge = homekit.createBridge(new HomekitAuthInfoImpl(storageService, settings.getPin()), settings.getName(),
                 settings.getManufacturer(), settings.getModel(), settings.getSerialNumber());
-        bridge.start();
+        // the accessories are added before the bridge is started, which
+        // avoids resetting the connections for every accessory
+        changeListener.setStorage(storageService.getStorage("homekit"));
         changeListener.setBridge(bridge);
+        bridge.start();
     }
 }
@@ -24,6 +24,7 @@ public class HomekitSettings {
     private final static String NAME = "openHAB";
     private final static String MANUFACTURER = "openHAB";
     private final static String SERIAL_NUMBER = "none";
+    final static long DEFAULT_NOTIFICATION_DELAY = 100;
 
     private int port = 9123;
     private String pin = "031-45-154";
@@ -35,6 +36,7 @@ public class HomekitSettings {
     private String thermostatAutoMode = "Auto";
     private String thermostatOffMode = "Off";
     private InetAddress networkInterface;
+    private long notificationDelay = DEFAULT_NOTIFICATION_DELAY;
 
     public void fill(Dictionary<String, ?> properties) throws UnknownHostException {
         Object port = properties.get("port");
@@ -69,6 +71,13 @@ public class HomekitSettings {
         this.thermostatAutoMode = (String) properties.get("thermostatAutoMode");
         this.thermostatOffMode = (String) properties.get("thermostatOffMode");
 
+        Object notificationDelay = properties.get("notificationDelay");
+        if (notificationDelay instanceof Number) {
+            this.notificationDelay = ((Number) notificationDelay).longValue();
+        } else if (notificationDelay instanceof String) {
+            this.notificationDelay = Long.parseLong((String) notificationDelay);
+        }
+
         String networkInterface = (String) properties.get("networkInterface");
         if (networkInterface == null) {
             this.networkInterface = InetAddress.getLocalHost();
@@ -124,6 +133,14 @@ public class HomekitSettings {
         return minimumTemperature;
     }
 
+    /**
+     * @return the time in milliseconds during which changes of a
+     *         characteristic are coalesced into one notification
+     */
+    public long getNotificationDelay() {
+        return notificationDelay;
+    }
+
     public String getThermostatHeatMode() {
         return thermostatHeatMode;
     }
@@ -149,6 +166,7 @@ public class HomekitSettings {
         result = prime * result + (int) (temp ^ (temp >>> 32));
         temp = Double.doubleToLongBits(minimumTemperature);
         result = prime * result + (int) (temp ^ (temp >>> 32));
+        result = prime * result + (int) (notificationDelay ^ (notificationDelay >>> 32));
         result = prime * result + ((pin == null) ? 0 : pin.hashCode());
         result = prime * result + port;
         result = prime * result + ((thermostatAutoMode == null) ? 0 : thermostatAutoMode.hashCode());
@@ -177,6 +195,9 @@ public class HomekitSettings {
         if (Double.doubleToLongBits(minimumTemperature) != Double.doubleToLongBits(other.minimumTemperature)) {
             return false;
         }
+        if (notificationDelay != other.notificationDelay) {
+            return false;
+        }
         if (pin == null) {
             if (other.pin != null) {
                 return false;
@@ -8,7 +8,9 @@
  */
 package org.openhab.io.homekit.internal;
 
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang.builder.HashCodeBuilder;
@@ -76,6 +78,20 @@ public class HomekitTaggedItem {
         return id;
     }
 
+    /**
+     * Checks whether the other tagged item results in the same accessory or
+     * characteristic, so that an accessory created from this item can be
+     * kept when the item is replaced by the other one.
+     */
+    public boolean isEquivalent(HomekitTaggedItem other) {
+        Item otherItem = other.getItem();
+        return id == other.id && homekitDeviceType == other.homekitDeviceType
+                && homekitCharacteristicType == other.homekitCharacteristicType
+                && item.getName().equals(otherItem.getName()) && item.getClass() == otherItem.getClass()
+                && Objects.equals(item.getLabel(), otherItem.getLabel())
+                && new HashSet<>(item.getGroupNames()).equals(new HashSet<>(otherItem.getGroupNames()));
+    }
+
     private int calculateId(Item item) {
         int id = new HashCodeBuilder().append(item.getName()).hashCode();
         if (id < 0) {
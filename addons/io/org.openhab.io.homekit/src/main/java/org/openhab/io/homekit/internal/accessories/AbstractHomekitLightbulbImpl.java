@@ -46,7 +46,7 @@ abstract class AbstractHomekitLightbulbImpl<T extends SwitchItem> extends Abstra
 
     @Override
     public void subscribeLightbulbPowerState(HomekitCharacteristicChangeCallback callback) {
-        getUpdater().subscribe(getItem(), callback);
+        getUpdater().subscribe(getItem(), null, callback, this::getLightbulbPowerState);
     }
 
     @Override
@@ -45,7 +45,7 @@ class HomekitDimmableLightbulbImpl extends AbstractHomekitLightbulbImpl<DimmerIt
 
     @Override
     public void subscribeBrightness(HomekitCharacteristicChangeCallback callback) {
-        getUpdater().subscribe(getItem(), "brightness", callback);
+        getUpdater().subscribe(getItem(), "brightness", callback, this::getBrightness);
     }
 
     @Override
@@ -37,7 +37,7 @@ public class HomekitHumiditySensorImpl extends AbstractHomekitAccessoryImpl<Numb
 
     @Override
     public void subscribeCurrentRelativeHumidity(HomekitCharacteristicChangeCallback callback) {
-        getUpdater().subscribe(getItem(), callback);
+        getUpdater().subscribe(getItem(), null, callback, this::getCurrentRelativeHumidity);
     }
 
     @Override
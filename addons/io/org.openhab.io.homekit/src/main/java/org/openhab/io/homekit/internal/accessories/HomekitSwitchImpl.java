@@ -44,7 +44,7 @@ public class HomekitSwitchImpl extends AbstractHomekitAccessoryImpl<SwitchItem>i
 
     @Override
     public void subscribeSwitchState(HomekitCharacteristicChangeCallback callback) {
-        getUpdater().subscribe(getItem(), callback);
+        getUpdater().subscribe(getItem(), null, callback, this::getSwitchState);
     }
 
     @Override
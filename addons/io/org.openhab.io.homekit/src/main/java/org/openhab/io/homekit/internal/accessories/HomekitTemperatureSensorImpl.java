@@ -44,7 +44,7 @@ class HomekitTemperatureSensorImpl extends AbstractTemperatureHomekitAccessoryIm
 
     @Override
     public void subscribeCurrentTemperature(HomekitCharacteristicChangeCallback callback) {
-        getUpdater().subscribe(getItem(), callback);
+        getUpdater().subscribe(getItem(), null, callback, this::getCurrentTemperature);
     }
 
     @Override
@@ -181,27 +181,31 @@ class HomekitThermostatImpl extends AbstractTemperatureHomekitAccessoryImpl<Grou
 
     @Override
     public void subscribeCurrentMode(HomekitCharacteristicChangeCallback callback) {
-        getUpdater().subscribe(getGenericItem(heatingCoolingModeItemName), callback);
+        getUpdater().subscribe(getGenericItem(heatingCoolingModeItemName), "currentMode", callback,
+                this::getCurrentMode);
     }
 
     @Override
     public void subscribeCurrentTemperature(HomekitCharacteristicChangeCallback callback) {
-        getUpdater().subscribe(getGenericItem(currentTemperatureItemName), callback);
+        getUpdater().subscribe(getGenericItem(currentTemperatureItemName), null, callback,
+                this::getCurrentTemperature);
     }
 
     @Override
     public void subscribeTargetMode(HomekitCharacteristicChangeCallback callback) {
-        getUpdater().subscribe(getGenericItem(heatingCoolingModeItemName), callback);
+        getUpdater().subscribe(getGenericItem(heatingCoolingModeItemName), "targetMode", callback,
+                this::getTargetMode);
     }
 
     @Override
     public void subscribeTargetTemperature(HomekitCharacteristicChangeCallback callback) {
-        getUpdater().subscribe(getGenericItem(targetTemperatureItemName), callback);
+        getUpdater().subscribe(getGenericItem(targetTemperatureItemName), null, callback,
+                this::getTargetTemperature);
     }
 
     @Override
     public void unsubscribeCurrentMode() {
-        getUpdater().unsubscribe(getGenericItem(heatingCoolingModeItemName));
+        getUpdater().unsubscribe(getGenericItem(heatingCoolingModeItemName), "currentMode");
     }
 
     @Override
@@ -211,7 +215,7 @@ class HomekitThermostatImpl extends AbstractTemperatureHomekitAccessoryImpl<Grou
 
     @Override
     public void unsubscribeTargetMode() {
-        getUpdater().unsubscribe(getGenericItem(heatingCoolingModeItemName));
+        getUpdater().unsubscribe(getGenericItem(heatingCoolingModeItemName), "targetMode");
     }
 
     @Override
@@ -14,12 +14,8 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.net.InetAddress;
-import java.util.Collection;
 import java.util.Dictionary;
-import java.util.HashMap;
 import java.util.Hashtable;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -39,14 +35,9 @@ import org.eclipse.smarthome.core.items.Item;
 import org.eclipse.smarthome.core.items.ItemNotFoundException;
 import org.eclipse.smarthome.core.items.ItemRegistry;
 import org.eclipse.smarthome.core.items.events.ItemEventFactory;
-import org.eclipse.smarthome.core.library.types.DecimalType;
-import org.eclipse.smarthome.core.library.types.OnOffType;
 import org.eclipse.smarthome.core.types.Command;
-import org.eclipse.smarthome.core.types.State;
 import org.eclipse.smarthome.core.types.TypeParser;
 import org.openhab.io.hueemulation.internal.api.HueCreateUser;
-import org.openhab.io.hueemulation.internal.api.HueDataStore;
-import org.openhab.io.hueemulation.internal.api.HueDevice;
 import org.openhab.io.hueemulation.internal.api.HueErrorResponse;
 import org.openhab.io.hueemulation.internal.api.HueState;
 import org.osgi.service.component.ComponentContext;
@@ -67,7 +58,6 @@ public class HueEmulationServlet extends HttpServlet {
     private Logger logger = LoggerFactory.getLogger(HueEmulationServlet.class);
     private static final String CONFIG_PAIRING_ENABLED = "pairingEnabled";
     private static final String PATH = "/api";
-    private static final String HOMEKIT_PREFIX = "homekit:";
     private static final String METHOD_POST = "POST";
     private static final String METHOD_PUT = "PUT";
     private static final String APPLICATION_XML = "application/xml";
@@ -89,6 +79,7 @@ public class HueEmulationServlet extends HttpServlet {
     private Gson gson = new Gson();
     private HttpService httpService;
     private ItemRegistry itemRegistry;
+    private final HueItemIndex itemIndex = new HueItemIndex();
     private EventPublisher eventPublisher;
     private HueEmulationUpnpServer disco;
     private String udn;
@@ -145,9 +136,11 @@ public class HueEmulationServlet extends HttpServlet {
 
     protected void setItemRegistry(ItemRegistry itemRegistry) {
         this.itemRegistry = itemRegistry;
+        itemIndex.setItemRegistry(itemRegistry);
     }
 
     protected void unsetItemRegistry(ItemRegistry itemRegistry) {
+        itemIndex.stop();
         this.itemRegistry = null;
     }
 
@@ -284,9 +277,14 @@ public class HueEmulationServlet extends HttpServlet {
      */
     private void apiLight(String id, HttpServletRequest req, HttpServletResponse resp) throws IOException {
         try {
-            Item item = itemRegistry.getItem(id);
+            String json = itemIndex.getDeviceJson(id);
+            if (json == null) {
+                // not a tagged item
+                Item item = itemRegistry.getItem(id);
+                json = gson.toJson(HueItemIndex.itemToDevice(item));
+            }
             PrintWriter out = resp.getWriter();
-            out.write(gson.toJson(itemToDevice(item)));
+            out.write(json);
             out.close();
         } catch (ItemNotFoundException e) {
             logger.debug("Item not found: " + id);
@@ -303,7 +301,7 @@ public class HueEmulationServlet extends HttpServlet {
      */
     public void apiLights(HttpServletRequest req, HttpServletResponse resp) throws IOException {
         PrintWriter out = resp.getWriter();
-        out.write(gson.toJson(getHueDeviceNames()));
+        out.write(itemIndex.getDeviceNamesJson());
         out.close();
     }
 
@@ -316,9 +314,7 @@ public class HueEmulationServlet extends HttpServlet {
      */
     public void apiDataStore(HttpServletRequest req, HttpServletResponse resp) throws IOException {
         PrintWriter out = resp.getWriter();
-        HueDataStore ds = new HueDataStore();
-        ds.lights = getHueDevices();
-        out.write(gson.toJson(ds));
+        out.write(itemIndex.getDataStoreJson());
     }
 
     /**
@@ -379,88 +375,21 @@ public class HueEmulationServlet extends HttpServlet {
             return;
         }
 
-        String formattedXML = String.format(xmlDoc, address.getHostAddress(),
-                System.getProperty("org.osgi.service.http.port"), getUDN());
+        // on hosts with several interfaces the device has to be referred to
+        // the address it has reached us on
+        String host = req.getLocalAddr();
+        if (host == null || host.contains(":")) {
+            host = address.getHostAddress();
+        }
+
+        String formattedXML = String.format(xmlDoc, host, System.getProperty("org.osgi.service.http.port"),
+                getUDN());
         resp.setContentType(APPLICATION_XML);
         PrintWriter out = resp.getWriter();
         out.write(formattedXML);
         out.close();
     }
 
-    /**
-     * Returns a map of all our items that have voice tags.
-     *
-     * @param username
-     * @return
-     *         Map <item name, HueDevice>
-     */
-    private Map<String, HueDevice> getHueDevices() {
-        Collection<Item> items = getTaggedItems();
-        Map<String, HueDevice> devices = new HashMap<String, HueDevice>();
-        Iterator<Item> it = items.iterator();
-        while (it.hasNext()) {
-            Item item = it.next();
-            devices.put(item.getName(), itemToDevice(item));
-        }
-        return devices;
-    }
-
-    /**
-     * Returns the item name and voice name of each item
-     *
-     * @param username
-     * @return
-     *         Map<item name, item voice tag>
-     */
-    public Map<String, String> getHueDeviceNames() {
-        Collection<Item> items = getTaggedItems();
-        Map<String, String> devices = new HashMap<String, String>();
-        Iterator<Item> it = items.iterator();
-        while (it.hasNext()) {
-            Item item = it.next();
-            devices.put(item.getName(), item.getLabel());
-        }
-        return devices;
-    }
-
-    /**
-     * Converts an VoiceItem to a HueDevice
-     *
-     * @param voiceItem
-     * @return
-     *         HueDevice
-     */
-    private HueDevice itemToDevice(Item item) {
-        State itemState = item.getState();
-        short bri = 0;
-        if (itemState instanceof DecimalType) {
-            bri = (short) ((((DecimalType) itemState).intValue() * 255) / 100);
-        } else if (itemState instanceof OnOffType) {
-            bri = (short) (((OnOffType) itemState) == OnOffType.ON ? 255 : 0);
-        }
-        HueState hueState = new HueState(bri > 0, bri);
-        HueDevice d = new HueDevice(hueState, item.getLabel(), item.getName());
-        return d;
-    }
-
-    /**
-     * Gets all items that match our tag
-     *
-     * @return
-     */
-    private Collection<Item> getTaggedItems() {
-        Collection<Item> items = new LinkedList<Item>();
-        for (Item item : itemRegistry.getItems()) {
-            for (String tag : item.getTags()) {
-                if (tag.startsWith(HOMEKIT_PREFIX)) {
-                    items.add(item);
-                    break;
-                }
-            }
-        }
-        return items;
-    }
-
     /**
      * Checks if the username exists in our user list
      *
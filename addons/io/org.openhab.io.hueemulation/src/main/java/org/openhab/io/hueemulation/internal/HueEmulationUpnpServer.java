@@ -9,22 +9,37 @@
 package org.openhab.io.hueemulation.internal;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.Inet4Address;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.MulticastSocket;
+import java.net.InterfaceAddress;
 import java.net.NetworkInterface;
-import java.net.SocketException;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.MembershipKey;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Advertises a Hue UPNP compatible bridge
+ * Advertises a Hue UPNP compatible bridge on all network interfaces which
+ * support multicast. One thread receives the searches of all interfaces and
+ * answers with a response prepared for the interface the searching device is
+ * connected to.
  *
  * @author Dan Cunningham
  *
@@ -35,10 +50,36 @@ public class HueEmulationUpnpServer extends Thread {
     // jUPNP shares port 1900, but since this is multicast, we can also bind to it
     static final private int UPNP_PORT_RECV = 1900;
     static final private String MULTI_ADDR = "239.255.255.250";
-    private boolean running;
+
+    /**
+     * time (in ms) after which the network interfaces are checked for changes
+     */
+    static final private long INTERFACE_REFRESH_INTERVAL = 60000;
+
+    /**
+     * devices send searches in bursts, only one search per sender is answered
+     * within this time (in ms)
+     */
+    static final private long DUPLICATE_SEARCH_INTERVAL = 1000;
+
+    private static final byte[] M_SEARCH = "M-SEARCH".getBytes(StandardCharsets.US_ASCII);
+
+    private volatile boolean running;
     private String discoPath;
     private String usn;
-    private InetAddress address;
+    private volatile InetAddress address;
+    private volatile Selector selector;
+
+    /**
+     * joined interfaces in the order they were found
+     */
+    private final Map<NetworkInterface, UpnpInterface> interfaces =
+            new LinkedHashMap<NetworkInterface, UpnpInterface>();
+
+    /**
+     * sender => time of the last answered search
+     */
+    private final Map<SocketAddress, Long> lastSearches = new HashMap<SocketAddress, Long>();
 
     private String discoString = "HTTP/1.1 200 OK\r\n" + "CACHE-CONTROL: max-age=100\r\n" + "EXT:\r\n"
             + "LOCATION: %s\r\n" + "SERVER: FreeRTOS/7.4.2 UPnP/1.0 IpBridge/1.10.0\r\n"
@@ -53,9 +94,11 @@ public class HueEmulationUpnpServer extends Thread {
      *            The unique USN id for this server
      */
     public HueEmulationUpnpServer(String discoPath, String usn) {
+        super("Hue Emulation UPNP Server");
         this.running = true;
         this.discoPath = discoPath;
         this.usn = usn;
+        setDaemon(true);
     }
 
     /**
@@ -63,64 +106,57 @@ public class HueEmulationUpnpServer extends Thread {
      */
     public void shutdown() {
         this.running = false;
+        Selector s = selector;
+        if (s != null) {
+            s.wakeup();
+        }
     }
 
     @Override
     public void run() {
-        MulticastSocket recvSocket = null;
-        // since jupnp shares port 1900, lets use a different port to send UDP packets on just to be safe.
-        DatagramSocket sendSocket = null;
-        byte[] buf = new byte[1000];
-        DatagramPacket recv = new DatagramPacket(buf, buf.length);
         while (running) {
+            DatagramChannel recvChannel = null;
+            // since jupnp shares port 1900, lets use a different port to send UDP packets on just to be safe.
+            DatagramChannel sendChannel = null;
             try {
-                Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
-                while (interfaces.hasMoreElements()) {
-                    NetworkInterface ni = interfaces.nextElement();
-                    Enumeration<InetAddress> addresses = ni.getInetAddresses();
-                    while (addresses.hasMoreElements()) {
-                        InetAddress addr = addresses.nextElement();
-                        if (addr instanceof Inet4Address && !addr.isLoopbackAddress()) {
-                            address = addr;
-                            break;
-                        }
+                selector = Selector.open();
+                recvChannel = DatagramChannel.open(StandardProtocolFamily.INET);
+                recvChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+                recvChannel.bind(new InetSocketAddress(UPNP_PORT_RECV));
+                recvChannel.configureBlocking(false);
+                recvChannel.register(selector, SelectionKey.OP_READ);
+                sendChannel = DatagramChannel.open(StandardProtocolFamily.INET);
+                sendChannel.configureBlocking(false);
 
-                    }
-                }
-                InetSocketAddress socketAddr = new InetSocketAddress(MULTI_ADDR, UPNP_PORT_RECV);
-                recvSocket = new MulticastSocket(UPNP_PORT_RECV);
-                recvSocket.joinGroup(socketAddr, NetworkInterface.getByInetAddress(address));
-                sendSocket = new DatagramSocket();
+                ByteBuffer buf = ByteBuffer.allocate(1000);
+                long nextRefresh = 0;
                 while (running) {
-                    recvSocket.receive(recv);
-                    if (recv.getLength() > 0) {
-                        String data = new String(recv.getData());
-                        logger.trace("Got SSDP Discovery packet from " + recv.getAddress().getHostAddress() + ":"
-                                + recv.getPort());
-                        if (data.startsWith("M-SEARCH")) {
-                            String msg = String
-                                    .format(discoString,
-                                            "http://" + address.getHostAddress().toString() + ":"
-                                                    + System.getProperty("org.osgi.service.http.port") + discoPath,
-                                            usn);
-                            DatagramPacket response = new DatagramPacket(msg.getBytes(), msg.length(),
-                                    recv.getAddress(), recv.getPort());
-                            try {
-                                logger.trace("Sending to " + recv.getAddress().getHostAddress() + " : " + msg);
-                                sendSocket.send(response);
-                            } catch (IOException e) {
-                                logger.error("Could not send UPNP response", e);
-                            }
-                        }
+                    long now = System.currentTimeMillis();
+                    if (now >= nextRefresh) {
+                        refreshInterfaces(recvChannel);
+                        removeOldSearches(now);
+                        nextRefresh = now + INTERFACE_REFRESH_INTERVAL;
+                    }
+                    selector.select(INTERFACE_REFRESH_INTERVAL);
+                    selector.selectedKeys().clear();
+
+                    SocketAddress sender;
+                    while ((sender = recvChannel.receive(buf)) != null) {
+                        buf.flip();
+                        handlePacket((InetSocketAddress) sender, buf, sendChannel);
+                        buf.clear();
                     }
                 }
-            } catch (SocketException e) {
-                logger.error("Socket error with UPNP server", e);
             } catch (IOException e) {
                 logger.error("IO Error with UPNP server", e);
             } finally {
-                IOUtils.closeQuietly(recvSocket);
-                IOUtils.closeQuietly(sendSocket);
+                synchronized (this) {
+                    interfaces.clear();
+                    lastSearches.clear();
+                }
+                IOUtils.closeQuietly(recvChannel);
+                IOUtils.closeQuietly(sendChannel);
+                IOUtils.closeQuietly(selector);
                 if (running) {
                     try {
                         Thread.sleep(3000);
@@ -131,7 +167,251 @@ public class HueEmulationUpnpServer extends Thread {
         }
     }
 
+    /**
+     * @return the address of the first interface the server listens on
+     */
     public InetAddress getAddress() {
         return address;
     }
+
+    /**
+     * @return the search and response counters of each interface, by
+     *         interface name
+     */
+    public synchronized Map<String, InterfaceStatistics> getStatistics() {
+        Map<String, InterfaceStatistics> statistics = new LinkedHashMap<String, InterfaceStatistics>();
+        for (UpnpInterface iface : interfaces.values()) {
+            statistics.put(iface.networkInterface.getName(), new InterfaceStatistics(iface.statistics));
+        }
+        return statistics;
+    }
+
+    /**
+     * answers a search with the response of the interface the sender is
+     * connected to
+     */
+    private synchronized void handlePacket(InetSocketAddress sender, ByteBuffer data, DatagramChannel sendChannel) {
+        logger.trace("Got SSDP Discovery packet from {}:{}", sender.getAddress().getHostAddress(), sender.getPort());
+        if (!startsWith(data, M_SEARCH)) {
+            return;
+        }
+        UpnpInterface iface = getInterface(sender.getAddress());
+        if (iface == null) {
+            return;
+        }
+        iface.statistics.searches++;
+
+        long now = System.currentTimeMillis();
+        Long lastSearch = lastSearches.get(sender);
+        if (lastSearch != null && now - lastSearch < DUPLICATE_SEARCH_INTERVAL) {
+            iface.statistics.suppressed++;
+            return;
+        }
+        lastSearches.put(sender, now);
+
+        try {
+            logger.trace("Sending to {} : {}", sender.getAddress().getHostAddress(), iface.responseString);
+            if (sendChannel.send(iface.response.duplicate(), sender) > 0) {
+                iface.statistics.responses++;
+            } else {
+                // the send buffer is full, the device will search again
+                iface.statistics.failures++;
+            }
+        } catch (IOException e) {
+            iface.statistics.failures++;
+            logger.error("Could not send UPNP response", e);
+        }
+    }
+
+    /**
+     * joins the multicast group on new interfaces and leaves it on the
+     * interfaces that are gone
+     */
+    private void refreshInterfaces(DatagramChannel channel) throws IOException {
+        InetAddress group = InetAddress.getByName(MULTI_ADDR);
+        List<NetworkInterface> found = new ArrayList<NetworkInterface>();
+        Enumeration<NetworkInterface> nis = NetworkInterface.getNetworkInterfaces();
+        while (nis != null && nis.hasMoreElements()) {
+            NetworkInterface ni = nis.nextElement();
+            if (ni.isUp() && !ni.isLoopback() && ni.supportsMulticast() && getInet4Address(ni) != null) {
+                found.add(ni);
+            }
+        }
+
+        synchronized (this) {
+            Iterator<UpnpInterface> it = interfaces.values().iterator();
+            while (it.hasNext()) {
+                UpnpInterface iface = it.next();
+                if (!found.contains(iface.networkInterface)) {
+                    logger.debug("Interface {} is gone, stopped listening", iface.networkInterface.getName());
+                    iface.membership.drop();
+                    it.remove();
+                }
+            }
+            for (NetworkInterface ni : found) {
+                InterfaceAddress interfaceAddress = getInet4Address(ni);
+                UpnpInterface iface = interfaces.get(ni);
+                if (iface == null) {
+                    try {
+                        MembershipKey membership = channel.join(group, ni);
+                        interfaces.put(ni, new UpnpInterface(ni, interfaceAddress, membership));
+                        logger.debug("Listening for UPNP searches on {} ({})", ni.getName(),
+                                interfaceAddress.getAddress().getHostAddress());
+                    } catch (IOException e) {
+                        logger.debug("Could not join UPNP group on {}: {}", ni.getName(), e.getMessage());
+                    }
+                } else if (!iface.interfaceAddress.equals(interfaceAddress)) {
+                    // the address has changed, prepare the response again
+                    interfaces.put(ni, new UpnpInterface(ni, interfaceAddress, iface.membership));
+                }
+            }
+            address = interfaces.isEmpty() ? null
+                    : interfaces.values().iterator().next().interfaceAddress.getAddress();
+            if (logger.isDebugEnabled() && !interfaces.isEmpty()) {
+                logger.debug("UPNP statistics: {}", getStatistics());
+            }
+        }
+    }
+
+    private synchronized void removeOldSearches(long now) {
+        Iterator<Long> it = lastSearches.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next() >= DUPLICATE_SEARCH_INTERVAL) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the interface in the subnet of the given address, or the first
+     *         interface if there is none
+     */
+    private UpnpInterface getInterface(InetAddress sender) {
+        UpnpInterface first = null;
+        for (UpnpInterface iface : interfaces.values()) {
+            if (isInSubnet(sender, iface.interfaceAddress)) {
+                return iface;
+            }
+            if (first == null) {
+                first = iface;
+            }
+        }
+        return first;
+    }
+
+    private static InterfaceAddress getInet4Address(NetworkInterface ni) {
+        for (InterfaceAddress interfaceAddress : ni.getInterfaceAddresses()) {
+            if (interfaceAddress.getAddress() instanceof Inet4Address) {
+                return interfaceAddress;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isInSubnet(InetAddress address, InterfaceAddress interfaceAddress) {
+        byte[] a = address.getAddress();
+        byte[] b = interfaceAddress.getAddress().getAddress();
+        if (a.length != b.length) {
+            return false;
+        }
+        int prefix = interfaceAddress.getNetworkPrefixLength();
+        for (int i = 0; i < a.length && prefix > 0; i++, prefix -= 8) {
+            int mask = prefix >= 8 ? 0xff : (0xff << (8 - prefix)) & 0xff;
+            if ((a[i] & mask) != (b[i] & mask)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean startsWith(ByteBuffer data, byte[] prefix) {
+        if (data.remaining() < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (data.get(data.position() + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * An interface the server listens on, with the response prepared for its
+     * address.
+     */
+    private class UpnpInterface {
+        final NetworkInterface networkInterface;
+        final InterfaceAddress interfaceAddress;
+        final MembershipKey membership;
+        final String responseString;
+        final ByteBuffer response;
+        final InterfaceStatistics statistics = new InterfaceStatistics();
+
+        UpnpInterface(NetworkInterface networkInterface, InterfaceAddress interfaceAddress,
+                MembershipKey membership) {
+            this.networkInterface = networkInterface;
+            this.interfaceAddress = interfaceAddress;
+            this.membership = membership;
+            this.responseString = String.format(discoString, "http://"
+                    + interfaceAddress.getAddress().getHostAddress() + ":"
+                    + System.getProperty("org.osgi.service.http.port") + discoPath, usn);
+            this.response = ByteBuffer.wrap(responseString.getBytes(StandardCharsets.US_ASCII)).asReadOnlyBuffer();
+        }
+    }
+
+    /**
+     * Search and response counters of one interface.
+     */
+    public static class InterfaceStatistics {
+        private long searches;
+        private long responses;
+        private long suppressed;
+        private long failures;
+
+        InterfaceStatistics() {
+        }
+
+        InterfaceStatistics(InterfaceStatistics other) {
+            this.searches = other.searches;
+            this.responses = other.responses;
+            this.suppressed = other.suppressed;
+            this.failures = other.failures;
+        }
+
+        /**
+         * @return the number of received searches
+         */
+        public long getSearches() {
+            return searches;
+        }
+
+        /**
+         * @return the number of sent responses
+         */
+        public long getResponses() {
+            return responses;
+        }
+
+        /**
+         * @return the number of searches that were not answered, because the
+         *         sender had just been answered
+         */
+        public long getSuppressed() {
+            return suppressed;
+        }
+
+        /**
+         * @return the number of responses that could not be sent
+         */
+        public long getFailures() {
+            return failures;
+        }
+
+        @Override
+        public String toString() {
+            return "searches=" + searches + ", responses=" + responses + ", suppressed=" + suppressed
+                    + ", failures=" + failures;
+        }
+    }
 }
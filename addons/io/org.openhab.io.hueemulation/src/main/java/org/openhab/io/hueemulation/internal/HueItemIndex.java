@@ -0,0 +1,230 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.hueemulation.internal;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.smarthome.core.items.GenericItem;
+import org.eclipse.smarthome.core.items.Item;
+import org.eclipse.smarthome.core.items.ItemRegistry;
+import org.eclipse.smarthome.core.items.ItemRegistryChangeListener;
+import org.eclipse.smarthome.core.items.StateChangeListener;
+import org.eclipse.smarthome.core.library.types.DecimalType;
+import org.eclipse.smarthome.core.library.types.OnOffType;
+import org.eclipse.smarthome.core.types.State;
+import org.openhab.io.hueemulation.internal.api.HueDevice;
+import org.openhab.io.hueemulation.internal.api.HueState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+
+/**
+ * Keeps the items that have a voice tag and their Hue JSON representation,
+ * so that API calls don't need to scan the item registry. The index is kept
+ * up to date by registry events, the JSON of a light is only serialized again
+ * when the state of its item changes.
+ *
+ * @author agent
+ *
+ */
+public class HueItemIndex implements ItemRegistryChangeListener, StateChangeListener {
+    private Logger logger = LoggerFactory.getLogger(HueItemIndex.class);
+    private static final String TAG_PREFIX = "homekit:";
+
+    private final Gson gson = new Gson();
+    private ItemRegistry itemRegistry;
+
+    /**
+     * item name => tagged item
+     */
+    private final Map<String, Item> items = new ConcurrentHashMap<String, Item>();
+
+    /**
+     * item name => serialized HueDevice
+     */
+    private final Map<String, String> deviceJson = new ConcurrentHashMap<String, String>();
+
+    /**
+     * serialized listings, null if they have to be built again
+     */
+    private volatile String namesJson;
+    private volatile String dataStoreJson;
+
+    public synchronized void setItemRegistry(ItemRegistry itemRegistry) {
+        this.itemRegistry = itemRegistry;
+        itemRegistry.addRegistryChangeListener(this);
+        for (Item item : itemRegistry.getItems()) {
+            added(item);
+        }
+        logger.debug("Indexed {} tagged items", items.size());
+    }
+
+    public synchronized void stop() {
+        if (itemRegistry != null) {
+            itemRegistry.removeRegistryChangeListener(this);
+            itemRegistry = null;
+        }
+        clear();
+    }
+
+    @Override
+    public synchronized void added(Item item) {
+        if (!isTagged(item)) {
+            return;
+        }
+        items.put(item.getName(), item);
+        deviceJson.put(item.getName(), gson.toJson(itemToDevice(item)));
+        if (item instanceof GenericItem) {
+            ((GenericItem) item).addStateChangeListener(this);
+        }
+        namesJson = null;
+        dataStoreJson = null;
+    }
+
+    @Override
+    public synchronized void removed(Item item) {
+        if (item instanceof GenericItem) {
+            ((GenericItem) item).removeStateChangeListener(this);
+        }
+        if (items.remove(item.getName()) != null) {
+            deviceJson.remove(item.getName());
+            namesJson = null;
+            dataStoreJson = null;
+        }
+    }
+
+    @Override
+    public synchronized void updated(Item oldElement, Item element) {
+        removed(oldElement);
+        added(element);
+    }
+
+    @Override
+    public synchronized void allItemsChanged(Collection<String> oldItemNames) {
+        clear();
+        if (itemRegistry != null) {
+            for (Item item : itemRegistry.getItems()) {
+                added(item);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void stateChanged(Item item, State oldState, State newState) {
+        if (items.get(item.getName()) == item) {
+            deviceJson.put(item.getName(), gson.toJson(itemToDevice(item)));
+            dataStoreJson = null;
+        }
+    }
+
+    @Override
+    public void stateUpdated(Item item, State state) {
+        // only changes are relevant
+    }
+
+    /**
+     * @param name
+     *            the item name
+     * @return the serialized HueDevice of the tagged item or null if there is
+     *         none with that name
+     */
+    public String getDeviceJson(String name) {
+        return deviceJson.get(name);
+    }
+
+    /**
+     * @return a JSON object with the item name and label of each tagged item
+     */
+    public String getDeviceNamesJson() {
+        String json = namesJson;
+        return json != null ? json : buildDeviceNamesJson();
+    }
+
+    /**
+     * @return the JSON of the bridge data store, containing the lights
+     */
+    public String getDataStoreJson() {
+        String json = dataStoreJson;
+        return json != null ? json : buildDataStoreJson();
+    }
+
+    /**
+     * Converts an item to a HueDevice
+     *
+     * @param item
+     * @return
+     *         HueDevice
+     */
+    public static HueDevice itemToDevice(Item item) {
+        State itemState = item.getState();
+        short bri = 0;
+        if (itemState instanceof DecimalType) {
+            bri = (short) ((((DecimalType) itemState).intValue() * 255) / 100);
+        } else if (itemState instanceof OnOffType) {
+            bri = (short) (((OnOffType) itemState) == OnOffType.ON ? 255 : 0);
+        }
+        HueState hueState = new HueState(bri > 0, bri);
+        HueDevice d = new HueDevice(hueState, item.getLabel(), item.getName());
+        return d;
+    }
+
+    private synchronized String buildDeviceNamesJson() {
+        if (namesJson == null) {
+            Map<String, String> names = new HashMap<String, String>();
+            for (Item item : items.values()) {
+                names.put(item.getName(), item.getLabel());
+            }
+            namesJson = gson.toJson(names);
+        }
+        return namesJson;
+    }
+
+    private synchronized String buildDataStoreJson() {
+        if (dataStoreJson == null) {
+            // the lights are joined from their serialized devices, so only
+            // changed lights are serialized again
+            StringBuilder sb = new StringBuilder("{\"lights\":{");
+            boolean first = true;
+            for (Map.Entry<String, String> entry : deviceJson.entrySet()) {
+                if (!first) {
+                    sb.append(',');
+                }
+                sb.append(gson.toJson(entry.getKey())).append(':').append(entry.getValue());
+                first = false;
+            }
+            dataStoreJson = sb.append("}}").toString();
+        }
+        return dataStoreJson;
+    }
+
+    private void clear() {
+        for (Item item : items.values()) {
+            if (item instanceof GenericItem) {
+                ((GenericItem) item).removeStateChangeListener(this);
+            }
+        }
+        items.clear();
+        deviceJson.clear();
+        namesJson = null;
+        dataStoreJson = null;
+    }
+
+    private boolean isTagged(Item item) {
+        for (String tag : item.getTags()) {
+            if (tag.startsWith(TAG_PREFIX)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -15,23 +15,32 @@ import java.net.URISyntaxException;
 import java.net.URLEncoder;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.api.Request;
 import org.eclipse.jetty.client.api.Request.FailureListener;
 import org.eclipse.jetty.client.api.Response;
-import org.eclipse.jetty.client.api.Response.ContentListener;
+import org.eclipse.jetty.client.api.Response.AsyncContentListener;
 import org.eclipse.jetty.client.api.Response.HeadersListener;
 import org.eclipse.jetty.client.api.Result;
 import org.eclipse.jetty.client.util.BytesContentProvider;
 import org.eclipse.jetty.http.HttpField;
 import org.eclipse.jetty.http.HttpFields;
 import org.eclipse.jetty.http.HttpMethod;
-import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.URIUtil;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -74,6 +83,40 @@ public class MyOpenHABClient {
      */
     private static final int HTTP_CLIENT_TIMEOUT = 30000;
 
+    /*
+     * This constant defines the time after which a proxied request is aborted. It has to cover
+     * long polling requests and large downloads
+     */
+    private static final long REQUEST_TIMEOUT = 300000;
+
+    /*
+     * Response content is collected up to this number of bytes before it is sent to my.openHAB
+     */
+    private static final int CONTENT_CHUNK_SIZE = 64 * 1024;
+
+    /*
+     * Collected response content is sent to my.openHAB at the latest after this number of
+     * milliseconds, so that small responses and streams are not delayed
+     */
+    private static final long CONTENT_FLUSH_DELAY = 20;
+
+    /*
+     * If more than this number of bytes have been handed to Socket.IO but not yet been written,
+     * reading of local responses is paused until the transport has drained
+     */
+    private static final long SOCKET_HIGH_WATERMARK = 1024 * 1024;
+
+    /*
+     * A paused response is resumed after this number of milliseconds, even if the transport
+     * has not reported that it has drained
+     */
+    private static final long MAX_PAUSE = 1000;
+
+    /*
+     * Proxy statistics are logged in this interval (in milliseconds)
+     */
+    private static final long STATISTICS_INTERVAL = 60000;
+
     /*
      * This variable holds base URL for my.openHAB cloud connections, has a default
      * value but can be changed
@@ -100,9 +143,38 @@ public class MyOpenHABClient {
      */
     private HttpClient jettyClient;
     /*
-     * This hashmap holds HTTP requests to local openHAB which are currently running
+     * This map holds HTTP requests to local openHAB which are currently running, it is
+     * accessed from Socket.IO and Jetty threads
+     */
+    private ConcurrentHashMap<Integer, ResponseListener> runningRequests;
+    /*
+     * This variable holds the scheduler for delayed content flushes and statistics
+     */
+    private ScheduledExecutorService scheduler;
+    /*
+     * This variable holds the number of content bytes handed to Socket.IO since the
+     * transport has drained the last time
+     */
+    private final AtomicLong pendingBytes = new AtomicLong();
+    /*
+     * This queue holds the responses which are paused until the transport has drained
      */
-    private HashMap<Integer, Request> runningRequests;
+    private final Queue<ResponseListener> pausedResponses = new ConcurrentLinkedQueue<ResponseListener>();
+    /*
+     * Proxy statistics
+     */
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failedRequests = new AtomicLong();
+    private final AtomicLong timedOutRequests = new AtomicLong();
+    private final AtomicLong proxiedBytes = new AtomicLong();
+    private final AtomicLong contentEvents = new AtomicLong();
+    private final AtomicLong pauses = new AtomicLong();
+    private long completedRequests = 0;
+    private long totalLatency = 0;
+    private long maxLatency = 0;
+    private long lastStatisticsTime = System.currentTimeMillis();
+    private long lastStatisticsBytes = 0;
+    private long bytesPerSecond = 0;
     /*
      * This variable indicates if connection to my.openHAB cloud is currently in an established state
      */
@@ -132,10 +204,24 @@ public class MyOpenHABClient {
     public MyOpenHABClient(String uuid, String secret) {
         this.uuid = uuid;
         this.secret = secret;
-        runningRequests = new HashMap<Integer, Request>();
+        runningRequests = new ConcurrentHashMap<Integer, ResponseListener>();
         jettyClient = new HttpClient();
         jettyClient.setMaxConnectionsPerDestination(HTTP_CLIENT_MAX_CONNECTIONS_PER_DEST);
         jettyClient.setConnectTimeout(HTTP_CLIENT_TIMEOUT);
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "myopenhab-proxy");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                updateStatistics();
+            }
+        }, STATISTICS_INTERVAL, STATISTICS_INTERVAL, TimeUnit.MILLISECONDS);
     }
 
     /**
@@ -165,6 +251,13 @@ public class MyOpenHABClient {
                         headers.put("myohversion", Arrays.asList(MyOpenHABService.myohVersion));
                     }
                 });
+                transport.on(Transport.EVENT_DRAIN, new Emitter.Listener() {
+                    @Override
+                    public void call(Object... args) {
+                        logger.trace("Transport.EVENT_DRAIN");
+                        onDrain();
+                    }
+                });
             }
         });
         socket.on(Socket.EVENT_CONNECT, new Emitter.Listener() {
@@ -242,6 +335,20 @@ public class MyOpenHABClient {
         if (runningRequests != null) {
             runningRequests.clear();
         }
+        onDrain();
+    }
+
+    /**
+     * Callback method for the Socket.IO transport which is called when all buffered
+     * packets have been written, paused responses are resumed
+     */
+
+    private void onDrain() {
+        pendingBytes.set(0);
+        ResponseListener listener;
+        while ((listener = pausedResponses.poll()) != null) {
+            listener.resume();
+        }
     }
 
     /**
@@ -321,11 +428,14 @@ public class MyOpenHABClient {
                 logger.error("Unsupported request method " + requestMethod);
                 return;
             }
-            ResponseListener listener = new ResponseListener(requestId);
-            request.onResponseHeaders(listener).onResponseContent(listener).onRequestFailure(listener).send(listener);
-            // If successfully submitted request to http client, add it to the list of currently
-            // running requests to be able to cancel it if needed
-            runningRequests.put(requestId, request);
+            request.timeout(REQUEST_TIMEOUT, TimeUnit.MILLISECONDS);
+            ResponseListener listener = new ResponseListener(requestId, request);
+            // Add the request to the list of currently running requests before it is sent,
+            // as it may already complete while being sent
+            runningRequests.put(requestId, listener);
+            requests.incrementAndGet();
+            request.onResponseHeaders(listener).onResponseContentAsync(listener).onRequestFailure(listener)
+                    .send(listener);
         } catch (JSONException e) {
             logger.error(e.getMessage());
         } catch (IOException e) {
@@ -359,10 +469,9 @@ public class MyOpenHABClient {
             int requestId = data.getInt("id");
             logger.debug("Received cancel for request {}", requestId);
             // Find and abort running request
-            if (runningRequests.containsKey(requestId)) {
-                Request request = runningRequests.get(requestId);
-                request.abort(new InterruptedException());
-                runningRequests.remove(requestId);
+            ResponseListener listener = runningRequests.remove(requestId);
+            if (listener != null) {
+                listener.request.abort(new InterruptedException());
             }
         } catch (JSONException e) {
             logger.error(e.getMessage());
@@ -517,6 +626,7 @@ public class MyOpenHABClient {
 
     public void shutdown() {
         logger.info("Shutting down my.openHAB service connection");
+        scheduler.shutdownNow();
         try {
             jettyClient.stop();
         } catch (Exception e) {
@@ -559,20 +669,60 @@ public class MyOpenHABClient {
         this.listener = listener;
     }
 
+    /**
+     * Returns a snapshot of the proxy statistics
+     */
+
+    public synchronized Statistics getStatistics() {
+        long averageLatency = completedRequests > 0 ? totalLatency / completedRequests : 0;
+        return new Statistics(requests.get(), runningRequests.size(), failedRequests.get(), timedOutRequests.get(),
+                proxiedBytes.get(), bytesPerSecond, contentEvents.get(), pauses.get(), averageLatency, maxLatency);
+    }
+
+    private synchronized void recordLatency(long latency) {
+        completedRequests++;
+        totalLatency += latency;
+        maxLatency = Math.max(maxLatency, latency);
+    }
+
+    private void updateStatistics() {
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            long bytes = proxiedBytes.get();
+            if (now > lastStatisticsTime) {
+                bytesPerSecond = (bytes - lastStatisticsBytes) * 1000 / (now - lastStatisticsTime);
+            }
+            lastStatisticsTime = now;
+            lastStatisticsBytes = bytes;
+        }
+        logger.debug("Proxy statistics: {}", getStatistics());
+    }
+
     /*
-     * An internal class which extends ContentExchange and forwards response
-     * headers and data back to my.openHAB
+     * An internal class which forwards response headers and data back to my.openHAB. Content
+     * is collected into chunks, which are sent when they are full or after a short delay.
+     * While Socket.IO has not written the content sent before, reading of the response is
+     * paused by holding back the content callback.
      *
      */
 
     private class ResponseListener
-            implements Response.CompleteListener, HeadersListener, ContentListener, FailureListener {
+            implements Response.CompleteListener, HeadersListener, AsyncContentListener, FailureListener {
 
         private int mRequestId;
         private boolean mHeadersSent = false;
+        private final Request request;
+        private final long startTime = System.currentTimeMillis();
 
-        public ResponseListener(int requestId) {
+        private byte[] buffer;
+        private int bufferSize = 0;
+        private ScheduledFuture<?> flushTask;
+        private Callback pausedCallback;
+        private ScheduledFuture<?> pauseTimeout;
+
+        public ResponseListener(int requestId, Request request) {
             mRequestId = requestId;
+            this.request = request;
         }
 
         public JSONObject getJSONHeaders(HttpFields httpFields) {
@@ -592,19 +742,30 @@ public class MyOpenHABClient {
             // Remove this request from list of running requests
             runningRequests.remove(mRequestId);
             if (result.isFailed()) {
+                failedRequests.incrementAndGet();
+                if (result.getFailure() instanceof TimeoutException) {
+                    timedOutRequests.incrementAndGet();
+                }
                 logger.warn("Jetty request {} failed: {}", mRequestId, result.getFailure().getMessage());
-                logger.warn(result.getRequestFailure().getMessage());
-                logger.warn(result.getResponseFailure().getMessage());
+                if (result.getRequestFailure() != null) {
+                    logger.warn(result.getRequestFailure().getMessage());
+                }
+                if (result.getResponseFailure() != null) {
+                    logger.warn(result.getResponseFailure().getMessage());
+                }
             }
             JSONObject responseJson = new JSONObject();
             try {
                 responseJson.put("id", mRequestId);
-                socket.emit("responseFinished", responseJson);
+                synchronized (this) {
+                    flushContent();
+                    socket.emit("responseFinished", responseJson);
+                }
                 logger.debug("Finished responding to request {}", mRequestId);
             } catch (JSONException e) {
                 logger.error(e.getMessage());
             }
-
+            recordLatency(System.currentTimeMillis() - startTime);
         }
 
         @Override
@@ -621,16 +782,36 @@ public class MyOpenHABClient {
         }
 
         @Override
-        public void onContent(Response response, ByteBuffer content) {
-            logger.debug("Jetty received response content of size " + String.valueOf(content.remaining()));
-            JSONObject responseJson = new JSONObject();
-            try {
-                responseJson.put("id", mRequestId);
-                responseJson.put("body", BufferUtil.toArray(content));
-                socket.emit("responseContentBinary", responseJson);
-                logger.debug("Sent content to request {}", mRequestId);
-            } catch (JSONException e) {
-                logger.error(e.getMessage());
+        public void onContent(Response response, ByteBuffer content, Callback callback) {
+            logger.trace("Jetty received response content of size {}", content.remaining());
+            synchronized (this) {
+                if (buffer == null) {
+                    buffer = new byte[CONTENT_CHUNK_SIZE];
+                }
+                while (content.hasRemaining()) {
+                    int length = Math.min(content.remaining(), buffer.length - bufferSize);
+                    content.get(buffer, bufferSize, length);
+                    bufferSize += length;
+                    if (bufferSize == buffer.length) {
+                        flushContent();
+                    }
+                }
+                if (bufferSize > 0 && flushTask == null) {
+                    flushTask = scheduler.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            synchronized (ResponseListener.this) {
+                                flushTask = null;
+                                flushContent();
+                            }
+                        }
+                    }, CONTENT_FLUSH_DELAY, TimeUnit.MILLISECONDS);
+                }
+            }
+            if (pendingBytes.get() > SOCKET_HIGH_WATERMARK) {
+                pause(callback);
+            } else {
+                callback.succeeded();
             }
         }
 
@@ -655,5 +836,186 @@ public class MyOpenHABClient {
                 // We should not send headers for the second time...
             }
         }
+
+        /*
+         * Sends the collected content to my.openHAB, must be called while holding the lock
+         * of this listener to keep the order of the Socket.IO events
+         */
+
+        private void flushContent() {
+            if (flushTask != null) {
+                flushTask.cancel(false);
+                flushTask = null;
+            }
+            if (bufferSize == 0) {
+                return;
+            }
+            byte[] body;
+            if (bufferSize == buffer.length) {
+                // hand over the full buffer instead of copying it
+                body = buffer;
+                buffer = new byte[CONTENT_CHUNK_SIZE];
+            } else {
+                body = Arrays.copyOf(buffer, bufferSize);
+            }
+            bufferSize = 0;
+            JSONObject responseJson = new JSONObject();
+            try {
+                responseJson.put("id", mRequestId);
+                responseJson.put("body", body);
+                socket.emit("responseContentBinary", responseJson);
+                pendingBytes.addAndGet(body.length);
+                proxiedBytes.addAndGet(body.length);
+                contentEvents.incrementAndGet();
+                logger.trace("Sent {} bytes of content to request {}", body.length, mRequestId);
+            } catch (JSONException e) {
+                logger.error(e.getMessage());
+            }
+        }
+
+        private void pause(Callback callback) {
+            synchronized (this) {
+                pausedCallback = callback;
+            }
+            pauses.incrementAndGet();
+            pausedResponses.add(this);
+            if (pendingBytes.get() <= SOCKET_HIGH_WATERMARK) {
+                // the transport has drained in the meantime
+                pausedResponses.remove(this);
+                resume();
+            } else {
+                ScheduledFuture<?> timeout = scheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        pausedResponses.remove(ResponseListener.this);
+                        resume();
+                    }
+                }, MAX_PAUSE, TimeUnit.MILLISECONDS);
+                synchronized (this) {
+                    if (pausedCallback != null) {
+                        pauseTimeout = timeout;
+                    } else {
+                        // resumed while the timeout was being scheduled
+                        timeout.cancel(false);
+                    }
+                }
+            }
+        }
+
+        private void resume() {
+            Callback callback;
+            ScheduledFuture<?> timeout;
+            synchronized (this) {
+                callback = pausedCallback;
+                pausedCallback = null;
+                timeout = pauseTimeout;
+                pauseTimeout = null;
+            }
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+            if (callback != null) {
+                callback.succeeded();
+            }
+        }
+    }
+
+    /**
+     * Statistics of the requests proxied from my.openHAB to openHAB
+     */
+
+    public static class Statistics {
+        private final long requests;
+        private final int runningRequests;
+        private final long failedRequests;
+        private final long timedOutRequests;
+        private final long proxiedBytes;
+        private final long bytesPerSecond;
+        private final long contentEvents;
+        private final long pauses;
+        private final long averageLatency;
+        private final long maxLatency;
+
+        Statistics(long requests, int runningRequests, long failedRequests, long timedOutRequests, long proxiedBytes,
+                long bytesPerSecond, long contentEvents, long pauses, long averageLatency, long maxLatency) {
+            this.requests = requests;
+            this.runningRequests = runningRequests;
+            this.failedRequests = failedRequests;
+            this.timedOutRequests = timedOutRequests;
+            this.proxiedBytes = proxiedBytes;
+            this.bytesPerSecond = bytesPerSecond;
+            this.contentEvents = contentEvents;
+            this.pauses = pauses;
+            this.averageLatency = averageLatency;
+            this.maxLatency = maxLatency;
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public int getRunningRequests() {
+            return runningRequests;
+        }
+
+        public long getFailedRequests() {
+            return failedRequests;
+        }
+
+        public long getTimedOutRequests() {
+            return timedOutRequests;
+        }
+
+        /**
+         * Returns the number of response content bytes sent to my.openHAB
+         */
+        public long getProxiedBytes() {
+            return proxiedBytes;
+        }
+
+        /**
+         * Returns the number of response content bytes per second sent to my.openHAB during the
+         * last statistics interval
+         */
+        public long getBytesPerSecond() {
+            return bytesPerSecond;
+        }
+
+        /**
+         * Returns the number of content events sent to my.openHAB
+         */
+        public long getContentEvents() {
+            return contentEvents;
+        }
+
+        /**
+         * Returns how often reading a response was paused because Socket.IO had not written
+         * the content sent before
+         */
+        public long getPauses() {
+            return pauses;
+        }
+
+        /**
+         * Returns the average time in milliseconds from receiving a request until it was finished
+         */
+        public long getAverageLatency() {
+            return averageLatency;
+        }
+
+        /**
+         * Returns the maximum time in milliseconds from receiving a request until it was finished
+         */
+        public long getMaxLatency() {
+            return maxLatency;
+        }
+
+        @Override
+        public String toString() {
+            return "requests=" + requests + ", running=" + runningRequests + ", failed=" + failedRequests
+                    + ", timedOut=" + timedOutRequests + ", bytes=" + proxiedBytes + ", bytesPerSecond="
+                    + bytesPerSecond + ", contentEvents=" + contentEvents + ", pauses=" + pauses + ", latency="
+                    + averageLatency + "/" + maxLatency + "ms";
+        }
     }
 }
@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.ui.cometvisu.internal.chart;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests cases for {@link ChartSeries}.
+ *
+ * @author agent
+ * @since 2.0.0
+ */
+public class ChartSeriesTest {
+
+    private static final ChartSeries.ValueFormatter FORMATTER = new ChartSeries.ValueFormatter() {
+        @Override
+        public String format(double value) {
+            return Double.isNaN(value) ? "null" : Long.toString(Math.round(value));
+        }
+    };
+
+    @Test
+    public void downsampleKeepsSmallSeries() {
+        ChartSeries series = series(0, 10, 5);
+
+        assertSame(series, series.downsample(5));
+        assertSame(series, series.downsample(2));
+    }
+
+    @Test
+    public void downsampleKeepsFirstLastAndPeaks() {
+        ChartSeries series = new ChartSeries();
+        for (int i = 0; i < 100; i++) {
+            series.add(i * 1000L, i == 42 ? 100 : 0);
+        }
+
+        ChartSeries sampled = series.downsample(10);
+
+        assertEquals(10, sampled.size());
+        assertEquals(0, sampled.getTimestamp(0));
+        assertEquals(99000, sampled.getTimestamp(9));
+        boolean peak = false;
+        for (int i = 0; i < sampled.size(); i++) {
+            if (i > 0) {
+                assertTrue(sampled.getTimestamp(i) > sampled.getTimestamp(i - 1));
+            }
+            peak |= sampled.getValue(i) == 100;
+        }
+        assertTrue(peak);
+    }
+
+    @Test
+    public void mergeFillsMissingValues() {
+        ChartSeries first = new ChartSeries();
+        first.add(1000, 1);
+        first.add(3000, 3);
+        ChartSeries second = new ChartSeries();
+        second.add(2000, 20);
+        second.add(3000, 30);
+
+        List<Object[]> rows = ChartSeries.mergeToRows(Arrays.asList(first, second), FORMATTER);
+
+        assertEquals(3, rows.size());
+        assertRow(rows.get(0), 1000, "1", "null");
+        assertRow(rows.get(1), 2000, "null", "20");
+        assertRow(rows.get(2), 3000, "3", "30");
+    }
+
+    @Test
+    public void downsampleGroupSharesTimestamps() {
+        List<ChartSeries> columns = new ArrayList<ChartSeries>();
+        for (int column = 0; column < 4; column++) {
+            ChartSeries series = new ChartSeries();
+            for (int i = 0; i < 1000; i++) {
+                series.add(i * 1000L, Math.sin(i / (10.0 + column)) * (column + 1));
+            }
+            columns.add(series);
+        }
+
+        List<ChartSeries> sampled = ChartSeries.downsample(columns, 50);
+        List<Object[]> rows = ChartSeries.mergeToRows(sampled, FORMATTER);
+
+        assertEquals(4, sampled.size());
+        assertEquals(50, rows.size());
+        for (Object[] row : rows) {
+            assertTrue(!((List<?>) row[1]).contains("null"));
+        }
+    }
+
+    @Test
+    public void downsampleGroupAlignsColumns() {
+        ChartSeries first = series(0, 10, 20);
+        ChartSeries second = series(5, 10, 20);
+
+        List<ChartSeries> aligned = ChartSeries.downsample(Arrays.asList(first, second), 100);
+
+        assertEquals(40, aligned.get(0).size());
+        assertEquals(40, aligned.get(1).size());
+        assertEquals(5, aligned.get(0).getTimestamp(1));
+        assertTrue(Double.isNaN(aligned.get(0).getValue(1)));
+        assertEquals(0, aligned.get(1).getValue(1), 0);
+
+        List<ChartSeries> sampled = ChartSeries.downsample(Arrays.asList(first, second), 10);
+
+        assertEquals(10, sampled.get(0).size());
+        assertEquals(10, sampled.get(1).size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(sampled.get(0).getTimestamp(i), sampled.get(1).getTimestamp(i));
+        }
+    }
+
+    private static ChartSeries series(long start, long step, int size) {
+        ChartSeries series = new ChartSeries(size);
+        for (int i = 0; i < size; i++) {
+            series.add(start + i * step, i);
+        }
+        return series;
+    }
+
+    private static void assertRow(Object[] row, long timestamp, String... values) {
+        assertEquals(timestamp, row[0]);
+        assertEquals(Arrays.asList(values), row[1]);
+    }
+}
@@ -0,0 +1,173 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.ui.cometvisu.servlet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.ui.cometvisu.servlet.StaticFileCache.CachedFile;
+
+/**
+ * Tests cases for {@link StaticFileCache}.
+ *
+ * @author agent
+ * @since 2.0.0
+ */
+public class StaticFileCacheTest {
+    private static final long TIMEOUT = 10000;
+
+    private File folder;
+    private StaticFileCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("cometvisu").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        if (cache != null) {
+            cache.dispose();
+        }
+        for (File file : folder.listFiles()) {
+            file.delete();
+        }
+        folder.delete();
+    }
+
+    @Test
+    public void fileIsServedFromCache() throws IOException {
+        cache = new StaticFileCache();
+        byte[] content = text(4096);
+        File file = write("visu.js", content);
+
+        CachedFile first = cache.get(file, true);
+        assertNotNull(first);
+        assertArrayEquals(content, first.getContent());
+        assertArrayEquals(content, gunzip(first.getGzipContent()));
+        assertSame(first, cache.get(file, true));
+
+        StaticFileCache.Statistics stats = cache.getStatistics();
+        assertEquals(1, stats.getFiles());
+        assertEquals(1, stats.getHits());
+        assertEquals(1, stats.getMisses());
+    }
+
+    @Test
+    public void eTagsDependOnContent() throws IOException {
+        cache = new StaticFileCache();
+        CachedFile first = cache.get(write("a.css", text(1000)), true);
+        CachedFile same = cache.get(write("b.css", text(1000)), true);
+        CachedFile other = cache.get(write("c.css", text(1001)), true);
+
+        assertEquals(first.getETag(), same.getETag());
+        assertFalse(first.getETag().equals(other.getETag()));
+        assertFalse(first.getETag().equals(first.getGzipETag()));
+    }
+
+    @Test
+    public void incompressibleFileHasNoGzipContent() throws IOException {
+        cache = new StaticFileCache();
+        byte[] content = new byte[4096];
+        new Random(1).nextBytes(content);
+
+        CachedFile cached = cache.get(write("image.png", content), true);
+        assertNull(cached.getGzipContent());
+        assertNull(cache.get(write("visu.js", text(4096)), false).getGzipContent());
+    }
+
+    @Test
+    public void largeFileIsNotCached() throws IOException {
+        cache = new StaticFileCache(10000, 1000);
+        assertNull(cache.get(write("large.js", text(1001)), false));
+        assertNotNull(cache.get(write("small.js", text(1000)), false));
+        assertEquals(1, cache.getStatistics().getFiles());
+    }
+
+    @Test
+    public void leastRecentlyUsedFileIsEvicted() throws IOException {
+        cache = new StaticFileCache(2500, 1000);
+        File first = write("first.js", text(1000));
+        File second = write("second.js", text(1000));
+        File third = write("third.js", text(1000));
+
+        CachedFile cached = cache.get(first, false);
+        cache.get(second, false);
+        assertSame(cached, cache.get(first, false));
+        cache.get(third, false);
+
+        StaticFileCache.Statistics stats = cache.getStatistics();
+        assertEquals(2, stats.getFiles());
+        assertEquals(2000, stats.getSize());
+        assertEquals(1, stats.getEvictions());
+        assertSame(cached, cache.get(first, false));
+    }
+
+    @Test
+    public void changedFileIsReloaded() throws Exception {
+        cache = new StaticFileCache();
+        File file = write("config.xml", text(100));
+        cache.get(file, false);
+
+        byte[] changed = text(200);
+        write("config.xml", changed);
+
+        // the change is reported by the file system watcher
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        CachedFile cached = cache.get(file, false);
+        while (!Arrays.equals(changed, cached.getContent()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+            cached = cache.get(file, false);
+        }
+        assertArrayEquals(changed, cached.getContent());
+        assertTrue(cache.getStatistics().getInvalidations() > 0);
+    }
+
+    private File write(String name, byte[] content) throws IOException {
+        File file = new File(folder, name);
+        Files.write(file.toPath(), content);
+        return file;
+    }
+
+    private byte[] text(int length) {
+        byte[] text = new byte[length];
+        for (int i = 0; i < length; i++) {
+            text[i] = (byte) ('a' + i % 26);
+        }
+        return text;
+    }
+
+    private byte[] gunzip(byte[] content) throws IOException {
+        GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(content));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+}
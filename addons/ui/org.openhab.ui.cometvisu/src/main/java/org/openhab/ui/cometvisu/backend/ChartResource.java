@@ -16,11 +16,11 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.TreeMap;
 
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
@@ -44,10 +44,12 @@ import org.eclipse.smarthome.core.persistence.PersistenceService;
 import org.eclipse.smarthome.core.persistence.QueryablePersistenceService;
 import org.eclipse.smarthome.io.rest.RESTResource;
 import org.openhab.ui.cometvisu.internal.Config;
+import org.openhab.ui.cometvisu.internal.chart.ChartSeries;
 import org.rrd4j.ConsolFun;
 import org.rrd4j.core.FetchData;
 import org.rrd4j.core.FetchRequest;
 import org.rrd4j.core.RrdDb;
+import org.rrd4j.core.RrdDbPool;
 import org.rrd4j.core.Util;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -72,6 +74,32 @@ public class ChartResource implements RESTResource {
     protected final static String RRD_FOLDER = org.eclipse.smarthome.config.core.ConfigConstants.getUserDataFolder()
             + File.separator + "persistence" + File.separator + "rrd4j";
 
+    /**
+     * maximum number of points per series, if the client does not request
+     * a number
+     */
+    private static final int DEFAULT_MAX_POINTS = 2000;
+
+    /**
+     * number of recent results that are kept and the time (in ms) they are
+     * reused
+     */
+    private static final int CACHE_SIZE = 50;
+    private static final long CACHE_TTL = 60000;
+
+    /**
+     * the start and end time (in s) are rounded to this step in the cache
+     * key, so relative times like "now" match the cached results
+     */
+    private static final long CACHE_GRANULARITY = CACHE_TTL / 1000;
+
+    private static final ChartSeries.ValueFormatter VALUE_FORMATTER = new ChartSeries.ValueFormatter() {
+        @Override
+        public String format(double value) {
+            return formatDouble(value, "null", true);
+        }
+    };
+
     static {
         df = (DecimalFormat) NumberFormat.getNumberInstance(Locale.ENGLISH);
         df.applyPattern(PATTERN);
@@ -82,6 +110,15 @@ public class ChartResource implements RESTResource {
 
     private ItemRegistry itemRegistry;
 
+    private final Map<String, CachedSeries> cache = new LinkedHashMap<String, CachedSeries>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedSeries> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
     @Context
     private UriInfo uriInfo;
 
@@ -110,7 +147,7 @@ public class ChartResource implements RESTResource {
     @Produces({ MediaType.APPLICATION_JSON })
     public Response getChartSeries(@Context HttpHeaders headers, @QueryParam("rrd") String itemName,
             @QueryParam("ds") String consFunction, @QueryParam("start") String start, @QueryParam("end") String end,
-            @QueryParam("res") long resolution) {
+            @QueryParam("res") long resolution, @QueryParam("points") int points) {
         if (logger.isDebugEnabled())
             logger.debug("Received GET request at '{}' for rrd '{}'.", uriInfo.getPath(), itemName);
         String responseType = MediaType.APPLICATION_JSON;
@@ -126,6 +163,23 @@ public class ChartResource implements RESTResource {
         Date endTime = new Date();
         endTime.setTime(times[1] * 1000L);
 
+        // the series are reduced to the requested number of points, by
+        // default to one point per resolution step
+        int maxPoints = points;
+        if (maxPoints <= 0) {
+            maxPoints = DEFAULT_MAX_POINTS;
+            if (resolution > 0) {
+                maxPoints = (int) Math.min((times[1] - times[0]) / resolution, DEFAULT_MAX_POINTS);
+            }
+        }
+
+        String cacheKey = itemName + "|" + consFunction + "|" + times[0] / CACHE_GRANULARITY + "|"
+                + times[1] / CACHE_GRANULARITY + "|" + resolution + "|" + maxPoints;
+        Object cachedData = getCachedSeries(cacheKey);
+        if (cachedData != null) {
+            return Response.ok(cachedData, responseType).build();
+        }
+
         if (itemName.endsWith(".rrd"))
             itemName = itemName.substring(0, itemName.length() - 4);
         String[] parts = itemName.split(":");
@@ -153,12 +207,14 @@ public class ChartResource implements RESTResource {
                     throw new IllegalArgumentException("No Persistence service found.");
                 }
             }
-            Object data = null;
+            List<Object[]> data = null;
             if (persistenceService.getName().equals("rrd4j")) {
-                data = getRrdSeries(persistenceService, item, consilidationFunction, startTime, endTime, resolution);
+                data = getRrdSeries(persistenceService, item, consilidationFunction, startTime, endTime, resolution,
+                        maxPoints);
             } else {
-                data = getPersistenceSeries(persistenceService, item, startTime, endTime, resolution);
+                data = getPersistenceSeries(persistenceService, item, startTime, endTime, resolution, maxPoints);
             }
+            putCachedSeries(cacheKey, data);
             return Response.ok(data, responseType).build();
         } catch (ItemNotFoundException e1) {
             logger.error("Item '{}' not found error while requesting series data.", itemName);
@@ -167,9 +223,9 @@ public class ChartResource implements RESTResource {
         return Response.serverError().build();
     }
 
-    public Object getPersistenceSeries(QueryablePersistenceService persistenceService, Item item, Date timeBegin,
-            Date timeEnd, long resolution) {
-        Map<Long, ArrayList<String>> data = new HashMap<Long, ArrayList<String>>();
+    public List<Object[]> getPersistenceSeries(QueryablePersistenceService persistenceService, Item item,
+            Date timeBegin, Date timeEnd, long resolution, int maxPoints) {
+        ChartSeries series = new ChartSeries();
 
         // Define the data filter
         FilterCriteria filter = new FilterCriteria();
@@ -184,19 +240,24 @@ public class ChartResource implements RESTResource {
 
         // Iterate through the data
         int dataCounter = 0;
+        long lastTime = Long.MIN_VALUE;
         while (it.hasNext()) {
             dataCounter++;
             HistoricItem historicItem = it.next();
             org.eclipse.smarthome.core.types.State state = historicItem.getState();
-            if (state instanceof DecimalType) {
-                ArrayList<String> vals = new ArrayList<String>();
-                vals.add(formatDouble(((DecimalType) state).doubleValue(), "null", true));
-                data.put(historicItem.getTimestamp().getTime(), vals);
+            long time = historicItem.getTimestamp().getTime();
+            // only one value per timestamp, as before
+            if (state instanceof DecimalType && time > lastTime) {
+                series.add(time, ((DecimalType) state).doubleValue());
+                lastTime = time;
             }
         }
         logger.debug("'{}' querying item '{}' from '{}' to '{}' => '{}' results", persistenceService.getName(),
                 filter.getItemName(), filter.getBeginDate(), filter.getEndDate(), dataCounter);
-        return convertToRrd(data);
+
+        List<ChartSeries> columns = new ArrayList<ChartSeries>(1);
+        columns.add(series.downsample(maxPoints));
+        return ChartSeries.mergeToRows(columns, VALUE_FORMATTER);
     }
 
     /**
@@ -208,11 +269,13 @@ public class ChartResource implements RESTResource {
      * @param timeBegin
      * @param timeEnd
      * @param resolution
+     * @param maxPoints
+     *            - the maximum number of points per series
      * @return
      */
-    public Object getRrdSeries(QueryablePersistenceService persistenceService, Item item,
-            ConsolFun consilidationFunction, Date timeBegin, Date timeEnd, long resolution) {
-        Map<Long, ArrayList<String>> data = new TreeMap<Long, ArrayList<String>>();
+    public List<Object[]> getRrdSeries(QueryablePersistenceService persistenceService, Item item,
+            ConsolFun consilidationFunction, Date timeBegin, Date timeEnd, long resolution, int maxPoints) {
+        List<ChartSeries> columns = new ArrayList<ChartSeries>();
         try {
             List<String> itemNames = new ArrayList<String>();
 
@@ -225,60 +288,69 @@ public class ChartResource implements RESTResource {
                 itemNames.add(item.getName());
             }
             for (String itemName : itemNames) {
-                addRrdData(data, itemName, consilidationFunction, timeBegin, timeEnd, resolution);
+                addRrdData(columns, itemName, consilidationFunction, timeBegin, timeEnd, resolution);
             }
 
         } catch (FileNotFoundException e) {
             // rrd file does not exist, fallback to generic persistance service
             logger.debug("no rrd file found '{}'", (RRD_FOLDER + File.separator + item.getName() + ".rrd"));
-            return getPersistenceSeries(persistenceService, item, timeBegin, timeEnd, resolution);
+            return getPersistenceSeries(persistenceService, item, timeBegin, timeEnd, resolution, maxPoints);
         } catch (Exception e) {
             logger.error(e.getLocalizedMessage() + ": fallback to generic persistance service");
-            return getPersistenceSeries(persistenceService, item, timeBegin, timeEnd, resolution);
+            return getPersistenceSeries(persistenceService, item, timeBegin, timeEnd, resolution, maxPoints);
         }
-        return convertToRrd(data);
+        // the members are merged by timestamp, a member without value at a
+        // timestamp gets "null" in its column. All members are reduced to the
+        // same timestamps, so the rows do not exceed maxPoints.
+        return ChartSeries.mergeToRows(ChartSeries.downsample(columns, maxPoints), VALUE_FORMATTER);
     }
 
-    private ArrayList<Object> convertToRrd(Map<Long, ArrayList<String>> data) {
-        ArrayList<Object> rrd = new ArrayList<Object>();
-        for (Long time : data.keySet()) {
-            Object[] entry = new Object[2];
-            entry[0] = time;
-            entry[1] = data.get(time);
-            rrd.add(entry);
+    private void addRrdData(List<ChartSeries> columns, String itemName, ConsolFun consilidationFunction,
+            Date timeBegin, Date timeEnd, long resolution) throws IOException {
+        String path = RRD_FOLDER + File.separator + itemName + ".rrd";
+        if (!new File(path).exists()) {
+            throw new FileNotFoundException(path);
         }
-        return rrd;
-    }
+        // the pool keeps the rrd files open between requests
+        RrdDbPool pool = RrdDbPool.getInstance();
+        RrdDb rrdDb = pool.requestRrdDb(path);
+        try {
+            FetchRequest fetchRequest = rrdDb.createFetchRequest(consilidationFunction,
+                    Util.getTimestamp(timeBegin), Util.getTimestamp(timeEnd), resolution);
+            FetchData fetchData = fetchRequest.fetchData();
+            long[] timestamps = fetchData.getTimestamps();
+            double[][] values = fetchData.getValues();
+
+            logger.debug("RRD fetch returned '{}' rows and '{}' columns", fetchData.getRowCount(),
+                    fetchData.getColumnCount());
 
-    private Map<Long, ArrayList<String>> addRrdData(Map<Long, ArrayList<String>> data, String itemName,
-            ConsolFun consilidationFunction, Date timeBegin, Date timeEnd, long resolution) throws IOException {
-        RrdDb rrdDb = new RrdDb(RRD_FOLDER + File.separator + itemName + ".rrd");
-        FetchRequest fetchRequest = rrdDb.createFetchRequest(consilidationFunction, Util.getTimestamp(timeBegin),
-                Util.getTimestamp(timeEnd), resolution);
-        FetchData fetchData = fetchRequest.fetchData();
-        // logger.info(fetchData.toString());
-        long[] timestamps = fetchData.getTimestamps();
-        double[][] values = fetchData.getValues();
-
-        logger.debug("RRD fetch returned '{}' rows and '{}' columns", fetchData.getRowCount(),
-                fetchData.getColumnCount());
-
-        for (int row = 0; row < fetchData.getRowCount(); row++) {
-            // change to microseconds
-            long time = timestamps[row] * 1000;
-
-            if (!data.containsKey(time)) {
-                data.put(time, new ArrayList<String>());
-            }
-            ArrayList<String> vals = data.get(time);
-            int indexOffset = vals.size();
             for (int dsIndex = 0; dsIndex < fetchData.getColumnCount(); dsIndex++) {
-                vals.add(dsIndex + indexOffset, formatDouble(values[dsIndex][row], "null", true));
+                ChartSeries series = new ChartSeries(fetchData.getRowCount());
+                for (int row = 0; row < fetchData.getRowCount(); row++) {
+                    // change to milliseconds
+                    series.add(timestamps[row] * 1000, values[dsIndex][row]);
+                }
+                columns.add(series);
             }
+        } finally {
+            pool.release(rrdDb);
+        }
+    }
+
+    private synchronized List<Object[]> getCachedSeries(String key) {
+        CachedSeries cached = cache.get(key);
+        if (cached == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - cached.created > CACHE_TTL) {
+            cache.remove(key);
+            return null;
         }
-        rrdDb.close();
+        return cached.data;
+    }
 
-        return data;
+    private synchronized void putCachedSeries(String key, List<Object[]> data) {
+        cache.put(key, new CachedSeries(data));
     }
 
     static String formatDouble(double x, String nanString, boolean forceExponents) {
@@ -290,4 +362,16 @@ public class ChartResource implements RESTResource {
         }
         return "" + x;
     }
+
+    /**
+     * a recently requested series
+     */
+    private static class CachedSeries {
+        final long created = System.currentTimeMillis();
+        final List<Object[]> data;
+
+        CachedSeries(List<Object[]> data) {
+            this.data = data;
+        }
+    }
 }
@@ -7,10 +7,7 @@
  */
 package org.openhab.ui.cometvisu.backend;
 
-import java.util.Map;
-
 import org.eclipse.smarthome.core.items.Item;
-import org.eclipse.smarthome.core.types.State;
 
 /**
  * Broadcast state change events of items to listening clients
@@ -54,12 +51,14 @@ public interface EventBroadcaster {
     public void registerItems();
 
     /**
-     * lists all client item names and the associated type which must be notified
-     * when the item changes
+     * sends the state of the given item to all clients which have requested
+     * the item
      *
      * @param item
-     *            - the item that is listened to
-     * @return
+     *            - the item whose state has changed
+     * @param typedOnly
+     *            - only notify clients which requested the item with a type
+     *            prefix
      */
-    public Map<String, Class<? extends State>> getClientItems(Item item);
+    public void broadcastItemState(Item item, boolean typedOnly);
 }
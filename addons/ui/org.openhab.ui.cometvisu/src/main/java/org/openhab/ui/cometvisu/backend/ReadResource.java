@@ -11,11 +11,16 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -34,7 +39,6 @@ import org.eclipse.smarthome.core.items.ItemRegistry;
 import org.eclipse.smarthome.core.types.State;
 import org.eclipse.smarthome.io.rest.RESTResource;
 import org.glassfish.jersey.media.sse.EventOutput;
-import org.glassfish.jersey.media.sse.SseBroadcaster;
 import org.glassfish.jersey.media.sse.SseFeature;
 import org.openhab.ui.cometvisu.backend.beans.StateBean;
 import org.openhab.ui.cometvisu.internal.Config;
@@ -54,16 +58,23 @@ import org.slf4j.LoggerFactory;
 public class ReadResource implements EventBroadcaster, RESTResource {
     private static final Logger logger = LoggerFactory.getLogger(ReadResource.class);
 
-    private SseBroadcaster broadcaster = new SseBroadcaster();
+    /**
+     * state changes arriving within this time (in ms) are sent to a client in
+     * one event
+     */
+    private static final long BATCH_WINDOW = 50;
 
-    private final ExecutorService executorService;
+    private final ScheduledExecutorService executorService;
 
     private ItemRegistry itemRegistry;
 
     private StateEventListener stateEventListener;
 
-    private List<String> itemNames = new ArrayList<String>();
-    private Map<Item, Map<String, Class<? extends State>>> items = new HashMap<Item, Map<String, Class<? extends State>>>();
+    /**
+     * openHAB item name => subscriptions of the clients that requested the
+     * item
+     */
+    private final Map<String, Set<StateSubscription>> subscriptions;
 
     @Context
     private UriInfo uriInfo;
@@ -77,7 +88,8 @@ public class ReadResource implements EventBroadcaster, RESTResource {
     private Collection<ItemFactory> itemFactories = new CopyOnWriteArrayList<ItemFactory>();
 
     public ReadResource() {
-        this.executorService = Executors.newSingleThreadExecutor();
+        this.executorService = Executors.newSingleThreadScheduledExecutor();
+        this.subscriptions = new ConcurrentHashMap<String, Set<StateSubscription>>();
         this.stateEventListener = new StateEventListener();
         this.stateEventListener.setEventBroadcaster(this);
     }
@@ -99,10 +111,11 @@ public class ReadResource implements EventBroadcaster, RESTResource {
     }
 
     /**
-     * Subscribes the connecting client to the stream of events filtered by the
-     * given eventFilter.
+     * Subscribes the connecting client to the state changes of the requested
+     * items.
      *
-     * @param eventFilter
+     * @param itemNames
+     *            - the requested items, optionally prefixed with a type
      * @return {@link EventOutput} object associated with the incoming
      *         connection.
      * @throws IOException
@@ -113,69 +126,71 @@ public class ReadResource implements EventBroadcaster, RESTResource {
     public Object getStates(@QueryParam("a") List<String> itemNames, @QueryParam("i") long index,
             @QueryParam("t") long time) throws IOException, InterruptedException {
         final EventOutput eventOutput = new EventOutput();
+        StateSubscription subscription = new StateSubscription(eventOutput);
 
-        this.itemNames = itemNames;
-
-        broadcaster.add(eventOutput);
+        for (String cvItemName : itemNames) {
+            String[] parts = cvItemName.split(":");
+            String ohItemName = cvItemName;
+            Class<? extends State> stateClass = null;
+            if (parts.length == 2) {
+                String classPrefix = parts[0].toLowerCase();
+                if (Config.itemTypeMapper.containsKey(classPrefix)) {
+                    stateClass = Config.itemTypeMapper.get(classPrefix);
+                } else {
+                    logger.debug("no type found for '{}'", classPrefix);
+                }
+                ohItemName = parts[1];
+            }
+            subscription.addItem(ohItemName, cvItemName, stateClass);
+        }
 
-        // get all requested items and send their states to the client
-        items = new HashMap<Item, Map<String, Class<? extends State>>>();
-        // send the current states of all items to the client
+        // send the current states of all items to this client only
         if (this.itemRegistry != null) {
             List<StateBean> states = new ArrayList<StateBean>();
-            for (String cvItemName : itemNames) {
+            for (String ohItemName : subscription.getItemNames()) {
                 try {
-                    String[] parts = cvItemName.split(":");
-                    String ohItemName = cvItemName;
-                    Class<? extends State> stateClass = null;
-                    if (parts.length == 2) {
-                        String classPrefix = parts[0].toLowerCase();
-                        if (Config.itemTypeMapper.containsKey(classPrefix)) {
-                            stateClass = Config.itemTypeMapper.get(classPrefix);
-                            classPrefix += ":";
-                        } else {
-                            logger.debug("no type found for '{}'", classPrefix);
-                            classPrefix = "";
-                        }
-                        ohItemName = parts[1];
-                    }
                     Item item = this.itemRegistry.getItem(ohItemName);
-                    if (!items.containsKey(item)) {
-                        items.put(item, new HashMap<String, Class<? extends State>>());
+                    Map<String, Class<? extends State>> clientItems = subscription.getClientItems(ohItemName);
+                    for (Map.Entry<String, Class<? extends State>> entry : clientItems.entrySet()) {
+                        StateBean itemState = new StateBean();
+                        itemState.name = entry.getKey();
+                        itemState.state = getState(item, entry.getValue());
+                        states.add(itemState);
                     }
-                    items.get(item).put(cvItemName, stateClass);
-                    StateBean itemState = new StateBean();
-                    itemState.name = cvItemName;
-
-                    if (stateClass != null) {
-                        itemState.state = item.getStateAs(stateClass).toString();
-                        logger.trace("get state of '{}' as '{}' == '{}'", item, stateClass, itemState.state);
-                    } else {
-                        itemState.state = item.getState().toString();
-                    }
-                    states.add(itemState);
                 } catch (ItemNotFoundException e) {
                     logger.error(e.getLocalizedMessage());
                 }
             }
-            logger.debug("initially broadcasting " + states.size() + "/" + itemNames.size() + " item states");
-            broadcaster.broadcast(SseUtil.buildEvent(states));
+            logger.debug("initially sending {}/{} item states", states.size(), itemNames.size());
+            eventOutput.write(SseUtil.buildEvent(states));
         }
+
         // listen to state changes of the requested items
-        registerItems();
+        removeClosedSubscriptions();
+        addSubscription(subscription);
 
         return eventOutput;
     }
 
+    private synchronized void addSubscription(StateSubscription subscription) {
+        for (String ohItemName : subscription.getItemNames()) {
+            Set<StateSubscription> itemSubscriptions = subscriptions.get(ohItemName);
+            if (itemSubscriptions == null) {
+                itemSubscriptions = new CopyOnWriteArraySet<StateSubscription>();
+                subscriptions.put(ohItemName, itemSubscriptions);
+            }
+            itemSubscriptions.add(subscription);
+            registerItem(ohItemName);
+        }
+    }
+
     /**
      * listen for state changes from the requested items
      */
     @Override
     public void registerItems() {
-        for (Item item : items.keySet()) {
-            if (item instanceof GenericItem) {
-                ((GenericItem) item).addStateChangeListener(stateEventListener);
-            }
+        for (String ohItemName : subscriptions.keySet()) {
+            registerItem(ohItemName);
         }
     }
 
@@ -188,27 +203,60 @@ public class ReadResource implements EventBroadcaster, RESTResource {
      */
     @Override
     public void registerItem(Item item) {
-        if (item == null || items.containsKey(item) || !itemNames.contains(item.getName()))
+        if (item == null || !subscriptions.containsKey(item.getName())) {
             return;
+        }
         if (item instanceof GenericItem) {
             ((GenericItem) item).addStateChangeListener(stateEventListener);
         }
     }
 
     /**
-     * listens to state changes of the given item, if it is part of the
-     * requested items
+     * stops listening to state changes of the given item
      *
      * @param item
-     *            - the new item, that should be listened to
+     *            - the item, that should not be listened to anymore
      */
     @Override
     public void unregisterItem(Item item) {
-        if (item == null || items.containsKey(item) || !itemNames.contains(item.getName()))
-            return;
         if (item instanceof GenericItem) {
             ((GenericItem) item).removeStateChangeListener(stateEventListener);
-            items.remove(item);
+        }
+    }
+
+    private void registerItem(String ohItemName) {
+        if (itemRegistry == null) {
+            return;
+        }
+        try {
+            registerItem(itemRegistry.getItem(ohItemName));
+        } catch (ItemNotFoundException e) {
+            // the listener is added when the item appears in the registry
+        }
+    }
+
+    /**
+     * removes the subscriptions of all clients which have disconnected and
+     * stops listening to items nobody is interested in anymore
+     */
+    private synchronized void removeClosedSubscriptions() {
+        for (Map.Entry<String, Set<StateSubscription>> entry : subscriptions.entrySet()) {
+            Set<StateSubscription> itemSubscriptions = entry.getValue();
+            for (StateSubscription subscription : itemSubscriptions) {
+                if (subscription.isClosed()) {
+                    itemSubscriptions.remove(subscription);
+                }
+            }
+            if (itemSubscriptions.isEmpty()) {
+                subscriptions.remove(entry.getKey());
+                if (itemRegistry != null) {
+                    try {
+                        unregisterItem(itemRegistry.getItem(entry.getKey()));
+                    } catch (ItemNotFoundException e) {
+                        // nothing to unregister
+                    }
+                }
+            }
         }
     }
 
@@ -216,24 +264,85 @@ public class ReadResource implements EventBroadcaster, RESTResource {
      * Broadcasts an event described by the given parameters to all currently
      * listening clients.
      *
-     * @param item
-     *            - the item which has changed
      * @param eventObject
      *            - bean that can be converted to a JSON object.
      */
     @Override
     public void broadcastEvent(final Object eventObject) {
+        final Set<StateSubscription> clients = new HashSet<StateSubscription>();
+        for (Set<StateSubscription> itemSubscriptions : subscriptions.values()) {
+            clients.addAll(itemSubscriptions);
+        }
         executorService.execute(new Runnable() {
 
             @Override
             public void run() {
-                broadcaster.broadcast(SseUtil.buildEvent(eventObject));
+                boolean closed = false;
+                for (StateSubscription subscription : clients) {
+                    try {
+                        subscription.send(eventObject);
+                    } catch (IOException e) {
+                        subscription.close();
+                        closed = true;
+                    }
+                }
+                if (closed) {
+                    removeClosedSubscriptions();
+                }
             }
         });
     }
 
     @Override
-    public Map<String, Class<? extends State>> getClientItems(Item item) {
-        return items.get(item);
+    public void broadcastItemState(Item item, boolean typedOnly) {
+        Set<StateSubscription> itemSubscriptions = subscriptions.get(item.getName());
+        if (itemSubscriptions == null) {
+            return;
+        }
+        // clients often request the same item names, so every state is only
+        // converted once
+        Map<String, String> states = new HashMap<String, String>();
+        for (final StateSubscription subscription : itemSubscriptions) {
+            Map<String, Class<? extends State>> clientItems = subscription.getClientItems(item.getName());
+            for (Map.Entry<String, Class<? extends State>> entry : clientItems.entrySet()) {
+                if (typedOnly && entry.getValue() == null) {
+                    continue;
+                }
+                String cvItemName = entry.getKey();
+                String state = states.get(cvItemName);
+                if (state == null) {
+                    state = getState(item, entry.getValue());
+                    states.put(cvItemName, state);
+                }
+                if (subscription.queueState(cvItemName, state)) {
+                    executorService.schedule(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            flush(subscription);
+                        }
+                    }, BATCH_WINDOW, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+    }
+
+    private void flush(StateSubscription subscription) {
+        try {
+            subscription.flush();
+        } catch (IOException e) {
+            logger.debug("client disconnected: {}", e.getMessage());
+            subscription.close();
+            removeClosedSubscriptions();
+        }
+    }
+
+    private String getState(Item item, Class<? extends State> stateClass) {
+        if (stateClass != null) {
+            String state = item.getStateAs(stateClass).toString();
+            logger.trace("get state of '{}' as '{}' == '{}'", item, stateClass, state);
+            return state;
+        }
+        return item.getState().toString();
     }
 }
@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.ui.cometvisu.backend;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.smarthome.core.types.State;
+import org.glassfish.jersey.media.sse.EventOutput;
+import org.openhab.ui.cometvisu.backend.beans.StateBean;
+import org.openhab.ui.cometvisu.internal.util.SseUtil;
+
+/**
+ * The items requested by one CometVisu client and the SSE connection to send
+ * their states to. State changes are collected until {@link #flush()} is
+ * called, so that changes arriving close together are sent in one event.
+ *
+ * @author agent
+ * @since 2.0.0
+ */
+class StateSubscription {
+
+    private final EventOutput eventOutput;
+
+    /**
+     * openHAB item name => (CometVisu item name => state class)
+     */
+    private final Map<String, Map<String, Class<? extends State>>> items;
+
+    /**
+     * CometVisu item name => state, waiting to be sent
+     */
+    private final Map<String, String> pendingStates = new LinkedHashMap<String, String>();
+
+    private boolean flushScheduled = false;
+
+    StateSubscription(EventOutput eventOutput) {
+        this.eventOutput = eventOutput;
+        this.items = new HashMap<String, Map<String, Class<? extends State>>>();
+    }
+
+    /**
+     * adds a requested item
+     *
+     * @param ohItemName
+     *            - the name of the openHAB item
+     * @param cvItemName
+     *            - the item name used by the client, may contain a type prefix
+     * @param stateClass
+     *            - the class the state must be converted to, or null
+     */
+    void addItem(String ohItemName, String cvItemName, Class<? extends State> stateClass) {
+        Map<String, Class<? extends State>> clientItems = items.get(ohItemName);
+        if (clientItems == null) {
+            clientItems = new HashMap<String, Class<? extends State>>();
+            items.put(ohItemName, clientItems);
+        }
+        clientItems.put(cvItemName, stateClass);
+    }
+
+    /**
+     * @return the names of the openHAB items requested by the client
+     */
+    Set<String> getItemNames() {
+        return Collections.unmodifiableSet(items.keySet());
+    }
+
+    /**
+     * @param ohItemName
+     *            - the name of the openHAB item
+     * @return the CometVisu item names and state classes requested for the
+     *         item, or null if the item was not requested
+     */
+    Map<String, Class<? extends State>> getClientItems(String ohItemName) {
+        return items.get(ohItemName);
+    }
+
+    /**
+     * queues a state to be sent with the next flush
+     *
+     * @return true if a flush needs to be scheduled
+     */
+    synchronized boolean queueState(String cvItemName, String state) {
+        pendingStates.put(cvItemName, state);
+        if (flushScheduled) {
+            return false;
+        }
+        flushScheduled = true;
+        return true;
+    }
+
+    /**
+     * sends all queued states to the client in one event
+     *
+     * @throws IOException
+     *             if the connection to the client is closed
+     */
+    void flush() throws IOException {
+        List<StateBean> states;
+        synchronized (this) {
+            flushScheduled = false;
+            if (pendingStates.isEmpty()) {
+                return;
+            }
+            states = new ArrayList<StateBean>(pendingStates.size());
+            for (Map.Entry<String, String> entry : pendingStates.entrySet()) {
+                StateBean stateBean = new StateBean();
+                stateBean.name = entry.getKey();
+                stateBean.state = entry.getValue();
+                states.add(stateBean);
+            }
+            pendingStates.clear();
+        }
+        eventOutput.write(SseUtil.buildEvent(states));
+    }
+
+    /**
+     * sends an event to the client immediately
+     *
+     * @param eventObject
+     *            - bean that can be converted to a JSON object.
+     * @throws IOException
+     *             if the connection to the client is closed
+     */
+    void send(Object eventObject) throws IOException {
+        eventOutput.write(SseUtil.buildEvent(eventObject));
+    }
+
+    boolean isClosed() {
+        return eventOutput.isClosed();
+    }
+
+    void close() {
+        try {
+            eventOutput.close();
+        } catch (IOException e) {
+            // connection is already gone
+        }
+    }
+}
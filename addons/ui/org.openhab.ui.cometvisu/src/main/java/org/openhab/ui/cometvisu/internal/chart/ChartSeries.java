@@ -0,0 +1,288 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.ui.cometvisu.internal.chart;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A time series of one value column, stored in primitive arrays. Timestamps
+ * are in milliseconds and must be added in ascending order, missing values
+ * are stored as {@link Double#NaN}.
+ *
+ * @author agent
+ * @since 2.0.0
+ */
+public class ChartSeries {
+
+    private long[] timestamps;
+    private double[] values;
+    private int size = 0;
+
+    public ChartSeries() {
+        this(64);
+    }
+
+    public ChartSeries(int capacity) {
+        timestamps = new long[Math.max(capacity, 1)];
+        values = new double[Math.max(capacity, 1)];
+    }
+
+    /**
+     * appends a value to the series
+     *
+     * @param timestamp
+     *            - time in milliseconds, not before the last added one
+     * @param value
+     *            - the value or {@link Double#NaN} if there is none
+     */
+    public void add(long timestamp, double value) {
+        if (size == timestamps.length) {
+            timestamps = Arrays.copyOf(timestamps, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        timestamps[size] = timestamp;
+        values[size] = value;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getTimestamp(int index) {
+        return timestamps[index];
+    }
+
+    public double getValue(int index) {
+        return values[index];
+    }
+
+    /**
+     * Reduces the series to the given number of points with the
+     * largest-triangle-three-buckets algorithm, which keeps the points that
+     * define the visual shape of the series. The first and the last point are
+     * always kept.
+     *
+     * @param threshold
+     *            - the maximum number of points, e.g. the width of the chart
+     *            in pixels
+     * @return this series, if it is not larger than the threshold, or a new
+     *         downsampled series
+     */
+    public ChartSeries downsample(int threshold) {
+        if (threshold < 3 || size <= threshold) {
+            return this;
+        }
+        return select(selectIndices(threshold));
+    }
+
+    /**
+     * Aligns the given series on their common timestamps and reduces all of
+     * them to the same points, so that they still merge into at most the
+     * given number of rows. The points are chosen by downsampling the sum of
+     * the columns, see {@link #downsample(int)}.
+     *
+     * @param series
+     *            - the series to reduce, one column per series
+     * @param threshold
+     *            - the maximum number of points per series
+     * @return one series per given series, all with the same timestamps and
+     *         {@link Double#NaN} where a series has no value
+     */
+    public static List<ChartSeries> downsample(List<ChartSeries> series, int threshold) {
+        int capacity = 0;
+        for (ChartSeries s : series) {
+            capacity = Math.max(capacity, s.size);
+        }
+        final List<ChartSeries> aligned = new ArrayList<ChartSeries>(series.size());
+        for (int column = 0; column < series.size(); column++) {
+            aligned.add(new ChartSeries(capacity));
+        }
+        final ChartSeries sum = new ChartSeries(capacity);
+        merge(series, new RowHandler() {
+            @Override
+            public void row(long timestamp, double[] values) {
+                double total = Double.NaN;
+                for (int column = 0; column < values.length; column++) {
+                    aligned.get(column).add(timestamp, values[column]);
+                    if (!Double.isNaN(values[column])) {
+                        total = Double.isNaN(total) ? values[column] : total + values[column];
+                    }
+                }
+                sum.add(timestamp, total);
+            }
+        });
+        if (threshold < 3 || sum.size <= threshold) {
+            return aligned;
+        }
+
+        int[] indices = sum.selectIndices(threshold);
+        List<ChartSeries> sampled = new ArrayList<ChartSeries>(aligned.size());
+        for (ChartSeries s : aligned) {
+            sampled.add(s.select(indices));
+        }
+        return sampled;
+    }
+
+    /**
+     * @return the indices of the points chosen by the
+     *         largest-triangle-three-buckets algorithm, in ascending order
+     */
+    private int[] selectIndices(int threshold) {
+        int[] indices = new int[threshold];
+        indices[0] = 0;
+
+        // the points between first and last are split into equally sized
+        // buckets, from each bucket the point forming the largest triangle
+        // with the point chosen before and the average of the next bucket is
+        // taken
+        double bucketSize = (double) (size - 2) / (threshold - 2);
+        long origin = timestamps[0];
+        int a = 0;
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            int rangeStart = (int) (bucket * bucketSize) + 1;
+            int rangeEnd = (int) ((bucket + 1) * bucketSize) + 1;
+
+            int nextStart = rangeEnd;
+            int nextEnd = Math.min((int) ((bucket + 2) * bucketSize) + 1, size);
+            double avgX = 0;
+            double avgY = 0;
+            int count = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                if (!Double.isNaN(values[i])) {
+                    avgX += timestamps[i] - origin;
+                    avgY += values[i];
+                    count++;
+                }
+            }
+            if (count > 0) {
+                avgX /= count;
+                avgY /= count;
+            } else {
+                // the next bucket is a gap, all areas are NaN and the first
+                // point of this bucket is kept
+                avgX = Double.NaN;
+                avgY = Double.NaN;
+            }
+
+            double ax = timestamps[a] - origin;
+            double ay = values[a];
+            double maxArea = -1;
+            int maxIndex = rangeStart;
+            for (int i = rangeStart; i < rangeEnd; i++) {
+                double area = Math.abs(
+                        (ax - avgX) * (values[i] - ay) - (ax - (timestamps[i] - origin)) * (avgY - ay));
+                if (area > maxArea) {
+                    maxArea = area;
+                    maxIndex = i;
+                }
+            }
+            indices[bucket + 1] = maxIndex;
+            a = maxIndex;
+        }
+
+        indices[threshold - 1] = size - 1;
+        return indices;
+    }
+
+    private ChartSeries select(int[] indices) {
+        ChartSeries selected = new ChartSeries(indices.length);
+        for (int index : indices) {
+            selected.add(timestamps[index], values[index]);
+        }
+        return selected;
+    }
+
+    /**
+     * Merges the given series into rows of values with the same timestamp.
+     * As every series is ordered by time, the rows are built in one pass by
+     * always taking the smallest timestamp of the current positions of all
+     * series.
+     *
+     * @param series
+     *            - the series to merge, one column per series
+     * @param rows
+     *            - receives one call per distinct timestamp
+     */
+    public static void merge(List<ChartSeries> series, RowHandler rows) {
+        int columns = series.size();
+        int[] positions = new int[columns];
+        double[] row = new double[columns];
+        while (true) {
+            long time = Long.MAX_VALUE;
+            for (int column = 0; column < columns; column++) {
+                ChartSeries s = series.get(column);
+                if (positions[column] < s.size && s.timestamps[positions[column]] < time) {
+                    time = s.timestamps[positions[column]];
+                }
+            }
+            if (time == Long.MAX_VALUE) {
+                return;
+            }
+            for (int column = 0; column < columns; column++) {
+                ChartSeries s = series.get(column);
+                if (positions[column] < s.size && s.timestamps[positions[column]] == time) {
+                    row[column] = s.values[positions[column]];
+                    positions[column]++;
+                } else {
+                    // no value of this series at that time
+                    row[column] = Double.NaN;
+                }
+            }
+            rows.row(time, row);
+        }
+    }
+
+    /**
+     * Merges the given series like {@link #merge(List, RowHandler)} does and
+     * collects the rows in the format the CometVisu diagram plugin expects:
+     * a list of [timestamp, [value1, value2, ...]].
+     *
+     * @param series
+     *            - the series to merge, one column per series
+     * @param formatter
+     *            - converts a value to its string representation
+     * @return the merged rows
+     */
+    public static List<Object[]> mergeToRows(List<ChartSeries> series, final ValueFormatter formatter) {
+        final List<Object[]> result = new ArrayList<Object[]>();
+        merge(series, new RowHandler() {
+            @Override
+            public void row(long timestamp, double[] values) {
+                ArrayList<String> vals = new ArrayList<String>(values.length);
+                for (double value : values) {
+                    vals.add(formatter.format(value));
+                }
+                result.add(new Object[] { timestamp, vals });
+            }
+        });
+        return result;
+    }
+
+    /**
+     * receives the rows of merged series
+     */
+    public interface RowHandler {
+        /**
+         * @param timestamp
+         *            - time of the row in milliseconds
+         * @param values
+         *            - one value per series, only valid during this call
+         */
+        void row(long timestamp, double[] values);
+    }
+
+    /**
+     * formats values of a series
+     */
+    public interface ValueFormatter {
+        String format(double value);
+    }
+}
@@ -0,0 +1,289 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.ui.cometvisu.internal.config;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.eclipse.smarthome.core.common.registry.RegistryChangeListener;
+import org.eclipse.smarthome.core.items.Item;
+import org.eclipse.smarthome.model.sitemap.Sitemap;
+import org.openhab.ui.cometvisu.servlet.CometVisuApp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the configs generated from sitemaps, so that they are only generated
+ * again after the sitemap or one of the items used by it has changed. A new
+ * sitemap model is detected by comparing the sitemap instance, item changes
+ * are reported by the item registry.
+ *
+ * @author agent
+ * @since 2.0.0
+ */
+public class ConfigCache implements RegistryChangeListener<Item> {
+    private static final Logger logger = LoggerFactory.getLogger(ConfigCache.class);
+
+    private final CometVisuApp app;
+    private final File rootFolder;
+
+    /**
+     * sitemap name and schema location => generated config
+     */
+    private final Map<String, CachedConfig> configs = new ConcurrentHashMap<String, CachedConfig>();
+
+    /**
+     * incremented on every invalidation, a config generated while an
+     * invalidation happened is not cached
+     */
+    private final AtomicLong version = new AtomicLong();
+
+    private long hits = 0;
+    private long misses = 0;
+    private final AtomicLong invalidations = new AtomicLong();
+    private long generations = 0;
+    private long totalBuildTime = 0;
+    private long maxBuildTime = 0;
+    private long totalMarshalTime = 0;
+    private long maxMarshalTime = 0;
+
+    public ConfigCache(CometVisuApp app, File rootFolder) {
+        this.app = app;
+        this.rootFolder = rootFolder;
+    }
+
+    /**
+     * returns the config for the given sitemap and generates it if it is not
+     * cached or outdated
+     *
+     * @param sitemap
+     *            the sitemap to generate the config from
+     * @param req
+     *            the request, its path determines the location of the schema
+     * @return the config
+     */
+    public synchronized CachedConfig getConfig(Sitemap sitemap, HttpServletRequest req) {
+        String key = sitemap.getName() + "|" + req.getPathInfo().substring(1).split("/").length;
+        CachedConfig cached = configs.get(key);
+        if (cached != null && cached.sitemap == sitemap) {
+            hits++;
+            return cached;
+        }
+        misses++;
+
+        long startVersion = version.get();
+        VisuConfig config = new VisuConfig(sitemap, app, rootFolder);
+        String xml = config.getConfigXml(req);
+        cached = new CachedConfig(sitemap, xml.getBytes(StandardCharsets.UTF_8), config.getItemNames());
+
+        generations++;
+        totalBuildTime += config.getBuildTime();
+        maxBuildTime = Math.max(maxBuildTime, config.getBuildTime());
+        totalMarshalTime += config.getMarshalTime();
+        maxMarshalTime = Math.max(maxMarshalTime, config.getMarshalTime());
+
+        // an empty config means marshalling failed, try again next time
+        if (startVersion == version.get() && !xml.isEmpty()) {
+            configs.put(key, cached);
+        } else {
+            configs.remove(key);
+        }
+        return cached;
+    }
+
+    /**
+     * @return a snapshot of the cache statistics
+     */
+    public synchronized Statistics getStatistics() {
+        return new Statistics(configs.size(), hits, misses, invalidations.get(), generations, totalBuildTime,
+                maxBuildTime, totalMarshalTime, maxMarshalTime);
+    }
+
+    @Override
+    public void added(Item element) {
+        invalidate(element);
+    }
+
+    @Override
+    public void removed(Item element) {
+        invalidate(element);
+    }
+
+    @Override
+    public void updated(Item oldElement, Item element) {
+        invalidate(oldElement);
+        invalidate(element);
+    }
+
+    @Override
+    public void allItemsChanged(Collection<String> oldItemNames) {
+        version.incrementAndGet();
+        if (!configs.isEmpty()) {
+            configs.clear();
+            logger.debug("all items have changed, removed all generated configs");
+        }
+    }
+
+    /**
+     * removes all configs which use the given item or a group it belongs to
+     */
+    private void invalidate(Item item) {
+        version.incrementAndGet();
+        Iterator<CachedConfig> it = configs.values().iterator();
+        while (it.hasNext()) {
+            CachedConfig config = it.next();
+            if (config.uses(item)) {
+                it.remove();
+                invalidations.incrementAndGet();
+                logger.debug("item '{}' has changed, removed generated config of sitemap '{}'", item.getName(),
+                        config.sitemap.getName());
+            }
+        }
+    }
+
+    /**
+     * A generated config.
+     */
+    public static class CachedConfig {
+        private final Sitemap sitemap;
+        private final byte[] content;
+        private final Set<String> itemNames;
+        private final String eTag;
+
+        CachedConfig(Sitemap sitemap, byte[] content, Set<String> itemNames) {
+            this.sitemap = sitemap;
+            this.content = content;
+            this.itemNames = itemNames;
+
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            this.eTag = "\"" + Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(content.length) + "\"";
+        }
+
+        boolean uses(Item item) {
+            if (itemNames.contains(item.getName())) {
+                return true;
+            }
+            // member changes of a group are relevant for charts and navbars
+            for (String groupName : item.getGroupNames()) {
+                if (itemNames.contains(groupName)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return the UTF-8 encoded XML config
+         */
+        public byte[] getContent() {
+            return content;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+    }
+
+    /**
+     * Hit and miss counters of the cache and the time spent for generating
+     * configs.
+     */
+    public static class Statistics {
+        private final int configs;
+        private final long hits;
+        private final long misses;
+        private final long invalidations;
+        private final long generations;
+        private final long averageBuildTime;
+        private final long maxBuildTime;
+        private final long averageMarshalTime;
+        private final long maxMarshalTime;
+
+        Statistics(int configs, long hits, long misses, long invalidations, long generations, long totalBuildTime,
+                long maxBuildTime, long totalMarshalTime, long maxMarshalTime) {
+            this.configs = configs;
+            this.hits = hits;
+            this.misses = misses;
+            this.invalidations = invalidations;
+            this.generations = generations;
+            this.averageBuildTime = generations > 0 ? totalBuildTime / generations / 1000000 : 0;
+            this.maxBuildTime = maxBuildTime / 1000000;
+            this.averageMarshalTime = generations > 0 ? totalMarshalTime / generations / 1000000 : 0;
+            this.maxMarshalTime = maxMarshalTime / 1000000;
+        }
+
+        public int getConfigs() {
+            return configs;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getInvalidations() {
+            return invalidations;
+        }
+
+        public long getGenerations() {
+            return generations;
+        }
+
+        /**
+         * @return the average time in milliseconds it took to build the
+         *         config beans
+         */
+        public long getAverageBuildTime() {
+            return averageBuildTime;
+        }
+
+        /**
+         * @return the maximum time in milliseconds it took to build the
+         *         config beans
+         */
+        public long getMaxBuildTime() {
+            return maxBuildTime;
+        }
+
+        /**
+         * @return the average time in milliseconds it took to marshal the
+         *         config beans
+         */
+        public long getAverageMarshalTime() {
+            return averageMarshalTime;
+        }
+
+        /**
+         * @return the maximum time in milliseconds it took to marshal the
+         *         config beans
+         */
+        public long getMaxMarshalTime() {
+            return maxMarshalTime;
+        }
+
+        @Override
+        public String toString() {
+            return "configs=" + configs + ", hits=" + hits + ", misses=" + misses + ", invalidations="
+                    + invalidations + ", generations=" + generations + ", build=" + averageBuildTime + "/"
+                    + maxBuildTime + "ms, marshal=" + averageMarshalTime + "/" + maxMarshalTime + "ms";
+        }
+    }
+}
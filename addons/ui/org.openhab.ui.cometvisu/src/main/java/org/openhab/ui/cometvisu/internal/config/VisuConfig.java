@@ -11,6 +11,9 @@ import java.io.File;
 import java.io.StringWriter;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.xml.XMLConstants;
@@ -91,6 +94,23 @@ public class VisuConfig {
 
     private ObjectFactory factory = new ObjectFactory();
 
+    /**
+     * creating the JAXB context is expensive, it is shared by all configs
+     */
+    private static JAXBContext jaxbContext;
+
+    private static Schema schema;
+    private static String schemaPath;
+    private static long schemaLastModified;
+
+    /**
+     * names of all items used by the widgets of the sitemap
+     */
+    private final Set<String> itemNames = new HashSet<String>();
+
+    private long buildTime;
+    private long marshalTime;
+
     public VisuConfig(Sitemap sitemap, CometVisuApp app, File rootFolder) {
         this.sitemap = sitemap;
         this.app = app;
@@ -123,21 +143,69 @@ public class VisuConfig {
         Meta meta = new Meta();
         pagesBean.setMeta(meta);
 
+        long start = System.nanoTime();
         configHelper = new ConfigHelper(pagesBean, app, sitemap.getName());
         createPages(pagesBean);
+        long built = System.nanoTime();
+        buildTime = built - start;
+
+        String xml = marshal(pagesBean, rootFolder.getAbsolutePath() + File.separator + schemaFile);
+        marshalTime = System.nanoTime() - built;
+        logger.debug("generated config for sitemap '{}' in {}ms (build) + {}ms (marshal)", sitemap.getName(),
+                buildTime / 1000000, marshalTime / 1000000);
+        return xml;
+    }
+
+    /**
+     * @return the names of the items used by the sitemap, known after
+     *         {@link #getConfigXml(HttpServletRequest)} has been called
+     */
+    public Set<String> getItemNames() {
+        return Collections.unmodifiableSet(itemNames);
+    }
+
+    /**
+     * @return the time in nanoseconds it took to build the config beans
+     */
+    public long getBuildTime() {
+        return buildTime;
+    }
+
+    /**
+     * @return the time in nanoseconds it took to marshal the config beans
+     */
+    public long getMarshalTime() {
+        return marshalTime;
+    }
 
-        return marshal(pagesBean, rootFolder.getAbsolutePath() + File.separator + schemaFile);
+    private static synchronized JAXBContext getJaxbContext() throws JAXBException {
+        if (jaxbContext == null) {
+            jaxbContext = JAXBContext.newInstance(SchemaPages.class);
+        }
+        return jaxbContext;
+    }
+
+    private static synchronized Schema getSchema(String xsdSchema) throws SAXException {
+        if (xsdSchema == null || xsdSchema.trim().length() == 0) {
+            return null;
+        }
+        File file = new File(xsdSchema);
+        if (schema == null || !xsdSchema.equals(schemaPath) || file.lastModified() != schemaLastModified) {
+            SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+            schema = schemaFactory.newSchema(file);
+            schemaPath = xsdSchema;
+            schemaLastModified = file.lastModified();
+        }
+        return schema;
     }
 
     private String marshal(Pages bean, String xsdSchema) {
         String res = "";
         try {
-            JAXBContext jaxbContext = JAXBContext.newInstance(bean.getClass());
-            SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-            Schema schema = (xsdSchema == null || xsdSchema.trim().length() == 0) ? null
-                    : schemaFactory.newSchema(new File(xsdSchema));
-            Marshaller marshaller = jaxbContext.createMarshaller();
-            marshaller.setSchema(schema);
+            JAXBContext context = bean instanceof SchemaPages ? getJaxbContext()
+                    : JAXBContext.newInstance(bean.getClass());
+            Marshaller marshaller = context.createMarshaller();
+            marshaller.setSchema(getSchema(xsdSchema));
             marshaller.setProperty(Marshaller.JAXB_ENCODING, "UTF-8");
             marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
             StringWriter sw = new StringWriter();
@@ -187,6 +255,7 @@ public class VisuConfig {
     private void processWidget(Object rootPage, Widget widget, Pages pages, int level) {
         Item item = null;
         if (widget.getItem() != null) {
+            itemNames.add(widget.getItem());
             try {
                 item = app.getItemUIRegistry().getItem(widget.getItem());
             } catch (ItemNotFoundException e) {
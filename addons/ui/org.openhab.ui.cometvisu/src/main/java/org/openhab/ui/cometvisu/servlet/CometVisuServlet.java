@@ -12,9 +12,12 @@ import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -23,9 +26,11 @@ import java.util.Calendar;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -53,12 +58,14 @@ import org.eclipse.smarthome.core.types.Command;
 import org.eclipse.smarthome.model.sitemap.Sitemap;
 import org.eclipse.smarthome.model.sitemap.SitemapProvider;
 import org.openhab.ui.cometvisu.internal.Config;
+import org.openhab.ui.cometvisu.internal.config.ConfigCache;
+import org.openhab.ui.cometvisu.internal.config.ConfigCache.CachedConfig;
 import org.openhab.ui.cometvisu.internal.config.ConfigHelper.Transform;
-import org.openhab.ui.cometvisu.internal.config.VisuConfig;
 import org.openhab.ui.cometvisu.internal.editor.dataprovider.beans.DataBean;
 import org.openhab.ui.cometvisu.internal.editor.dataprovider.beans.ItemBean;
 import org.openhab.ui.cometvisu.internal.rrs.beans.Feed;
 import org.openhab.ui.cometvisu.php.PHProvider;
+import org.openhab.ui.cometvisu.servlet.StaticFileCache.CachedFile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -85,6 +92,7 @@ public class CometVisuServlet extends HttpServlet {
     private Pattern configStorePattern = Pattern.compile("config/visu_config_oh_([a-z0-9_]+)\\.xml");
 
     private String rrsLogPath = "/plugins/rsslog/rsslog_oh.php";
+    private String cacheStatisticsPath = "/cache_statistics.json";
     private final String rssLogMessageSeparator = "\\|";
     private DateFormat rssPubDateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss Z", Locale.ENGLISH);
 
@@ -101,6 +109,10 @@ public class CometVisuServlet extends HttpServlet {
 
     private CometVisuApp cometVisuApp;
 
+    private final StaticFileCache fileCache = new StaticFileCache();
+
+    private final ConfigCache configCache;
+
     public CometVisuServlet(String filesystemDir, CometVisuApp cometVisuApp) {
         root = filesystemDir;
         rootFolder = new File(root);
@@ -109,6 +121,11 @@ public class CometVisuServlet extends HttpServlet {
         defaultUserDir = System.getProperty("user.dir");
         this.cometVisuApp = cometVisuApp;
 
+        configCache = new ConfigCache(cometVisuApp, rootFolder);
+        if (cometVisuApp.getItemRegistry() != null) {
+            cometVisuApp.getItemRegistry().addRegistryChangeListener(configCache);
+        }
+
         PHProvider prov = cometVisuApp.getPHProvider();
         if (prov != null) {
             this.setPHProvider(prov);
@@ -154,6 +171,15 @@ public class CometVisuServlet extends HttpServlet {
         }
     }
 
+    @Override
+    public void destroy() {
+        if (cometVisuApp.getItemRegistry() != null) {
+            cometVisuApp.getItemRegistry().removeRegistryChangeListener(configCache);
+        }
+        fileCache.dispose();
+        super.destroy();
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -206,11 +232,20 @@ public class CometVisuServlet extends HttpServlet {
                 Sitemap sitemap = getSitemap(matcher.group(2));
                 if (sitemap != null) {
                     logger.debug("reading sitemap '{}'", sitemap);
-                    VisuConfig config = new VisuConfig(sitemap, cometVisuApp, rootFolder);
-
-                    // logger.info("response: "+config.getConfigXml());
+                    // the config is only generated again if the sitemap or
+                    // one of its items has changed
+                    CachedConfig config = configCache.getConfig(sitemap, req);
+
+                    resp.setHeader("ETag", config.getETag());
+                    String ifNoneMatch = req.getHeader("If-None-Match");
+                    if (ifNoneMatch != null && matches(ifNoneMatch, config.getETag())) {
+                        resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                        return;
+                    }
                     resp.setContentType(MediaType.APPLICATION_XML);
-                    resp.getWriter().write(config.getConfigXml(req));
+                    resp.setCharacterEncoding("UTF-8");
+                    resp.setContentLength(config.getContent().length);
+                    resp.getOutputStream().write(config.getContent());
                     resp.flushBuffer();
 
                     return;
@@ -224,6 +259,14 @@ public class CometVisuServlet extends HttpServlet {
             dataProviderService(requestedFile, req, resp);
         } else if (path.equalsIgnoreCase(rrsLogPath)) {
             processRssLogRequest(requestedFile, req, resp);
+        } else if (path.equalsIgnoreCase(cacheStatisticsPath)) {
+            // hit/miss statistics of the static file and config caches
+            Map<String, Object> statistics = new HashMap<String, Object>();
+            statistics.put("files", fileCache.getStatistics());
+            statistics.put("configs", configCache.getStatistics());
+            resp.setContentType(MediaType.APPLICATION_JSON);
+            resp.getWriter().write(marshalJson(statistics));
+            resp.flushBuffer();
         } else if (requestedFile.getName().endsWith(".php")) {
             processPhpRequest(requestedFile, req, resp);
         } else {
@@ -522,11 +565,39 @@ public class CometVisuServlet extends HttpServlet {
             return;
         }
 
-        // Prepare some variables. The ETag is an unique identifier of the file.
+        // Get content type by file name. If content type is unknown, then set
+        // the default value.
+        // For all content types, see:
+        // http://www.w3schools.com/media/media_mimeref.asp
+        // To add new content types, add new mime-mapping entry in web.xml.
         String fileName = file.getName();
-        long length = file.length();
-        long lastModified = file.lastModified();
-        String eTag = fileName + "_" + length + "_" + lastModified;
+        String contentType = getServletContext().getMimeType(fileName);
+        if (contentType == null) {
+            contentType = "application/octet-stream";
+        }
+        boolean compressible = isCompressible(contentType);
+
+        // Small files are served from memory, together with a precompressed
+        // copy for compressible content types.
+        CachedFile cached = fileCache.get(file, compressible);
+
+        // Prepare some variables. The ETag is an unique identifier of the file.
+        long length;
+        long lastModified;
+        String eTag;
+        String gzipETag = null;
+        if (cached != null) {
+            length = cached.getContent().length;
+            lastModified = cached.getLastModified();
+            eTag = cached.getETag();
+            if (cached.getGzipContent() != null) {
+                gzipETag = cached.getGzipETag();
+            }
+        } else {
+            length = file.length();
+            lastModified = file.lastModified();
+            eTag = fileName + "_" + length + "_" + lastModified;
+        }
         long expires = System.currentTimeMillis() + DEFAULT_EXPIRE_TIME;
 
         // Validate request headers for caching
@@ -535,9 +606,14 @@ public class CometVisuServlet extends HttpServlet {
         // If-None-Match header should contain "*" or ETag. If so, then return
         // 304.
         String ifNoneMatch = request.getHeader("If-None-Match");
-        if (ifNoneMatch != null && matches(ifNoneMatch, eTag)) {
+        // Both the plain and the precompressed content have the same version.
+        String noneMatchETag = eTag;
+        if (ifNoneMatch != null && gzipETag != null && matches(ifNoneMatch, gzipETag)) {
+            noneMatchETag = gzipETag;
+        }
+        if (ifNoneMatch != null && matches(ifNoneMatch, noneMatchETag)) {
             response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
-            response.setHeader("ETag", eTag); // Required in 304.
+            response.setHeader("ETag", noneMatchETag); // Required in 304.
             response.setDateHeader("Expires", expires); // Postpone cache with 1
                                                         // week.
             return;
@@ -649,27 +725,20 @@ public class CometVisuServlet extends HttpServlet {
         // Prepare and initialize response
         // --------------------------------------------------------
 
-        // Get content type by file name and set default GZIP support and
-        // content disposition.
-        String contentType = getServletContext().getMimeType(fileName);
+        // Set default GZIP support and content disposition.
         boolean acceptsGzip = false;
         String disposition = "inline";
 
-        // If content type is unknown, then set the default value.
-        // For all content types, see:
-        // http://www.w3schools.com/media/media_mimeref.asp
-        // To add new content types, add new mime-mapping entry in web.xml.
-        if (contentType == null) {
-            contentType = "application/octet-stream";
+        // If content type is compressible, then determine whether GZIP content
+        // encoding is supported by the browser.
+        if (compressible) {
+            String acceptEncoding = request.getHeader("Accept-Encoding");
+            acceptsGzip = acceptEncoding != null && accepts(acceptEncoding, "gzip");
         }
 
-        // If content type is text, then determine whether GZIP content encoding
-        // is supported by
-        // the browser and expand content type with the one and right character
-        // encoding.
+        // If content type is text, then expand content type with the one and
+        // right character encoding.
         if (contentType.startsWith("text")) {
-            String acceptEncoding = request.getHeader("Accept-Encoding");
-            acceptsGzip = acceptEncoding != null && accepts(acceptEncoding, "gzip");
             contentType += ";charset=UTF-8";
         }
 
@@ -682,11 +751,21 @@ public class CometVisuServlet extends HttpServlet {
             disposition = accept != null && accepts(accept, contentType) ? "inline" : "attachment";
         }
 
+        // The precompressed content is a different representation, so it
+        // gets its own ETag.
+        boolean fullContent = ranges.isEmpty() || ranges.get(0) == full;
+        if (fullContent && acceptsGzip && gzipETag != null) {
+            eTag = gzipETag;
+        }
+
         // Initialize response.
         response.reset();
         response.setBufferSize(DEFAULT_BUFFER_SIZE);
         response.setHeader("Content-Disposition", disposition + ";filename=\"" + fileName + "\"");
         response.setHeader("Accept-Ranges", "bytes");
+        if (compressible) {
+            response.setHeader("Vary", "Accept-Encoding");
+        }
         response.setHeader("ETag", eTag);
         response.setDateHeader("Last-Modified", lastModified);
         response.setDateHeader("Expires", expires);
@@ -695,22 +774,34 @@ public class CometVisuServlet extends HttpServlet {
         // ------------------------------------------------
 
         // Prepare streams.
-        RandomAccessFile input = null;
+        FileChannel input = null;
         OutputStream output = null;
 
         try {
-            // Open streams.
-            input = new RandomAccessFile(file, "r");
+            // Open streams. Cached files are written from memory.
+            if (cached == null) {
+                input = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            }
             output = response.getOutputStream();
 
-            if (ranges.isEmpty() || ranges.get(0) == full) {
+            if (fullContent) {
 
                 // Return full file.
                 Range r = full;
                 response.setContentType(contentType);
                 response.setHeader("Content-Range", "bytes " + r.start + "-" + r.end + "/" + r.total);
 
-                if (content) {
+                if (content && cached != null) {
+                    byte[] data = cached.getContent();
+                    if (acceptsGzip && cached.getGzipContent() != null) {
+                        // The browser accepts GZIP, so send the precompressed
+                        // content.
+                        response.setHeader("Content-Encoding", "gzip");
+                        data = cached.getGzipContent();
+                    }
+                    response.setHeader("Content-Length", String.valueOf(data.length));
+                    output.write(data);
+                } else if (content) {
                     if (acceptsGzip) {
                         // The browser accepts GZIP, so GZIP the content.
                         response.setHeader("Content-Encoding", "gzip");
@@ -738,7 +829,7 @@ public class CometVisuServlet extends HttpServlet {
 
                 if (content) {
                     // Copy single part range.
-                    copy(input, output, r.start, r.length);
+                    copy(cached, input, output, r.start, r.length);
                 }
 
             } else {
@@ -762,7 +853,7 @@ public class CometVisuServlet extends HttpServlet {
                         sos.println("Content-Range: bytes " + r.start + "-" + r.end + "/" + r.total);
 
                         // Copy single part range of multi part range.
-                        copy(input, output, r.start, r.length);
+                        copy(cached, input, output, r.start, r.length);
                     }
 
                     // End with multipart boundary.
@@ -980,12 +1071,30 @@ public class CometVisuServlet extends HttpServlet {
     }
 
     /**
-     * Copy the given byte range of the given input to the given output.
+     * Returns true if content of the given type should be sent GZIP
+     * compressed to browsers which support it.
      *
+     * @param contentType
+     *            The content type.
+     * @return True if the content type is a text format.
+     */
+    private static boolean isCompressible(String contentType) {
+        return contentType.startsWith("text") || contentType.equals("application/javascript")
+                || contentType.equals("application/json") || contentType.equals("application/xml")
+                || contentType.equals("image/svg+xml");
+    }
+
+    /**
+     * Copy the given byte range of the given cached file or, if the file is
+     * not cached, of the given input to the given output.
+     *
+     * @param cached
+     *            The cached file or null.
      * @param input
-     *            The input to copy the given range to the given output for.
+     *            The input to copy the given range from if the file is not
+     *            cached.
      * @param output
-     *            The output to copy the given range from the given input for.
+     *            The output to copy the given range to.
      * @param start
      *            Start of the byte range.
      * @param length
@@ -993,28 +1102,41 @@ public class CometVisuServlet extends HttpServlet {
      * @throws IOException
      *             If something fails at I/O level.
      */
-    private static void copy(RandomAccessFile input, OutputStream output, long start, long length) throws IOException {
-        byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
-        int read;
-
-        if (input.length() == length) {
-            // Write full range.
-            while ((read = input.read(buffer)) > 0) {
-                output.write(buffer, 0, read);
-            }
+    private static void copy(CachedFile cached, FileChannel input, OutputStream output, long start, long length)
+            throws IOException {
+        if (cached != null) {
+            output.write(cached.getContent(), (int) start, (int) length);
         } else {
-            // Write partial range.
-            input.seek(start);
-            long toRead = length;
+            copy(input, output, start, length);
+        }
+    }
 
-            while ((read = input.read(buffer)) > 0) {
-                if ((toRead -= read) > 0) {
-                    output.write(buffer, 0, read);
-                } else {
-                    output.write(buffer, 0, (int) toRead + read);
-                    break;
-                }
+    /**
+     * Copy the given byte range of the given input to the given output. The
+     * bytes are transferred by the channel without copying them to a buffer
+     * first.
+     *
+     * @param input
+     *            The input to copy the given range to the given output for.
+     * @param output
+     *            The output to copy the given range from the given input for.
+     * @param start
+     *            Start of the byte range.
+     * @param length
+     *            Length of the byte range.
+     * @throws IOException
+     *             If something fails at I/O level.
+     */
+    private static void copy(FileChannel input, OutputStream output, long start, long length) throws IOException {
+        WritableByteChannel target = Channels.newChannel(output);
+        long position = start;
+        long end = start + length;
+        while (position < end) {
+            long transferred = input.transferTo(position, end - position, target);
+            if (transferred <= 0) {
+                break;
             }
+            position += transferred;
         }
     }
 
@@ -0,0 +1,357 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.ui.cometvisu.servlet;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the content of the static CometVisu files in memory, together with a
+ * gzip compressed copy and an ETag computed from the content. The cache is
+ * bounded by the total size of the cached content and evicts the least
+ * recently used files first. Cached files are invalidated as soon as the
+ * file system reports a change in their directory.
+ *
+ * @author agent
+ * @since 2.0.0
+ */
+public class StaticFileCache {
+    private static final Logger logger = LoggerFactory.getLogger(StaticFileCache.class);
+
+    private static final long DEFAULT_MAX_SIZE = 16 * 1024 * 1024; // ..bytes = 16MB.
+    private static final long DEFAULT_MAX_FILE_SIZE = 1024 * 1024; // ..bytes = 1MB.
+
+    private final long maxSize;
+    private final long maxFileSize;
+
+    /**
+     * in access order, so the eldest entry is the least recently used one
+     */
+    private final LinkedHashMap<Path, CachedFile> entries = new LinkedHashMap<Path, CachedFile>(64, 0.75f, true);
+    private long size = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long invalidations = 0;
+
+    private WatchService watchService;
+    private final Map<Path, WatchKey> watchedDirectories = new HashMap<Path, WatchKey>();
+    private Thread watcher;
+
+    public StaticFileCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_MAX_FILE_SIZE);
+    }
+
+    public StaticFileCache(long maxSize, long maxFileSize) {
+        this.maxSize = maxSize;
+        this.maxFileSize = maxFileSize;
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            watcher = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    watch();
+                }
+            }, "CometVisu file cache watcher");
+            watcher.setDaemon(true);
+            watcher.start();
+        } catch (IOException e) {
+            logger.debug("file system cannot be watched, checking modification time instead: {}", e.getMessage());
+            watchService = null;
+        }
+    }
+
+    /**
+     * Returns the cached content of the given file and loads it into the
+     * cache if it is not there yet.
+     *
+     * @param file
+     *            The file to be served.
+     * @param compress
+     *            Whether a gzip compressed copy of the content should be kept.
+     * @return The cached file or null if the file is too large to be cached
+     *         or cannot be read.
+     */
+    public CachedFile get(File file, boolean compress) {
+        Path path = file.toPath().toAbsolutePath().normalize();
+        synchronized (this) {
+            CachedFile cached = entries.get(path);
+            if (cached != null && (watchService != null || cached.isCurrent(file))) {
+                hits++;
+                return cached;
+            }
+            misses++;
+        }
+
+        if (file.length() > maxFileSize) {
+            return null;
+        }
+        CachedFile cached;
+        try {
+            // watch the directory before reading, so that no change is missed
+            watch(path.getParent());
+            cached = new CachedFile(file.lastModified(), Files.readAllBytes(path), compress);
+        } catch (IOException e) {
+            logger.debug("cannot cache file '{}': {}", file, e.getMessage());
+            return null;
+        }
+
+        synchronized (this) {
+            CachedFile replaced = entries.put(path, cached);
+            if (replaced != null) {
+                size -= replaced.getSize();
+            }
+            size += cached.getSize();
+            Iterator<CachedFile> it = entries.values().iterator();
+            while (size > maxSize && it.hasNext()) {
+                CachedFile eldest = it.next();
+                it.remove();
+                size -= eldest.getSize();
+                evictions++;
+            }
+        }
+        // the file might have changed before the watch was active
+        if (!cached.isCurrent(file)) {
+            invalidate(path);
+        }
+        return cached;
+    }
+
+    /**
+     * @return A snapshot of the cache statistics.
+     */
+    public synchronized Statistics getStatistics() {
+        return new Statistics(entries.size(), size, maxSize, hits, misses, evictions, invalidations);
+    }
+
+    /**
+     * stops watching the file system and drops all cached files
+     */
+    public void dispose() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                // nothing to do here
+            }
+        }
+        synchronized (this) {
+            entries.clear();
+            size = 0;
+        }
+    }
+
+    private void watch(Path directory) throws IOException {
+        if (watchService == null || directory == null) {
+            return;
+        }
+        synchronized (watchedDirectories) {
+            WatchKey key = watchedDirectories.get(directory);
+            if (key == null || !key.isValid()) {
+                key = directory.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+                watchedDirectories.put(directory, key);
+            }
+        }
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                Path directory = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW) {
+                        invalidateDirectory(directory);
+                    } else {
+                        invalidate(directory.resolve((Path) event.context()));
+                    }
+                }
+                if (!key.reset()) {
+                    invalidateDirectory(directory);
+                    synchronized (watchedDirectories) {
+                        watchedDirectories.remove(directory);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // stop watching
+        } catch (ClosedWatchServiceException e) {
+            // cache has been disposed
+        }
+    }
+
+    private synchronized void invalidate(Path path) {
+        CachedFile removed = entries.remove(path);
+        if (removed != null) {
+            size -= removed.getSize();
+            invalidations++;
+            logger.trace("file '{}' changed, removed it from the cache", path);
+        }
+    }
+
+    private synchronized void invalidateDirectory(Path directory) {
+        Iterator<Map.Entry<Path, CachedFile>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Path, CachedFile> entry = it.next();
+            if (directory.equals(entry.getKey().getParent())) {
+                it.remove();
+                size -= entry.getValue().getSize();
+                invalidations++;
+            }
+        }
+    }
+
+    /**
+     * The content of a cached file.
+     */
+    public static class CachedFile {
+        private final long lastModified;
+        private final byte[] content;
+        private final byte[] gzipContent;
+        private final String eTag;
+
+        CachedFile(long lastModified, byte[] content, boolean compress) throws IOException {
+            this.lastModified = lastModified;
+            this.content = content;
+
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            this.eTag = "\"" + Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(content.length) + "\"";
+
+            byte[] compressed = null;
+            if (compress) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length / 2 + 32);
+                GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+                gzip.write(content);
+                gzip.close();
+                // serving the compressed content only makes sense if it is smaller
+                if (bytes.size() < content.length) {
+                    compressed = bytes.toByteArray();
+                }
+            }
+            this.gzipContent = compressed;
+        }
+
+        boolean isCurrent(File file) {
+            return file.lastModified() == lastModified && file.length() == content.length;
+        }
+
+        long getSize() {
+            return content.length + (gzipContent != null ? gzipContent.length : 0);
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public byte[] getContent() {
+            return content;
+        }
+
+        /**
+         * @return The gzip compressed content or null if there is none.
+         */
+        public byte[] getGzipContent() {
+            return gzipContent;
+        }
+
+        /**
+         * @return The strong ETag of the uncompressed content.
+         */
+        public String getETag() {
+            return eTag;
+        }
+
+        /**
+         * @return The strong ETag of the compressed content.
+         */
+        public String getGzipETag() {
+            return eTag.substring(0, eTag.length() - 1) + "-gzip\"";
+        }
+    }
+
+    /**
+     * Hit and miss counters of the cache.
+     */
+    public static class Statistics {
+        private final int files;
+        private final long size;
+        private final long maxSize;
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long invalidations;
+
+        Statistics(int files, long size, long maxSize, long hits, long misses, long evictions, long invalidations) {
+            this.files = files;
+            this.size = size;
+            this.maxSize = maxSize;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.invalidations = invalidations;
+        }
+
+        public int getFiles() {
+            return files;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getMaxSize() {
+            return maxSize;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public long getInvalidations() {
+            return invalidations;
+        }
+
+        @Override
+        public String toString() {
+            return "files=" + files + ", size=" + size + "/" + maxSize + ", hits=" + hits + ", misses=" + misses
+                    + ", evictions=" + evictions + ", invalidations=" + invalidations;
+        }
+    }
+}